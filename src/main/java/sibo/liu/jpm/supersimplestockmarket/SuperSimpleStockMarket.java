@@ -2,12 +2,31 @@ package sibo.liu.jpm.supersimplestockmarket;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Optional;
 import java.util.Scanner;
 
 import org.joda.time.DateTime;
 
+import sibo.liu.jpm.supersimplestockmarket.cluster.ReplicaNode;
+import sibo.liu.jpm.supersimplestockmarket.cluster.ReplicationPrimary;
+import sibo.liu.jpm.supersimplestockmarket.cluster.ShardCoordinator;
+import sibo.liu.jpm.supersimplestockmarket.http.MarketDataServer;
+import sibo.liu.jpm.supersimplestockmarket.replay.ReplayReport;
+import sibo.liu.jpm.supersimplestockmarket.replay.SessionRecorder;
+import sibo.liu.jpm.supersimplestockmarket.replay.SessionReplayer;
 import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.LateArrivalStatistics;
+import sibo.liu.jpm.supersimplestockmarket.stock.OrderFlow;
 import sibo.liu.jpm.supersimplestockmarket.stock.PreferredStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.PriceStatistics;
+import sibo.liu.jpm.supersimplestockmarket.stock.QuantileSketch;
 import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
 import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
 import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
@@ -40,6 +59,46 @@ import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
  * <p>
  * Output: P/E Ratio: 0.000323 Dividend Yield: 3095.9752322
  * <p>
+ * Enter <b>F StockSymbol Minutes</b> to get the buy/sell split of the
+ * transactions of a stock in the past minutes
+ * <p>
+ * For example:
+ * <p>
+ * Input: F MSFT 15
+ * <p>
+ * Output: Buy Volume: 1000 Sell Volume: 500 Buy VWAP: 117.23 Sell VWAP: 100.792
+ * Imbalance: 0.33333333
+ * <p>
+ * Enter <b>V StockSymbol Minutes</b> to get the moving averages of the price
+ * and quantity of the transactions of a stock, and the volatility of its log
+ * returns in the past minutes
+ * <p>
+ * For example:
+ * <p>
+ * Input: V MSFT 15
+ * <p>
+ * Output: EWMA Price: 108.51 EWMA Volume: 750 Volatility: 0.1069
+ * <p>
+ * Enter <b>Q StockSymbol Minutes</b> to get the 5th percentile, median and
+ * 95th percentile of the transaction prices of a stock in the past minutes,
+ * within 1%
+ * <p>
+ * For example:
+ * <p>
+ * Input: Q MSFT 15
+ * <p>
+ * Output: P5: 100.792 Median: 100.792 P95: 117.23
+ * <p>
+ * Enter <b>L StockSymbol Milliseconds</b> to set how late the transactions of
+ * a stock can arrive and still be put in time order, and get how late they
+ * have arrived so far
+ * <p>
+ * For example:
+ * <p>
+ * Input: L MSFT 1000
+ * <p>
+ * Output: In Order: 2 Reordered: 1 Corrected: 0 Max Late: 71000
+ * <p>
  * Enter <b>StockSymbol TimeStamp(in format yyyy-MM-ddTHH:mm:ss) Quantity
  * Indicator(B or S) Price</b> to record a transaction
  * <p>
@@ -61,6 +120,24 @@ import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
  * Input: P MSFT 1000 10 2 5
  * <p>
  * Output: Success.
+ * <p>
+ * Start with <b>--shards N</b> to spread the stocks over N worker processes
+ * by symbol, see {@link ShardCoordinator}.
+ * <p>
+ * Start with <b>--primary Port</b> to ship every modification to replicas on
+ * that local port, see {@link ReplicationPrimary}, and with <b>--replica
+ * Port</b> to run a read-only replica of the primary on that port, see
+ * {@link ReplicaNode}.
+ * <p>
+ * Start with <b>--record File</b> to write every command, its time and its
+ * output to a session file, see {@link SessionRecorder}, and with
+ * <b>--replay File</b> or <b>--replay-paced File</b> to replay a session as
+ * fast as possible or at its recorded pace, check every output and print the
+ * throughput and latencies, see {@link SessionReplayer}.
+ * <p>
+ * Start with <b>--http Port</b> to also serve the queries as JSON over HTTP
+ * on that local port, see {@link MarketDataServer}. The port actually bound
+ * is printed first, which is how to find it when starting with port 0.
  * 
  * @author sibliu
  *
@@ -71,55 +148,180 @@ public class SuperSimpleStockMarket {
     }
 
     private static final StockTransactionManager MANAGER = StockTransactionManager.INSTANCE;
+    private static final String SHARDS_OPTION = "--shards";
+    private static final String PRIMARY_OPTION = "--primary";
+    private static final String REPLICA_OPTION = "--replica";
+    private static final String RECORD_OPTION = "--record";
+    private static final String REPLAY_OPTION = "--replay";
+    private static final String REPLAY_PACED_OPTION = "--replay-paced";
+    private static final String HTTP_OPTION = "--http";
+    private static final String[] DEFAULT_STOCKS = new String[] { "C TEA 100 0 1 0",
+            "C POP 100 8 1 8", "C ALE 60 23 1 23", "P GIN 100 8 4 0.02", "C JOE 250 13 1 13" };
+
+    public static void main(String... args) throws IOException {
+        if (args.length == 2 && SHARDS_OPTION.equals(args[0])) {
+            try (ShardCoordinator coordinator = new ShardCoordinator(Integer.parseInt(args[1]))) {
+                run(coordinator::execute, true);
+            }
+        } else if (args.length == 2 && PRIMARY_OPTION.equals(args[0])) {
+            try (ReplicationPrimary primary = new ReplicationPrimary(Integer.parseInt(args[1]))) {
+                MANAGER.setJournal(primary);
+                run(SuperSimpleStockMarket::execute, true);
+            }
+        } else if (args.length == 2 && REPLICA_OPTION.equals(args[0])) {
+            // The stocks come from the primary
+            try (ReplicaNode replica = new ReplicaNode(Integer.parseInt(args[1]))) {
+                run(replica::execute, false);
+            }
+        } else if (args.length == 2 && RECORD_OPTION.equals(args[0])) {
+            try (SessionRecorder recorder = new SessionRecorder(SuperSimpleStockMarket::execute,
+                    Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8))) {
+                run(recorder::execute, true);
+            }
+        } else if (args.length == 2
+                && (REPLAY_OPTION.equals(args[0]) || REPLAY_PACED_OPTION.equals(args[0]))) {
+            // The default stocks are part of the recording
+            try (Reader input = Files.newBufferedReader(Paths.get(args[1]),
+                    StandardCharsets.UTF_8)) {
+                ReplayReport report = SessionReplayer.replay(SessionReplayer.read(input),
+                        SuperSimpleStockMarket::execute, REPLAY_PACED_OPTION.equals(args[0]));
+                System.out.println(report);
+                if (!report.isMatching()) {
+                    System.exit(1);
+                }
+            }
+        } else if (args.length == 2 && HTTP_OPTION.equals(args[0])) {
+            // This process serves no other HTTP, so apply it JVM-wide
+            if (System.getProperty(MarketDataServer.NO_DELAY_PROPERTY) == null) {
+                System.setProperty(MarketDataServer.NO_DELAY_PROPERTY, Boolean.TRUE.toString());
+            }
+            try (MarketDataServer server = new MarketDataServer(MANAGER, new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), Integer.parseInt(args[1])), Runtime
+                    .getRuntime().availableProcessors())) {
+                // Port 0 picks any free port, so clients need to be told
+                System.out.println("HTTP on port " + server.getPort());
+                run(SuperSimpleStockMarket::execute, true);
+            }
+        } else {
+            run(SuperSimpleStockMarket::execute, true);
+        }
+    }
 
-    public static void main(String... args) {
-        CommonStock stock1 = new CommonStock("TEA", new BigDecimal(100), BigDecimal.ZERO,
-                BigInteger.ONE, BigDecimal.ZERO);
-        CommonStock stock2 = new CommonStock("POP", new BigDecimal(100), new BigDecimal(8),
-                BigInteger.ONE, new BigDecimal(8));
-        CommonStock stock3 = new CommonStock("ALE", new BigDecimal(60), new BigDecimal(23),
-                BigInteger.ONE, new BigDecimal(23));
-        PreferredStock stock4 = new PreferredStock("GIN", new BigDecimal(100), new BigDecimal(8),
-                BigInteger.valueOf(4), BigDecimal.valueOf(0.02));
-        CommonStock stock5 = new CommonStock("JOE", new BigDecimal(250), new BigDecimal(13),
-                BigInteger.ONE, new BigDecimal(13));
-        MANAGER.addStock(stock1);
-        MANAGER.addStock(stock2);
-        MANAGER.addStock(stock3);
-        MANAGER.addStock(stock4);
-        MANAGER.addStock(stock5);
+    // Add the default stocks if asked, then answer every line until EXIT
+    private static void run(Console console, boolean addDefaultStocks) throws IOException {
+        if (addDefaultStocks) {
+            for (String stock : DEFAULT_STOCKS) {
+                console.execute(stock);
+            }
+        }
         Scanner scanner = new Scanner(System.in);
         String next = null;
         while (!"EXIT".equals(next = scanner.nextLine())) {
-            try {
-                String[] param = next.split(" ");
-                switch (param.length) {
-                case 1:
-                    if (param[0].isEmpty())
-                        getGBCEIndex();
-                    else
-                        getVolumeWeightedStockPrice(param);
-                    break;
-                case 2:
-                    getPERatioAndDividendYield(param);
-                    break;
-                case 5:
-                    addTransaction(param);
-                    break;
-                case 6:
-                    addStock(param);
-                    break;
-                default:
-                    System.out.println("Unrecognized Operation.");
-                }
-            } catch (Exception e) {
-                System.out.println(e);
-            }
+            System.out.println(console.execute(next));
         }
         scanner.close();
     }
 
-    private static final void addStock(String... args) {
+    /**
+     * Execute one console command against the stocks of this process.
+     * 
+     * @param command
+     *            a line of input as described in {@link SuperSimpleStockMarket}
+     * @return the output of the command, without a trailing line separator
+     */
+    public static String execute(String command) {
+        try {
+            String[] param = command.split(" ");
+            switch (param.length) {
+            case 1:
+                if (param[0].isEmpty())
+                    return getGBCEIndex();
+                else
+                    return getVolumeWeightedStockPrice(param);
+            case 2:
+                return getPERatioAndDividendYield(param);
+            case 3:
+                if ("F".equals(param[0]))
+                    return getOrderFlow(param);
+                else if ("L".equals(param[0]))
+                    return getLateArrivalStatistics(param);
+                else if ("Q".equals(param[0]))
+                    return getPriceQuantiles(param);
+                else if ("V".equals(param[0]))
+                    return getPriceStatistics(param);
+                else
+                    return "Unrecognized Operation.";
+            case 5:
+                return addTransaction(param);
+            case 6:
+                return addStock(param);
+            default:
+                return "Unrecognized Operation.";
+            }
+        } catch (Exception e) {
+            return e.toString();
+        }
+    }
+
+    /**
+     * Get the symbol of the stock a console command applies to.
+     * 
+     * @param command
+     *            a line of input as described in {@link SuperSimpleStockMarket}
+     * @return Return {@code Optional<String>} of the symbol if the command
+     *         applies to one stock. Return {@code Optional.empty()} otherwise
+     */
+    public static Optional<String> getSymbol(String command) {
+        String[] param = command.split(" ");
+        switch (param.length) {
+        case 1:
+            return param[0].isEmpty() ? Optional.empty() : Optional.of(param[0]);
+        case 2:
+        case 5:
+            return Optional.of(param[0]);
+        case 3:
+            return "F".equals(param[0]) || "L".equals(param[0]) || "Q".equals(param[0])
+                    || "V".equals(param[0]) ? Optional.of(param[1]) : Optional.empty();
+        case 6:
+            return Optional.of(param[1]);
+        default:
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Check if a console command only reads stocks.
+     * 
+     * @param command
+     *            a line of input as described in {@link SuperSimpleStockMarket}
+     * @return Return {@code true} if {@code command} does not modify any
+     *         stock. {@code False} otherwise
+     */
+    public static boolean isReadOnly(String command) {
+        String[] param = command.split(" ");
+        switch (param.length) {
+        case 1:
+        case 2:
+            return true;
+        case 3:
+            return "F".equals(param[0]) || "Q".equals(param[0]) || "V".equals(param[0]);
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Format the GBCE All Share Index the way the console prints it.
+     * 
+     * @param index
+     *            the index, if there is one
+     * @return the output of the GBCE All Share Index command
+     */
+    public static String formatGBCEIndex(Optional<BigDecimal> index) {
+        return "GBCE Index of All Stock: " + (index.isPresent() ? index.get() : 0);
+    }
+
+    private static final String addStock(String... args) {
         String symbol = args[1];
         try {
             BigDecimal parValue = new BigDecimal(args[2]);
@@ -136,19 +338,18 @@ public class SuperSimpleStockMarket {
                         dividendPerPeriod);
             }
             if (MANAGER.addStock(stockImpl)) {
-                System.out.println("Success.");
+                return "Success.";
             } else {
-                System.out.println("Fail.");
+                return "Fail.";
             }
         } catch (NumberFormatException e) {
-            System.out
-                    .println("Invalid Par Value, Last Annual Dividend, Period Per Year or Dividend Per Period");
+            return "Invalid Par Value, Last Annual Dividend, Period Per Year or Dividend Per Period";
         } catch (IllegalArgumentException e) {
-            System.out.println(e);
+            return e.toString();
         }
     }
 
-    private static final void addTransaction(String... args) {
+    private static final String addTransaction(String... args) {
         String symbol = args[0];
         try {
             DateTime timeStamp = new DateTime(args[1]);
@@ -160,50 +361,123 @@ public class SuperSimpleStockMarket {
 
             Transaction transaction = new Transaction(symbol, timeStamp, quantity, indicator, price);
             if (MANAGER.addTransaction(symbol, transaction)) {
-                System.out.println("Success.");
+                return "Success.";
             } else {
-                System.out.println("Fail.");
+                return "Fail.";
             }
         } catch (NumberFormatException e) {
-            System.out.println("Invalid Quantity or Price");
+            return "Invalid Quantity or Price";
         } catch (IllegalArgumentException e) {
-            System.out.println(e);
+            return e.toString();
         }
     }
 
-    private static final void getPERatioAndDividendYield(String... args) {
+    private static final String getPERatioAndDividendYield(String... args) {
         String symbol = args[0];
         try {
             BigDecimal price = new BigDecimal(args[1]);
-            if (MANAGER.getStock(symbol).isPresent()) {
-                System.out.println("P/E Ratio: "
-                        + MANAGER.getStock(symbol).get().getPERatio(price).orElse(BigDecimal.ZERO));
-                System.out.println("Dividend Yield: "
-                        + MANAGER.getStock(symbol).get().getDividendYield(price)
-                                .orElse(BigDecimal.ZERO));
+            return lines("P/E Ratio: " + MANAGER.getPERatio(symbol, price).orElse(BigDecimal.ZERO),
+                    "Dividend Yield: "
+                            + MANAGER.getDividendYield(symbol, price).orElse(BigDecimal.ZERO));
+        } catch (NumberFormatException e) {
+            return "Invalid Price";
+        }
+    }
+
+    private static final String getVolumeWeightedStockPrice(String... args) {
+        String symbol = args[0];
+        return "Volume Weighted Stock Price of " + symbol + ": "
+                + MANAGER.getVolumeWeightedStockPrice(symbol, 15).orElse(BigDecimal.ZERO);
+    }
+
+    private static final String getOrderFlow(String... args) {
+        String symbol = args[1];
+        try {
+            int pastMinutes = Integer.parseInt(args[2]);
+            Optional<StockImpl> stock = MANAGER.getStock(symbol);
+            if (stock.isPresent()) {
+                OrderFlow orderFlow = stock.get().getOrderFlow(pastMinutes);
+                return lines("Buy Volume: " + orderFlow.getBuyVolume(),
+                        "Sell Volume: " + orderFlow.getSellVolume(),
+                        "Buy VWAP: "
+                                + orderFlow.getBuyVolumeWeightedPrice().orElse(BigDecimal.ZERO),
+                        "Sell VWAP: "
+                                + orderFlow.getSellVolumeWeightedPrice().orElse(BigDecimal.ZERO),
+                        "Imbalance: " + orderFlow.getImbalance().orElse(BigDecimal.ZERO));
             } else {
-                System.out.println("P/E Ratio: " + 0);
-                System.out.println("Dividend Yield: " + 0);
+                return "Fail.";
             }
         } catch (NumberFormatException e) {
-            System.out.println("Invalid Price");
+            return "Invalid Minutes";
         }
     }
 
-    private static final void getVolumeWeightedStockPrice(String... args) {
-        String symbol = args[0];
-        System.out.print("Volume Weighted Stock Price of " + symbol + ": ");
-        if (MANAGER.getStock(symbol).isPresent()) {
-            System.out.println(MANAGER.getStock(symbol).get().getVolumeWeightedStockPrice(15)
-                    .orElse(BigDecimal.ZERO));
-        } else {
-            System.out.println(0);
+    private static final String getLateArrivalStatistics(String... args) {
+        String symbol = args[1];
+        try {
+            long latenessMillis = Long.parseLong(args[2]);
+            Optional<StockImpl> stock = MANAGER.getStock(symbol);
+            if (stock.isPresent() && latenessMillis >= 0L) {
+                stock.get().setLatenessMillis(latenessMillis);
+                LateArrivalStatistics statistics = stock.get().getLateArrivalStatistics();
+                return lines("In Order: " + statistics.getInOrderCount(),
+                        "Reordered: " + statistics.getReorderedCount(),
+                        "Corrected: " + statistics.getCorrectedCount(),
+                        "Max Late: " + statistics.getMaxLateMillis());
+            } else {
+                return "Fail.";
+            }
+        } catch (NumberFormatException e) {
+            return "Invalid Milliseconds";
+        }
+    }
+
+    private static final String getPriceQuantiles(String... args) {
+        String symbol = args[1];
+        try {
+            int pastMinutes = Integer.parseInt(args[2]);
+            Optional<StockImpl> stock = MANAGER.getStock(symbol);
+            if (stock.isPresent()) {
+                QuantileSketch sketch = stock.get().getPriceSketch(pastMinutes);
+                return lines("P5: " + sketch.getQuantile(0.05d).orElse(BigDecimal.ZERO),
+                        "Median: " + sketch.getQuantile(0.5d).orElse(BigDecimal.ZERO),
+                        "P95: " + sketch.getQuantile(0.95d).orElse(BigDecimal.ZERO));
+            } else {
+                return "Fail.";
+            }
+        } catch (NumberFormatException e) {
+            return "Invalid Minutes";
+        }
+    }
+
+    private static final String getPriceStatistics(String... args) {
+        String symbol = args[1];
+        try {
+            int pastMinutes = Integer.parseInt(args[2]);
+            Optional<StockImpl> stock = MANAGER.getStock(symbol);
+            if (stock.isPresent()) {
+                PriceStatistics statistics = stock.get().getPriceStatistics(pastMinutes);
+                return lines("EWMA Price: " + statistics.getEwmaPrice().orElse(BigDecimal.ZERO),
+                        "EWMA Volume: " + statistics.getEwmaVolume().orElse(BigDecimal.ZERO),
+                        "Volatility: " + statistics.getVolatility().orElse(BigDecimal.ZERO));
+            } else {
+                return "Fail.";
+            }
+        } catch (NumberFormatException e) {
+            return "Invalid Minutes";
         }
     }
 
-    private static final void getGBCEIndex() {
-        System.out.print("GBCE Index of All Stock: ");
-        System.out.println(MANAGER.getGBCEAllShareIndex().isPresent() ? MANAGER
-                .getGBCEAllShareIndex().get() : 0);
+    private static final String getGBCEIndex() {
+        return formatGBCEIndex(MANAGER.getGBCEAllShareIndex());
+    }
+
+    private static String lines(String... lines) {
+        return String.join(System.lineSeparator(), lines);
+    }
+
+    // A console command handler, local or sharded
+    private interface Console {
+        String execute(String command) throws IOException;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+package sibo.liu.jpm.supersimplestockmarket.cluster;
+
+import java.util.Arrays;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.JournalOperation;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+
+/**
+ * One numbered modification of the journal of a {@link ReplicationPrimary},
+ * as shipped to its replicas: one line of tab separated fields, the sequence
+ * number, the time it was recorded in milliseconds, the operation and its
+ * arguments.
+ */
+public final class JournalEntry {
+    private static final char SEPARATOR = '\t';
+    private static final String INVALID_ENTRY_EXCEPTION_MESSAGE = "Invalid journal entry: ";
+
+    private final long sequence;
+    private final long timeMillis;
+    private final JournalOperation operation;
+    private final String[] arguments;
+
+    /**
+     * Construct a {@code JournalEntry} object.
+     * 
+     * @param sequence
+     *            position of the entry in the journal, from 1
+     * @param timeMillis
+     *            time the entry was recorded
+     * @param operation
+     *            the modification
+     * @param arguments
+     *            its arguments, none of which can contain a tab or a line
+     *            break
+     * @throws IllegalArgumentException
+     *             if {@code operation} or {@code arguments} is null
+     */
+    public JournalEntry(long sequence, long timeMillis, JournalOperation operation,
+            String... arguments) {
+        if (operation == null || arguments == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        this.sequence = sequence;
+        this.timeMillis = timeMillis;
+        this.operation = operation;
+        this.arguments = arguments.clone();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public JournalOperation getOperation() {
+        return operation;
+    }
+
+    public String[] getArguments() {
+        return arguments.clone();
+    }
+
+    /**
+     * Apply the modification of this entry to {@code manager}.
+     * 
+     * @return Return {@code true} if the modification is successful.
+     *         {@code False} otherwise
+     */
+    public boolean applyTo(StockTransactionManager manager) {
+        return operation.applyTo(manager, arguments);
+    }
+
+    /**
+     * @return this entry as one line, without a line break
+     */
+    public String toLine() {
+        StringBuilder line = new StringBuilder();
+        line.append(sequence).append(SEPARATOR).append(timeMillis).append(SEPARATOR)
+                .append(operation.name());
+        for (String argument : arguments) {
+            line.append(SEPARATOR).append(argument);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Parse a line written by {@link #toLine()}.
+     * 
+     * @param line
+     *            the line to be parsed
+     * @return the {@code JournalEntry} of {@code line}
+     * @throws IllegalArgumentException
+     *             if {@code line} is not a valid entry
+     */
+    public static JournalEntry parse(String line) {
+        if (line == null) {
+            throw new IllegalArgumentException(INVALID_ENTRY_EXCEPTION_MESSAGE + line);
+        }
+        String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+        try {
+            JournalOperation operation = JournalOperation.valueOf(fields[2]);
+            if (fields.length != 3 + operation.getArgumentCount()) {
+                throw new IllegalArgumentException(INVALID_ENTRY_EXCEPTION_MESSAGE + line);
+            }
+            return new JournalEntry(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                    operation, Arrays.copyOfRange(fields, 3, fields.length));
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException(INVALID_ENTRY_EXCEPTION_MESSAGE + line, e);
+        }
+    }
+}
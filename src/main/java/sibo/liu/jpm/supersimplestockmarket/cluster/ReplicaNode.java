@@ -0,0 +1,175 @@
+package sibo.liu.jpm.supersimplestockmarket.cluster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.joda.time.DateTimeUtils;
+
+import sibo.liu.jpm.supersimplestockmarket.SuperSimpleStockMarket;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+
+/**
+ * A read-only copy of the stocks of a {@link ReplicationPrimary}, kept up to
+ * date by applying its journal to the {@code StockTransactionManager} of this
+ * process, so that heavy queries can run without competing with ingestion on
+ * the primary.
+ * <p>
+ * One thread applies the entries in order and acknowledges them to the
+ * primary whenever it has caught up with what it has received.
+ * <p>
+ * As a process, answers read-only console commands and
+ * {@link #LAG_COMMAND} through a {@link WorkerProcess} channel, and rejects
+ * commands that would modify a stock.
+ */
+public final class ReplicaNode implements AutoCloseable {
+    /**
+     * Command asking for the applied sequence number and the last apply delay
+     * in milliseconds, separated by a space
+     */
+    public static final String LAG_COMMAND = "LAG";
+    static final String READ_ONLY_RESPONSE = "Read-only replica.";
+
+    private final Socket socket;
+    private final BufferedReader input;
+    private final Writer output;
+    private volatile long appliedSequence;
+    private volatile long lastApplyDelayMillis;
+    private volatile boolean connected = true;
+
+    /**
+     * Connect to the primary listening on {@code port} of the loopback
+     * interface and start applying its journal from the beginning.
+     *
+     * @param port
+     *            the port of the primary
+     * @throws IOException
+     *             if the primary cannot be reached
+     */
+    public ReplicaNode(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+        output = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        output.write(ReplicationPrimary.FROM_COMMAND + appliedSequence + "\n");
+        output.flush();
+        Thread applier = new Thread(this::apply, "replica-applier-" + port);
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    /**
+     * @return the sequence number of the last entry applied, 0 if none
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return the time between the primary recording the last entry applied
+     *         and this replica applying it, in milliseconds
+     */
+    public long getLastApplyDelayMillis() {
+        return lastApplyDelayMillis;
+    }
+
+    /**
+     * @return Return {@code true} if the replica still receives the journal of
+     *         the primary. {@code False} otherwise
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Wait until the entry {@code sequence} of the journal is applied.
+     *
+     * @param sequence
+     *            the sequence number to wait for
+     * @param timeoutMillis
+     *            the longest time to wait
+     * @return Return {@code true} if the entry is applied. {@code False} if the
+     *         time runs out or the replica is disconnected first
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public synchronized boolean awaitSequence(long sequence, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (appliedSequence < sequence && connected && remaining > 0L) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return appliedSequence >= sequence;
+    }
+
+    /**
+     * Execute one console command if it does not modify a stock, or answer
+     * {@link #LAG_COMMAND}.
+     *
+     * @param command
+     *            a line of input as described in {@link SuperSimpleStockMarket}
+     * @return the output of the command
+     */
+    public String execute(String command) {
+        if (LAG_COMMAND.equals(command)) {
+            return appliedSequence + " " + lastApplyDelayMillis;
+        }
+        if (!SuperSimpleStockMarket.isReadOnly(command)) {
+            return READ_ONLY_RESPONSE;
+        }
+        return SuperSimpleStockMarket.execute(command);
+    }
+
+    /**
+     * Disconnect from the primary. The stocks applied so far are kept.
+     */
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    private void apply() {
+        try {
+            String line;
+            while ((line = input.readLine()) != null) {
+                JournalEntry entry = JournalEntry.parse(line);
+                entry.applyTo(StockTransactionManager.INSTANCE);
+                lastApplyDelayMillis = DateTimeUtils.currentTimeMillis() - entry.getTimeMillis();
+                synchronized (this) {
+                    appliedSequence = entry.getSequence();
+                    notifyAll();
+                }
+                if (!input.ready()) {
+                    // Caught up with what has been received
+                    output.write(ReplicationPrimary.ACK_COMMAND + appliedSequence + "\n");
+                    output.flush();
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // Disconnected, or a journal this replica cannot follow any more
+        } finally {
+            synchronized (this) {
+                connected = false;
+                notifyAll();
+            }
+            close();
+        }
+    }
+
+    public static void main(String... args) throws IOException {
+        try (ReplicaNode replica = new ReplicaNode(Integer.parseInt(args[0]))) {
+            WorkerProcess.serve(replica::execute);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package sibo.liu.jpm.supersimplestockmarket.cluster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.joda.time.DateTimeUtils;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.JournalOperation;
+import sibo.liu.jpm.supersimplestockmarket.transaction.OperationJournal;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+
+/**
+ * The journal of the process that owns the data, shipped to
+ * {@link ReplicaNode}s over local sockets.
+ * <p>
+ * Set as the journal of the {@code StockTransactionManager}, it numbers every
+ * modification in the order it is applied and keeps it in memory until every
+ * connected replica has acknowledged it. Each replica connects with the
+ * sequence number it has applied up to, receives every later entry in order,
+ * and acknowledges what it has applied, which gives the replication lag of
+ * each replica in entries. A replica asking for entries already dropped is
+ * first sent a snapshot of the stocks, then the entries recorded after it.
+ * <p>
+ * Recording an entry only appends a line to the journal; it is sent by one
+ * thread per replica, so a slow replica never slows down the primary.
+ */
+public final class ReplicationPrimary implements OperationJournal, AutoCloseable {
+    static final String FROM_COMMAND = "FROM ";
+    static final String ACK_COMMAND = "ACK ";
+
+    private final ServerSocket serverSocket;
+    // Lines of the entries kept, entry n at index n - 1 - trimmed. Guarded by
+    // itself, like trimmed and the additions to replicas.
+    private final List<String> journal = new ArrayList<String>();
+    private final List<Replica> replicas = new CopyOnWriteArrayList<Replica>();
+    private long trimmed;
+    private volatile boolean closed;
+
+    /**
+     * Start accepting replicas on {@code port} of the loopback interface.
+     *
+     * @param port
+     *            the port to listen on, or 0 for any free port
+     * @throws IOException
+     *             if the port cannot be bound
+     */
+    public ReplicationPrimary(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "replication-primary-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return the port replicas connect to
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void record(JournalOperation operation, String... arguments) {
+        synchronized (journal) {
+            journal.add(new JournalEntry(trimmed + journal.size() + 1, DateTimeUtils
+                    .currentTimeMillis(), operation, arguments).toLine());
+            if (replicas.isEmpty()) {
+                trim();
+            }
+            journal.notifyAll();
+        }
+    }
+
+    /**
+     * @return the sequence number of the last entry recorded, 0 if none
+     */
+    public long getSequence() {
+        synchronized (journal) {
+            return trimmed + journal.size();
+        }
+    }
+
+    /**
+     * @return the number of entries kept in memory, the ones recorded but not
+     *         yet acknowledged by every connected replica
+     */
+    int getRetainedCount() {
+        synchronized (journal) {
+            return journal.size();
+        }
+    }
+
+    /**
+     * @return the number of replicas connected
+     */
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * Get how far behind the furthest behind replica is.
+     *
+     * @return the number of entries recorded but not yet acknowledged by the
+     *         slowest connected replica, 0 if there is none
+     */
+    public long getReplicationLag() {
+        long sequence = getSequence();
+        long lag = 0L;
+        for (Replica replica : replicas) {
+            lag = Math.max(lag, sequence - replica.acknowledged);
+        }
+        return lag;
+    }
+
+    /**
+     * Stop accepting and disconnect every replica. Entries recorded from now
+     * on are not kept.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        for (Replica replica : replicas) {
+            replica.close();
+        }
+        synchronized (journal) {
+            journal.notifyAll();
+        }
+    }
+
+    // Drop the entries every connected replica has acknowledged, all of them if
+    // none is connected. Must be called while holding the journal monitor.
+    private void trim() {
+        long acknowledged = trimmed + journal.size();
+        for (Replica replica : replicas) {
+            acknowledged = Math.min(acknowledged, replica.acknowledged);
+        }
+        if (acknowledged > trimmed) {
+            journal.subList(0, (int) (acknowledged - trimmed)).clear();
+            trimmed = acknowledged;
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Replica replica = new Replica(serverSocket.accept());
+                Thread sender = new Thread(replica::send, "replication-sender-" + getPort());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                // Closed, or a replica failed to connect
+            }
+        }
+    }
+
+    // One connected replica: a sender thread ships the journal and reads
+    // the acknowledgements in between
+    private final class Replica {
+        private final Socket socket;
+        private final BufferedReader input;
+        private final Writer output;
+        private volatile long acknowledged;
+
+        private Replica(Socket socket) throws IOException {
+            this.socket = socket;
+            this.input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            this.output = new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.UTF_8);
+        }
+
+        private void send() {
+            try {
+                String from = input.readLine();
+                if (from == null || !from.startsWith(FROM_COMMAND)) {
+                    return;
+                }
+                acknowledged = Long.parseLong(from.substring(FROM_COMMAND.length()));
+                boolean bootstrap;
+                synchronized (journal) {
+                    // Registered before trimming again, so nothing after
+                    // acknowledged is dropped until this replica has it
+                    replicas.add(this);
+                    bootstrap = acknowledged < trimmed;
+                }
+                Thread receiver = new Thread(this::receive, "replication-receiver-" + getPort());
+                receiver.setDaemon(true);
+                receiver.start();
+                long next = bootstrap ? sendSnapshot() : acknowledged;
+                List<String> batch = new ArrayList<String>();
+                while (!closed) {
+                    synchronized (journal) {
+                        while (trimmed + journal.size() <= next && !closed) {
+                            journal.wait();
+                        }
+                        if (next < trimmed) {
+                            // Acknowledged more than it has been sent
+                            return;
+                        }
+                        batch.addAll(journal.subList((int) (next - trimmed), journal.size()));
+                    }
+                    for (String line : batch) {
+                        output.write(line);
+                        output.write('\n');
+                    }
+                    output.flush();
+                    next += batch.size();
+                    batch.clear();
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Disconnected
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        // Send the modifications that rebuild the stocks as they are at the
+        // last entry recorded, and return its sequence number. Every line but
+        // the last keeps the sequence number the replica has applied, so it
+        // only reports the snapshot applied once it is complete.
+        private long sendSnapshot() throws IOException {
+            List<JournalEntry> snapshot = new ArrayList<JournalEntry>();
+            long[] sequence = new long[1];
+            // Recorded under the lock of the manager, so no entry is recorded
+            // meanwhile
+            StockTransactionManager.INSTANCE.snapshotTo((operation, arguments) -> {
+                sequence[0] = getSequence();
+                snapshot.add(new JournalEntry(acknowledged, DateTimeUtils.currentTimeMillis(),
+                        operation, arguments));
+            });
+            int last = snapshot.size() - 1;
+            JournalEntry lastEntry = snapshot.get(last);
+            snapshot.set(last, new JournalEntry(sequence[0], lastEntry.getTimeMillis(),
+                    lastEntry.getOperation(), lastEntry.getArguments()));
+            for (JournalEntry entry : snapshot) {
+                output.write(entry.toLine());
+                output.write('\n');
+            }
+            output.flush();
+            return sequence[0];
+        }
+
+        private void receive() {
+            try {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    if (line.startsWith(ACK_COMMAND)) {
+                        acknowledged = Long.parseLong(line.substring(ACK_COMMAND.length()));
+                        synchronized (journal) {
+                            trim();
+                        }
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Disconnected
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            synchronized (journal) {
+                replicas.remove(this);
+                trim();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package sibo.liu.jpm.supersimplestockmarket.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import sibo.liu.jpm.supersimplestockmarket.SuperSimpleStockMarket;
+import sibo.liu.jpm.supersimplestockmarket.transaction.GBCEIndexPartial;
+
+/**
+ * Spreads the stocks of the market over several {@link ShardWorker} processes
+ * on this host, partitioned by the hash of their symbol, and routes console
+ * commands to the worker holding their stock.
+ * <p>
+ * The GBCE All Share Index is the one command that needs every shard: it is
+ * asked of all workers at once and computed from the combination of their
+ * partial log-sums and counts, so no transaction ever leaves its shard.
+ * <p>
+ * Thread safe. Commands to different shards run in parallel.
+ */
+public final class ShardCoordinator implements AutoCloseable {
+    private static final String INVALID_SHARD_COUNT_EXCEPTION_MESSAGE = "The number of shards can only be larger than zero";
+
+    private final List<WorkerProcess> shards;
+
+    /**
+     * Start {@code shardCount} worker processes with the class path of this
+     * process.
+     * 
+     * @param shardCount
+     *            number of worker processes
+     * @throws IllegalArgumentException
+     *             if {@code shardCount} is not positive
+     * @throws IOException
+     *             if a worker cannot be started
+     */
+    public ShardCoordinator(int shardCount) throws IOException {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException(INVALID_SHARD_COUNT_EXCEPTION_MESSAGE);
+        }
+        shards = new ArrayList<WorkerProcess>(shardCount);
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                shards.add(WorkerProcess.start(ShardWorker.class));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Get the shard holding the stock of {@code symbol}.
+     * 
+     * @param symbol
+     *            symbol of a stock
+     * @return the index of the shard, from 0 to {@code getShardCount() - 1}
+     */
+    public int getShard(String symbol) {
+        return Math.floorMod(symbol.hashCode(), shards.size());
+    }
+
+    /**
+     * Execute one console command on the shard of its stock, or on every shard
+     * for the GBCE All Share Index.
+     * 
+     * @param command
+     *            a line of input as described in {@link SuperSimpleStockMarket}
+     * @return the output of the command, as the console of a single process
+     *         would print it
+     * @throws IOException
+     *             if a worker cannot be reached
+     */
+    public String execute(String command) throws IOException {
+        if (command.isEmpty()) {
+            return SuperSimpleStockMarket.formatGBCEIndex(getGBCEIndexPartial().toIndex());
+        }
+        Optional<String> symbol = SuperSimpleStockMarket.getSymbol(command);
+        // Commands of no stock are only ever rejected, by any shard
+        return shards.get(symbol.isPresent() ? getShard(symbol.get()) : 0).execute(command);
+    }
+
+    /**
+     * Get the partial result of the GBCE All Share Index over every shard.
+     * 
+     * @return the combination of the {@code GBCEIndexPartial} of each shard
+     * @throws IOException
+     *             if a worker cannot be reached
+     */
+    public GBCEIndexPartial getGBCEIndexPartial() throws IOException {
+        // Ask every shard before waiting for any answer
+        for (WorkerProcess shard : shards) {
+            shard.lock();
+            try {
+                shard.send(ShardWorker.GBCE_PARTIAL_COMMAND);
+            } catch (IOException e) {
+                shard.unlock();
+                throw e;
+            }
+        }
+        GBCEIndexPartial combined = GBCEIndexPartial.EMPTY;
+        IOException failure = null;
+        for (WorkerProcess shard : shards) {
+            try {
+                String[] partial = shard.receive().split(" ");
+                combined = combined.combine(new GBCEIndexPartial(Double.parseDouble(partial[0]),
+                        Long.parseLong(partial[1])));
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                shard.unlock();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return combined;
+    }
+
+    /**
+     * Stop every worker. The stocks of the shards are lost.
+     */
+    @Override
+    public void close() {
+        for (WorkerProcess shard : shards) {
+            shard.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package sibo.liu.jpm.supersimplestockmarket.cluster;
+
+import java.io.IOException;
+
+import sibo.liu.jpm.supersimplestockmarket.SuperSimpleStockMarket;
+import sibo.liu.jpm.supersimplestockmarket.transaction.GBCEIndexPartial;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+
+/**
+ * The process of one shard of a sharded market. Holds the stocks of its shard
+ * in its own {@code StockTransactionManager} and answers the commands of the
+ * {@link ShardCoordinator} through a {@link WorkerProcess} channel.
+ * <p>
+ * Every command is one line: either a console command, answered as the
+ * console would, or {@link #GBCE_PARTIAL_COMMAND}, answered with the log-sum
+ * and count of the GBCE All Share Index of the shard separated by a space.
+ * The worker exits at the end of its input.
+ */
+public final class ShardWorker {
+    /**
+     * Command asking for the {@code GBCEIndexPartial} of the shard
+     */
+    public static final String GBCE_PARTIAL_COMMAND = "GBCE_PARTIAL";
+
+    private ShardWorker() {
+    }
+
+    public static void main(String... args) throws IOException {
+        WorkerProcess.serve(ShardWorker::execute);
+    }
+
+    static String execute(String command) {
+        if (GBCE_PARTIAL_COMMAND.equals(command)) {
+            GBCEIndexPartial partial = StockTransactionManager.INSTANCE.getGBCEIndexPartial();
+            return partial.getLogSum() + " " + partial.getCount();
+        }
+        return SuperSimpleStockMarket.execute(command);
+    }
+}
@@ -0,0 +1,135 @@
+package sibo.liu.jpm.supersimplestockmarket.cluster;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A worker process on this host and the command channel to it, its standard
+ * input and output. Every command is one line; every answer is any number of
+ * lines followed by a line holding only {@link #END_OF_RESPONSE}.
+ * <p>
+ * A command and its answer are exchanged under a lock, so that answers are
+ * never mixed up between threads.
+ */
+final class WorkerProcess {
+    /**
+     * Line that ends every answer
+     */
+    static final String END_OF_RESPONSE = ".";
+
+    private static final long EXIT_TIMEOUT_SECONDS = 5L;
+
+    private final Process process;
+    private final Writer input;
+    private final BufferedReader output;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private WorkerProcess(Process process) {
+        this.process = process;
+        this.input = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+        this.output = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Start the {@code main} method of {@code mainClass} in a new JVM with the
+     * class path of this process.
+     */
+    static WorkerProcess start(Class<?> mainClass, String... arguments) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+                + "java";
+        List<String> command = new ArrayList<String>(Arrays.asList(java, "-cp",
+                System.getProperty("java.class.path"), mainClass.getName()));
+        command.addAll(Arrays.asList(arguments));
+        return new WorkerProcess(new ProcessBuilder(command).redirectError(
+                ProcessBuilder.Redirect.INHERIT).start());
+    }
+
+    /**
+     * Answer the commands on the standard input of this process with
+     * {@code handler} until the input ends. Anything else printed to the
+     * standard output goes to the standard error instead.
+     */
+    static void serve(Function<String, String> handler) throws IOException {
+        PrintStream answers = new PrintStream(System.out, false, StandardCharsets.UTF_8.name());
+        System.setOut(System.err);
+        BufferedReader commands = new BufferedReader(new InputStreamReader(System.in,
+                StandardCharsets.UTF_8));
+        String command;
+        while ((command = commands.readLine()) != null) {
+            answers.println(handler.apply(command));
+            answers.println(END_OF_RESPONSE);
+            answers.flush();
+        }
+    }
+
+    String execute(String command) throws IOException {
+        lock();
+        try {
+            send(command);
+            return receive();
+        } finally {
+            unlock();
+        }
+    }
+
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
+    // Must hold the lock until the answer is received
+    void send(String command) throws IOException {
+        input.write(command);
+        input.write('\n');
+        input.flush();
+    }
+
+    String receive() throws IOException {
+        StringBuilder answer = new StringBuilder();
+        String line;
+        while ((line = output.readLine()) != null) {
+            if (END_OF_RESPONSE.equals(line)) {
+                return answer.toString();
+            }
+            if (answer.length() > 0) {
+                answer.append(System.lineSeparator());
+            }
+            answer.append(line);
+        }
+        throw new IOException("Worker process exited");
+    }
+
+    /**
+     * Close the input of the worker and wait for it to exit, killing it if it
+     * does not.
+     */
+    void close() {
+        try {
+            input.close();
+            if (!process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (IOException e) {
+            process.destroyForcibly();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
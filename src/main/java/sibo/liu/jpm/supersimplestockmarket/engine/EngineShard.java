@@ -0,0 +1,140 @@
+package sibo.liu.jpm.supersimplestockmarket.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+
+/**
+ * One shard of a {@link ShardedEngine}: a thread that alone owns a set of
+ * stocks and applies the commands it receives through a bounded
+ * {@link MpscQueue} one at a time, so the stocks are never touched by two
+ * threads and their monitors are never contended.
+ * <p>
+ * An idle shard spins briefly, then parks until a producer hands it a
+ * command. A producer facing a full queue waits for the shard to catch up,
+ * which is the backpressure of the engine, unless the shard is stopped.
+ */
+final class EngineShard implements Runnable {
+    private static final int IDLE_SPINS = 64;
+
+    private final MpscQueue<Runnable> commands;
+    // Shard thread only
+    private final Map<String, StockImpl> stocks = new HashMap<String, StockImpl>();
+    private final Thread thread;
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+    private volatile boolean stopping;
+    // Written by the shard thread only
+    private volatile long appliedCount;
+    private volatile long rejectedCount;
+
+    EngineShard(int index, int queueCapacity) {
+        this.commands = new MpscQueue<Runnable>(queueCapacity);
+        this.thread = new Thread(this, "engine-shard-" + index);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Hand a command to the shard thread, waiting while its queue is full.
+     * Any thread.
+     *
+     * @return Return {@code true} if the command is handed over.
+     *         {@code False} if the shard is stopping or stopped
+     */
+    boolean submit(Runnable command) {
+        return !stopping && enqueue(command, false);
+    }
+
+    /**
+     * @return the stocks of this shard. Shard thread only
+     */
+    Map<String, StockImpl> getStocks() {
+        return stocks;
+    }
+
+    /**
+     * Count a transaction as applied or rejected. Shard thread only.
+     */
+    void countTransaction(boolean applied) {
+        if (applied) {
+            appliedCount++;
+        } else {
+            rejectedCount++;
+        }
+    }
+
+    long getAppliedCount() {
+        return appliedCount;
+    }
+
+    long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Stop once the commands already submitted are applied, and wait for it.
+     */
+    void stop() throws InterruptedException {
+        stopping = true;
+        if (thread.isAlive() && enqueue(() -> running = false, true)) {
+            thread.join();
+        }
+    }
+
+    @Override
+    public void run() {
+        int idle = 0;
+        while (running) {
+            Runnable command = commands.poll();
+            if (command != null) {
+                apply(command);
+                idle = 0;
+            } else if (++idle < IDLE_SPINS) {
+                Thread.yield();
+            } else {
+                sleeping = true;
+                // Look again, a producer may not have seen the flag
+                command = commands.poll();
+                if (command == null) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                if (command != null) {
+                    apply(command);
+                }
+                idle = 0;
+            }
+        }
+    }
+
+    // Wait for room until the shard thread has stopped, or until it is asked
+    // to stop unless untilStopped, so that a producer racing with stop() does
+    // not spin on a queue nobody empties any more
+    private boolean enqueue(Runnable command, boolean untilStopped) {
+        while (!commands.offer(command)) {
+            if (!running || (stopping && !untilStopped)) {
+                return false;
+            }
+            LockSupport.unpark(thread);
+            Thread.yield();
+        }
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    private static void apply(Runnable command) {
+        try {
+            command.run();
+        } catch (RuntimeException e) {
+            // Commands complete their own futures; the shard keeps running
+        }
+    }
+}
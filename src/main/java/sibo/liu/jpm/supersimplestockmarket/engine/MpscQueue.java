@@ -0,0 +1,87 @@
+package sibo.liu.jpm.supersimplestockmarket.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producer threads and a single consumer
+ * thread.
+ * <p>
+ * Producers claim a slot by moving the shared tail with a compare-and-set and
+ * publish the element through the sequence number of the slot; the consumer
+ * owns the head and never contends with anyone. Each slot's sequence number
+ * tells whether it is free for the producers of this round or filled for the
+ * consumer.
+ */
+final class MpscQueue<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Consumer thread only
+    private long head;
+
+    /**
+     * @param capacity
+     *            the minimum capacity, rounded up to a power of two
+     */
+    MpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<E>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Add {@code element} if there is room. Any thread.
+     *
+     * @return Return {@code true} if added. {@code False} if the queue is full
+     */
+    boolean offer(E element) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0L) {
+                if (tail.compareAndSet(position, position + 1L)) {
+                    break;
+                }
+            } else if (difference < 0L) {
+                // The consumer has not taken the element of the last round
+                return false;
+            }
+        }
+        elements.lazySet(index, element);
+        // Volatile, so that a consumer about to park sees it
+        sequences.set(index, position + 1L);
+        return true;
+    }
+
+    /**
+     * Remove the oldest element. Consumer thread only.
+     *
+     * @return the oldest element, or {@code null} if the queue is empty
+     */
+    E poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1L) {
+            return null;
+        }
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        // Free for the producers of the next round
+        sequences.lazySet(index, head + mask + 1L);
+        head++;
+        return element;
+    }
+}
@@ -0,0 +1,267 @@
+package sibo.liu.jpm.supersimplestockmarket.engine;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.NumericMode;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+import sibo.liu.jpm.supersimplestockmarket.transaction.GBCEIndexPartial;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Stocks partitioned by symbol across a fixed number of single-writer shards
+ * inside one JVM, as an alternative to the shared, locked storage of the
+ * {@code StockTransactionManager} for ingestion heavy workloads.
+ * <p>
+ * Each shard is a thread that alone owns the stocks whose symbol hashes to
+ * it and receives commands through a bounded lock-free queue. Transactions
+ * are handed over without waiting for them to be applied; commands with a
+ * result return a {@code CompletableFuture} completed by the shard thread.
+ * Commands sent by one thread to one symbol are applied in the order they
+ * were sent. The GBCE All Share Index is gathered from the partial results of
+ * every shard.
+ * <p>
+ * Once the engine is closed, the future of a command is completed with an
+ * {@code IllegalStateException}, and transactions are no longer taken.
+ * <p>
+ * All operation is thread safe.
+ */
+public final class ShardedEngine implements AutoCloseable {
+    private static final String CLOSED_EXCEPTION_MESSAGE = "The engine is closed";
+
+    private final EngineShard[] shards;
+
+    /**
+     * Start {@code shardCount} shard threads.
+     *
+     * @param shardCount
+     *            number of shards, typically the number of cores
+     * @param queueCapacity
+     *            number of commands each shard can hold before producers have
+     *            to wait
+     * @throws IllegalArgumentException
+     *             if {@code shardCount} or {@code queueCapacity} is not
+     *             positive
+     */
+    public ShardedEngine(int shardCount, int queueCapacity) {
+        if (shardCount <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Shard count and queue capacity must be positive");
+        }
+        shards = new EngineShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new EngineShard(i, queueCapacity);
+            shards[i].start();
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @param symbol
+     *            symbol of a stock
+     * @return the index of the shard that owns {@code symbol}
+     */
+    public int getShard(String symbol) {
+        return Math.floorMod(symbol.hashCode(), shards.length);
+    }
+
+    /**
+     * Add a stock if {@code stock} is not null and its symbol does not exist
+     * in the engine. The engine takes over the stock, which must not be used
+     * elsewhere any more.
+     *
+     * @param stock
+     *            the stock to be added
+     * @return a future of {@code true} if the stock is added. {@code False}
+     *         otherwise
+     */
+    public CompletableFuture<Boolean> addStock(StockImpl stock) {
+        if (stock == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        String symbol = stock.getSymbol();
+        EngineShard shard = shards[getShard(symbol)];
+        return call(shard, () -> shard.getStocks().putIfAbsent(symbol, stock) == null);
+    }
+
+    /**
+     * Hand a transaction over to the shard of {@code symbol}, waiting only if
+     * the shard is too far behind. A transaction for a symbol the engine does
+     * not have is counted by {@link #getRejectedCount()}.
+     *
+     * @param symbol
+     *            symbol of a stock
+     * @param transaction
+     *            transaction to be added
+     * @return Return {@code true} if {@code symbol} and {@code transaction}
+     *         are not null and the engine is not closed. {@code False}
+     *         otherwise
+     */
+    public boolean addTransaction(String symbol, Transaction transaction) {
+        if (symbol == null || transaction == null) {
+            return false;
+        }
+        EngineShard shard = shards[getShard(symbol)];
+        return shard.submit(() -> {
+            StockImpl stockImpl = shard.getStocks().get(symbol);
+            if (stockImpl != null) {
+                stockImpl.addTransaction(transaction);
+            }
+            shard.countTransaction(stockImpl != null);
+        });
+    }
+
+    /**
+     * Set the divided amount per period of the stock specified by
+     * {@code symbol}
+     *
+     * @param symbol
+     *            symbol of a stock
+     * @param dividendPerPeriod
+     *            divided amount per period that will be put in the stock
+     * @return a future of {@code true} if {@code symbol} and
+     *         {@code dividendPerPeriod} are not null and the stock exists.
+     *         {@code False} otherwise
+     */
+    public CompletableFuture<Boolean> setDividend(String symbol, BigDecimal dividendPerPeriod) {
+        if (symbol == null || dividendPerPeriod == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return callStock(symbol, stockImpl -> {
+            stockImpl.setDividend(dividendPerPeriod);
+            return true;
+        }, false);
+    }
+
+    /**
+     * Get the volume weighted stock price of the stock specified by
+     * {@code symbol}, after the transactions already handed over for it.
+     *
+     * @param symbol
+     *            symbol of a stock
+     * @param pastMinutes
+     *            past minutes of transactions to be included
+     * @return a future of the result of
+     *         {@link StockImpl#getVolumeWeightedStockPrice(int)}, or of
+     *         {@code Optional.empty()} if the stock does not exist
+     */
+    public CompletableFuture<Optional<BigDecimal>> getVolumeWeightedStockPrice(String symbol,
+            int pastMinutes) {
+        if (symbol == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return callStock(symbol, stockImpl -> stockImpl.getVolumeWeightedStockPrice(pastMinutes),
+                Optional.<BigDecimal> empty());
+    }
+
+    /**
+     * Get the partial result of the GBCE All Share Index over every shard.
+     * Each shard computes the partial result of its own stocks in its own
+     * thread, after the commands already handed over to it.
+     *
+     * @return a future of the combined {@code GBCEIndexPartial}
+     */
+    public CompletableFuture<GBCEIndexPartial> getGBCEIndexPartial() {
+        CompletableFuture<GBCEIndexPartial> result = CompletableFuture
+                .completedFuture(GBCEIndexPartial.EMPTY);
+        for (EngineShard shard : shards) {
+            result = result.thenCombine(call(shard, () -> {
+                GBCEIndexPartial partial = GBCEIndexPartial.EMPTY;
+                for (StockImpl stockImpl : shard.getStocks().values()) {
+                    partial = partial.combine(GBCEIndexPartial.of(stockImpl.getSnapshot(),
+                            NumericMode.EXACT));
+                }
+                return partial;
+            }), GBCEIndexPartial::combine);
+        }
+        return result;
+    }
+
+    /**
+     * Get the GBCE All Share Index over every shard.
+     *
+     * @return a future of {@code Optional<BigDecimal>} of the index if there
+     *         is at least one valid transaction. {@code Optional.empty()}
+     *         otherwise
+     */
+    public CompletableFuture<Optional<BigDecimal>> getGBCEAllShareIndex() {
+        return getGBCEIndexPartial().thenApply(GBCEIndexPartial::toIndex);
+    }
+
+    /**
+     * @return a future completed once every command handed over before the
+     *         call is applied
+     */
+    public CompletableFuture<Void> drain() {
+        CompletableFuture<?>[] barriers = new CompletableFuture<?>[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            barriers[i] = call(shards[i], () -> Boolean.TRUE);
+        }
+        return CompletableFuture.allOf(barriers);
+    }
+
+    /**
+     * @return the number of transactions applied to a stock so far
+     */
+    public long getAppliedCount() {
+        long count = 0L;
+        for (EngineShard shard : shards) {
+            count += shard.getAppliedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of transactions dropped so far because the engine
+     *         has no stock with their symbol
+     */
+    public long getRejectedCount() {
+        long count = 0L;
+        for (EngineShard shard : shards) {
+            count += shard.getRejectedCount();
+        }
+        return count;
+    }
+
+    /**
+     * Apply the commands already handed over, then stop every shard thread.
+     */
+    @Override
+    public void close() {
+        try {
+            for (EngineShard shard : shards) {
+                shard.stop();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> callStock(String symbol, Function<StockImpl, T> function,
+            T missing) {
+        EngineShard shard = shards[getShard(symbol)];
+        return call(shard, () -> {
+            StockImpl stockImpl = shard.getStocks().get(symbol);
+            return stockImpl == null ? missing : function.apply(stockImpl);
+        });
+    }
+
+    private static <T> CompletableFuture<T> call(EngineShard shard, Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        if (!shard.submit(() -> {
+            try {
+                future.complete(supplier.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        })) {
+            future.completeExceptionally(new IllegalStateException(CLOSED_EXCEPTION_MESSAGE));
+        }
+        return future;
+    }
+}
@@ -0,0 +1,260 @@
+package sibo.liu.jpm.supersimplestockmarket.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes JSON objects as UTF-8 straight into a reusable byte buffer, for the
+ * responses of {@link MarketDataServer}.
+ * <p>
+ * Numbers are written digit by digit instead of through strings: once the
+ * buffer has grown to the size of a response, writing {@code long}s and ASCII
+ * strings allocates nothing, and a decimal of up to 18 digits only its
+ * unscaled value. The writer does not check that the calls form valid
+ * JSON: every value of an object must follow a {@link #name(String)}. Not
+ * thread safe, one writer is meant to be reused by one thread.
+ */
+final class JsonWriter {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_COMPACT_SCALE = 18;
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+    private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a',
+            'b', 'c', 'd', 'e', 'f' };
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int size;
+    // A value or an object has been written since the last opening brace
+    private boolean needComma;
+    // Scratch space for the digits of a long, most significant last
+    private final byte[] digits = new byte[20];
+
+    /**
+     * Forget everything written so far, keeping the buffer.
+     *
+     * @return this writer
+     */
+    JsonWriter reset() {
+        size = 0;
+        needComma = false;
+        return this;
+    }
+
+    JsonWriter beginObject() {
+        ensureCapacity(1);
+        buffer[size++] = '{';
+        needComma = false;
+        return this;
+    }
+
+    JsonWriter endObject() {
+        ensureCapacity(1);
+        buffer[size++] = '}';
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * Write the name of the next member of the current object.
+     *
+     * @param name
+     *            name of the member. Can not be null
+     * @return this writer
+     */
+    JsonWriter name(String name) {
+        if (needComma) {
+            ensureCapacity(1);
+            buffer[size++] = ',';
+        }
+        writeString(name);
+        ensureCapacity(1);
+        buffer[size++] = ':';
+        needComma = false;
+        return this;
+    }
+
+    /**
+     * @param value
+     *            the value, or null for {@code null}
+     * @return this writer
+     */
+    JsonWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        writeString(value);
+        needComma = true;
+        return this;
+    }
+
+    JsonWriter value(long value) {
+        writeLong(value, 0);
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * Write a decimal in plain notation, without exponent.
+     *
+     * @param value
+     *            the value, or null for {@code null}
+     * @return this writer
+     */
+    JsonWriter value(BigDecimal value) {
+        if (value == null) {
+            return nullValue();
+        }
+        int scale = value.scale();
+        if (scale >= 0 && scale <= MAX_COMPACT_SCALE && value.precision() <= MAX_COMPACT_SCALE) {
+            writeLong(value.unscaledValue().longValue(), scale);
+        } else {
+            writeAscii(value.toPlainString());
+        }
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * @param value
+     *            the value, or null for {@code null}
+     * @return this writer
+     */
+    JsonWriter value(BigInteger value) {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value.bitLength() < Long.SIZE) {
+            writeLong(value.longValue(), 0);
+        } else {
+            writeAscii(value.toString());
+        }
+        needComma = true;
+        return this;
+    }
+
+    JsonWriter nullValue() {
+        ensureCapacity(NULL.length);
+        System.arraycopy(NULL, 0, buffer, size, NULL.length);
+        size += NULL.length;
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * @return the number of bytes written since the last {@link #reset()}
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copy what has been written into {@code out}.
+     *
+     * @param out
+     *            the stream to be written to
+     * @throws IOException
+     *             if {@code out} fails
+     */
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    // Write value / 10^scale, with exactly scale digits after the point
+    private void writeLong(long value, int scale) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(BigDecimal.valueOf(value, scale).toPlainString());
+            return;
+        }
+        ensureCapacity(digits.length + 3);
+        long remaining = value;
+        if (remaining < 0L) {
+            buffer[size++] = '-';
+            remaining = -remaining;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + remaining % 10L);
+            remaining /= 10L;
+        } while (remaining != 0L);
+        // Leading zeros of a fraction such as 0.05
+        while (count <= scale) {
+            digits[count++] = '0';
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            if (i == scale - 1) {
+                buffer[size++] = '.';
+            }
+            buffer[size++] = digits[i];
+        }
+    }
+
+    private void writeString(String value) {
+        // Enough for ASCII; escapes and other characters grow the buffer
+        ensureCapacity(value.length() + 2);
+        buffer[size++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                ensureCapacity(2);
+                buffer[size++] = '\\';
+                buffer[size++] = (byte) c;
+            } else if (c < 0x20) {
+                ensureCapacity(6);
+                buffer[size++] = '\\';
+                buffer[size++] = 'u';
+                buffer[size++] = '0';
+                buffer[size++] = '0';
+                buffer[size++] = HEX[c >> 4];
+                buffer[size++] = HEX[c & 0xF];
+            } else if (c < 0x80) {
+                ensureCapacity(1);
+                buffer[size++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[size++] = (byte) (0xC0 | c >> 6);
+                buffer[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buffer[size++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // A lone surrogate can not be encoded
+                ensureCapacity(1);
+                buffer[size++] = '?';
+            } else {
+                ensureCapacity(3);
+                buffer[size++] = (byte) (0xE0 | c >> 12);
+                buffer[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        ensureCapacity(1);
+        buffer[size++] = '"';
+    }
+
+    // For the digits of numbers too large to be written without allocating
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
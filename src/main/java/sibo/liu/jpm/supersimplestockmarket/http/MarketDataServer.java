@@ -0,0 +1,396 @@
+package sibo.liu.jpm.supersimplestockmarket.http;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.NumericMode;
+import sibo.liu.jpm.supersimplestockmarket.stock.PreferredStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockSnapshot;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+
+/**
+ * Serves the queries of a {@code StockTransactionManager} as JSON over HTTP,
+ * on a fixed pool of daemon threads:
+ * <ul>
+ * <li>{@code GET /stocks/{symbol}}: the details of a stock</li>
+ * <li>{@code GET /stocks/{symbol}/vwap?minutes=15}: its volume weighted price
+ * in the past minutes, 15 if not given</li>
+ * <li>{@code GET /stocks/{symbol}/pe?price=1.5}: its P/E ratio at a price</li>
+ * <li>{@code GET /stocks/{symbol}/yield?price=1.5}: its dividend yield at a
+ * price</li>
+ * <li>{@code GET /index}: the GBCE All Share Index</li>
+ * </ul>
+ * Values that do not exist are {@code null}. Unknown stocks and paths are
+ * answered with 404, invalid parameters with 400, and the body of every error
+ * is {@code {"error":"..."}}. {@code HEAD} is supported as well.
+ * <p>
+ * Every successful response carries an {@code ETag} built from the
+ * modification state it was computed from: the snapshot version of the stock,
+ * or the index epoch of the manager, and the numeric mode. A request whose
+ * {@code If-None-Match} still matches is answered with 304 before anything is
+ * computed. Volume weighted prices also change as the window slides, so their
+ * tag includes the value and is checked after the cached query. Tags differ
+ * between servers, so that a tag from an earlier process never matches.
+ * <p>
+ * Queries go through the cached methods of the manager, and bodies are
+ * written by a {@link JsonWriter} reused per thread.
+ * <p>
+ * Headers and body are written separately, so with Nagle's algorithm a
+ * keep-alive client waits for the delayed acknowledgement, about 40ms, on
+ * every response. Start the JVM with {@code -Dsun.net.httpserver.nodelay=true},
+ * see {@link #NO_DELAY_PROPERTY}, to serve low latency clients. The console
+ * sets it when started with {@code --http}.
+ */
+public final class MarketDataServer implements AutoCloseable {
+    /**
+     * Past minutes of the volume weighted price when not given, as the
+     * console prints it
+     */
+    public static final int DEFAULT_VOLUME_WEIGHTED_PRICE_MINUTES = 15;
+
+    static final String STOCKS_PATH = "/stocks/";
+    static final String INDEX_PATH = "/index";
+    static final String VOLUME_WEIGHTED_PRICE_PATH = "vwap";
+    static final String PE_RATIO_PATH = "pe";
+    static final String DIVIDEND_YIELD_PATH = "yield";
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String THREAD_NAME = "market-data-http-";
+    private static final int NO_BODY = -1;
+    private static final ThreadLocal<JsonWriter> WRITERS = ThreadLocal
+            .withInitial(JsonWriter::new);
+    /**
+     * System property of the JDK server that disables Nagle's algorithm on
+     * every connection of every server of the JVM. Read once, when the first
+     * server of the JVM is created
+     */
+    public static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final StockTransactionManager manager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String serverTag = Long.toString(System.nanoTime(), Character.MAX_RADIX);
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder notModifiedCount = new LongAdder();
+
+    /**
+     * Start serving the queries of {@code manager} on {@code address}.
+     *
+     * @param manager
+     *            the manager to be queried
+     * @param address
+     *            the address to listen on, with port 0 for any free port
+     * @param threads
+     *            number of threads answering requests. Need to be positive
+     * @throws IOException
+     *             if the address cannot be bound
+     * @throws IllegalArgumentException
+     *             if an input is null or {@code threads} is not positive
+     */
+    public MarketDataServer(StockTransactionManager manager, InetSocketAddress address,
+            int threads) throws IOException {
+        if (manager == null || address == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException(
+                    "The number of threads can only be larger than zero");
+        }
+        this.manager = manager;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the number of requests received
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return the number of requests answered with 304 Not Modified
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.sum();
+    }
+
+    /**
+     * Stop serving. Requests being answered are cut off.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requestCount.increment();
+            // Responses without a body are finished as soon as the headers
+            // are sent, and the connection is only kept alive if the request
+            // has been read by then
+            exchange.getRequestBody().close();
+            String method = exchange.getRequestMethod();
+            boolean head = "HEAD".equals(method);
+            if (!head && !"GET".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(exchange, 405, "Method not allowed: " + method, false);
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (INDEX_PATH.equals(path)) {
+                serveIndex(exchange, head);
+            } else if (path.startsWith(STOCKS_PATH)) {
+                serveStock(exchange, path.substring(STOCKS_PATH.length()), head);
+            } else {
+                sendError(exchange, 404, "Not found: " + path, head);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void serveIndex(HttpExchange exchange, boolean head) throws IOException {
+        // Read the state first, so a result racing a change is never tagged
+        // as current
+        long epoch = manager.getIndexEpoch();
+        NumericMode mode = manager.getNumericMode();
+        String etag = new StringBuilder().append('"').append(serverTag).append("-index-")
+                .append(epoch).append('-').append(mode.ordinal()).append('"').toString();
+        if (isNotModified(exchange, etag)) {
+            return;
+        }
+        JsonWriter writer = WRITERS.get().reset().beginObject();
+        writer.name("gbceAllShareIndex").value(manager.getGBCEAllShareIndex(mode).orElse(null));
+        send(exchange, 200, etag, writer.endObject(), head);
+    }
+
+    private void serveStock(HttpExchange exchange, String resource, boolean head)
+            throws IOException {
+        int slash = resource.indexOf('/');
+        String symbol = slash < 0 ? resource : resource.substring(0, slash);
+        String query = slash < 0 ? null : resource.substring(slash + 1);
+        Optional<StockImpl> stock = manager.getStock(symbol);
+        if (!stock.isPresent()) {
+            sendError(exchange, 404, "Unknown stock: " + symbol, head);
+            return;
+        }
+        StockImpl stockImpl = stock.get();
+        // Read the state first, so a result racing a change is never tagged
+        // as current
+        StockSnapshot snapshot = stockImpl.getSnapshot();
+        NumericMode mode = manager.getNumericMode();
+        // The identity tells a stock from a new one of the same symbol
+        StringBuilder etag = new StringBuilder().append('"').append(serverTag).append('-')
+                .append(Integer.toHexString(System.identityHashCode(stockImpl))).append('-')
+                .append(snapshot.getVersion());
+        if (query == null) {
+            serveDetails(exchange, stockImpl, snapshot, etag.append('"').toString(), head);
+        } else if (VOLUME_WEIGHTED_PRICE_PATH.equals(query)) {
+            serveVolumeWeightedPrice(exchange, symbol, etag.append('-').append(mode.ordinal()),
+                    head);
+        } else if (PE_RATIO_PATH.equals(query) || DIVIDEND_YIELD_PATH.equals(query)) {
+            serveRatio(exchange, symbol, PE_RATIO_PATH.equals(query), etag.append('-').append(
+                    mode.ordinal()).append('"').toString(), head);
+        } else {
+            sendError(exchange, 404, "Not found: " + exchange.getRequestURI().getPath(), head);
+        }
+    }
+
+    private void serveDetails(HttpExchange exchange, StockImpl stockImpl,
+            StockSnapshot snapshot, String etag, boolean head) throws IOException {
+        if (isNotModified(exchange, etag)) {
+            return;
+        }
+        JsonWriter writer = WRITERS.get().reset().beginObject();
+        writer.name("symbol").value(snapshot.getSymbol());
+        writer.name("type").value(stockImpl instanceof PreferredStock ? "preferred" : "common");
+        writer.name("parValue").value(snapshot.getParValue());
+        writer.name("lastAnnualDividend").value(snapshot.getLastAnnualDividend());
+        writer.name("dividend").value(snapshot.getDividend());
+        writer.name("periodPerYear").value(snapshot.getPeriodPerYear());
+        writer.name("transactionCount").value(snapshot.getTransactions().size());
+        writer.name("version").value(snapshot.getVersion());
+        send(exchange, 200, etag, writer.endObject(), head);
+    }
+
+    private void serveVolumeWeightedPrice(HttpExchange exchange, String symbol,
+            StringBuilder etag, boolean head) throws IOException {
+        String minutesParameter = getParameter(exchange, "minutes");
+        int minutes = DEFAULT_VOLUME_WEIGHTED_PRICE_MINUTES;
+        if (minutesParameter != null) {
+            try {
+                minutes = Integer.parseInt(minutesParameter);
+            } catch (NumberFormatException e) {
+                minutes = 0;
+            }
+            if (minutes <= 0) {
+                sendError(exchange, 400, "Invalid minutes: " + minutesParameter, head);
+                return;
+            }
+        }
+        BigDecimal price = manager.getVolumeWeightedStockPrice(symbol, minutes).orElse(null);
+        // The window slides without the stock changing
+        String tag = etag.append('-').append(price == null ? "none" : price.toPlainString())
+                .append('"').toString();
+        if (isNotModified(exchange, tag)) {
+            return;
+        }
+        JsonWriter writer = WRITERS.get().reset().beginObject();
+        writer.name("symbol").value(symbol);
+        writer.name("minutes").value(minutes);
+        writer.name("volumeWeightedPrice").value(price);
+        send(exchange, 200, tag, writer.endObject(), head);
+    }
+
+    private void serveRatio(HttpExchange exchange, String symbol, boolean peRatio, String etag,
+            boolean head) throws IOException {
+        String priceParameter = getParameter(exchange, "price");
+        BigDecimal price;
+        try {
+            price = priceParameter == null ? null : new BigDecimal(priceParameter);
+        } catch (NumberFormatException e) {
+            price = null;
+        }
+        if (price == null) {
+            sendError(exchange, 400, "Invalid price: " + priceParameter, head);
+            return;
+        }
+        if (isNotModified(exchange, etag)) {
+            return;
+        }
+        JsonWriter writer = WRITERS.get().reset().beginObject();
+        writer.name("symbol").value(symbol);
+        writer.name("price").value(price);
+        if (peRatio) {
+            writer.name("peRatio").value(manager.getPERatio(symbol, price).orElse(null));
+        } else {
+            writer.name("dividendYield").value(manager.getDividendYield(symbol, price).orElse(
+                    null));
+        }
+        send(exchange, 200, etag, writer.endObject(), head);
+    }
+
+    // Answer 304 if the client already has the response tagged etag
+    private boolean isNotModified(HttpExchange exchange, String etag) throws IOException {
+        if (!matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            return false;
+        }
+        notModifiedCount.increment();
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.sendResponseHeaders(304, NO_BODY);
+        return true;
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message, boolean head)
+            throws IOException {
+        JsonWriter writer = WRITERS.get().reset().beginObject();
+        writer.name("error").value(message);
+        send(exchange, status, null, writer.endObject(), head);
+    }
+
+    private static void send(HttpExchange exchange, int status, String etag, JsonWriter writer,
+            boolean head) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", JSON_CONTENT_TYPE);
+        if (etag != null) {
+            headers.set("ETag", etag);
+            // Cached copies are fine, as long as they are revalidated
+            headers.set("Cache-Control", "no-cache");
+        }
+        if (head) {
+            exchange.sendResponseHeaders(status, NO_BODY);
+        } else {
+            exchange.sendResponseHeaders(status, writer.size());
+            writer.writeTo(exchange.getResponseBody());
+        }
+    }
+
+    /**
+     * Return {@code true} if the value of an {@code If-None-Match} header
+     * matches {@code etag}, comparing weakly as HTTP asks. {@code False}
+     * otherwise.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        int start = 0;
+        while (start < ifNoneMatch.length()) {
+            int end = ifNoneMatch.indexOf(',', start);
+            if (end < 0) {
+                end = ifNoneMatch.length();
+            }
+            int from = start;
+            int to = end;
+            while (from < to && Character.isWhitespace(ifNoneMatch.charAt(from))) {
+                from++;
+            }
+            while (to > from && Character.isWhitespace(ifNoneMatch.charAt(to - 1))) {
+                to--;
+            }
+            if (to - from == 1 && ifNoneMatch.charAt(from) == '*') {
+                return true;
+            }
+            if (ifNoneMatch.startsWith("W/", from)) {
+                from += 2;
+            }
+            if (to - from == etag.length() && ifNoneMatch.regionMatches(from, etag, 0, etag
+                    .length())) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    // The decoded value of the first query parameter called name, or null
+    private static String getParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals == name.length() && parameter.startsWith(name)) {
+                try {
+                    return URLDecoder.decode(parameter.substring(equals + 1),
+                            StandardCharsets.UTF_8.name());
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
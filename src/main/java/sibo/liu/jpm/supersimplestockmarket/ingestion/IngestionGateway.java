@@ -0,0 +1,295 @@
+package sibo.liu.jpm.supersimplestockmarket.ingestion;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * The front door of the write path: transactions are submitted to a bounded
+ * queue and applied in submission order by one thread, so that a burst of
+ * producers waits on the queue under an explicit {@link OverloadPolicy}
+ * instead of piling up on the monitor of the
+ * {@code StockTransactionManager}.
+ * <p>
+ * Symbols can be given a priority, 0 by default, which the
+ * {@link OverloadPolicy#SHED_BY_PRIORITY} policy uses to choose what to drop.
+ * Queue depth, rejections, the outcome of applying each transaction and
+ * queueing time are reported by {@link #getMetrics()}.
+ * <p>
+ * All operation is thread safe.
+ */
+public final class IngestionGateway implements AutoCloseable {
+    private static final int BATCH_SIZE = 256;
+
+    private final int capacity;
+    private final OverloadPolicy policy;
+    private final long timeoutNanos;
+    private final BiPredicate<String, Transaction> sink;
+    private final ConcurrentMap<String, Integer> priorities = new ConcurrentHashMap<String, Integer>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // Queued transactions by priority, each in submission order. Guarded by lock.
+    private final TreeMap<Integer, ArrayDeque<Submission>> queues = new TreeMap<Integer, ArrayDeque<Submission>>();
+    // Guarded by lock
+    private int size;
+    private int maxSize;
+    private long sequence;
+    private long acceptedCount;
+    private long rejectedCount;
+    private long timedOutCount;
+    private long shedCount;
+    private boolean closed;
+    // Written by the applier thread only
+    private volatile long appliedCount;
+    private volatile long refusedCount;
+    private volatile long failedCount;
+    private final LatencyHistogram waitNanos = new LatencyHistogram();
+    private final Thread applier;
+
+    /**
+     * Start a gateway in front of the {@code StockTransactionManager}.
+     *
+     * @param capacity
+     *            number of transactions the queue can hold
+     * @param policy
+     *            what to do when the queue is full
+     * @param timeoutMillis
+     *            how long {@link OverloadPolicy#BLOCK} waits for room
+     */
+    public IngestionGateway(int capacity, OverloadPolicy policy, long timeoutMillis) {
+        this(capacity, policy, timeoutMillis, StockTransactionManager.INSTANCE::addTransaction);
+    }
+
+    /**
+     * Start a gateway in front of {@code sink}.
+     *
+     * @param capacity
+     *            number of transactions the queue can hold
+     * @param policy
+     *            what to do when the queue is full
+     * @param timeoutMillis
+     *            how long {@link OverloadPolicy#BLOCK} waits for room
+     * @param sink
+     *            applies a transaction to the stock of a symbol
+     * @throws IllegalArgumentException
+     *             if {@code policy} or {@code sink} is null, or
+     *             {@code capacity} is not positive
+     */
+    public IngestionGateway(int capacity, OverloadPolicy policy, long timeoutMillis,
+            BiPredicate<String, Transaction> sink) {
+        if (policy == null || sink == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(timeoutMillis, 0L));
+        this.sink = sink;
+        this.applier = new Thread(this::apply, "ingestion-applier");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    public OverloadPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Set the priority of {@code symbol} for
+     * {@link OverloadPolicy#SHED_BY_PRIORITY}. Higher is kept longer.
+     *
+     * @param symbol
+     *            symbol of a stock, which does not need to exist yet
+     * @param priority
+     *            the priority
+     * @return Return {@code true} if {@code symbol} is not null. {@code False}
+     *         otherwise
+     */
+    public boolean setPriority(String symbol, int priority) {
+        if (symbol == null) {
+            return false;
+        }
+        priorities.put(symbol, priority);
+        return true;
+    }
+
+    /**
+     * Queue a transaction to be applied to the stock of {@code symbol},
+     * following the overload policy if the queue is full.
+     *
+     * @param symbol
+     *            symbol of a stock
+     * @param transaction
+     *            transaction to be added
+     * @return Return {@code true} if the transaction is queued. {@code False}
+     *         if an input is null, the gateway is closed, or the overload
+     *         policy gave up on it
+     * @throws InterruptedException
+     *             if interrupted while waiting for room
+     */
+    public boolean submit(String symbol, Transaction transaction) throws InterruptedException {
+        if (symbol == null || transaction == null) {
+            return false;
+        }
+        int priority = priorities.getOrDefault(symbol, 0);
+        lock.lock();
+        try {
+            if (closed || (size == capacity && !makeRoom(priority))) {
+                return false;
+            }
+            queues.computeIfAbsent(priority, p -> new ArrayDeque<Submission>()).addLast(
+                    new Submission(symbol, transaction, sequence++, System.nanoTime()));
+            size++;
+            maxSize = Math.max(maxSize, size);
+            acceptedCount++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current metrics of the gateway
+     */
+    public IngestionMetrics getMetrics() {
+        lock.lock();
+        try {
+            return new IngestionMetrics(size, maxSize, acceptedCount, appliedCount,
+                    refusedCount, failedCount, rejectedCount, timedOutCount, shedCount,
+                    waitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting transactions, and wait for the queued ones to be applied.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Called with the lock held and the queue full
+    private boolean makeRoom(int priority) throws InterruptedException {
+        switch (policy) {
+        case BLOCK:
+            long remaining = timeoutNanos;
+            while (size == capacity && !closed) {
+                if (remaining <= 0L) {
+                    timedOutCount++;
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            return !closed;
+        case SHED_BY_PRIORITY:
+            Map.Entry<Integer, ArrayDeque<Submission>> lowest = queues.firstEntry();
+            while (lowest != null && lowest.getValue().isEmpty()) {
+                lowest = queues.higherEntry(lowest.getKey());
+            }
+            if (lowest != null && lowest.getKey() < priority) {
+                lowest.getValue().pollFirst();
+                size--;
+                shedCount++;
+                return true;
+            }
+            rejectedCount++;
+            return false;
+        default:
+            rejectedCount++;
+            return false;
+        }
+    }
+
+    private void apply() {
+        Submission[] batch = new Submission[BATCH_SIZE];
+        while (true) {
+            int count = 0;
+            lock.lock();
+            try {
+                while (size == 0 && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (size == 0) {
+                    return;
+                }
+                while (count < BATCH_SIZE && size > 0) {
+                    batch[count++] = pollOldest();
+                    size--;
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            for (int i = 0; i < count; i++) {
+                Submission submission = batch[i];
+                batch[i] = null;
+                waitNanos.record(System.nanoTime() - submission.submittedNanos);
+                try {
+                    if (sink.test(submission.symbol, submission.transaction)) {
+                        appliedCount++;
+                    } else {
+                        refusedCount++;
+                    }
+                } catch (RuntimeException e) {
+                    // One failing transaction does not stop the others
+                    failedCount++;
+                }
+            }
+        }
+    }
+
+    // The oldest queued transaction across priorities. Called with the lock
+    // held and the queue not empty.
+    private Submission pollOldest() {
+        ArrayDeque<Submission> oldest = null;
+        for (ArrayDeque<Submission> queue : queues.values()) {
+            if (!queue.isEmpty()
+                    && (oldest == null || queue.peekFirst().sequence < oldest.peekFirst().sequence)) {
+                oldest = queue;
+            }
+        }
+        return oldest.pollFirst();
+    }
+
+    private static final class Submission {
+        private final String symbol;
+        private final Transaction transaction;
+        private final long sequence;
+        private final long submittedNanos;
+
+        private Submission(String symbol, Transaction transaction, long sequence,
+                long submittedNanos) {
+            this.symbol = symbol;
+            this.transaction = transaction;
+            this.sequence = sequence;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+}
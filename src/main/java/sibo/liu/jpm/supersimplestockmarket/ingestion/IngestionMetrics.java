@@ -0,0 +1,118 @@
+package sibo.liu.jpm.supersimplestockmarket.ingestion;
+
+/**
+ * The state of an {@link IngestionGateway} at one instant: how full its queue
+ * is, what happened to the transactions submitted so far, and how long they
+ * waited in the queue before being applied.
+ */
+public final class IngestionMetrics {
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final long acceptedCount;
+    private final long appliedCount;
+    private final long refusedCount;
+    private final long failedCount;
+    private final long rejectedCount;
+    private final long timedOutCount;
+    private final long shedCount;
+    private final long medianWaitNanos;
+    private final long p99WaitNanos;
+    private final long maxWaitNanos;
+
+    IngestionMetrics(int queueDepth, int maxQueueDepth, long acceptedCount, long appliedCount,
+            long refusedCount, long failedCount, long rejectedCount, long timedOutCount,
+            long shedCount, LatencyHistogram waitNanos) {
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.acceptedCount = acceptedCount;
+        this.appliedCount = appliedCount;
+        this.refusedCount = refusedCount;
+        this.failedCount = failedCount;
+        this.rejectedCount = rejectedCount;
+        this.timedOutCount = timedOutCount;
+        this.shedCount = shedCount;
+        this.medianWaitNanos = waitNanos.getValueAtPercentile(50.0d);
+        this.p99WaitNanos = waitNanos.getValueAtPercentile(99.0d);
+        this.maxWaitNanos = waitNanos.getMaxValue();
+    }
+
+    /**
+     * @return the number of transactions in the queue
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the largest number of transactions the queue has held
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return the number of transactions let into the queue
+     */
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    /**
+     * @return the number of transactions taken out of the queue and applied
+     */
+    public long getAppliedCount() {
+        return appliedCount;
+    }
+
+    /**
+     * @return the number of transactions taken out of the queue that the
+     *         stock did not take, such as those of an unknown symbol
+     */
+    public long getRefusedCount() {
+        return refusedCount;
+    }
+
+    /**
+     * @return the number of transactions taken out of the queue whose
+     *         application threw an exception
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return the number of transactions given up on straight away because
+     *         the queue was full
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return the number of transactions given up on after waiting for room
+     *         in the queue
+     */
+    public long getTimedOutCount() {
+        return timedOutCount;
+    }
+
+    /**
+     * @return the number of queued transactions dropped to make room for a
+     *         higher priority one
+     */
+    public long getShedCount() {
+        return shedCount;
+    }
+
+    public long getMedianWaitNanos() {
+        return medianWaitNanos;
+    }
+
+    public long getP99WaitNanos() {
+        return p99WaitNanos;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+}
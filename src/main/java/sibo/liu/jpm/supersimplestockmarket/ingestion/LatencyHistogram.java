@@ -0,0 +1,104 @@
+package sibo.liu.jpm.supersimplestockmarket.ingestion;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size histogram of non-negative durations, typically in
+ * nanoseconds, with a relative precision of 1/8.
+ * <p>
+ * Values below 8 have a bucket each; above, every power of two is split into
+ * 8 buckets of equal width, so that 488 buckets cover every {@code long}.
+ * Recording is lock-free and can be done by any number of threads; queries
+ * return the upper bound of the bucket they fall in.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Record one value. Negative values are recorded as 0.
+     *
+     * @param value
+     *            the value to be recorded
+     */
+    public void record(long value) {
+        long recorded = Math.max(value, 0L);
+        counts.incrementAndGet(indexOf(recorded));
+        totalCount.incrementAndGet();
+        long max;
+        while ((max = maxValue.get()) < recorded && !maxValue.compareAndSet(max, recorded)) {
+            // Another thread raised the maximum, try again
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    /**
+     * Get the value below which {@code percentile} percent of the recorded
+     * values fall.
+     *
+     * @param percentile
+     *            between 0 and 100
+     * @return the upper bound of the bucket of that value, never more than
+     *         {@link #getMaxValue()}, or 0 if nothing is recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        if (count == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(Math.min(percentile, 100.0d) / 100.0d * count));
+        long seen = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMaxValue());
+            }
+        }
+        return getMaxValue();
+    }
+
+    /**
+     * Forget every recorded value.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0L);
+        }
+        totalCount.set(0L);
+        maxValue.set(0L);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowerBound = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lowerBound + (1L << shift) - 1L;
+    }
+}
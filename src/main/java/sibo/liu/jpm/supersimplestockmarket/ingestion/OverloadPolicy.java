@@ -0,0 +1,23 @@
+package sibo.liu.jpm.supersimplestockmarket.ingestion;
+
+/**
+ * What an {@link IngestionGateway} does with a transaction submitted while its
+ * queue is full.
+ */
+public enum OverloadPolicy {
+    /**
+     * Wait for room up to the timeout of the gateway, then give up on the
+     * transaction
+     */
+    BLOCK,
+    /**
+     * Give up on the transaction straight away
+     */
+    REJECT,
+    /**
+     * Drop the oldest queued transaction of the lowest priority symbol to make
+     * room, if its priority is lower than the one of the transaction. Give up
+     * on the transaction otherwise
+     */
+    SHED_BY_PRIORITY
+}
@@ -0,0 +1,255 @@
+package sibo.liu.jpm.supersimplestockmarket.load;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.joda.time.DateTime;
+
+import sibo.liu.jpm.supersimplestockmarket.ingestion.LatencyHistogram;
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.PreferredStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Drives the {@code StockTransactionManager} of this process with a synthetic
+ * market described by a {@link LoadProfile}, for soak and throughput testing.
+ * <p>
+ * Stocks are created with symbols {@code A}, {@code B}, ... {@code ZZZZ} and
+ * picked with a Zipf distribution, the first symbols being the most popular.
+ * Each stock trades around a price following a geometric random walk.
+ * Operations are paced to the rate of the profile, with bursts, and a
+ * fraction of them are queries: volume weighted prices, dividend yields and
+ * P/E ratios, and now and then the GBCE All Share Index.
+ * <p>
+ * Run with, every option being optional:
+ *
+ * <pre>
+ * java sibo.liu.jpm.supersimplestockmarket.load.LoadGenerator --stocks 2000 --zipf 1.1 \
+ *     --rate 20000 --burst 4 --burst-period 1000 --queries 0.2 --seconds 30 --threads 2 --seed 42
+ * </pre>
+ */
+public final class LoadGenerator {
+    private static final StockTransactionManager MANAGER = StockTransactionManager.INSTANCE;
+    // Number of symbols of at most 4 letters
+    private static final int MAX_STOCK_COUNT = 26 + 26 * 26 + 26 * 26 * 26 + 26 * 26 * 26 * 26;
+    private static final int PREFERRED_STOCK_EVERY = 10;
+    private static final double VOLATILITY_PER_TRADE = 0.001d;
+    private static final double MIN_PRICE = 0.01d;
+    private static final int MAX_QUANTITY = 1000;
+    private static final int PRICE_SCALE = 2;
+    private static final int VWAP_MINUTES = 15;
+    // Of the queries, the share asking for the very expensive index
+    private static final double INDEX_QUERY_RATIO = 0.001d;
+    private static final double VWAP_QUERY_RATIO = 0.5d;
+
+    private final LoadProfile profile;
+    private final long seed;
+    private final String[] symbols;
+    private final ZipfDistribution popularity;
+    // Current price of each stock as the bits of a double. Racing updates
+    // lose a step of the walk, which does not matter.
+    private final AtomicLongArray prices;
+
+    /**
+     * @param profile
+     *            what to produce
+     * @param seed
+     *            seed of the random choices, for repeatable runs
+     * @throws IllegalArgumentException
+     *             if {@code profile} is null or has more stocks than there are
+     *             symbols of at most 4 letters
+     */
+    public LoadGenerator(LoadProfile profile, long seed) {
+        if (profile == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        if (profile.getStockCount() > MAX_STOCK_COUNT) {
+            throw new IllegalArgumentException("At most " + MAX_STOCK_COUNT + " stocks");
+        }
+        this.profile = profile;
+        this.seed = seed;
+        this.symbols = new String[profile.getStockCount()];
+        this.popularity = new ZipfDistribution(symbols.length, profile.getZipfExponent());
+        this.prices = new AtomicLongArray(symbols.length);
+        Random random = new Random(seed);
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = symbolOf(i);
+            prices.set(i, Double.doubleToRawLongBits(10.0d + random.nextInt(990)));
+        }
+    }
+
+    /**
+     * @param rank
+     *            popularity rank of a stock, 0 for the most popular
+     * @return the symbol of the stock
+     */
+    public String getSymbol(int rank) {
+        return symbols[rank];
+    }
+
+    /**
+     * Add the stocks of the profile that do not exist yet, then produce the
+     * load for the duration of the profile.
+     *
+     * @return the throughput and latencies reached
+     * @throws InterruptedException
+     *             if interrupted while waiting for the producing threads
+     */
+    public LoadReport run() throws InterruptedException {
+        for (int i = 0; i < symbols.length; i++) {
+            MANAGER.addStock(newStock(i));
+        }
+        LatencyHistogram transactionNanos = new LatencyHistogram();
+        LatencyHistogram queryNanos = new LatencyHistogram();
+        AtomicLong transactionCount = new AtomicLong();
+        AtomicLong queryCount = new AtomicLong();
+        Thread[] producers = new Thread[profile.getThreadCount()];
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < producers.length; i++) {
+            Producer producer = new Producer(startNanos, new Random(seed + i + 1),
+                    transactionNanos, queryNanos, transactionCount, queryCount);
+            producers[i] = new Thread(producer::produce, "load-generator-" + i);
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        return new LoadReport(transactionCount.get(), queryCount.get(), System.nanoTime()
+                - startNanos, transactionNanos, queryNanos);
+    }
+
+    private StockImpl newStock(int rank) {
+        BigDecimal parValue = BigDecimal.valueOf(100L);
+        BigDecimal lastAnnualDividend = BigDecimal.valueOf(rank % 20);
+        if (rank % PREFERRED_STOCK_EVERY == PREFERRED_STOCK_EVERY - 1) {
+            return new PreferredStock(symbols[rank], parValue, lastAnnualDividend,
+                    BigInteger.ONE, BigDecimal.valueOf(2L, 2));
+        }
+        return new CommonStock(symbols[rank], parValue, lastAnnualDividend, BigInteger.ONE,
+                lastAnnualDividend);
+    }
+
+    // A, B, ... Z, AA, AB, ... ZZZZ
+    private static String symbolOf(int index) {
+        StringBuilder symbol = new StringBuilder();
+        int remaining = index;
+        do {
+            symbol.append((char) ('A' + remaining % 26));
+            remaining = remaining / 26 - 1;
+        } while (remaining >= 0);
+        return symbol.reverse().toString();
+    }
+
+    // One producing thread, paced to its share of the rate
+    private final class Producer {
+        private final long startNanos;
+        private final Random random;
+        private final LatencyHistogram transactionNanos;
+        private final LatencyHistogram queryNanos;
+        private final AtomicLong transactionCount;
+        private final AtomicLong queryCount;
+
+        private Producer(long startNanos, Random random, LatencyHistogram transactionNanos,
+                LatencyHistogram queryNanos, AtomicLong transactionCount, AtomicLong queryCount) {
+            this.startNanos = startNanos;
+            this.random = random;
+            this.transactionNanos = transactionNanos;
+            this.queryNanos = queryNanos;
+            this.transactionCount = transactionCount;
+            this.queryCount = queryCount;
+        }
+
+        private void produce() {
+            double intervalNanos = 1e9d * profile.getThreadCount()
+                    / profile.getOperationsPerSecond();
+            long periodNanos = TimeUnit.MILLISECONDS.toNanos(profile.getBurstPeriodMillis());
+            long endNanos = startNanos
+                    + TimeUnit.MILLISECONDS.toNanos(profile.getDurationMillis());
+            long scheduledNanos = startNanos;
+            while (scheduledNanos < endNanos) {
+                long waitNanos = scheduledNanos - System.nanoTime();
+                if (waitNanos > 0L) {
+                    LockSupport.parkNanos(waitNanos);
+                    continue;
+                }
+                int rank = popularity.sample(random.nextDouble());
+                if (random.nextDouble() < profile.getQueryRatio()) {
+                    query(rank);
+                    queryNanos.record(System.nanoTime() - scheduledNanos);
+                    queryCount.incrementAndGet();
+                } else {
+                    trade(rank);
+                    transactionNanos.record(System.nanoTime() - scheduledNanos);
+                    transactionCount.incrementAndGet();
+                }
+                boolean bursting = (scheduledNanos - startNanos) % periodNanos < periodNanos / 10;
+                scheduledNanos += (long) (bursting ? intervalNanos / profile.getBurstFactor()
+                        : intervalNanos);
+            }
+        }
+
+        private void trade(int rank) {
+            double price = Math.max(MIN_PRICE, Double.longBitsToDouble(prices.get(rank))
+                    * Math.exp(VOLATILITY_PER_TRADE * random.nextGaussian()));
+            prices.set(rank, Double.doubleToRawLongBits(price));
+            MANAGER.addTransaction(symbols[rank], new Transaction(symbols[rank], DateTime.now(),
+                    BigInteger.valueOf(1 + random.nextInt(MAX_QUANTITY)),
+                    random.nextBoolean() ? BuySellIndicator.BUY : BuySellIndicator.SELL,
+                    currentPrice(rank)));
+        }
+
+        private void query(int rank) {
+            double kind = random.nextDouble();
+            if (kind < INDEX_QUERY_RATIO) {
+                MANAGER.getGBCEAllShareIndex();
+                return;
+            }
+            Optional<StockImpl> stock = MANAGER.getStock(symbols[rank]);
+            if (!stock.isPresent()) {
+                return;
+            }
+            if (kind < INDEX_QUERY_RATIO + VWAP_QUERY_RATIO) {
+                stock.get().getVolumeWeightedStockPrice(VWAP_MINUTES);
+            } else {
+                BigDecimal price = currentPrice(rank);
+                stock.get().getDividendYield(price);
+                stock.get().getPERatio(price);
+            }
+        }
+
+        private BigDecimal currentPrice(int rank) {
+            return BigDecimal.valueOf(Double.longBitsToDouble(prices.get(rank))).setScale(
+                    PRICE_SCALE, RoundingMode.HALF_UP).max(BigDecimal.valueOf(1L, PRICE_SCALE));
+        }
+    }
+
+    public static void main(String... args) throws InterruptedException {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        LoadProfile profile = new LoadProfile(
+                Integer.parseInt(options.getOrDefault("--stocks", "2000")),
+                Double.parseDouble(options.getOrDefault("--zipf", "1.1")),
+                Double.parseDouble(options.getOrDefault("--rate", "20000")),
+                Double.parseDouble(options.getOrDefault("--burst", "4")),
+                Long.parseLong(options.getOrDefault("--burst-period", "1000")),
+                Double.parseDouble(options.getOrDefault("--queries", "0.2")),
+                TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("--seconds", "30"))),
+                Integer.parseInt(options.getOrDefault("--threads", "2")));
+        System.out.println(new LoadGenerator(profile, Long.parseLong(options.getOrDefault(
+                "--seed", "42"))).run());
+    }
+}
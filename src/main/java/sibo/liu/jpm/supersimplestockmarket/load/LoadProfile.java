@@ -0,0 +1,97 @@
+package sibo.liu.jpm.supersimplestockmarket.load;
+
+/**
+ * What a {@link LoadGenerator} produces: how many stocks, how popular each
+ * symbol is, at what rate and in what bursts transactions arrive, and how
+ * much query traffic is mixed in. Immutable.
+ */
+public final class LoadProfile {
+    private final int stockCount;
+    private final double zipfExponent;
+    private final double operationsPerSecond;
+    private final double burstFactor;
+    private final long burstPeriodMillis;
+    private final double queryRatio;
+    private final long durationMillis;
+    private final int threadCount;
+
+    /**
+     * Construct a {@code LoadProfile} object.
+     *
+     * @param stockCount
+     *            number of stocks to create, one in ten preferred
+     * @param zipfExponent
+     *            skew of the symbol popularity, 0 for uniform
+     * @param operationsPerSecond
+     *            base rate of transactions and queries across every thread
+     * @param burstFactor
+     *            how many times the base rate is reached during the burst at
+     *            the start of every period, 1 for a steady rate
+     * @param burstPeriodMillis
+     *            length of a period, the burst taking a tenth of it
+     * @param queryRatio
+     *            fraction of the operations that are queries
+     * @param durationMillis
+     *            how long to run
+     * @param threadCount
+     *            number of threads producing the operations
+     * @throws IllegalArgumentException
+     *             if a count, rate, period or duration is not positive, a
+     *             factor or exponent is out of range, or {@code queryRatio} is
+     *             not between 0 and 1
+     */
+    public LoadProfile(int stockCount, double zipfExponent, double operationsPerSecond,
+            double burstFactor, long burstPeriodMillis, double queryRatio, long durationMillis,
+            int threadCount) {
+        if (stockCount <= 0 || operationsPerSecond <= 0.0d || burstPeriodMillis <= 0L
+                || durationMillis <= 0L || threadCount <= 0) {
+            throw new IllegalArgumentException(
+                    "Counts, rate, burst period and duration must be positive");
+        }
+        if (zipfExponent < 0.0d || burstFactor < 1.0d || !(queryRatio >= 0.0d)
+                || queryRatio > 1.0d) {
+            throw new IllegalArgumentException(
+                    "Exponent must not be negative, burst factor at least 1, query ratio between 0 and 1");
+        }
+        this.stockCount = stockCount;
+        this.zipfExponent = zipfExponent;
+        this.operationsPerSecond = operationsPerSecond;
+        this.burstFactor = burstFactor;
+        this.burstPeriodMillis = burstPeriodMillis;
+        this.queryRatio = queryRatio;
+        this.durationMillis = durationMillis;
+        this.threadCount = threadCount;
+    }
+
+    public int getStockCount() {
+        return stockCount;
+    }
+
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    public double getOperationsPerSecond() {
+        return operationsPerSecond;
+    }
+
+    public double getBurstFactor() {
+        return burstFactor;
+    }
+
+    public long getBurstPeriodMillis() {
+        return burstPeriodMillis;
+    }
+
+    public double getQueryRatio() {
+        return queryRatio;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+}
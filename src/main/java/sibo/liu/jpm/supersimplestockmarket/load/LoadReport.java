@@ -0,0 +1,70 @@
+package sibo.liu.jpm.supersimplestockmarket.load;
+
+import sibo.liu.jpm.supersimplestockmarket.ingestion.LatencyHistogram;
+
+/**
+ * The outcome of a {@link LoadGenerator} run: how many operations were done
+ * in how long, and their latency percentiles in nanoseconds.
+ * <p>
+ * Latency is measured from the time an operation was scheduled rather than
+ * the time it started, so that a stall also counts against the operations
+ * that should have run during it.
+ */
+public final class LoadReport {
+    private final long transactionCount;
+    private final long queryCount;
+    private final long elapsedNanos;
+    private final LatencyHistogram transactionNanos;
+    private final LatencyHistogram queryNanos;
+
+    LoadReport(long transactionCount, long queryCount, long elapsedNanos,
+            LatencyHistogram transactionNanos, LatencyHistogram queryNanos) {
+        this.transactionCount = transactionCount;
+        this.queryCount = queryCount;
+        this.elapsedNanos = elapsedNanos;
+        this.transactionNanos = transactionNanos;
+        this.queryNanos = queryNanos;
+    }
+
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public long getQueryCount() {
+        return queryCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the sustained number of transactions and queries per second
+     */
+    public double getOperationsPerSecond() {
+        return (transactionCount + queryCount) * 1e9d / Math.max(elapsedNanos, 1L);
+    }
+
+    public LatencyHistogram getTransactionLatency() {
+        return transactionNanos;
+    }
+
+    public LatencyHistogram getQueryLatency() {
+        return queryNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d transactions and %d queries in %.1f s, %.0f operations/s%n"
+                + "transaction latency %s%nquery latency       %s", transactionCount,
+                queryCount, elapsedNanos / 1e9d, getOperationsPerSecond(),
+                percentiles(transactionNanos), percentiles(queryNanos));
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format("p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                histogram.getValueAtPercentile(50.0d) / 1e3d,
+                histogram.getValueAtPercentile(99.0d) / 1e3d,
+                histogram.getValueAtPercentile(99.9d) / 1e3d, histogram.getMaxValue() / 1e3d);
+    }
+}
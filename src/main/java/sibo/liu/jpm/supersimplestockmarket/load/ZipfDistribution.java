@@ -0,0 +1,45 @@
+package sibo.liu.jpm.supersimplestockmarket.load;
+
+import java.util.Arrays;
+
+/**
+ * Ranks 0 to {@code n - 1} drawn with a probability proportional to
+ * {@code 1 / (rank + 1)^exponent}, so that a few ranks are drawn most of the
+ * time, as with the most popular symbols of a market.
+ * <p>
+ * The cumulative distribution is computed once; drawing is a binary search.
+ * Immutable.
+ */
+final class ZipfDistribution {
+    private final double[] cumulative;
+
+    ZipfDistribution(int n, double exponent) {
+        if (n <= 0 || exponent < 0.0d) {
+            throw new IllegalArgumentException("Size must be positive and exponent not negative");
+        }
+        cumulative = new double[n];
+        double sum = 0.0d;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0d / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    int size() {
+        return cumulative.length;
+    }
+
+    /**
+     * @param uniform
+     *            a uniformly distributed number in [0, 1)
+     * @return the rank it falls in
+     */
+    int sample(double uniform) {
+        int index = Arrays.binarySearch(cumulative, uniform);
+        // Past the last one only through rounding of the cumulative sums
+        return Math.min(index >= 0 ? index + 1 : -index - 1, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,114 @@
+package sibo.liu.jpm.supersimplestockmarket.orderbook;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.joda.time.DateTime;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.ScaledResult;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Keeps one {@link OrderBook} per stock of the {@link StockTransactionManager}
+ * and records every trade as a {@code Transaction} of that stock, on the side
+ * of the incoming order. All operation is thread safe: orders for the same
+ * stock are matched one at a time, orders for different stocks in parallel.
+ */
+public final class MatchingEngine implements TradeListener {
+    private static final StockTransactionManager MANAGER = StockTransactionManager.INSTANCE;
+
+    private final ConcurrentMap<String, OrderBook> books = new ConcurrentHashMap<String, OrderBook>();
+
+    /**
+     * Submit an order to the book of its stock.
+     * 
+     * @param order
+     *            the order to be matched
+     * @return Return {@code true} if the stock of the order exists in the
+     *         manager and its book accepted the order. {@code False} otherwise
+     */
+    public boolean submit(Order order) {
+        if (order == null || !MANAGER.getStock(order.getSymbol()).isPresent()) {
+            return false;
+        }
+        OrderBook book = books.computeIfAbsent(order.getSymbol(), OrderBook::new);
+        synchronized (book) {
+            return book.submit(order, this);
+        }
+    }
+
+    /**
+     * Cancel an order resting in the book of a stock.
+     * 
+     * @param symbol
+     *            symbol of the stock
+     * @param orderId
+     *            ID of the order
+     * @return Return {@code true} if the order was resting and is now
+     *         cancelled. {@code False} otherwise
+     */
+    public boolean cancel(String symbol, long orderId) {
+        OrderBook book = symbol == null ? null : books.get(symbol);
+        if (book == null) {
+            return false;
+        }
+        synchronized (book) {
+            return book.cancel(orderId);
+        }
+    }
+
+    /**
+     * @param symbol
+     *            symbol of the stock
+     * @return Return {@code Optional<BigDecimal>} of the highest bid if there
+     *         is one. Return {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getBestBid(String symbol) {
+        OrderBook book = symbol == null ? null : books.get(symbol);
+        if (book == null) {
+            return Optional.empty();
+        }
+        synchronized (book) {
+            return toPrice(book.getBestBid());
+        }
+    }
+
+    /**
+     * @param symbol
+     *            symbol of the stock
+     * @return Return {@code Optional<BigDecimal>} of the lowest ask if there is
+     *         one. Return {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getBestAsk(String symbol) {
+        OrderBook book = symbol == null ? null : books.get(symbol);
+        if (book == null) {
+            return Optional.empty();
+        }
+        synchronized (book) {
+            return toPrice(book.getBestAsk());
+        }
+    }
+
+    /**
+     * Record a trade of a book in the manager. Called while holding the
+     * monitor of the book, so trades are recorded in the order they happen.
+     */
+    @Override
+    public void onTrade(Order aggressor, Order resting, long unscaledPrice, long quantity) {
+        MANAGER.addTransaction(aggressor.getSymbol(), new Transaction(aggressor.getSymbol(),
+                DateTime.now(), BigInteger.valueOf(quantity), aggressor.getSide(), BigDecimal
+                        .valueOf(unscaledPrice, ScaledResult.SCALE)));
+    }
+
+    private static Optional<BigDecimal> toPrice(long unscaledPrice) {
+        if (unscaledPrice == OrderBook.NO_PRICE) {
+            return Optional.empty();
+        }
+        return Optional.of(BigDecimal.valueOf(unscaledPrice, ScaledResult.SCALE)
+                .stripTrailingZeros());
+    }
+}
@@ -0,0 +1,174 @@
+package sibo.liu.jpm.supersimplestockmarket.orderbook;
+
+import java.math.BigDecimal;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.ScaledResult;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+
+/**
+ * An order to buy or sell a quantity of a stock. The identity and terms of an
+ * order never change; its remaining quantity decreases as it is filled.
+ * <p>
+ * Prices are held multiplied by 10^8, as in {@link ScaledResult}. An order is
+ * owned by the {@link OrderBook} it is submitted to and is not thread safe.
+ */
+public final class Order {
+    private static final String NULL_INPUT_EXCEPTION_MESSAGE = "No input can be null";
+    private static final String NON_POSITIVE_EXCEPTION_MESSAGE = "Order quantity and limit price can only be larger than zero";
+
+    private final long id;
+    private final String symbol;
+    private final BuySellIndicator side;
+    private final OrderType type;
+    private final long quantity;
+    private final long unscaledLimitPrice;
+    private long remainingQuantity;
+    private boolean cancelled;
+
+    /**
+     * Construct a limit {@code Order}.
+     * 
+     * @param id
+     *            identifier of the order, unique within its book
+     * @param symbol
+     *            the symbol of the stock. Can not be null
+     * @param side
+     *            buy or sell. Can not be null
+     * @param quantity
+     *            the quantity to be traded. Can only be positive
+     * @param limitPrice
+     *            the worst price the order can trade at. Can not be null and
+     *            can only be positive. Rounded half up to 8 decimal places
+     * @throws IllegalArgumentException
+     *             if any input is null or does not conform to the requirement
+     *             of each input
+     */
+    public Order(long id, String symbol, BuySellIndicator side, long quantity,
+            BigDecimal limitPrice) {
+        this(id, symbol, side, OrderType.LIMIT, quantity, toUnscaledLimitPrice(limitPrice));
+    }
+
+    /**
+     * Construct a market {@code Order}.
+     * 
+     * @param id
+     *            identifier of the order, unique within its book
+     * @param symbol
+     *            the symbol of the stock. Can not be null
+     * @param side
+     *            buy or sell. Can not be null
+     * @param quantity
+     *            the quantity to be traded. Can only be positive
+     * @throws IllegalArgumentException
+     *             if any input is null or does not conform to the requirement
+     *             of each input
+     */
+    public Order(long id, String symbol, BuySellIndicator side, long quantity) {
+        this(id, symbol, side, OrderType.MARKET, quantity, 0L);
+    }
+
+    /**
+     * Construct an {@code Order} with a limit price multiplied by 10^8, without
+     * going through {@code BigDecimal}.
+     * 
+     * @param id
+     *            identifier of the order, unique within its book
+     * @param symbol
+     *            the symbol of the stock. Can not be null
+     * @param side
+     *            buy or sell. Can not be null
+     * @param type
+     *            limit or market. Can not be null
+     * @param quantity
+     *            the quantity to be traded. Can only be positive
+     * @param unscaledLimitPrice
+     *            the limit price multiplied by 10^8. Can only be positive for a
+     *            limit order, ignored for a market order
+     * @throws IllegalArgumentException
+     *             if any input is null or does not conform to the requirement
+     *             of each input
+     */
+    public Order(long id, String symbol, BuySellIndicator side, OrderType type, long quantity,
+            long unscaledLimitPrice) {
+        if (symbol == null || side == null || type == null) {
+            throw new IllegalArgumentException(NULL_INPUT_EXCEPTION_MESSAGE);
+        }
+        if (quantity <= 0L || (type == OrderType.LIMIT && unscaledLimitPrice <= 0L)) {
+            throw new IllegalArgumentException(NON_POSITIVE_EXCEPTION_MESSAGE);
+        }
+        this.id = id;
+        this.symbol = symbol;
+        this.side = side;
+        this.type = type;
+        this.quantity = quantity;
+        this.unscaledLimitPrice = type == OrderType.LIMIT ? unscaledLimitPrice : 0L;
+        this.remainingQuantity = quantity;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public BuySellIndicator getSide() {
+        return side;
+    }
+
+    public OrderType getType() {
+        return type;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * @return the limit price multiplied by 10^8, or 0 for a market order
+     */
+    public long getUnscaledLimitPrice() {
+        return unscaledLimitPrice;
+    }
+
+    public long getRemainingQuantity() {
+        return remainingQuantity;
+    }
+
+    public long getFilledQuantity() {
+        return quantity - remainingQuantity;
+    }
+
+    /**
+     * @return Return {@code true} if the order was cancelled, explicitly or
+     *         because a market order could not be filled entirely.
+     *         {@code False} otherwise
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return Return {@code true} if the order can still trade. {@code False}
+     *         otherwise
+     */
+    public boolean isActive() {
+        return !cancelled && remainingQuantity > 0L;
+    }
+
+    private static long toUnscaledLimitPrice(BigDecimal limitPrice) {
+        if (limitPrice == null) {
+            throw new IllegalArgumentException(NULL_INPUT_EXCEPTION_MESSAGE);
+        }
+        return ScaledResult.toUnscaled(limitPrice);
+    }
+
+    void fill(long filledQuantity) {
+        remainingQuantity -= filledQuantity;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+}
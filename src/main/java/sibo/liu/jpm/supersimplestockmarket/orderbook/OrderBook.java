@@ -0,0 +1,187 @@
+package sibo.liu.jpm.supersimplestockmarket.orderbook;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+
+/**
+ * A limit order book of one stock that matches orders in price-time priority.
+ * <p>
+ * Each side keeps its price levels in a sorted map, best price first, and each
+ * level keeps its orders in a FIFO queue. An incoming order trades against the
+ * best levels of the other side for as long as the prices cross, at the price
+ * of the resting order, and every fill is reported to a {@link TradeListener}.
+ * <p>
+ * This class is not thread safe. A book is meant to be driven by one thread at
+ * a time, see {@link MatchingEngine}.
+ */
+public final class OrderBook {
+    /**
+     * Returned by the best price getters when a side is empty
+     */
+    public static final long NO_PRICE = 0L;
+
+    private final String symbol;
+    private final TreeMap<Long, PriceLevel> bids = new TreeMap<Long, PriceLevel>(
+            Collections.reverseOrder());
+    private final TreeMap<Long, PriceLevel> asks = new TreeMap<Long, PriceLevel>();
+    private final Map<Long, Order> restingOrders = new HashMap<Long, Order>();
+
+    /**
+     * Construct an empty {@code OrderBook}.
+     * 
+     * @param symbol
+     *            the symbol of the stock. Can not be null
+     * @throws IllegalArgumentException
+     *             if {@code symbol} is null
+     */
+    public OrderBook(String symbol) {
+        if (symbol == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Match {@code order} against the book and rest what is left of it if it
+     * is a limit order. What is left of a market order is cancelled.
+     * 
+     * @param order
+     *            a new order for the stock of this book
+     * @param listener
+     *            receives every trade
+     * @return Return {@code true} if the order was accepted. {@code False} if
+     *         any input is null, the order is for another stock, has already
+     *         been submitted or its ID is resting in the book
+     */
+    public boolean submit(Order order, TradeListener listener) {
+        if (order == null || listener == null || !symbol.equals(order.getSymbol())
+                || order.isCancelled() || order.getFilledQuantity() != 0L
+                || restingOrders.containsKey(order.getId())) {
+            return false;
+        }
+        boolean buy = order.getSide() == BuySellIndicator.BUY;
+        match(order, buy ? asks : bids, buy, listener);
+        if (order.getRemainingQuantity() > 0L) {
+            if (order.getType() == OrderType.LIMIT) {
+                rest(order, buy ? bids : asks);
+            } else {
+                order.cancel();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cancel the order resting in the book with the given ID.
+     * 
+     * @param orderId
+     *            ID of the order
+     * @return Return {@code true} if the order was resting and is now
+     *         cancelled. {@code False} otherwise
+     */
+    public boolean cancel(long orderId) {
+        Order order = restingOrders.remove(orderId);
+        if (order == null) {
+            return false;
+        }
+        TreeMap<Long, PriceLevel> side = order.getSide() == BuySellIndicator.BUY ? bids : asks;
+        PriceLevel level = side.get(order.getUnscaledLimitPrice());
+        level.reduce(order.getRemainingQuantity());
+        order.cancel();
+        if (level.getQuantity() == 0L) {
+            side.remove(level.getUnscaledPrice());
+        }
+        return true;
+    }
+
+    /**
+     * @return the highest bid multiplied by 10^8, or {@link #NO_PRICE} if
+     *         there is none
+     */
+    public long getBestBid() {
+        Map.Entry<Long, PriceLevel> best = bids.firstEntry();
+        return best == null ? NO_PRICE : best.getKey();
+    }
+
+    /**
+     * @return the lowest ask multiplied by 10^8, or {@link #NO_PRICE} if there
+     *         is none
+     */
+    public long getBestAsk() {
+        Map.Entry<Long, PriceLevel> best = asks.firstEntry();
+        return best == null ? NO_PRICE : best.getKey();
+    }
+
+    /**
+     * Get the total quantity resting at one price of one side.
+     * 
+     * @param side
+     *            buy for bids, sell for asks
+     * @param unscaledPrice
+     *            the price multiplied by 10^8
+     * @return the resting quantity, 0 if there is none
+     */
+    public long getQuantityAt(BuySellIndicator side, long unscaledPrice) {
+        PriceLevel level = (side == BuySellIndicator.BUY ? bids : asks).get(unscaledPrice);
+        return level == null ? 0L : level.getQuantity();
+    }
+
+    /**
+     * @return the number of orders resting in the book
+     */
+    public int getRestingOrderCount() {
+        return restingOrders.size();
+    }
+
+    private void match(Order order, TreeMap<Long, PriceLevel> opposite, boolean buy,
+            TradeListener listener) {
+        boolean limit = order.getType() == OrderType.LIMIT;
+        long limitPrice = order.getUnscaledLimitPrice();
+        while (order.getRemainingQuantity() > 0L && !opposite.isEmpty()) {
+            PriceLevel level = opposite.firstEntry().getValue();
+            long price = level.getUnscaledPrice();
+            if (limit && (buy ? price > limitPrice : price < limitPrice)) {
+                return;
+            }
+            fill(order, level, listener);
+            if (level.getQuantity() == 0L) {
+                opposite.pollFirstEntry();
+            }
+        }
+    }
+
+    private void fill(Order order, PriceLevel level, TradeListener listener) {
+        Order resting = level.peekActive();
+        while (resting != null && order.getRemainingQuantity() > 0L) {
+            long quantity = Math.min(order.getRemainingQuantity(), resting
+                    .getRemainingQuantity());
+            order.fill(quantity);
+            resting.fill(quantity);
+            level.reduce(quantity);
+            listener.onTrade(order, resting, level.getUnscaledPrice(), quantity);
+            if (resting.getRemainingQuantity() == 0L) {
+                restingOrders.remove(resting.getId());
+                level.removeHead();
+                resting = level.peekActive();
+            }
+        }
+    }
+
+    private void rest(Order order, TreeMap<Long, PriceLevel> side) {
+        PriceLevel level = side.get(order.getUnscaledLimitPrice());
+        if (level == null) {
+            level = new PriceLevel(order.getUnscaledLimitPrice());
+            side.put(order.getUnscaledLimitPrice(), level);
+        }
+        level.add(order);
+        restingOrders.put(order.getId(), order);
+    }
+}
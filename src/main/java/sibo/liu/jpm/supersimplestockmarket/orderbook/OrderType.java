@@ -0,0 +1,16 @@
+package sibo.liu.jpm.supersimplestockmarket.orderbook;
+
+/**
+ * The type of an {@link Order}.
+ */
+public enum OrderType {
+    /**
+     * Trades at the limit price or better. Any quantity left after matching
+     * rests in the book
+     */
+    LIMIT,
+    /**
+     * Trades at any price. Any quantity left after matching is cancelled
+     */
+    MARKET;
+}
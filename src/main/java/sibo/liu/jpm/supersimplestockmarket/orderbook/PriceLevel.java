@@ -0,0 +1,50 @@
+package sibo.liu.jpm.supersimplestockmarket.orderbook;
+
+import java.util.ArrayDeque;
+
+/**
+ * The orders resting at one price on one side of an {@link OrderBook}, in time
+ * priority. Cancelled orders are not removed from the queue straight away but
+ * skipped once they reach its head.
+ */
+final class PriceLevel {
+    private final long unscaledPrice;
+    private final ArrayDeque<Order> orders = new ArrayDeque<Order>();
+    private long quantity;
+
+    PriceLevel(long unscaledPrice) {
+        this.unscaledPrice = unscaledPrice;
+    }
+
+    long getUnscaledPrice() {
+        return unscaledPrice;
+    }
+
+    // Total remaining quantity of the active orders at this price
+    long getQuantity() {
+        return quantity;
+    }
+
+    void add(Order order) {
+        orders.addLast(order);
+        quantity += order.getRemainingQuantity();
+    }
+
+    // Oldest active order, or null if none is left
+    Order peekActive() {
+        Order head = orders.peekFirst();
+        while (head != null && !head.isActive()) {
+            orders.pollFirst();
+            head = orders.peekFirst();
+        }
+        return head;
+    }
+
+    void removeHead() {
+        orders.pollFirst();
+    }
+
+    void reduce(long filledQuantity) {
+        quantity -= filledQuantity;
+    }
+}
@@ -0,0 +1,23 @@
+package sibo.liu.jpm.supersimplestockmarket.orderbook;
+
+/**
+ * Receives every trade produced by an {@link OrderBook}, in the order the
+ * trades happen.
+ */
+@FunctionalInterface
+public interface TradeListener {
+    /**
+     * Called once for every fill between an incoming order and a resting one.
+     * 
+     * @param aggressor
+     *            the incoming order
+     * @param resting
+     *            the order that was resting in the book
+     * @param unscaledPrice
+     *            the trade price, which is the limit price of the resting
+     *            order, multiplied by 10^8
+     * @param quantity
+     *            the traded quantity
+     */
+    void onTrade(Order aggressor, Order resting, long unscaledPrice, long quantity);
+}
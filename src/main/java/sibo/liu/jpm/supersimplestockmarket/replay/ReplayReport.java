@@ -0,0 +1,81 @@
+package sibo.liu.jpm.supersimplestockmarket.replay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import sibo.liu.jpm.supersimplestockmarket.ingestion.LatencyHistogram;
+
+/**
+ * The outcome of a {@link SessionReplayer} run: how many commands were
+ * replayed in how long, how long each took in nanoseconds, and which
+ * responses differ from the recording.
+ */
+public final class ReplayReport {
+    private final long commandCount;
+    private final long mismatchCount;
+    private final List<String> mismatches;
+    private final long elapsedNanos;
+    private final LatencyHistogram latencyNanos;
+
+    ReplayReport(long commandCount, long mismatchCount, List<String> mismatches,
+            long elapsedNanos, LatencyHistogram latencyNanos) {
+        this.commandCount = commandCount;
+        this.mismatchCount = mismatchCount;
+        this.mismatches = Collections.unmodifiableList(new ArrayList<String>(mismatches));
+        this.elapsedNanos = elapsedNanos;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    public long getMismatchCount() {
+        return mismatchCount;
+    }
+
+    /**
+     * @return a description of the first mismatches, at most
+     *         {@link SessionReplayer#MAX_REPORTED_MISMATCHES}
+     */
+    public List<String> getMismatches() {
+        return mismatches;
+    }
+
+    /**
+     * @return Return {@code true} if every response matches the recording.
+     *         {@code False} otherwise
+     */
+    public boolean isMatching() {
+        return mismatchCount == 0L;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getCommandsPerSecond() {
+        return commandCount * 1e9d / Math.max(elapsedNanos, 1L);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format(
+                "%d commands in %.3f s, %.0f commands/s%n"
+                        + "latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n"
+                        + "%d mismatches", commandCount, elapsedNanos / 1e9d,
+                getCommandsPerSecond(), latencyNanos.getValueAtPercentile(50.0d) / 1e3d,
+                latencyNanos.getValueAtPercentile(99.0d) / 1e3d,
+                latencyNanos.getValueAtPercentile(99.9d) / 1e3d,
+                latencyNanos.getMaxValue() / 1e3d, mismatchCount));
+        for (String mismatch : mismatches) {
+            report.append(System.lineSeparator()).append(mismatch);
+        }
+        return report.toString();
+    }
+}
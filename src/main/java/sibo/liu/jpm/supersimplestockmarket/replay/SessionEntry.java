@@ -0,0 +1,138 @@
+package sibo.liu.jpm.supersimplestockmarket.replay;
+
+/**
+ * One console command of a recorded session and the response it got: one line
+ * of tab separated fields, the time the command was executed in
+ * milliseconds, the command and the response. Tabs, line breaks and
+ * backslashes in the command and response are escaped with a backslash.
+ */
+public final class SessionEntry {
+    private static final char SEPARATOR = '\t';
+    private static final char ESCAPE = '\\';
+    private static final String INVALID_ENTRY_EXCEPTION_MESSAGE = "Invalid session entry: ";
+
+    private final long timeMillis;
+    private final String command;
+    private final String response;
+
+    /**
+     * Construct a {@code SessionEntry} object.
+     *
+     * @param timeMillis
+     *            time the command was executed
+     * @param command
+     *            the console command
+     * @param response
+     *            the output of the command
+     * @throws IllegalArgumentException
+     *             if {@code command} or {@code response} is null
+     */
+    public SessionEntry(long timeMillis, String command, String response) {
+        if (command == null || response == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        this.timeMillis = timeMillis;
+        this.command = command;
+        this.response = response;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getResponse() {
+        return response;
+    }
+
+    /**
+     * @return this entry as one line, without a line break
+     */
+    public String toLine() {
+        StringBuilder line = new StringBuilder();
+        line.append(timeMillis).append(SEPARATOR);
+        escape(command, line);
+        line.append(SEPARATOR);
+        escape(response, line);
+        return line.toString();
+    }
+
+    /**
+     * Parse a line written by {@link #toLine()}.
+     *
+     * @param line
+     *            the line to be parsed
+     * @return the {@code SessionEntry} of {@code line}
+     * @throws IllegalArgumentException
+     *             if {@code line} is not a valid entry
+     */
+    public static SessionEntry parse(String line) {
+        if (line == null) {
+            throw new IllegalArgumentException(INVALID_ENTRY_EXCEPTION_MESSAGE + line);
+        }
+        String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+        if (fields.length != 3) {
+            throw new IllegalArgumentException(INVALID_ENTRY_EXCEPTION_MESSAGE + line);
+        }
+        try {
+            return new SessionEntry(Long.parseLong(fields[0]), unescape(fields[1]),
+                    unescape(fields[2]));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException(INVALID_ENTRY_EXCEPTION_MESSAGE + line, e);
+        }
+    }
+
+    private static void escape(String text, StringBuilder line) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case ESCAPE:
+                line.append(ESCAPE).append(ESCAPE);
+                break;
+            case SEPARATOR:
+                line.append(ESCAPE).append('t');
+                break;
+            case '\n':
+                line.append(ESCAPE).append('n');
+                break;
+            case '\r':
+                line.append(ESCAPE).append('r');
+                break;
+            default:
+                line.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String field) {
+        StringBuilder text = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != ESCAPE) {
+                text.append(c);
+                continue;
+            }
+            char escaped = field.charAt(++i);
+            switch (escaped) {
+            case 't':
+                text.append(SEPARATOR);
+                break;
+            case 'n':
+                text.append('\n');
+                break;
+            case 'r':
+                text.append('\r');
+                break;
+            case ESCAPE:
+                text.append(ESCAPE);
+                break;
+            default:
+                throw new IllegalArgumentException(INVALID_ENTRY_EXCEPTION_MESSAGE + field);
+            }
+        }
+        return text.toString();
+    }
+}
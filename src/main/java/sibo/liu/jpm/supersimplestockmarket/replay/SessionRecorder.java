@@ -0,0 +1,67 @@
+package sibo.liu.jpm.supersimplestockmarket.replay;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.function.Function;
+
+import org.joda.time.DateTimeUtils;
+
+/**
+ * Executes console commands through another console and writes each command,
+ * the time it was executed and its response to a session file, one
+ * {@link SessionEntry} per line, for {@link SessionReplayer}.
+ * <p>
+ * All operation is thread safe; commands are recorded in the order they
+ * complete.
+ */
+public final class SessionRecorder implements AutoCloseable {
+    private final Function<String, String> console;
+    private final Writer output;
+
+    /**
+     * @param console
+     *            executes a command and returns its output
+     * @param output
+     *            receives the session, closed with the recorder
+     */
+    public SessionRecorder(Function<String, String> console, Writer output) {
+        if (console == null || output == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        this.console = console;
+        this.output = output;
+    }
+
+    /**
+     * Execute one command and record it.
+     *
+     * @param command
+     *            a line of input of the console
+     * @return the output of the command
+     * @throws UncheckedIOException
+     *             if the session cannot be written
+     */
+    public String execute(String command) {
+        long timeMillis = DateTimeUtils.currentTimeMillis();
+        String response = console.apply(command);
+        String line = new SessionEntry(timeMillis, command, response).toLine();
+        synchronized (output) {
+            try {
+                output.write(line);
+                output.write('\n');
+                output.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (output) {
+            output.close();
+        }
+    }
+}
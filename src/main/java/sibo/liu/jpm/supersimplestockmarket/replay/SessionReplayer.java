@@ -0,0 +1,112 @@
+package sibo.liu.jpm.supersimplestockmarket.replay;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.joda.time.DateTimeUtils;
+
+import sibo.liu.jpm.supersimplestockmarket.ingestion.LatencyHistogram;
+
+/**
+ * Replays a session written by {@link SessionRecorder} against a console and
+ * checks every response against the recording.
+ * <p>
+ * The clock is fixed to the recorded time of each command while it is
+ * replayed, so that commands depending on the time, such as the volume
+ * weighted stock price over the past minutes, answer what they answered when
+ * recorded. The replay should start from the state the recording started
+ * from, typically an empty process.
+ * <p>
+ * Not thread safe: it sets the clock of the whole process for the duration
+ * of a replay.
+ */
+public final class SessionReplayer {
+    /**
+     * Number of mismatches described in a {@link ReplayReport}
+     */
+    public static final int MAX_REPORTED_MISMATCHES = 10;
+
+    private SessionReplayer() {
+    }
+
+    /**
+     * Read every entry of a session.
+     *
+     * @param input
+     *            the session, one entry per line
+     * @return the entries in order
+     * @throws IOException
+     *             if {@code input} cannot be read
+     * @throws IllegalArgumentException
+     *             if a line is not a valid entry
+     */
+    public static List<SessionEntry> read(Reader input) throws IOException {
+        List<SessionEntry> entries = new ArrayList<SessionEntry>();
+        BufferedReader reader = new BufferedReader(input);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                entries.add(SessionEntry.parse(line));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Replay {@code entries} against {@code console}.
+     *
+     * @param entries
+     *            the recorded session
+     * @param console
+     *            executes a command and returns its output
+     * @param paced
+     *            {@code true} to keep the recorded time between commands,
+     *            {@code false} to replay as fast as possible
+     * @return the throughput, latencies and mismatches of the replay
+     */
+    public static ReplayReport replay(List<SessionEntry> entries,
+            Function<String, String> console, boolean paced) {
+        if (entries == null || console == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        LatencyHistogram latencyNanos = new LatencyHistogram();
+        List<String> mismatches = new ArrayList<String>();
+        long mismatchCount = 0L;
+        long startNanos = System.nanoTime();
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                SessionEntry entry = entries.get(i);
+                if (paced) {
+                    long offsetNanos = TimeUnit.MILLISECONDS.toNanos(entry.getTimeMillis()
+                            - entries.get(0).getTimeMillis());
+                    long waitNanos;
+                    while ((waitNanos = startNanos + offsetNanos - System.nanoTime()) > 0L) {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                }
+                DateTimeUtils.setCurrentMillisFixed(entry.getTimeMillis());
+                long commandNanos = System.nanoTime();
+                String response = console.apply(entry.getCommand());
+                latencyNanos.record(System.nanoTime() - commandNanos);
+                if (!entry.getResponse().equals(response)) {
+                    mismatchCount++;
+                    if (mismatches.size() < MAX_REPORTED_MISMATCHES) {
+                        mismatches.add("Command " + (i + 1) + " \"" + entry.getCommand()
+                                + "\": expected \"" + entry.getResponse() + "\" but was \""
+                                + response + "\"");
+                    }
+                }
+            }
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+        return new ReplayReport(entries.size(), mismatchCount, mismatches, System.nanoTime()
+                - startNanos, latencyNanos);
+    }
+}
@@ -2,10 +2,9 @@ package sibo.liu.jpm.supersimplestockmarket.stock;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Optional;
 
 public class CommonStock extends StockImpl {
-    private BigDecimal dividendPerPeriod;
+    private volatile BigDecimal dividendPerPeriod;
 
     // Constant error message
     private static final String DIVIDEND_PER_PERIOD_NEGATIVE_EXCEPTION_MESSAGE = "The current dividend of a stock can only be larger than or equal to zero";
@@ -42,6 +41,7 @@ public class CommonStock extends StockImpl {
         } else {
             throw new IllegalArgumentException(NULL_INPUT_EXCEPTION_MESSAGE);
         }
+        publishFirstSnapshot();
     }
 
     @Override
@@ -54,7 +54,7 @@ public class CommonStock extends StockImpl {
      *            amount of dividend paid out per period
      */
     @Override
-    public void setDividend(BigDecimal dividendPerPeriod) {
+    public synchronized void setDividend(BigDecimal dividendPerPeriod) {
         if (dividendPerPeriod != null && dividendPerPeriod.signum() != -1) {
             if (dividendPerPeriod.scale() > BIG_DECIMAL_SCALE) {
                 this.dividendPerPeriod = dividendPerPeriod.setScale(BIG_DECIMAL_SCALE,
@@ -62,34 +62,22 @@ public class CommonStock extends StockImpl {
             } else {
                 this.dividendPerPeriod = dividendPerPeriod;
             }
+            publishSnapshot();
         }
     }
 
     @Override
-    public Optional<BigDecimal> getDividendYield(BigDecimal price) {
-        if (price != null) {
-            BigDecimal lastAnnualDividend = getLastAnnualDividend();
-            if (price.signum() > 0) {
-                BigDecimal yield = lastAnnualDividend.divide(price, BIG_DECIMAL_SCALE,
-                        ROUNDING_MODE).stripTrailingZeros();
-                return Optional.of(yield);
-            }
-        }
-        return Optional.empty();
+    protected BigDecimal getYieldDividend(BigDecimal parValue, BigDecimal lastAnnualDividend,
+            BigInteger periodPerYear, BigDecimal dividend) {
+        return lastAnnualDividend;
     }
 
     @Override
-    public Optional<BigDecimal> getPERatio(BigDecimal price) {
-        if (price != null) {
-            BigDecimal currentDividend = dividendPerPeriod.multiply(new BigDecimal(
-                    getPeriodPerYear()));
-            if (currentDividend.signum() > 0) {
-                BigDecimal peRatio = price
-                        .divide(currentDividend, BIG_DECIMAL_SCALE, ROUNDING_MODE)
-                        .stripTrailingZeros();
-                return Optional.of(peRatio);
-            }
+    protected BigDecimal getPERatioDividend(BigDecimal parValue, BigDecimal lastAnnualDividend,
+            BigInteger periodPerYear, BigDecimal dividend) {
+        if (dividend == null || periodPerYear == null) {
+            return null;
         }
-        return Optional.empty();
+        return dividend.multiply(new BigDecimal(periodPerYear));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,92 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * The annual dividends a stock divides by or into a price to obtain its
+ * dividend yield and P/E ratio, for one set of stock parameters.
+ * <p>
+ * A new {@code DividendTerms} is created whenever a parameter of the stock
+ * changes and is shared by every snapshot published until the next change.
+ * The values are computed on first use only, so that queries pay for the
+ * arithmetic once per parameter change rather than once per call. Each value
+ * is kept exact, unscaled to 8 decimal places and as a {@code double}, for the
+ * exact, allocation-free and primitive query paths respectively.
+ */
+final class DividendTerms {
+    private final StockImpl stock;
+    private final BigDecimal parValue;
+    private final BigDecimal lastAnnualDividend;
+    private final BigInteger periodPerYear;
+    private final BigDecimal dividend;
+    private volatile Values values;
+
+    DividendTerms(StockImpl stock, BigDecimal parValue, BigDecimal lastAnnualDividend,
+            BigInteger periodPerYear, BigDecimal dividend) {
+        this.stock = stock;
+        this.parValue = parValue;
+        this.lastAnnualDividend = lastAnnualDividend;
+        this.periodPerYear = periodPerYear;
+        this.dividend = dividend;
+    }
+
+    BigDecimal getYieldDividend() {
+        return getValues().yieldDividend;
+    }
+
+    BigDecimal getPERatioDividend() {
+        return getValues().peRatioDividend;
+    }
+
+    long getUnscaledYieldDividend() {
+        return getValues().unscaledYieldDividend;
+    }
+
+    long getUnscaledPERatioDividend() {
+        return getValues().unscaledPERatioDividend;
+    }
+
+    double getYieldDividendAsDouble() {
+        return getValues().yieldDividendAsDouble;
+    }
+
+    double getPERatioDividendAsDouble() {
+        return getValues().peRatioDividendAsDouble;
+    }
+
+    // Racing threads may compute the values more than once, all with the
+    // same result
+    private Values getValues() {
+        Values current = values;
+        if (current == null) {
+            current = new Values(stock.getYieldDividend(parValue, lastAnnualDividend,
+                    periodPerYear, dividend), stock.getPERatioDividend(parValue,
+                    lastAnnualDividend, periodPerYear, dividend));
+            values = current;
+        }
+        return current;
+    }
+
+    private static final class Values {
+        private final BigDecimal yieldDividend;
+        private final BigDecimal peRatioDividend;
+        private final long unscaledYieldDividend;
+        private final long unscaledPERatioDividend;
+        private final double yieldDividendAsDouble;
+        private final double peRatioDividendAsDouble;
+
+        private Values(BigDecimal yieldDividend, BigDecimal peRatioDividend) {
+            this.yieldDividend = yieldDividend;
+            this.peRatioDividend = peRatioDividend;
+            this.unscaledYieldDividend = ScaledResult.toUnscaled(yieldDividend);
+            this.unscaledPERatioDividend = ScaledResult.toUnscaled(peRatioDividend);
+            this.yieldDividendAsDouble = toDouble(yieldDividend);
+            this.peRatioDividendAsDouble = toDouble(peRatioDividend);
+        }
+
+        private static double toDouble(BigDecimal value) {
+            return value == null ? Double.NaN : value.doubleValue();
+        }
+    }
+}
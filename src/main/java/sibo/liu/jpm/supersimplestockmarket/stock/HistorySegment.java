@@ -0,0 +1,290 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.joda.time.chrono.ISOChronology;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * An immutable, sealed run of the transaction history of a stock, compressed
+ * into one {@code byte[]}.
+ * <p>
+ * Every transaction is encoded as three variable-length integers: the
+ * difference of its time to the previous one in milliseconds, the difference
+ * of its price to the previous one in ticks, and its quantity shifted left by
+ * one with the sell flag in the lowest bit. The tick is the greatest common
+ * divisor of all the prices of the segment, so prices quoted in cents cost as
+ * little as prices quoted in whole units. A typical trade takes 4 to 8 bytes
+ * instead of well over 100 for a {@code Transaction} object and its fields.
+ * <p>
+ * Transactions that cannot be rebuilt exactly from the encoding (another
+ * symbol, a time zone other than the default one, or a quantity or price too
+ * large for a {@code long}) are rare; a segment that contains any of them keeps
+ * the original objects instead.
+ */
+final class HistorySegment {
+    private final int size;
+    private final long minTimeMillis;
+    private final long maxTimeMillis;
+    // Compressed form, null if the segment keeps the original objects
+    private final byte[] encoded;
+    private final String symbol;
+    private final long firstTimeMillis;
+    private final long tick;
+    private final long firstPriceTicks;
+    // Original form, null if the segment is compressed
+    private final Transaction[] raw;
+
+    private HistorySegment(int size, long minTimeMillis, long maxTimeMillis, byte[] encoded,
+            String symbol, long firstTimeMillis, long tick, long firstPriceTicks,
+            Transaction[] raw) {
+        this.size = size;
+        this.minTimeMillis = minTimeMillis;
+        this.maxTimeMillis = maxTimeMillis;
+        this.encoded = encoded;
+        this.symbol = symbol;
+        this.firstTimeMillis = firstTimeMillis;
+        this.tick = tick;
+        this.firstPriceTicks = firstPriceTicks;
+        this.raw = raw;
+    }
+
+    /**
+     * Seal {@code count} transactions starting at {@code from}.
+     */
+    static HistorySegment seal(Transaction[] transactions, int from, int count) {
+        long minTimeMillis = Long.MAX_VALUE;
+        long maxTimeMillis = Long.MIN_VALUE;
+        String symbol = transactions[from].getSymbol();
+        boolean encodable = symbol != null;
+        long tick = 0L;
+        for (int i = from; i < from + count; i++) {
+            Transaction transaction = transactions[i];
+            minTimeMillis = Math.min(minTimeMillis, transaction.getTimeMillis());
+            maxTimeMillis = Math.max(maxTimeMillis, transaction.getTimeMillis());
+            encodable = encodable && isEncodable(transaction, symbol);
+            if (encodable) {
+                tick = gcd(tick, transaction.getUnscaledPrice());
+            }
+        }
+        if (!encodable) {
+            Transaction[] raw = new Transaction[count];
+            System.arraycopy(transactions, from, raw, 0, count);
+            return new HistorySegment(count, minTimeMillis, maxTimeMillis, null, null, 0L, 0L,
+                    0L, raw);
+        }
+        ByteWriter writer = new ByteWriter(count * 6);
+        long firstTimeMillis = transactions[from].getTimeMillis();
+        long firstPriceTicks = transactions[from].getUnscaledPrice() / tick;
+        long previousTimeMillis = firstTimeMillis;
+        long previousPriceTicks = firstPriceTicks;
+        for (int i = from; i < from + count; i++) {
+            Transaction transaction = transactions[i];
+            long priceTicks = transaction.getUnscaledPrice() / tick;
+            writer.writeSigned(transaction.getTimeMillis() - previousTimeMillis);
+            writer.writeSigned(priceTicks - previousPriceTicks);
+            writer.writeUnsigned(transaction.getQuantityAsLong() << 1
+                    | (transaction.getIndicator() == BuySellIndicator.SELL ? 1L : 0L));
+            previousTimeMillis = transaction.getTimeMillis();
+            previousPriceTicks = priceTicks;
+        }
+        return new HistorySegment(count, minTimeMillis, maxTimeMillis, writer.toByteArray(),
+                symbol, firstTimeMillis, tick, firstPriceTicks, null);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getMinTimeMillis() {
+        return minTimeMillis;
+    }
+
+    long getMaxTimeMillis() {
+        return maxTimeMillis;
+    }
+
+    /**
+     * @return Return {@code true} if the segment is held in compressed form.
+     *         {@code False} if it keeps the original objects
+     */
+    boolean isCompressed() {
+        return encoded != null;
+    }
+
+    /**
+     * @return the number of bytes of the compressed form, 0 if the segment
+     *         keeps the original objects
+     */
+    int getEncodedSize() {
+        return encoded == null ? 0 : encoded.length;
+    }
+
+    /**
+     * Rebuild the transactions of the segment. Allocates one
+     * {@code Transaction} per element of a compressed segment.
+     */
+    Transaction[] decode() {
+        if (raw != null) {
+            return raw;
+        }
+        Transaction[] transactions = new Transaction[size];
+        Cursor cursor = cursor();
+        for (int i = 0; i < size; i++) {
+            cursor.next();
+            transactions[i] = new Transaction(symbol, new DateTime(cursor.timeMillis),
+                    BigInteger.valueOf(cursor.quantity), cursor.buy ? BuySellIndicator.BUY
+                            : BuySellIndicator.SELL, BigDecimal.valueOf(cursor.unscaledPrice,
+                            ScaledResult.SCALE));
+        }
+        return transactions;
+    }
+
+    /**
+     * @return a new {@code Cursor} positioned before the first transaction
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    private static boolean isEncodable(Transaction transaction, String symbol) {
+        DateTime timeStamp = transaction.getTimeStamp();
+        return transaction.isPrimitive()
+                && transaction.getQuantityAsLong() <= Long.MAX_VALUE >> 1
+                && symbol.equals(transaction.getSymbol()) && timeStamp != null
+                && ISOChronology.getInstance().equals(timeStamp.getChronology());
+    }
+
+    private static long gcd(long first, long second) {
+        while (second != 0L) {
+            long remainder = first % second;
+            first = second;
+            second = remainder;
+        }
+        return first;
+    }
+
+    /**
+     * Reads the primitive fields of the transactions of a segment one after
+     * the other, without creating {@code Transaction} objects for a compressed
+     * segment. Not thread safe.
+     */
+    final class Cursor {
+        private int index;
+        private int position;
+        private long timeMillis;
+        private long priceTicks;
+        private long quantity;
+        private long unscaledPrice;
+        private boolean buy;
+        private boolean primitive;
+
+        private Cursor() {
+            this.timeMillis = firstTimeMillis;
+            this.priceTicks = firstPriceTicks;
+        }
+
+        /**
+         * @return Return {@code true} if moved to the next transaction.
+         *         {@code False} if there is none left
+         */
+        boolean next() {
+            if (index == size) {
+                return false;
+            }
+            if (raw != null) {
+                Transaction transaction = raw[index];
+                timeMillis = transaction.getTimeMillis();
+                quantity = transaction.getQuantityAsLong();
+                unscaledPrice = transaction.getUnscaledPrice();
+                buy = transaction.getIndicator() == BuySellIndicator.BUY;
+                primitive = transaction.isPrimitive();
+            } else {
+                timeMillis += readSigned();
+                priceTicks += readSigned();
+                long quantityAndSide = readUnsigned();
+                quantity = quantityAndSide >>> 1;
+                buy = (quantityAndSide & 1L) == 0L;
+                unscaledPrice = priceTicks * tick;
+                primitive = true;
+            }
+            index++;
+            return true;
+        }
+
+        long getTimeMillis() {
+            return timeMillis;
+        }
+
+        long getQuantity() {
+            return quantity;
+        }
+
+        long getUnscaledPrice() {
+            return unscaledPrice;
+        }
+
+        boolean isBuy() {
+            return buy;
+        }
+
+        /**
+         * @return Return {@code true} if the quantity and price of the current
+         *         transaction are exact. {@code False} otherwise
+         */
+        boolean isPrimitive() {
+            return primitive;
+        }
+
+        private long readUnsigned() {
+            long value = 0L;
+            int shift = 0;
+            byte next;
+            do {
+                next = encoded[position++];
+                value |= (long) (next & 0x7F) << shift;
+                shift += 7;
+            } while (next < 0);
+            return value;
+        }
+
+        private long readSigned() {
+            long zigZag = readUnsigned();
+            return (zigZag >>> 1) ^ -(zigZag & 1L);
+        }
+    }
+
+    // Growable buffer of variable-length integers
+    private static final class ByteWriter {
+        private byte[] bytes;
+        private int length;
+
+        private ByteWriter(int capacity) {
+            this.bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        private void writeUnsigned(long value) {
+            if (length + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7FL) != 0L) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void writeSigned(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+}
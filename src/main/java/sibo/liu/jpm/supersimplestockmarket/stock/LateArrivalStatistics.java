@@ -0,0 +1,51 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+/**
+ * How late the transactions of a stock have arrived: how many came in time
+ * order, how many were late but put in order by the reorder buffer, and how
+ * many were too late for that and went through the correction path.
+ */
+public final class LateArrivalStatistics {
+    private final long latenessMillis;
+    private final long inOrderCount;
+    private final long reorderedCount;
+    private final long correctedCount;
+    private final long maxLateMillis;
+
+    LateArrivalStatistics(long latenessMillis, long inOrderCount, long reorderedCount,
+            long correctedCount, long maxLateMillis) {
+        this.latenessMillis = latenessMillis;
+        this.inOrderCount = inOrderCount;
+        this.reorderedCount = reorderedCount;
+        this.correctedCount = correctedCount;
+        this.maxLateMillis = maxLateMillis;
+    }
+
+    /**
+     * @return the lateness allowed before a transaction is corrected rather
+     *         than reordered, in milliseconds
+     */
+    public long getLatenessMillis() {
+        return latenessMillis;
+    }
+
+    public long getInOrderCount() {
+        return inOrderCount;
+    }
+
+    public long getReorderedCount() {
+        return reorderedCount;
+    }
+
+    public long getCorrectedCount() {
+        return correctedCount;
+    }
+
+    /**
+     * @return the most a transaction has arrived behind the latest one, in
+     *         milliseconds
+     */
+    public long getMaxLateMillis() {
+        return maxLateMillis;
+    }
+}
@@ -0,0 +1,98 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Optional;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.interfaces.Stock;
+
+/**
+ * The arithmetic a query of a {@link Stock} runs in. Both modes return the
+ * result as {@code Optional<BigDecimal>} with at most 8 decimal places, so
+ * that callers can switch between them without other changes.
+ * <p>
+ * {@link #FAST} results differ from {@link #EXACT} ones by a relative error in
+ * the order of {@code 1e-15}, plus the rounding to 8 decimal places, and
+ * cannot be used for settlement.
+ */
+public enum NumericMode {
+    /**
+     * {@code BigDecimal} arithmetic, rounded half up to 8 decimal places
+     */
+    EXACT {
+        @Override
+        public Optional<BigDecimal> getDividendYield(Stock stock, BigDecimal price) {
+            return stock.getDividendYield(price);
+        }
+
+        @Override
+        public Optional<BigDecimal> getPERatio(Stock stock, BigDecimal price) {
+            return stock.getPERatio(price);
+        }
+
+        @Override
+        public Optional<BigDecimal> getVolumeWeightedStockPrice(Stock stock, int pastMinutes) {
+            return stock.getVolumeWeightedStockPrice(pastMinutes);
+        }
+    },
+    /**
+     * Primitive {@code double} arithmetic, only rounded to 8 decimal places
+     * once the result is known
+     */
+    FAST {
+        @Override
+        public Optional<BigDecimal> getDividendYield(Stock stock, BigDecimal price) {
+            if (price == null) {
+                return Optional.empty();
+            }
+            return toBigDecimal(stock.getDividendYieldAsDouble(price.doubleValue()));
+        }
+
+        @Override
+        public Optional<BigDecimal> getPERatio(Stock stock, BigDecimal price) {
+            if (price == null) {
+                return Optional.empty();
+            }
+            return toBigDecimal(stock.getPERatioAsDouble(price.doubleValue()));
+        }
+
+        @Override
+        public Optional<BigDecimal> getVolumeWeightedStockPrice(Stock stock, int pastMinutes) {
+            return toBigDecimal(stock.getVolumeWeightedStockPriceAsDouble(pastMinutes));
+        }
+    };
+
+    private static final int BIG_DECIMAL_SCALE = 8;
+    private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+
+    /**
+     * Get the dividend yield of {@code stock} at {@code price} in this mode.
+     *
+     * @see Stock#getDividendYield(BigDecimal)
+     */
+    public abstract Optional<BigDecimal> getDividendYield(Stock stock, BigDecimal price);
+
+    /**
+     * Get the P/E ratio of {@code stock} at {@code price} in this mode.
+     *
+     * @see Stock#getPERatio(BigDecimal)
+     */
+    public abstract Optional<BigDecimal> getPERatio(Stock stock, BigDecimal price);
+
+    /**
+     * Get the volume weighted stock price of {@code stock} in the past
+     * {@code pastMinutes} minutes in this mode.
+     *
+     * @see Stock#getVolumeWeightedStockPrice(int)
+     */
+    public abstract Optional<BigDecimal> getVolumeWeightedStockPrice(Stock stock,
+            int pastMinutes);
+
+    private static Optional<BigDecimal> toBigDecimal(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Optional.empty();
+        }
+        return Optional.of(BigDecimal.valueOf(value).setScale(BIG_DECIMAL_SCALE, ROUNDING_MODE)
+                .stripTrailingZeros());
+    }
+}
@@ -0,0 +1,94 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Optional;
+
+/**
+ * The buy/sell split of the transactions of a stock over a window of time:
+ * volume and volume weighted price of each side, and the order-flow imbalance
+ * {@code (buy volume - sell volume) / (buy volume + sell volume)}, which
+ * ranges from -1 (only sells) to 1 (only buys).
+ */
+public final class OrderFlow {
+    private static final int BIG_DECIMAL_SCALE = 8;
+    private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+
+    private final BigInteger buyVolume;
+    private final BigInteger sellVolume;
+    private final Optional<BigDecimal> buyVolumeWeightedPrice;
+    private final Optional<BigDecimal> sellVolumeWeightedPrice;
+    private final Optional<BigDecimal> imbalance;
+
+    /**
+     * Construct an {@code OrderFlow} object from the totals of each side.
+     * 
+     * @param buyVolume
+     *            total quantity bought
+     * @param buyNotional
+     *            total price times quantity bought
+     * @param sellVolume
+     *            total quantity sold
+     * @param sellNotional
+     *            total price times quantity sold
+     */
+    OrderFlow(BigInteger buyVolume, BigDecimal buyNotional, BigInteger sellVolume,
+            BigDecimal sellNotional) {
+        this.buyVolume = buyVolume;
+        this.sellVolume = sellVolume;
+        this.buyVolumeWeightedPrice = divide(buyNotional, buyVolume);
+        this.sellVolumeWeightedPrice = divide(sellNotional, sellVolume);
+        BigInteger totalVolume = buyVolume.add(sellVolume);
+        if (totalVolume.signum() == 0) {
+            this.imbalance = Optional.empty();
+        } else {
+            this.imbalance = Optional.of(new BigDecimal(buyVolume.subtract(sellVolume)).divide(
+                    new BigDecimal(totalVolume), BIG_DECIMAL_SCALE, ROUNDING_MODE)
+                    .stripTrailingZeros());
+        }
+    }
+
+    public BigInteger getBuyVolume() {
+        return buyVolume;
+    }
+
+    public BigInteger getSellVolume() {
+        return sellVolume;
+    }
+
+    /**
+     * @return Return {@code Optional<BigDecimal>} of the volume weighted price
+     *         of the buys if there is at least one. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getBuyVolumeWeightedPrice() {
+        return buyVolumeWeightedPrice;
+    }
+
+    /**
+     * @return Return {@code Optional<BigDecimal>} of the volume weighted price
+     *         of the sells if there is at least one. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getSellVolumeWeightedPrice() {
+        return sellVolumeWeightedPrice;
+    }
+
+    /**
+     * @return Return {@code Optional<BigDecimal>} of the imbalance between -1
+     *         and 1 if there is at least one transaction. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getImbalance() {
+        return imbalance;
+    }
+
+    private static Optional<BigDecimal> divide(BigDecimal notional, BigInteger volume) {
+        if (volume.signum() == 0 || notional.signum() == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(notional.divide(new BigDecimal(volume), BIG_DECIMAL_SCALE,
+                ROUNDING_MODE));
+    }
+}
@@ -0,0 +1,135 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTimeUtils;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Buy and sell totals of a stock in a ring of fixed-width time buckets, so that
+ * adding a transaction costs O(1) and a window is summed without looking at a
+ * single transaction. Windows are resolved to whole buckets.
+ * <p>
+ * A bucket is reused once its time has rotated out of the ring. Totals are
+ * kept exact in {@code long}s scaled by 10^8; a bucket that receives a
+ * transaction too large for that is flagged, and windows covering it cannot be
+ * answered from the ring.
+ * <p>
+ * A transaction stamped after the current time is counted in the bucket of
+ * the current time, as {@code WindowedGBCEIndex} does, so that it can not
+ * take over the bucket of a time still in the ring.
+ * <p>
+ * This class is not thread safe. It is guarded by the monitor of its stock.
+ */
+final class OrderFlowTracker {
+    /**
+     * Index of each total in the array filled by {@link #sum}
+     */
+    static final int BUY_QUANTITY = 0;
+    static final int BUY_NOTIONAL = 1;
+    static final int SELL_QUANTITY = 2;
+    static final int SELL_NOTIONAL = 3;
+    static final int TOTAL_COUNT = 4;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long bucketMillis;
+    private final int bucketCount;
+    // Bucket start divided by bucketMillis, EMPTY if the bucket is unused
+    private final long[] epochs;
+    // TOTAL_COUNT totals per bucket, bucket i at offset i * TOTAL_COUNT
+    private final long[] totals;
+    private final boolean[] inexact;
+
+    OrderFlowTracker(long bucketMillis, int bucketCount) {
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+        this.epochs = new long[bucketCount];
+        this.totals = new long[bucketCount * TOTAL_COUNT];
+        this.inexact = new boolean[bucketCount];
+        Arrays.fill(epochs, EMPTY);
+    }
+
+    /**
+     * @return the longest window that can be summed, in milliseconds
+     */
+    long getHorizonMillis() {
+        return (bucketCount - 1) * bucketMillis;
+    }
+
+    void add(Transaction transaction) {
+        BuySellIndicator indicator = transaction.getIndicator();
+        if (indicator == null) {
+            return;
+        }
+        long epoch = Math.floorDiv(Math.min(transaction.getTimeMillis(), DateTimeUtils
+                .currentTimeMillis()), bucketMillis);
+        int bucket = (int) Math.floorMod(epoch, (long) bucketCount);
+        if (epochs[bucket] != epoch) {
+            if (epochs[bucket] != EMPTY && epochs[bucket] > epoch) {
+                // Older than the ring, already rotated out
+                return;
+            }
+            epochs[bucket] = epoch;
+            inexact[bucket] = false;
+            Arrays.fill(totals, bucket * TOTAL_COUNT, (bucket + 1) * TOTAL_COUNT, 0L);
+        }
+        if (inexact[bucket]) {
+            return;
+        }
+        int offset = bucket * TOTAL_COUNT
+                + (indicator == BuySellIndicator.BUY ? BUY_QUANTITY : SELL_QUANTITY);
+        try {
+            if (!transaction.isPrimitive()) {
+                throw new ArithmeticException();
+            }
+            long quantity = transaction.getQuantityAsLong();
+            long notional = Math.multiplyExact(transaction.getUnscaledPrice(), quantity);
+            long newQuantity = Math.addExact(totals[offset], quantity);
+            long newNotional = Math.addExact(totals[offset + 1], notional);
+            totals[offset] = newQuantity;
+            totals[offset + 1] = newNotional;
+        } catch (ArithmeticException e) {
+            inexact[bucket] = true;
+        }
+    }
+
+    /**
+     * Sum the buckets that start within {@code windowMillis} before
+     * {@code nowMillis}, up to the bucket of {@code nowMillis}.
+     * 
+     * @param result
+     *            receives the {@link #TOTAL_COUNT} totals
+     * @return Return {@code true} if the totals are exact. {@code False} if the
+     *         window is longer than the ring or covers a flagged bucket, in
+     *         which case {@code result} is undefined
+     */
+    boolean sum(long nowMillis, long windowMillis, long[] result) {
+        if (windowMillis > getHorizonMillis()) {
+            return false;
+        }
+        Arrays.fill(result, 0, TOTAL_COUNT, 0L);
+        long lastEpoch = Math.floorDiv(nowMillis, bucketMillis);
+        long firstEpoch = -Math.floorDiv(-(nowMillis - windowMillis), bucketMillis);
+        for (long epoch = firstEpoch; epoch <= lastEpoch; epoch++) {
+            int bucket = (int) Math.floorMod(epoch, (long) bucketCount);
+            if (epochs[bucket] != epoch) {
+                continue;
+            }
+            if (inexact[bucket]) {
+                return false;
+            }
+            int offset = bucket * TOTAL_COUNT;
+            for (int i = 0; i < TOTAL_COUNT; i++) {
+                long total = result[i] + totals[offset + i];
+                if (total < 0L) {
+                    return false;
+                }
+                result[i] = total;
+            }
+        }
+        return true;
+    }
+}
@@ -2,10 +2,9 @@ package sibo.liu.jpm.supersimplestockmarket.stock;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Optional;
 
 public class PreferredStock extends StockImpl {
-    private BigDecimal fixedDividendPerPeriod;
+    private volatile BigDecimal fixedDividendPerPeriod;
 
     private static final String FIXED_DIVIDEND_PER_PERIOD_NEGATIVE_EXCEPTION_MESSAGE = "The fixed dividend of a stock can only be larger than zero";
 
@@ -42,6 +41,7 @@ public class PreferredStock extends StockImpl {
         } else {
             throw new IllegalArgumentException(NULL_INPUT_EXCEPTION_MESSAGE);
         }
+        publishFirstSnapshot();
     }
 
     @Override
@@ -54,7 +54,7 @@ public class PreferredStock extends StockImpl {
      *            fixed dividend percentage in fraction
      */
     @Override
-    public void setDividend(BigDecimal fixedDividendPerPeriod) {
+    public synchronized void setDividend(BigDecimal fixedDividendPerPeriod) {
         if (fixedDividendPerPeriod != null) {
             if (fixedDividendPerPeriod.scale() > BIG_DECIMAL_SCALE) {
                 this.fixedDividendPerPeriod = fixedDividendPerPeriod.setScale(BIG_DECIMAL_SCALE,
@@ -62,35 +62,22 @@ public class PreferredStock extends StockImpl {
             } else {
                 this.fixedDividendPerPeriod = fixedDividendPerPeriod;
             }
+            publishSnapshot();
         }
     }
 
     @Override
-    public Optional<BigDecimal> getDividendYield(BigDecimal price) {
-        if (price != null) {
-            BigDecimal lastAnnualDividend = fixedDividendPerPeriod.multiply(getParValue())
-                    .multiply(new BigDecimal(getPeriodPerYear()));
-            if (price.signum() > 0) {
-                BigDecimal yield = lastAnnualDividend.divide(price, BIG_DECIMAL_SCALE,
-                        ROUNDING_MODE).stripTrailingZeros();
-                return Optional.of(yield);
-            }
-        }
-        return Optional.empty();
+    protected BigDecimal getYieldDividend(BigDecimal parValue, BigDecimal lastAnnualDividend,
+            BigInteger periodPerYear, BigDecimal dividend) {
+        return getPERatioDividend(parValue, lastAnnualDividend, periodPerYear, dividend);
     }
 
     @Override
-    public Optional<BigDecimal> getPERatio(BigDecimal price) {
-        if (price != null) {
-            BigDecimal currentDividend = fixedDividendPerPeriod.multiply(getParValue()).multiply(
-                    new BigDecimal(getPeriodPerYear()));
-            if (currentDividend.signum() > 0) {
-                BigDecimal peRatio = price
-                        .divide(currentDividend, BIG_DECIMAL_SCALE, ROUNDING_MODE)
-                        .stripTrailingZeros();
-                return Optional.of(peRatio);
-            }
+    protected BigDecimal getPERatioDividend(BigDecimal parValue, BigDecimal lastAnnualDividend,
+            BigInteger periodPerYear, BigDecimal dividend) {
+        if (dividend == null || parValue == null || periodPerYear == null) {
+            return null;
         }
-        return Optional.empty();
+        return dividend.multiply(parValue).multiply(new BigDecimal(periodPerYear));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTimeUtils;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Price quantile sketches of a stock in a ring of fixed-width time buckets,
+ * the way {@link OrderFlowTracker} keeps totals, so that the sketch of a
+ * window is the merge of a few bucket sketches. Windows are resolved to whole
+ * buckets.
+ * <p>
+ * A bucket sketch is cleared and reused once its time has rotated out of the
+ * ring, so the memory of the ring stays bounded. A transaction stamped after
+ * the current time goes into the bucket of the current time.
+ * <p>
+ * This class is not thread safe. It is guarded by the monitor of its stock.
+ */
+final class PriceSketchRing {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final double UNSCALED_PER_UNIT = Math.pow(10.0d, ScaledResult.SCALE);
+
+    private final long bucketMillis;
+    // Bucket start divided by bucketMillis, EMPTY if the bucket is unused
+    private final long[] epochs;
+    // Created the first time a bucket is used
+    private final QuantileSketch[] sketches;
+
+    PriceSketchRing(long bucketMillis, int bucketCount) {
+        this.bucketMillis = bucketMillis;
+        this.epochs = new long[bucketCount];
+        this.sketches = new QuantileSketch[bucketCount];
+        Arrays.fill(epochs, EMPTY);
+    }
+
+    /**
+     * @return the longest window that can be merged, in milliseconds
+     */
+    long getHorizonMillis() {
+        return (epochs.length - 1) * bucketMillis;
+    }
+
+    void add(Transaction transaction) {
+        double price = priceOf(transaction);
+        if (!(price > 0.0d)) {
+            return;
+        }
+        long epoch = Math.floorDiv(Math.min(transaction.getTimeMillis(), DateTimeUtils
+                .currentTimeMillis()), bucketMillis);
+        int bucket = (int) Math.floorMod(epoch, (long) epochs.length);
+        if (epochs[bucket] != epoch) {
+            if (epochs[bucket] != EMPTY && epochs[bucket] > epoch) {
+                // Older than the ring, already rotated out
+                return;
+            }
+            epochs[bucket] = epoch;
+            if (sketches[bucket] == null) {
+                sketches[bucket] = new QuantileSketch();
+            } else {
+                sketches[bucket].clear();
+            }
+        }
+        sketches[bucket].add(price);
+    }
+
+    /**
+     * Merge the buckets that start within {@code windowMillis} before
+     * {@code nowMillis}, up to the bucket of {@code nowMillis}, into
+     * {@code result}.
+     *
+     * @return Return {@code true} if merged. {@code False} if the window is
+     *         longer than the ring
+     */
+    boolean merge(long nowMillis, long windowMillis, QuantileSketch result) {
+        if (windowMillis > getHorizonMillis()) {
+            return false;
+        }
+        long lastEpoch = Math.floorDiv(nowMillis, bucketMillis);
+        long firstEpoch = -Math.floorDiv(-(nowMillis - windowMillis), bucketMillis);
+        for (long epoch = firstEpoch; epoch <= lastEpoch; epoch++) {
+            int bucket = (int) Math.floorMod(epoch, (long) epochs.length);
+            if (epochs[bucket] == epoch) {
+                result.merge(sketches[bucket]);
+            }
+        }
+        return true;
+    }
+
+    static double priceOf(Transaction transaction) {
+        if (transaction.isPrimitive()) {
+            return transaction.getUnscaledPrice() / UNSCALED_PER_UNIT;
+        }
+        return transaction.getPrice() == null ? 0.0d : transaction.getPrice().doubleValue();
+    }
+}
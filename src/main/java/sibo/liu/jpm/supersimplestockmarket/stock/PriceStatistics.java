@@ -0,0 +1,107 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Optional;
+
+/**
+ * Moving averages of the price and quantity of the transactions of a stock,
+ * and the variance of the log returns between its consecutive transactions
+ * over a window, with the volatility, its square root.
+ * <p>
+ * Variances of returns are often far below 10^-8, so the variance and the
+ * volatility are rounded to a number of significant digits rather than to the
+ * usual 8 decimal places.
+ */
+public final class PriceStatistics {
+    private static final int BIG_DECIMAL_SCALE = 8;
+    private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+    private static final MathContext SIGNIFICANT_DIGITS = new MathContext(10, ROUNDING_MODE);
+
+    private final long returnCount;
+    private final Optional<BigDecimal> returnVariance;
+    private final Optional<BigDecimal> volatility;
+    private final Optional<BigDecimal> ewmaPrice;
+    private final Optional<BigDecimal> ewmaVolume;
+
+    /**
+     * Construct a {@code PriceStatistics} object.
+     *
+     * @param returnCount
+     *            number of log returns in the window
+     * @param squaredDeviations
+     *            sum of the squared deviations of the log returns from their
+     *            mean
+     * @param ewmaPrice
+     *            moving average of the price, {@code NaN} if none
+     * @param ewmaVolume
+     *            moving average of the quantity, {@code NaN} if none
+     */
+    PriceStatistics(long returnCount, double squaredDeviations, double ewmaPrice,
+            double ewmaVolume) {
+        this.returnCount = returnCount;
+        if (returnCount < 2L) {
+            this.returnVariance = Optional.empty();
+            this.volatility = Optional.empty();
+        } else {
+            double variance = Math.max(squaredDeviations, 0.0d) / (returnCount - 1L);
+            this.returnVariance = Optional.of(new BigDecimal(variance, SIGNIFICANT_DIGITS));
+            this.volatility = Optional.of(new BigDecimal(Math.sqrt(variance),
+                    SIGNIFICANT_DIGITS));
+        }
+        this.ewmaPrice = toOptional(ewmaPrice);
+        this.ewmaVolume = toOptional(ewmaVolume);
+    }
+
+    /**
+     * @return the number of log returns in the window
+     */
+    public long getReturnCount() {
+        return returnCount;
+    }
+
+    /**
+     * @return Return {@code Optional<BigDecimal>} of the sample variance of the
+     *         log returns if there are at least two in the window. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getReturnVariance() {
+        return returnVariance;
+    }
+
+    /**
+     * @return Return {@code Optional<BigDecimal>} of the standard deviation
+     *         of the log returns, per transaction, if there are at least two
+     *         in the window. Return {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getVolatility() {
+        return volatility;
+    }
+
+    /**
+     * @return Return {@code Optional<BigDecimal>} of the exponentially
+     *         weighted moving average of the price if there is at least one
+     *         transaction. Return {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getEwmaPrice() {
+        return ewmaPrice;
+    }
+
+    /**
+     * @return Return {@code Optional<BigDecimal>} of the exponentially
+     *         weighted moving average of the quantity of a transaction if
+     *         there is at least one transaction. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getEwmaVolume() {
+        return ewmaVolume;
+    }
+
+    private static Optional<BigDecimal> toOptional(double value) {
+        if (Double.isNaN(value)) {
+            return Optional.empty();
+        }
+        return Optional.of(BigDecimal.valueOf(value).setScale(BIG_DECIMAL_SCALE, ROUNDING_MODE));
+    }
+}
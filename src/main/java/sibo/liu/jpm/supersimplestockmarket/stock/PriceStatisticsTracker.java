@@ -0,0 +1,200 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTimeUtils;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Online statistics of the transactions of a stock, updated in constant time
+ * per transaction: exponentially weighted moving averages of the price and
+ * quantity, and the count, mean
+ * and sum of squared deviations of the log returns between consecutive
+ * transactions, kept with Welford's method in a ring of fixed-width time
+ * buckets, the way {@link OrderFlowTracker} keeps totals.
+ * <p>
+ * Each transaction enters the moving averages with a weight of 1 that halves
+ * every half-life after it, and an average is the weighted sum over the sum of
+ * the weights, so transactions at the same instant count equally. The buckets
+ * of a window are combined with the pairwise update of Chan et
+ * al., which is exact up to rounding. Windows are resolved to whole buckets.
+ * Transactions arriving out of time order count as if they arrived at the
+ * latest time seen, and transactions stamped after the current time as if
+ * they arrived at the current time.
+ * <p>
+ * This class is not thread safe. It is guarded by the monitor of its stock.
+ */
+final class PriceStatisticsTracker {
+    /**
+     * Index of each statistic in the array filled by {@link #merge}
+     */
+    static final int COUNT = 0;
+    static final int MEAN = 1;
+    static final int SQUARED_DEVIATIONS = 2;
+    static final int TOTAL_COUNT = 3;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final double UNSCALED_PER_UNIT = Math.pow(10.0d, ScaledResult.SCALE);
+
+    private final long bucketMillis;
+    private long priceHalfLifeMillis;
+    private long volumeHalfLifeMillis;
+    // Decayed sums of the values and of their weights
+    private double priceSum;
+    private double priceWeight;
+    private double volumeSum;
+    private double volumeWeight;
+    private long lastTimeMillis = Long.MIN_VALUE;
+    private double lastPrice = Double.NaN;
+    // Bucket start divided by bucketMillis, EMPTY if the bucket is unused
+    private final long[] epochs;
+    // TOTAL_COUNT statistics per bucket, bucket i at offset i * TOTAL_COUNT
+    private final double[] returns;
+
+    PriceStatisticsTracker(long bucketMillis, int bucketCount, long priceHalfLifeMillis,
+            long volumeHalfLifeMillis) {
+        this.bucketMillis = bucketMillis;
+        this.priceHalfLifeMillis = priceHalfLifeMillis;
+        this.volumeHalfLifeMillis = volumeHalfLifeMillis;
+        this.epochs = new long[bucketCount];
+        this.returns = new double[bucketCount * TOTAL_COUNT];
+        Arrays.fill(epochs, EMPTY);
+    }
+
+    void setHalfLives(long priceHalfLifeMillis, long volumeHalfLifeMillis) {
+        this.priceHalfLifeMillis = priceHalfLifeMillis;
+        this.volumeHalfLifeMillis = volumeHalfLifeMillis;
+    }
+
+    /**
+     * @return the longest window that can be merged, in milliseconds
+     */
+    long getHorizonMillis() {
+        return (epochs.length - 1) * bucketMillis;
+    }
+
+    /**
+     * @return the moving average of the price, {@code NaN} before the first
+     *         transaction
+     */
+    double getEwmaPrice() {
+        return priceWeight == 0.0d ? Double.NaN : priceSum / priceWeight;
+    }
+
+    /**
+     * @return the moving average of the quantity of a transaction,
+     *         {@code NaN} before the first transaction
+     */
+    double getEwmaVolume() {
+        return volumeWeight == 0.0d ? Double.NaN : volumeSum / volumeWeight;
+    }
+
+    void add(Transaction transaction) {
+        double price = priceOf(transaction);
+        double volume = quantityOf(transaction);
+        if (!(price > 0.0d) || !(volume > 0.0d)) {
+            return;
+        }
+        long timeMillis = Math.min(transaction.getTimeMillis(), DateTimeUtils.currentTimeMillis());
+        if (lastTimeMillis != Long.MIN_VALUE) {
+            long elapsedMillis = Math.max(timeMillis - lastTimeMillis, 0L);
+            double priceDecay = decayOf(elapsedMillis, priceHalfLifeMillis);
+            double volumeDecay = decayOf(elapsedMillis, volumeHalfLifeMillis);
+            priceSum *= priceDecay;
+            priceWeight *= priceDecay;
+            volumeSum *= volumeDecay;
+            volumeWeight *= volumeDecay;
+            addReturn(Math.max(timeMillis, lastTimeMillis), Math.log(price / lastPrice));
+        }
+        priceSum += price;
+        priceWeight += 1.0d;
+        volumeSum += volume;
+        volumeWeight += 1.0d;
+        lastTimeMillis = Math.max(lastTimeMillis, timeMillis);
+        lastPrice = price;
+    }
+
+    /**
+     * Combine the log return statistics of the buckets that start within
+     * {@code windowMillis} before {@code nowMillis}, up to the bucket of
+     * {@code nowMillis}.
+     *
+     * @param result
+     *            receives the {@link #TOTAL_COUNT} statistics
+     * @return Return {@code true} if combined. {@code False} if the window is
+     *         longer than the ring
+     */
+    boolean merge(long nowMillis, long windowMillis, double[] result) {
+        if (windowMillis > getHorizonMillis()) {
+            return false;
+        }
+        Arrays.fill(result, 0, TOTAL_COUNT, 0.0d);
+        long lastEpoch = Math.floorDiv(nowMillis, bucketMillis);
+        long firstEpoch = -Math.floorDiv(-(nowMillis - windowMillis), bucketMillis);
+        for (long epoch = firstEpoch; epoch <= lastEpoch; epoch++) {
+            int bucket = (int) Math.floorMod(epoch, (long) epochs.length);
+            if (epochs[bucket] == epoch) {
+                int offset = bucket * TOTAL_COUNT;
+                combine(result, returns[offset + COUNT], returns[offset + MEAN],
+                        returns[offset + SQUARED_DEVIATIONS]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add one value to the {@link #TOTAL_COUNT} statistics at {@code offset}
+     * of {@code statistics}, with Welford's update.
+     */
+    static void addValue(double[] statistics, int offset, double value) {
+        double count = statistics[offset + COUNT] + 1.0d;
+        double delta = value - statistics[offset + MEAN];
+        statistics[offset + MEAN] += delta / count;
+        statistics[offset + SQUARED_DEVIATIONS] += delta
+                * (value - statistics[offset + MEAN]);
+        statistics[offset + COUNT] = count;
+    }
+
+    // Pairwise combination of two sets of statistics into result
+    private static void combine(double[] result, double count, double mean,
+            double squaredDeviations) {
+        if (count == 0.0d) {
+            return;
+        }
+        double total = result[COUNT] + count;
+        double delta = mean - result[MEAN];
+        result[SQUARED_DEVIATIONS] += squaredDeviations + delta * delta * result[COUNT] * count
+                / total;
+        result[MEAN] += delta * count / total;
+        result[COUNT] = total;
+    }
+
+    private void addReturn(long timeMillis, double logReturn) {
+        long epoch = Math.floorDiv(timeMillis, bucketMillis);
+        int bucket = (int) Math.floorMod(epoch, (long) epochs.length);
+        int offset = bucket * TOTAL_COUNT;
+        if (epochs[bucket] != epoch) {
+            epochs[bucket] = epoch;
+            Arrays.fill(returns, offset, offset + TOTAL_COUNT, 0.0d);
+        }
+        addValue(returns, offset, logReturn);
+    }
+
+    // What is left of a weight after elapsedMillis
+    private static double decayOf(long elapsedMillis, long halfLifeMillis) {
+        return Math.pow(0.5d, (double) elapsedMillis / halfLifeMillis);
+    }
+
+    static double priceOf(Transaction transaction) {
+        return PriceSketchRing.priceOf(transaction);
+    }
+
+    static double quantityOf(Transaction transaction) {
+        if (transaction.isPrimitive()) {
+            return transaction.getQuantityAsLong();
+        }
+        return transaction.getQuantity() == null ? 0.0d : transaction.getQuantity()
+                .doubleValue();
+    }
+}
@@ -0,0 +1,242 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * A fixed-memory summary of positive values, such as trade prices, that
+ * answers quantiles with a bounded relative error and can be merged with
+ * other sketches of the same accuracy.
+ * <p>
+ * Values are counted in logarithmic buckets: bucket {@code i} holds the values
+ * in {@code (gamma^(i-1), gamma^i]} with
+ * {@code gamma = (1 + accuracy) / (1 - accuracy)}, and a quantile is answered
+ * with the middle of its bucket in relative terms, except the minimum and
+ * maximum which are kept exactly. Any quantile is therefore
+ * within {@code accuracy} of the true value, relatively, as long as the values
+ * span a ratio of less than {@code gamma^MAX_BUCKETS}, about 10^8 at the
+ * default accuracy of 1%. Beyond that, the lowest buckets are folded into one
+ * and only quantiles above them keep the bound.
+ * <p>
+ * Memory grows with the ratio between the lowest and the highest value, not
+ * with the number of values, up to {@link #MAX_BUCKETS} counts.
+ * <p>
+ * This class is not thread safe. Sketches handed out by a stock or the
+ * {@code StockTransactionManager} are copies owned by the caller.
+ */
+public final class QuantileSketch {
+    /**
+     * Relative accuracy of the sketches of stocks
+     */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01d;
+    /**
+     * Largest number of buckets a sketch keeps
+     */
+    public static final int MAX_BUCKETS = 1024;
+
+    private static final int BIG_DECIMAL_SCALE = 8;
+    private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+    private static final long[] NO_COUNTS = new long[0];
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    // counts[i] is the count of bucket offset + i
+    private long[] counts = NO_COUNTS;
+    private int offset;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Construct an empty {@code QuantileSketch} of
+     * {@link #DEFAULT_RELATIVE_ACCURACY}.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * Construct an empty {@code QuantileSketch}.
+     *
+     * @param relativeAccuracy
+     *            the relative error bound of the quantiles, between 0 and 1
+     *            exclusive
+     * @throws IllegalArgumentException
+     *             if {@code relativeAccuracy} is out of range
+     */
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0.0d && relativeAccuracy < 1.0d)) {
+            throw new IllegalArgumentException("The relative accuracy must be between 0 and 1");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1.0d + relativeAccuracy) / (1.0d - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * @return the number of values added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Add a value if it is positive and finite. Do nothing otherwise.
+     *
+     * @param value
+     *            the value to be added
+     */
+    public void add(double value) {
+        if (value > 0.0d && value < Double.POSITIVE_INFINITY) {
+            int index = (int) Math.ceil(Math.log(value) / logGamma);
+            if (count == 0L) {
+                // Start the range around the first value, the memory being
+                // reused
+                offset = index - counts.length / 2;
+            }
+            increment(index, 1L);
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+    }
+
+    /**
+     * Add every value of {@code other} to this sketch.
+     *
+     * @param other
+     *            a sketch of the same relative accuracy
+     * @throws IllegalArgumentException
+     *             if {@code other} is null or of another accuracy
+     */
+    public void merge(QuantileSketch other) {
+        if (other == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Only sketches of the same accuracy can be merged");
+        }
+        if (other.count == 0L) {
+            return;
+        }
+        if (count == 0L) {
+            counts = other.counts.clone();
+            offset = other.offset;
+            count = other.count;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+        // Highest first, so that folding, if any, happens once at the bottom
+        for (int i = other.counts.length - 1; i >= 0; i--) {
+            if (other.counts[i] != 0L) {
+                increment(other.offset + i, other.counts[i]);
+            }
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Get the value below which a fraction {@code quantile} of the values
+     * fall, within the relative accuracy of this sketch.
+     *
+     * @param quantile
+     *            between 0 and 1, 0.5 for the median
+     * @return Return {@code Optional<BigDecimal>} of the value if at least one
+     *         value is added. Return {@code Optional.empty()} otherwise
+     * @throws IllegalArgumentException
+     *             if {@code quantile} is out of range
+     */
+    public Optional<BigDecimal> getQuantile(double quantile) {
+        if (!(quantile >= 0.0d && quantile <= 1.0d)) {
+            throw new IllegalArgumentException("The quantile must be between 0 and 1");
+        }
+        if (count == 0L) {
+            return Optional.empty();
+        }
+        return Optional.of(BigDecimal.valueOf(getValueAtQuantile(quantile)).setScale(
+                BIG_DECIMAL_SCALE, ROUNDING_MODE));
+    }
+
+    /**
+     * @return a sketch with the same values, independent of this one
+     */
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(relativeAccuracy);
+        copy.counts = counts.clone();
+        copy.offset = offset;
+        copy.count = count;
+        copy.min = min;
+        copy.max = max;
+        return copy;
+    }
+
+    /**
+     * Forget every value, keeping the memory for reuse.
+     */
+    void clear() {
+        Arrays.fill(counts, 0L);
+        count = 0L;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    double getValueAtQuantile(double quantile) {
+        // The smallest value whose rank reaches the quantile, the extremes
+        // being known exactly
+        double rank = quantile * (count - 1);
+        if (rank == 0.0d) {
+            return min;
+        }
+        if (rank >= count - 1) {
+            return max;
+        }
+        long seen = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                double value = 2.0d * Math.pow(gamma, offset + i) / (gamma + 1.0d);
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    private void increment(int index, long increment) {
+        if (index < offset || index >= offset + counts.length) {
+            grow(index);
+        }
+        // Folded into the lowest bucket if below the range
+        counts[Math.max(index - offset, 0)] += increment;
+    }
+
+    // Widen the range to index, folding the lowest buckets past MAX_BUCKETS
+    private void grow(int index) {
+        int low = counts.length == 0 ? index : Math.min(index, offset);
+        int high = counts.length == 0 ? index : Math.max(index, offset + counts.length - 1);
+        if ((long) high - low >= MAX_BUCKETS) {
+            low = high - MAX_BUCKETS + 1;
+        }
+        // Some room on both sides, as prices drift both ways
+        int length = (int) Math.min(MAX_BUCKETS, Math.max(2L * (high - low + 1L), 8L));
+        int newOffset = (int) Math.max(low - (length - (high - low + 1L)) / 2L, (long) high
+                - length + 1L);
+        long[] grown = new long[length];
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0L) {
+                grown[Math.max(offset + i - newOffset, 0)] += counts[i];
+            }
+        }
+        counts = grown;
+        offset = newOffset;
+    }
+}
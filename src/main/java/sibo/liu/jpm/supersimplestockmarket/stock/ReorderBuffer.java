@@ -0,0 +1,151 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.util.Arrays;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Holds the latest transactions of a stock back until no earlier one is
+ * expected any more, so that they can be released to the history in time
+ * order.
+ * <p>
+ * The watermark is the latest transaction time seen, capped at the clock so
+ * that a transaction stamped in the future cannot hold everything else back,
+ * minus the allowed lateness. Transactions at or before the watermark are
+ * released. A transaction earlier than the last one released cannot be put in
+ * order any more; it is rejected and left to the correction path of the
+ * stock. At most {@link #MAX_SIZE} transactions are held back, the earliest
+ * ones are released beyond that whatever the watermark, so that transactions
+ * stamped in the future cannot pile up.
+ * <p>
+ * The pending transactions are shared with the published snapshots of the
+ * stock, like its hot tail: a transaction in order is appended past the
+ * published ones, a released one is left in place, and only a transaction
+ * that must move past pending ones is inserted into a copy.
+ * <p>
+ * This class is not thread safe. It is guarded by the monitor of its stock.
+ */
+final class ReorderBuffer {
+    /**
+     * Number of pending transactions beyond which the earliest are released
+     */
+    static final int MAX_SIZE = 4096;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long latenessMillis;
+    // Pending transactions sorted by time, from head to head + size
+    private Transaction[] pending = new Transaction[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+    private long maxTimeMillis = Long.MIN_VALUE;
+    private long releasedTimeMillis = Long.MIN_VALUE;
+    private long inOrderCount;
+    private long reorderedCount;
+    private long correctedCount;
+    private long maxLateMillis;
+
+    ReorderBuffer(long latenessMillis) {
+        this.latenessMillis = latenessMillis;
+    }
+
+    long getLatenessMillis() {
+        return latenessMillis;
+    }
+
+    void setLatenessMillis(long latenessMillis) {
+        this.latenessMillis = latenessMillis;
+    }
+
+    /**
+     * Add a transaction to the pending ones if it can still be put in order.
+     *
+     * @return Return {@code true} if the transaction is pending. {@code False}
+     *         if it is earlier than a transaction already released
+     */
+    boolean offer(Transaction transaction, long nowMillis) {
+        long timeMillis = transaction.getTimeMillis();
+        if (timeMillis < maxTimeMillis) {
+            maxLateMillis = Math.max(maxLateMillis, maxTimeMillis - timeMillis);
+        }
+        if (timeMillis < releasedTimeMillis) {
+            correctedCount++;
+            return false;
+        }
+        if (timeMillis < maxTimeMillis) {
+            reorderedCount++;
+        } else {
+            inOrderCount++;
+        }
+        maxTimeMillis = Math.max(maxTimeMillis, Math.min(timeMillis, nowMillis));
+        if (head + size == pending.length) {
+            compact();
+        }
+        int index = head + size;
+        if (size > 0 && pending[index - 1].getTimeMillis() > timeMillis) {
+            // Published snapshots may hold every pending slot
+            pending = Arrays.copyOf(pending, pending.length);
+            // Mildly late transactions only move past the few latest ones
+            while (index > head && pending[index - 1].getTimeMillis() > timeMillis) {
+                pending[index] = pending[index - 1];
+                index--;
+            }
+        }
+        pending[index] = transaction;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the next pending transaction at or before the watermark, or
+     *         beyond {@link #MAX_SIZE}, or {@code null} if there is none
+     */
+    Transaction poll() {
+        if (size == 0 || size <= MAX_SIZE && pending[head].getTimeMillis() > getWatermarkMillis()) {
+            return null;
+        }
+        // Left in place for the snapshots that still show it as pending
+        Transaction transaction = pending[head++];
+        size--;
+        releasedTimeMillis = transaction.getTimeMillis();
+        return transaction;
+    }
+
+    /**
+     * Get the array holding the pending transactions in time order, from
+     * {@link #getHead()} to {@link #getHead()} + {@link #size()}. Elements in
+     * that range are never written again, so the array can be published.
+     *
+     * @return the array of pending transactions
+     */
+    Transaction[] getPending() {
+        return pending;
+    }
+
+    int getHead() {
+        return head;
+    }
+
+    int size() {
+        return size;
+    }
+
+    LateArrivalStatistics getStatistics() {
+        return new LateArrivalStatistics(latenessMillis, inOrderCount, reorderedCount,
+                correctedCount, maxLateMillis);
+    }
+
+    private long getWatermarkMillis() {
+        return maxTimeMillis == Long.MIN_VALUE ? Long.MIN_VALUE : maxTimeMillis - latenessMillis;
+    }
+
+    // Move the pending transactions to the front of a new array, published
+    // snapshots keep the old one. Grows if mostly full.
+    private void compact() {
+        Transaction[] target = new Transaction[size * 2 > pending.length ? pending.length * 2
+                : pending.length];
+        System.arraycopy(pending, head, target, 0, size);
+        pending = target;
+        head = 0;
+    }
+}
@@ -0,0 +1,164 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Optional;
+
+/**
+ * A reusable, mutable holder of an optional decimal result with 8 decimal
+ * places, stored as an unscaled {@code long}. Queries that write into a
+ * caller-supplied {@code ScaledResult} do not allocate, so a caller can keep
+ * one holder per thread and reuse it for every query.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class ScaledResult {
+    /**
+     * Number of decimal places of every {@code ScaledResult}
+     */
+    public static final int SCALE = 8;
+
+    /**
+     * Returned by {@link #toUnscaled(BigDecimal)} for values that cannot be
+     * represented
+     */
+    public static final long NOT_REPRESENTABLE = Long.MIN_VALUE;
+
+    private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+
+    private long unscaledValue;
+    private boolean present;
+
+    /**
+     * @return Return {@code true} if the last query produced a result.
+     *         {@code False} otherwise
+     */
+    public boolean isPresent() {
+        return present;
+    }
+
+    /**
+     * Get the result multiplied by 10^8. Only meaningful if
+     * {@link #isPresent()} is {@code true}.
+     *
+     * @return the unscaled result
+     */
+    public long getUnscaledValue() {
+        return unscaledValue;
+    }
+
+    /**
+     * Set the result to {@code unscaledValue} / 10^8.
+     *
+     * @param unscaledValue
+     *            the result multiplied by 10^8
+     */
+    public void set(long unscaledValue) {
+        this.unscaledValue = unscaledValue;
+        this.present = true;
+    }
+
+    /**
+     * Mark the result as absent.
+     */
+    public void clear() {
+        this.unscaledValue = 0L;
+        this.present = false;
+    }
+
+    /**
+     * Set the result from an optional {@code BigDecimal}. Values that do not
+     * fit in an unscaled {@code long} are treated as absent.
+     *
+     * @param value
+     *            the result
+     * @return Return {@code true} if a result is present after the call.
+     *         {@code False} otherwise
+     */
+    public boolean set(Optional<BigDecimal> value) {
+        long unscaled = value.isPresent() ? toUnscaled(value.get()) : NOT_REPRESENTABLE;
+        if (unscaled == NOT_REPRESENTABLE) {
+            clear();
+        } else {
+            set(unscaled);
+        }
+        return present;
+    }
+
+    /**
+     * Convert the result to a {@code BigDecimal}. Allocates.
+     *
+     * @return Return {@code Optional<BigDecimal>} with trailing zeros stripped
+     *         if a result is present. Return {@code Optional.empty()}
+     *         otherwise
+     */
+    public Optional<BigDecimal> toBigDecimal() {
+        if (!present) {
+            return Optional.empty();
+        }
+        return Optional.of(BigDecimal.valueOf(unscaledValue, SCALE).stripTrailingZeros());
+    }
+
+    /**
+     * Convert {@code value} to a {@code long} unscaled by 10^8, rounding half
+     * up if it has more than 8 decimal places.
+     *
+     * @param value
+     *            the value to be converted
+     * @return Return the unscaled value, or {@link #NOT_REPRESENTABLE} if
+     *         {@code value} is null or too large
+     */
+    public static long toUnscaled(BigDecimal value) {
+        if (value == null) {
+            return NOT_REPRESENTABLE;
+        }
+        BigInteger unscaled = value.setScale(SCALE, ROUNDING_MODE).unscaledValue();
+        if (unscaled.bitLength() >= Long.SIZE) {
+            return NOT_REPRESENTABLE;
+        }
+        return unscaled.longValue();
+    }
+
+    /**
+     * Compute {@code numerator * 10^extraDigits / denominator} rounded half up,
+     * as {@code BigDecimal.divide} does, without allocating. Both operands need
+     * to be non-negative and {@code denominator} positive.
+     *
+     * @param numerator
+     *            the numerator
+     * @param denominator
+     *            the denominator
+     * @param extraDigits
+     *            number of decimal digits to shift the quotient by
+     * @param result
+     *            receives the quotient unless it overflows
+     * @return Return {@code true} if the quotient was computed. {@code False}
+     *         if it does not fit in a {@code long}, in which case
+     *         {@code result} is left unchanged
+     */
+    static boolean divideHalfUp(long numerator, long denominator, int extraDigits,
+            ScaledResult result) {
+        if (numerator < 0 || denominator <= 0 || denominator > Long.MAX_VALUE / 10) {
+            return false;
+        }
+        long quotient = numerator / denominator;
+        long remainder = numerator % denominator;
+        for (int i = 0; i < extraDigits; i++) {
+            if (quotient > (Long.MAX_VALUE - 9) / 10) {
+                return false;
+            }
+            remainder *= 10;
+            quotient = quotient * 10 + remainder / denominator;
+            remainder %= denominator;
+        }
+        if (remainder >= denominator - remainder) {
+            if (quotient == Long.MAX_VALUE) {
+                return false;
+            }
+            quotient++;
+        }
+        result.set(quotient);
+        return true;
+    }
+}
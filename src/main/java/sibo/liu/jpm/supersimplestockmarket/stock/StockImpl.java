@@ -3,25 +3,41 @@ package sibo.liu.jpm.supersimplestockmarket.stock;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 
 import sibo.liu.jpm.supersimplestockmarket.stock.interfaces.Stock;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
 import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
 
 /**
  * Abstract super class that specify the behavior and common features of a
  * stock. Implements {@code Stock} interface
+ * <p>
+ * Every modification is serialized on the stock itself and publishes a new
+ * immutable {@link StockSnapshot}, which is what the calculations read. Readers
+ * therefore never block writers and never observe a half-applied update.
+ * <p>
+ * Transactions older than the hot window of an hour are sealed in batches into
+ * compressed {@link HistorySegment}s, and only recent ones are kept as objects.
+ * <p>
+ * Transactions pass through a {@link ReorderBuffer} so that the history stays
+ * in time order when they arrive up to a configurable lateness out of order.
+ * Later ones are kept apart as corrections; every aggregate takes each
+ * transaction as it arrives, whatever its time.
  * 
  * @author sibliu
  *
  */
 public abstract class StockImpl implements Stock {
-    private static final String VALID_SYMBOL_REGULAR_EXPRESSION = "[a-zA-Z]+";
-    private static final int MAX_SYMBOL_LENGTH = 4;
+    /**
+     * Maximum number of characters of a stock symbol
+     */
+    public static final int MAX_SYMBOL_LENGTH = 4;
     protected static final int BIG_DECIMAL_SCALE = 8;
     protected static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
 
@@ -29,15 +45,68 @@ public abstract class StockImpl implements Stock {
     private static final String INVALID_SYMBOL_EXCEPTION_MESSAGE = "The symbol of a stock can have 1 to 4 characters and alphabetic characters only";
     private static final String NEGATIVE_EXCEPTION_MESSAGE = "The par value and last dividend of a stock can only be larger than or equal to zero";
     private static final String PERIOD_PER_YEAR_NEGATIVE_OR_ZERO_EXCEPTION_MESSAGE = "The dividend period of a stock can only be larger than zero";
+    private static final String LADDER_TOO_SHORT_EXCEPTION_MESSAGE = "The result array needs to be at least as long as the price array";
 
-    private String symbol;
-    private BigDecimal parValue;
-    private BigDecimal lastAnnualDividend;
-    private BigInteger periodPerYear;
-    private final List<Transaction> transactions;
+    private static final int INITIAL_TRANSACTION_CAPACITY = 16;
+    // Transactions per sealed segment
+    static final int HISTORY_SEGMENT_SIZE = 4096;
+    private static final int HOT_HISTORY_MINUTES = 60;
+    private static final HistorySegment[] NO_SEGMENTS = new HistorySegment[0];
+    private static final Transaction[] NO_TRANSACTIONS = new Transaction[0];
+    private static final long DEFAULT_LATENESS_MILLIS = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60000L;
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final int DEFAULT_ORDER_FLOW_BUCKET_SECONDS = 5;
+    private static final int DEFAULT_ORDER_FLOW_HORIZON_MINUTES = 60;
+    private static final int PRICE_SKETCH_HORIZON_MINUTES = 60;
+    private static final int PRICE_STATISTICS_HORIZON_MINUTES = 60;
+    private static final long DEFAULT_PRICE_HALF_LIFE_MILLIS = 60000L;
+    private static final long DEFAULT_VOLUME_HALF_LIFE_MILLIS = 300000L;
+    private static final double UNSCALED_PER_UNIT = Math.pow(10.0d, ScaledResult.SCALE);
+
+    private volatile String symbol;
+    private volatile BigDecimal parValue;
+    private volatile BigDecimal lastAnnualDividend;
+    private volatile BigInteger periodPerYear;
+    // Sealed, compressed history, replaced by a longer copy on every seal
+    private HistorySegment[] segments = NO_SEGMENTS;
+    private int sealedCount;
+    // Append-only hot tail of the history, in time order. Elements below
+    // transactionCount are never written again, so published snapshots can
+    // share the array.
+    private Transaction[] transactions;
+    private int transactionCount;
+    private long latenessMillis = DEFAULT_LATENESS_MILLIS;
+    // Created with the first transaction
+    private ReorderBuffer reorderBuffer;
+    // Shared with the reorder buffer, from pendingHead to pendingHead +
+    // pendingCount
+    private Transaction[] pendingTransactions;
+    private int pendingHead;
+    private int pendingCount;
+    // Transactions too late to be put in order, append-only like the hot tail
+    private Transaction[] corrections = NO_TRANSACTIONS;
+    private int correctionCount;
+    // Latest by time, whichever path it took
+    private Transaction latestTransaction;
+    private DividendTerms dividendTerms;
+    private int orderFlowBucketSeconds = DEFAULT_ORDER_FLOW_BUCKET_SECONDS;
+    private int orderFlowHorizonMinutes = DEFAULT_ORDER_FLOW_HORIZON_MINUTES;
+    // Created with the first transaction
+    private OrderFlowTracker orderFlow;
+    private TradeRangeIndex tradeRanges;
+    private PriceSketchRing priceSketches;
+    private long priceHalfLifeMillis = DEFAULT_PRICE_HALF_LIFE_MILLIS;
+    private long volumeHalfLifeMillis = DEFAULT_VOLUME_HALF_LIFE_MILLIS;
+    private PriceStatisticsTracker priceStatistics;
+    // Set once the subclass is constructed, nothing is published before
+    private boolean constructed;
+    private volatile StockSnapshot snapshot;
 
     /**
-     * Super constructor for StockImpl object
+     * Super constructor for StockImpl object. Publishes no snapshot: the
+     * constructor of every concrete subclass must end with
+     * {@link #publishFirstSnapshot()}, once its own fields are set.
      * 
      * @param symbol
      *            the symbol of the stock. Need to be 1 to 4 characters long and
@@ -57,8 +126,7 @@ public abstract class StockImpl implements Stock {
             BigInteger periodPerYear) {
         if (symbol != null && parValue != null && lastAnnualDividend != null
                 && periodPerYear != null) {
-            if (symbol.isEmpty() || symbol.length() > MAX_SYMBOL_LENGTH
-                    || !symbol.matches(VALID_SYMBOL_REGULAR_EXPRESSION)) {
+            if (!isValidSymbol(symbol)) {
                 throw new IllegalArgumentException(INVALID_SYMBOL_EXCEPTION_MESSAGE);
             }
             if (parValue.signum() == -1 || lastAnnualDividend.signum() == -1) {
@@ -68,11 +136,11 @@ public abstract class StockImpl implements Stock {
                 throw new IllegalArgumentException(
                         PERIOD_PER_YEAR_NEGATIVE_OR_ZERO_EXCEPTION_MESSAGE);
             }
+            this.transactions = new Transaction[INITIAL_TRANSACTION_CAPACITY];
             setSymbol(symbol);
             setParValue(parValue);
             setLastAnnualDividend(lastAnnualDividend);
             setPeriodPerYear(periodPerYear);
-            this.transactions = new ArrayList<Transaction>();
         } else {
             throw new IllegalArgumentException(NULL_INPUT_EXCEPTION_MESSAGE);
         }
@@ -88,11 +156,38 @@ public abstract class StockImpl implements Stock {
      * 
      * @param symbol
      */
-    public void setSymbol(String symbol) {
-        if (!symbol.isEmpty() && symbol.length() <= MAX_SYMBOL_LENGTH
-                && symbol.matches(VALID_SYMBOL_REGULAR_EXPRESSION)) {
+    public synchronized void setSymbol(String symbol) {
+        if (isValidSymbol(symbol)) {
             this.symbol = symbol;
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * Check if {@code symbol} is a valid stock symbol: not null, 1 to 4
+     * characters long and made of ASCII letters only. Does not allocate.
+     * 
+     * @param symbol
+     *            the symbol to be checked
+     * @return Return {@code true} if {@code symbol} is valid. {@code False}
+     *         otherwise
+     */
+    public static boolean isValidSymbol(String symbol) {
+        if (symbol == null) {
+            return false;
+        }
+        int length = symbol.length();
+        if (length == 0 || length > MAX_SYMBOL_LENGTH) {
+            return false;
         }
+        for (int i = 0; i < length; i++) {
+            // Folding to upper case maps exactly a-z and A-Z onto A-Z
+            int upper = symbol.charAt(i) & ~0x20;
+            if (upper < 'A' || upper > 'Z') {
+                return false;
+            }
+        }
+        return true;
     }
 
     public BigDecimal getParValue() {
@@ -108,13 +203,14 @@ public abstract class StockImpl implements Stock {
      * 
      * @param parValue
      */
-    public void setParValue(BigDecimal parValue) {
+    public synchronized void setParValue(BigDecimal parValue) {
         if (parValue != null && parValue.signum() != -1) {
             if (parValue.scale() > BIG_DECIMAL_SCALE) {
                 this.parValue = parValue.setScale(BIG_DECIMAL_SCALE, ROUNDING_MODE);
             } else {
                 this.parValue = parValue;
             }
+            publishSnapshot();
         }
     }
 
@@ -131,7 +227,7 @@ public abstract class StockImpl implements Stock {
      * 
      * @param lastAnnualDividend
      */
-    public void setLastAnnualDividend(BigDecimal lastAnnualDividend) {
+    public synchronized void setLastAnnualDividend(BigDecimal lastAnnualDividend) {
         if (lastAnnualDividend != null && lastAnnualDividend.signum() != -1) {
             if (lastAnnualDividend.scale() > BIG_DECIMAL_SCALE) {
                 this.lastAnnualDividend = lastAnnualDividend.setScale(BIG_DECIMAL_SCALE,
@@ -139,6 +235,7 @@ public abstract class StockImpl implements Stock {
             } else {
                 this.lastAnnualDividend = lastAnnualDividend;
             }
+            publishSnapshot();
         }
     }
 
@@ -152,14 +249,22 @@ public abstract class StockImpl implements Stock {
      * 
      * @param parValue
      */
-    public void setPeriodPerYear(BigInteger periodPerYear) {
+    public synchronized void setPeriodPerYear(BigInteger periodPerYear) {
         if (periodPerYear != null && periodPerYear.signum() > 0) {
             this.periodPerYear = periodPerYear;
+            publishSnapshot();
         }
     }
 
+    /**
+     * Get the transactions recorded so far.
+     * 
+     * @return an unmodifiable {@code List<Transaction>} of the transactions in
+     *         the current snapshot. Transactions added later are not visible
+     *         through the returned list
+     */
     public List<Transaction> getTransactions() {
-        return transactions;
+        return getSnapshot().getTransactions();
     }
 
     /**
@@ -168,28 +273,372 @@ public abstract class StockImpl implements Stock {
      * 
      * @param transaction
      */
-    public void addTransaction(Transaction transaction) {
+    public synchronized void addTransaction(Transaction transaction) {
         if (transaction != null) {
-            transactions.add(transaction);
+            if (reorderBuffer == null) {
+                reorderBuffer = new ReorderBuffer(latenessMillis);
+                tradeRanges = new TradeRangeIndex();
+            }
+            if (reorderBuffer.offer(transaction, DateTimeUtils.currentTimeMillis())) {
+                releasePendingTransactions();
+            } else {
+                if (correctionCount == corrections.length) {
+                    corrections = Arrays.copyOf(corrections, Math.max(correctionCount * 2,
+                            INITIAL_TRANSACTION_CAPACITY));
+                }
+                corrections[correctionCount++] = transaction;
+                tradeRanges.addCorrection(transaction);
+            }
+            if (latestTransaction == null
+                    || transaction.getTimeMillis() >= latestTransaction.getTimeMillis()) {
+                latestTransaction = transaction;
+            }
+            if (orderFlow == null) {
+                orderFlow = newOrderFlowTracker();
+            }
+            orderFlow.add(transaction);
+            if (priceSketches == null) {
+                // One bucket a minute, plus the partly elapsed current one
+                priceSketches = new PriceSketchRing(MILLIS_PER_MINUTE,
+                        PRICE_SKETCH_HORIZON_MINUTES + 1);
+            }
+            priceSketches.add(transaction);
+            if (priceStatistics == null) {
+                priceStatistics = new PriceStatisticsTracker(MILLIS_PER_MINUTE,
+                        PRICE_STATISTICS_HORIZON_MINUTES + 1, priceHalfLifeMillis,
+                        volumeHalfLifeMillis);
+            }
+            priceStatistics.add(transaction);
+            sealColdHistory();
+            publishSnapshotOfHistory();
+        }
+    }
+
+    // Move the transactions the reorder buffer lets go to the hot tail
+    private void releasePendingTransactions() {
+        for (Transaction released = reorderBuffer.poll(); released != null; released = reorderBuffer
+                .poll()) {
+            if (transactionCount == transactions.length) {
+                // Copy into a larger array, published snapshots keep the old one
+                transactions = Arrays.copyOf(transactions, transactionCount * 2);
+            }
+            transactions[transactionCount++] = released;
+            tradeRanges.addReleased(released);
+        }
+        pendingTransactions = reorderBuffer.getPending();
+        pendingHead = reorderBuffer.getHead();
+        pendingCount = reorderBuffer.size();
+    }
+
+    // Seal the oldest hot transactions into a compressed segment once they
+    // are all older than the hot window. Costs O(1) except when sealing.
+    private void sealColdHistory() {
+        while (transactionCount >= HISTORY_SEGMENT_SIZE) {
+            // In time order, so the last one of the candidates is the latest
+            if (transactions[HISTORY_SEGMENT_SIZE - 1].getTimeMillis() >= DateTimeUtils
+                    .currentTimeMillis() - HOT_HISTORY_MINUTES * MILLIS_PER_MINUTE) {
+                return;
+            }
+            segments = Arrays.copyOf(segments, segments.length + 1);
+            segments[segments.length - 1] = HistorySegment.seal(transactions, 0,
+                    HISTORY_SEGMENT_SIZE);
+            tradeRanges.addSealed(segments[segments.length - 1]);
+            sealedCount += HISTORY_SEGMENT_SIZE;
+            // Copy into a new array, published snapshots keep the old one
+            Transaction[] hot = new Transaction[transactions.length];
+            transactionCount -= HISTORY_SEGMENT_SIZE;
+            System.arraycopy(transactions, HISTORY_SEGMENT_SIZE, hot, 0, transactionCount);
+            transactions = hot;
+        }
+    }
+
+    /**
+     * Set how late, in milliseconds behind the latest transaction, a
+     * transaction can arrive and still be put in time order in the history,
+     * if {@code latenessMillis} is zero or positive. Do nothing otherwise.
+     * Later transactions are recorded as corrections.
+     * 
+     * @param latenessMillis
+     *            the allowed lateness in milliseconds
+     */
+    public synchronized void setLatenessMillis(long latenessMillis) {
+        if (latenessMillis >= 0L) {
+            this.latenessMillis = latenessMillis;
+            if (reorderBuffer != null) {
+                reorderBuffer.setLatenessMillis(latenessMillis);
+                releasePendingTransactions();
+                sealColdHistory();
+                publishSnapshotOfHistory();
+            }
+        }
+    }
+
+    /**
+     * Get how late the transactions of this stock have arrived so far.
+     * 
+     * @return the current {@code LateArrivalStatistics}
+     */
+    public synchronized LateArrivalStatistics getLateArrivalStatistics() {
+        if (reorderBuffer == null) {
+            return new LateArrivalStatistics(latenessMillis, 0L, 0L, 0L, 0L);
+        }
+        return reorderBuffer.getStatistics();
+    }
+
+    /**
+     * Set how fast the moving averages of {@link #getPriceStatistics(int)}
+     * forget, if both inputs are positive. Do nothing otherwise. A transaction
+     * weighs half as much in an average every half-life after it.
+     * 
+     * @param priceHalfLifeMillis
+     *            half-life of the moving average of the price, in milliseconds
+     * @param volumeHalfLifeMillis
+     *            half-life of the moving average of the quantity, in
+     *            milliseconds
+     */
+    public synchronized void setHalfLives(long priceHalfLifeMillis, long volumeHalfLifeMillis) {
+        if (priceHalfLifeMillis > 0L && volumeHalfLifeMillis > 0L) {
+            this.priceHalfLifeMillis = priceHalfLifeMillis;
+            this.volumeHalfLifeMillis = volumeHalfLifeMillis;
+            if (priceStatistics != null) {
+                priceStatistics.setHalfLives(priceHalfLifeMillis, volumeHalfLifeMillis);
+            }
+        }
+    }
+
+    /**
+     * Set the resolution of the buy/sell totals behind
+     * {@link #getOrderFlow(int)} if both inputs are positive. Do nothing
+     * otherwise. Windows are resolved to whole buckets of
+     * {@code bucketSeconds}; windows longer than {@code horizonMinutes} are
+     * computed from the transaction history instead.
+     * 
+     * @param bucketSeconds
+     *            width of a bucket in seconds
+     * @param horizonMinutes
+     *            longest window kept in buckets, in minutes
+     */
+    public synchronized void setOrderFlowResolution(int bucketSeconds, int horizonMinutes) {
+        if (bucketSeconds > 0 && horizonMinutes > 0) {
+            orderFlowBucketSeconds = bucketSeconds;
+            orderFlowHorizonMinutes = horizonMinutes;
+            if (orderFlow != null) {
+                // Rebuild from the history at the new resolution
+                orderFlow = newOrderFlowTracker();
+                for (Transaction transaction : getSnapshot().getTransactions()) {
+                    orderFlow.add(transaction);
+                }
+            }
+        }
+    }
+
+    private OrderFlowTracker newOrderFlowTracker() {
+        long bucketMillis = orderFlowBucketSeconds * MILLIS_PER_SECOND;
+        long horizonMillis = orderFlowHorizonMinutes * MILLIS_PER_MINUTE;
+        // One more bucket than the horizon for the partly elapsed current one
+        long bucketCount = (horizonMillis + bucketMillis - 1) / bucketMillis + 1;
+        return new OrderFlowTracker(bucketMillis, (int) Math.min(bucketCount,
+                Integer.MAX_VALUE / OrderFlowTracker.TOTAL_COUNT));
+    }
+
+    /**
+     * Get the latest published point-in-time view of this stock. Never blocks.
+     * 
+     * @return the current {@code StockSnapshot}
+     */
+    public StockSnapshot getSnapshot() {
+        StockSnapshot current = snapshot;
+        if (current == null) {
+            // A subclass that did not publish its first snapshot
+            publishFirstSnapshot();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    /**
+     * Publish the first {@code StockSnapshot}. Must be called at the end of
+     * the constructor of every concrete subclass, so that the first snapshot
+     * is not built from a half-constructed stock. Modifications made before
+     * publish nothing.
+     */
+    protected final synchronized void publishFirstSnapshot() {
+        constructed = true;
+        if (snapshot == null) {
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * Publish a new {@code StockSnapshot} reflecting the current state. Must be
+     * called by every modification while holding the monitor of this stock.
+     * Does nothing before {@link #publishFirstSnapshot()}.
+     */
+    protected final void publishSnapshot() {
+        if (!constructed) {
+            return;
+        }
+        dividendTerms = null;
+        publishSnapshotOfHistory();
+    }
+
+    // Publish a new snapshot after a change that does not affect the dividend
+    private void publishSnapshotOfHistory() {
+        StockSnapshot previous = snapshot;
+        long version = previous == null ? 1L : previous.getVersion() + 1L;
+        BigDecimal dividend = getDividend();
+        if (dividendTerms == null) {
+            dividendTerms = new DividendTerms(this, parValue, lastAnnualDividend, periodPerYear,
+                    dividend);
+        }
+        snapshot = new StockSnapshot(version, symbol, parValue, lastAnnualDividend,
+                periodPerYear, dividend, segments, sealedCount, transactions, transactionCount,
+                pendingTransactions, pendingHead, pendingCount, corrections, correctionCount,
+                latestTransaction, dividendTerms);
+    }
+
+    /**
+     * Compute the annual dividend that is divided by the price to obtain the
+     * dividend yield, from the given parameters of this stock.
+     * 
+     * @return the annual dividend, or {@code null} if any parameter it depends
+     *         on is null
+     */
+    protected abstract BigDecimal getYieldDividend(BigDecimal parValue,
+            BigDecimal lastAnnualDividend, BigInteger periodPerYear, BigDecimal dividend);
+
+    /**
+     * Compute the annual dividend that divides the price to obtain the P/E
+     * ratio, from the given parameters of this stock.
+     * 
+     * @return the annual dividend, or {@code null} if any parameter it depends
+     *         on is null
+     */
+    protected abstract BigDecimal getPERatioDividend(BigDecimal parValue,
+            BigDecimal lastAnnualDividend, BigInteger periodPerYear, BigDecimal dividend);
+
+    @Override
+    public Optional<BigDecimal> getDividendYield(BigDecimal price) {
+        return Optional.ofNullable(getDividendYield(getSnapshot().getDividendTerms(), price));
+    }
+
+    @Override
+    public Optional<BigDecimal> getPERatio(BigDecimal price) {
+        return Optional.ofNullable(getPERatio(getSnapshot().getDividendTerms(), price));
+    }
+
+    @Override
+    public void getDividendYields(BigDecimal[] prices, BigDecimal[] yields) {
+        checkLadder(prices, yields);
+        DividendTerms terms = getSnapshot().getDividendTerms();
+        for (int i = 0; i < prices.length; i++) {
+            yields[i] = getDividendYield(terms, prices[i]);
+        }
+    }
+
+    @Override
+    public void getPERatios(BigDecimal[] prices, BigDecimal[] peRatios) {
+        checkLadder(prices, peRatios);
+        DividendTerms terms = getSnapshot().getDividendTerms();
+        for (int i = 0; i < prices.length; i++) {
+            peRatios[i] = getPERatio(terms, prices[i]);
+        }
+    }
+
+    @Override
+    public void getDividendYields(double[] prices, double[] yields) {
+        checkLadder(prices, yields);
+        double yieldDividend = getSnapshot().getDividendTerms().getYieldDividendAsDouble();
+        // Keep the body a plain select so that the JIT can vectorize the loop
+        for (int i = 0; i < prices.length; i++) {
+            double price = prices[i];
+            yields[i] = price > 0.0 ? yieldDividend / price : Double.NaN;
         }
     }
 
+    @Override
+    public void getPERatios(double[] prices, double[] peRatios) {
+        checkLadder(prices, peRatios);
+        double peRatioDividend = getSnapshot().getDividendTerms().getPERatioDividendAsDouble();
+        if (!(peRatioDividend > 0.0)) {
+            Arrays.fill(peRatios, 0, prices.length, Double.NaN);
+            return;
+        }
+        for (int i = 0; i < prices.length; i++) {
+            peRatios[i] = prices[i] / peRatioDividend;
+        }
+    }
+
+    // Price ladders need an output slot for every price
+    private static void checkLadder(BigDecimal[] prices, BigDecimal[] results) {
+        if (prices == null || results == null) {
+            throw new IllegalArgumentException(NULL_INPUT_EXCEPTION_MESSAGE);
+        }
+        checkLadderLength(prices.length, results.length);
+    }
+
+    private static void checkLadder(double[] prices, double[] results) {
+        if (prices == null || results == null) {
+            throw new IllegalArgumentException(NULL_INPUT_EXCEPTION_MESSAGE);
+        }
+        checkLadderLength(prices.length, results.length);
+    }
+
+    private static void checkLadderLength(int priceCount, int resultCount) {
+        if (resultCount < priceCount) {
+            throw new IllegalArgumentException(LADDER_TOO_SHORT_EXCEPTION_MESSAGE);
+        }
+    }
+
+    private static BigDecimal getDividendYield(DividendTerms terms, BigDecimal price) {
+        if (price != null && price.signum() > 0) {
+            return terms.getYieldDividend().divide(price, BIG_DECIMAL_SCALE, ROUNDING_MODE)
+                    .stripTrailingZeros();
+        }
+        return null;
+    }
+
+    private static BigDecimal getPERatio(DividendTerms terms, BigDecimal price) {
+        if (price != null) {
+            BigDecimal peRatioDividend = terms.getPERatioDividend();
+            if (peRatioDividend.signum() > 0) {
+                return price.divide(peRatioDividend, BIG_DECIMAL_SCALE, ROUNDING_MODE)
+                        .stripTrailingZeros();
+            }
+        }
+        return null;
+    }
+
     @Override
     public Optional<BigDecimal> getVolumeWeightedStockPrice(int pastMinutes) {
         DateTime current = DateTime.now();
         DateTime pastTime = current.minusMinutes(pastMinutes);
-        BigDecimal totalPriceQuantity = BigDecimal.ZERO;
-        BigDecimal totalQuantity = BigDecimal.ZERO;
-        for (Transaction transaction : transactions) {
-            if (transaction.getTimeStamp().isBefore(current)
-                    && transaction.getTimeStamp().isAfter(pastTime)) {
-                BigDecimal quantity = new BigDecimal(transaction.getQuantity());
-                totalPriceQuantity = totalPriceQuantity.add(
-                        transaction.getPrice().multiply(quantity)).setScale(BIG_DECIMAL_SCALE,
-                        ROUNDING_MODE);
-                totalQuantity = totalQuantity.add(quantity);
+        StockSnapshot snapshot = getSnapshot();
+        BigDecimal[] totals = new BigDecimal[] { BigDecimal.ZERO, BigDecimal.ZERO };
+        // Only decode the sealed segments that overlap the window
+        for (HistorySegment segment : snapshot.getSegments()) {
+            if (segment.getMinTimeMillis() < current.getMillis()
+                    && segment.getMaxTimeMillis() > pastTime.getMillis()) {
+                for (Transaction transaction : segment.decode()) {
+                    addVolumeWeighted(transaction, current, pastTime, totals);
+                }
             }
         }
+        Transaction[] hot = snapshot.getHotTransactions();
+        for (int i = 0; i < snapshot.getHotTransactionCount(); i++) {
+            addVolumeWeighted(hot[i], current, pastTime, totals);
+        }
+        Transaction[] pending = snapshot.getPendingTransactions();
+        for (int i = 0; i < snapshot.getPendingCount(); i++) {
+            addVolumeWeighted(pending[snapshot.getPendingHead() + i], current, pastTime,
+                    totals);
+        }
+        Transaction[] corrections = snapshot.getCorrections();
+        for (int i = 0; i < snapshot.getCorrectionCount(); i++) {
+            addVolumeWeighted(corrections[i], current, pastTime, totals);
+        }
+        BigDecimal totalPriceQuantity = totals[0];
+        BigDecimal totalQuantity = totals[1];
         if (totalPriceQuantity.signum() != 0 && totalQuantity.signum() != 0) {
             return Optional.of(totalPriceQuantity.divide(totalQuantity, BIG_DECIMAL_SCALE,
                     ROUNDING_MODE));
@@ -197,6 +646,349 @@ public abstract class StockImpl implements Stock {
         return Optional.empty();
     }
 
+    // Add price times quantity and quantity to totals if in the window
+    private static void addVolumeWeighted(Transaction transaction, DateTime current,
+            DateTime pastTime, BigDecimal[] totals) {
+        if (transaction.getTimeStamp().isBefore(current)
+                && transaction.getTimeStamp().isAfter(pastTime)) {
+            BigDecimal quantity = new BigDecimal(transaction.getQuantity());
+            totals[0] = totals[0].add(transaction.getPrice().multiply(quantity)).setScale(
+                    BIG_DECIMAL_SCALE, ROUNDING_MODE);
+            totals[1] = totals[1].add(quantity);
+        }
+    }
+
+    @Override
+    public boolean getVolumeWeightedStockPrice(int pastMinutes, ScaledResult result) {
+        StockSnapshot current = getSnapshot();
+        long now = DateTimeUtils.currentTimeMillis();
+        long pastTime = now - pastMinutes * MILLIS_PER_MINUTE;
+        long totalPriceQuantity = 0L;
+        long totalQuantity = 0L;
+        // Sealed segments only matter for windows longer than the hot window
+        for (HistorySegment segment : current.getSegments()) {
+            if (segment.getMinTimeMillis() < now && segment.getMaxTimeMillis() > pastTime) {
+                HistorySegment.Cursor cursor = segment.cursor();
+                while (cursor.next()) {
+                    long timeMillis = cursor.getTimeMillis();
+                    if (timeMillis < now && timeMillis > pastTime) {
+                        long quantity = cursor.getQuantity();
+                        long unscaledPrice = cursor.getUnscaledPrice();
+                        if (!cursor.isPrimitive()
+                                || unscaledPrice > (Long.MAX_VALUE - totalPriceQuantity)
+                                        / quantity
+                                || totalQuantity > Long.MAX_VALUE - quantity) {
+                            return result.set(getVolumeWeightedStockPrice(pastMinutes));
+                        }
+                        totalPriceQuantity += unscaledPrice * quantity;
+                        totalQuantity += quantity;
+                    }
+                }
+            }
+        }
+        // The hot tail is in time order, so start at its first transaction in
+        // the window, then go on with the pending ones and the corrections
+        Transaction[] hot = current.getHotTransactions();
+        int start = firstAfter(hot, current.getHotTransactionCount(), pastTime);
+        int hotCount = current.getHotTransactionCount() - start;
+        Transaction[] pending = current.getPendingTransactions();
+        int pendingHead = current.getPendingHead();
+        int pendingCount = current.getPendingCount();
+        Transaction[] corrections = current.getCorrections();
+        int count = hotCount + pendingCount + current.getCorrectionCount();
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = i < hotCount ? hot[start + i]
+                    : i - hotCount < pendingCount ? pending[pendingHead + i - hotCount]
+                            : corrections[i - hotCount - pendingCount];
+            long timeMillis = transaction.getTimeMillis();
+            if (timeMillis < now && timeMillis > pastTime) {
+                if (!transaction.isPrimitive()) {
+                    return result.set(getVolumeWeightedStockPrice(pastMinutes));
+                }
+                long quantity = transaction.getQuantityAsLong();
+                long unscaledPrice = transaction.getUnscaledPrice();
+                if (unscaledPrice > (Long.MAX_VALUE - totalPriceQuantity) / quantity
+                        || totalQuantity > Long.MAX_VALUE - quantity) {
+                    // Overflow, rare enough to fall back to the exact path
+                    return result.set(getVolumeWeightedStockPrice(pastMinutes));
+                }
+                totalPriceQuantity += unscaledPrice * quantity;
+                totalQuantity += quantity;
+            }
+        }
+        if (totalPriceQuantity == 0L || totalQuantity == 0L) {
+            result.clear();
+            return false;
+        }
+        if (!ScaledResult.divideHalfUp(totalPriceQuantity, totalQuantity, 0, result)) {
+            return result.set(getVolumeWeightedStockPrice(pastMinutes));
+        }
+        return true;
+    }
+
+    @Override
+    public double getVolumeWeightedStockPriceAsDouble(int pastMinutes) {
+        StockSnapshot current = getSnapshot();
+        long now = DateTimeUtils.currentTimeMillis();
+        long pastTime = now - pastMinutes * MILLIS_PER_MINUTE;
+        double totalPriceQuantity = 0.0d;
+        double totalQuantity = 0.0d;
+        for (HistorySegment segment : current.getSegments()) {
+            if (segment.getMinTimeMillis() < now && segment.getMaxTimeMillis() > pastTime) {
+                HistorySegment.Cursor cursor = segment.cursor();
+                while (cursor.next()) {
+                    long timeMillis = cursor.getTimeMillis();
+                    if (timeMillis < now && timeMillis > pastTime) {
+                        if (!cursor.isPrimitive()) {
+                            return toDouble(getVolumeWeightedStockPrice(pastMinutes));
+                        }
+                        double quantity = cursor.getQuantity();
+                        totalPriceQuantity += cursor.getUnscaledPrice() / UNSCALED_PER_UNIT
+                                * quantity;
+                        totalQuantity += quantity;
+                    }
+                }
+            }
+        }
+        Transaction[] hot = current.getHotTransactions();
+        int start = firstAfter(hot, current.getHotTransactionCount(), pastTime);
+        int hotCount = current.getHotTransactionCount() - start;
+        Transaction[] pending = current.getPendingTransactions();
+        int pendingHead = current.getPendingHead();
+        int pendingCount = current.getPendingCount();
+        Transaction[] corrections = current.getCorrections();
+        int count = hotCount + pendingCount + current.getCorrectionCount();
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = i < hotCount ? hot[start + i]
+                    : i - hotCount < pendingCount ? pending[pendingHead + i - hotCount]
+                            : corrections[i - hotCount - pendingCount];
+            long timeMillis = transaction.getTimeMillis();
+            if (timeMillis < now && timeMillis > pastTime) {
+                double quantity = PriceStatisticsTracker.quantityOf(transaction);
+                totalPriceQuantity += PriceStatisticsTracker.priceOf(transaction) * quantity;
+                totalQuantity += quantity;
+            }
+        }
+        if (totalPriceQuantity == 0.0d || totalQuantity == 0.0d) {
+            return Double.NaN;
+        }
+        return totalPriceQuantity / totalQuantity;
+    }
+
+    @Override
+    public double getDividendYieldAsDouble(double price) {
+        if (price > 0.0d) {
+            return getSnapshot().getDividendTerms().getYieldDividendAsDouble() / price;
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    public double getPERatioAsDouble(double price) {
+        double peRatioDividend = getSnapshot().getDividendTerms().getPERatioDividendAsDouble();
+        if (peRatioDividend > 0.0d && !Double.isNaN(price)) {
+            return price / peRatioDividend;
+        }
+        return Double.NaN;
+    }
+
+    private static double toDouble(Optional<BigDecimal> value) {
+        return value.isPresent() ? value.get().doubleValue() : Double.NaN;
+    }
+
+    // Index of the first of the count transactions in time order that is
+    // after timeMillis
+    private static int firstAfter(Transaction[] transactions, int count, long timeMillis) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (transactions[middle].getTimeMillis() <= timeMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public OrderFlow getOrderFlow(int pastMinutes) {
+        long now = DateTimeUtils.currentTimeMillis();
+        long windowMillis = pastMinutes * MILLIS_PER_MINUTE;
+        long[] totals = new long[OrderFlowTracker.TOTAL_COUNT];
+        boolean summed;
+        synchronized (this) {
+            summed = orderFlow == null || orderFlow.sum(now, windowMillis, totals);
+        }
+        if (summed) {
+            return new OrderFlow(BigInteger.valueOf(totals[OrderFlowTracker.BUY_QUANTITY]),
+                    BigDecimal.valueOf(totals[OrderFlowTracker.BUY_NOTIONAL],
+                            ScaledResult.SCALE),
+                    BigInteger.valueOf(totals[OrderFlowTracker.SELL_QUANTITY]),
+                    BigDecimal.valueOf(totals[OrderFlowTracker.SELL_NOTIONAL],
+                            ScaledResult.SCALE));
+        }
+        // Too long a window or too large a value for the buckets
+        BigInteger buyVolume = BigInteger.ZERO;
+        BigInteger sellVolume = BigInteger.ZERO;
+        BigDecimal buyNotional = BigDecimal.ZERO;
+        BigDecimal sellNotional = BigDecimal.ZERO;
+        for (Transaction transaction : getSnapshot().getTransactions()) {
+            long timeMillis = transaction.getTimeMillis();
+            if (timeMillis < now && timeMillis > now - windowMillis) {
+                BigDecimal notional = transaction.getPrice().multiply(
+                        new BigDecimal(transaction.getQuantity()));
+                if (transaction.getIndicator() == BuySellIndicator.BUY) {
+                    buyVolume = buyVolume.add(transaction.getQuantity());
+                    buyNotional = buyNotional.add(notional);
+                } else {
+                    sellVolume = sellVolume.add(transaction.getQuantity());
+                    sellNotional = sellNotional.add(notional);
+                }
+            }
+        }
+        return new OrderFlow(buyVolume, buyNotional, sellVolume, sellNotional);
+    }
+
+    @Override
+    public PriceStatistics getPriceStatistics(int pastMinutes) {
+        long now = DateTimeUtils.currentTimeMillis();
+        long windowMillis = pastMinutes * MILLIS_PER_MINUTE;
+        double[] returns = new double[PriceStatisticsTracker.TOTAL_COUNT];
+        double ewmaPrice;
+        double ewmaVolume;
+        List<Transaction> history;
+        synchronized (this) {
+            if (priceStatistics == null) {
+                return new PriceStatistics(0L, 0.0d, Double.NaN, Double.NaN);
+            }
+            ewmaPrice = priceStatistics.getEwmaPrice();
+            ewmaVolume = priceStatistics.getEwmaVolume();
+            if (priceStatistics.merge(now, windowMillis, returns)) {
+                return new PriceStatistics((long) returns[PriceStatisticsTracker.COUNT],
+                        returns[PriceStatisticsTracker.SQUARED_DEVIATIONS], ewmaPrice,
+                        ewmaVolume);
+            }
+            history = getSnapshot().getTransactions();
+        }
+        // Longer than the ring, the returns between consecutive transactions
+        // of the history that end in the window
+        double lastPrice = Double.NaN;
+        for (Transaction transaction : history) {
+            double price = PriceStatisticsTracker.priceOf(transaction);
+            if (!(price > 0.0d) || !(PriceStatisticsTracker.quantityOf(transaction) > 0.0d)) {
+                continue;
+            }
+            long timeMillis = transaction.getTimeMillis();
+            if (lastPrice > 0.0d && timeMillis < now && timeMillis > now - windowMillis) {
+                PriceStatisticsTracker.addValue(returns, 0, Math.log(price / lastPrice));
+            }
+            lastPrice = price;
+        }
+        return new PriceStatistics((long) returns[PriceStatisticsTracker.COUNT],
+                returns[PriceStatisticsTracker.SQUARED_DEVIATIONS], ewmaPrice, ewmaVolume);
+    }
+
+    @Override
+    public QuantileSketch getPriceSketch(int pastMinutes) {
+        long now = DateTimeUtils.currentTimeMillis();
+        long windowMillis = pastMinutes * MILLIS_PER_MINUTE;
+        QuantileSketch sketch = new QuantileSketch();
+        List<Transaction> history;
+        synchronized (this) {
+            if (priceSketches == null || priceSketches.merge(now, windowMillis, sketch)) {
+                return sketch;
+            }
+            history = getSnapshot().getTransactions();
+        }
+        // Longer than the ring
+        for (Transaction transaction : history) {
+            long timeMillis = transaction.getTimeMillis();
+            if (timeMillis < now && timeMillis > now - windowMillis) {
+                sketch.add(PriceSketchRing.priceOf(transaction));
+            }
+        }
+        return sketch;
+    }
+
+    @Override
+    public TradeSummary getTradeSummary(DateTime from, DateTime to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException(NULL_INPUT_EXCEPTION_MESSAGE);
+        }
+        long fromMillis = from.getMillis();
+        long toMillis = to.getMillis();
+        long[] totals = new long[TradeRangeIndex.TOTAL_COUNT];
+        List<Transaction> history;
+        synchronized (this) {
+            if (tradeRanges == null || tradeRanges.sum(fromMillis, toMillis, pendingTransactions,
+                    pendingHead, pendingCount, totals)) {
+                // Unsigned low 64 bits, then the high ones above them
+                long low = totals[TradeRangeIndex.NOTIONAL_LOW];
+                BigInteger notional = BigInteger.valueOf(low & Long.MAX_VALUE);
+                if (low < 0L) {
+                    notional = notional.setBit(Long.SIZE - 1);
+                }
+                long high = totals[TradeRangeIndex.NOTIONAL_HIGH];
+                if (high != 0L) {
+                    notional = notional.add(BigInteger.valueOf(high).shiftLeft(Long.SIZE));
+                }
+                return new TradeSummary(totals[TradeRangeIndex.TRADE_COUNT], BigInteger
+                        .valueOf(totals[TradeRangeIndex.QUANTITY]), new BigDecimal(notional,
+                        ScaledResult.SCALE));
+            }
+            history = getSnapshot().getTransactions();
+        }
+        // The range holds a transaction too large or too precise for the index
+        long tradeCount = 0L;
+        BigInteger volume = BigInteger.ZERO;
+        BigDecimal notional = BigDecimal.ZERO;
+        for (Transaction transaction : history) {
+            long timeMillis = transaction.getTimeMillis();
+            if (timeMillis >= fromMillis && timeMillis < toMillis) {
+                tradeCount++;
+                volume = volume.add(transaction.getQuantity());
+                notional = notional.add(transaction.getPrice().multiply(
+                        new BigDecimal(transaction.getQuantity())));
+            }
+        }
+        return new TradeSummary(tradeCount, volume, notional);
+    }
+
+    @Override
+    public boolean getDividendYield(long unscaledPrice, ScaledResult result) {
+        if (unscaledPrice <= 0L) {
+            result.clear();
+            return false;
+        }
+        long yieldDividend = getSnapshot().getUnscaledYieldDividend();
+        if (yieldDividend != ScaledResult.NOT_REPRESENTABLE
+                && ScaledResult.divideHalfUp(yieldDividend, unscaledPrice, ScaledResult.SCALE,
+                        result)) {
+            return true;
+        }
+        // Too large for the primitive path
+        return result.set(getDividendYield(BigDecimal.valueOf(unscaledPrice,
+                ScaledResult.SCALE)));
+    }
+
+    @Override
+    public boolean getPERatio(long unscaledPrice, ScaledResult result) {
+        long peRatioDividend = getSnapshot().getUnscaledPERatioDividend();
+        if (peRatioDividend == 0L) {
+            result.clear();
+            return false;
+        }
+        if (peRatioDividend != ScaledResult.NOT_REPRESENTABLE && unscaledPrice >= 0L
+                && ScaledResult.divideHalfUp(unscaledPrice, peRatioDividend,
+                        ScaledResult.SCALE, result)) {
+            return true;
+        }
+        // Negative or too large for the primitive path
+        return result.set(getPERatio(BigDecimal.valueOf(unscaledPrice, ScaledResult.SCALE)));
+    }
+
     public abstract BigDecimal getDividend();
 
     /**
@@ -205,6 +997,9 @@ public abstract class StockImpl implements Stock {
      * <p>
      * <b>Note:</b>The scale will be converted to 8 decimal point round half up
      * if fraction part is too large.
+     * <p>
+     * Implementations must be {@code synchronized} and call
+     * {@link #publishSnapshot()} once the dividend is changed.
      */
     public abstract void setDividend(BigDecimal dividend);
 }
\ No newline at end of file
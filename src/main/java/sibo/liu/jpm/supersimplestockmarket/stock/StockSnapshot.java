@@ -0,0 +1,323 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.List;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * An immutable, versioned point-in-time view of a {@code StockImpl} object.
+ * <p>
+ * A new snapshot is published by the stock every time one of its parameters
+ * changes or a transaction is added, so a reader that holds a snapshot always
+ * sees the parameters and the prefix of the transaction history as they were
+ * at one single moment, without taking any lock.
+ * <p>
+ * The history is made of sealed, compressed {@link HistorySegment}s followed
+ * by a hot tail of {@code Transaction} objects, both in time order, then the
+ * transactions still pending in the reorder buffer and the corrections that
+ * arrived too late to be put in order. All of them are shared with the
+ * other snapshots of the same stock.
+ */
+public final class StockSnapshot {
+    private static final double LOG_UNSCALED_PER_UNIT = Math.log(Math.pow(10.0d,
+            ScaledResult.SCALE));
+
+    private final long version;
+    private final String symbol;
+    private final BigDecimal parValue;
+    private final BigDecimal lastAnnualDividend;
+    private final BigInteger periodPerYear;
+    private final BigDecimal dividend;
+    private final HistorySegment[] segments;
+    private final int sealedCount;
+    private final Transaction[] hotTransactions;
+    private final int hotTransactionCount;
+    private final Transaction[] pendingTransactions;
+    private final int pendingHead;
+    private final int pendingCount;
+    private final Transaction[] corrections;
+    private final int correctionCount;
+    private final Transaction latestTransaction;
+    private final DividendTerms dividendTerms;
+
+    StockSnapshot(long version, String symbol, BigDecimal parValue,
+            BigDecimal lastAnnualDividend, BigInteger periodPerYear, BigDecimal dividend,
+            HistorySegment[] segments, int sealedCount, Transaction[] hotTransactions,
+            int hotTransactionCount, Transaction[] pendingTransactions, int pendingHead,
+            int pendingCount, Transaction[] corrections, int correctionCount,
+            Transaction latestTransaction, DividendTerms dividendTerms) {
+        this.version = version;
+        this.symbol = symbol;
+        this.parValue = parValue;
+        this.lastAnnualDividend = lastAnnualDividend;
+        this.periodPerYear = periodPerYear;
+        this.dividend = dividend;
+        this.segments = segments;
+        this.sealedCount = sealedCount;
+        this.hotTransactions = hotTransactions;
+        this.hotTransactionCount = hotTransactions == null ? 0 : hotTransactionCount;
+        this.pendingTransactions = pendingTransactions;
+        this.pendingHead = pendingHead;
+        this.pendingCount = pendingTransactions == null ? 0 : pendingCount;
+        this.corrections = corrections;
+        this.correctionCount = corrections == null ? 0 : correctionCount;
+        this.latestTransaction = latestTransaction;
+        this.dividendTerms = dividendTerms;
+    }
+
+    /**
+     * Get the version of this snapshot. Versions of the same stock increase
+     * strictly every time the stock is modified.
+     *
+     * @return version of this snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public BigDecimal getParValue() {
+        return parValue;
+    }
+
+    public BigDecimal getLastAnnualDividend() {
+        return lastAnnualDividend;
+    }
+
+    public BigInteger getPeriodPerYear() {
+        return periodPerYear;
+    }
+
+    public BigDecimal getDividend() {
+        return dividend;
+    }
+
+    /**
+     * Get the transactions recorded up to this snapshot. Transactions of
+     * sealed segments are decoded on access, one segment at a time.
+     *
+     * @return an unmodifiable {@code List<Transaction>} that never changes
+     */
+    public List<Transaction> getTransactions() {
+        return new TransactionHistory();
+    }
+
+    /**
+     * Get the transaction with the latest time recorded up to this snapshot,
+     * the last one added among those at that time. Unlike the last element of
+     * {@link #getTransactions()}, never a correction of an earlier time.
+     *
+     * @return the latest transaction, or {@code null} if there is none
+     */
+    public Transaction getLatestTransaction() {
+        return latestTransaction;
+    }
+
+    /**
+     * Get the number of parts the history is split into by
+     * {@link #sumLogPrices(int, NumericMode, double[])}, so that the parts can
+     * be summed in parallel: one per sealed segment, one per segment size of
+     * the hot tail, then one for the pending transactions and the corrections.
+     *
+     * @return the number of parts, at least 1
+     */
+    public int getPartCount() {
+        return segments.length + (hotTransactionCount + StockImpl.HISTORY_SEGMENT_SIZE - 1)
+                / StockImpl.HISTORY_SEGMENT_SIZE + 1;
+    }
+
+    /**
+     * Sum the natural logarithms of the positive prices of the transactions
+     * in one part of the history, the way {@code GBCEIndexPartial} does in
+     * {@code mode}. A compressed segment is read without creating any
+     * {@code Transaction}.
+     *
+     * @param part
+     *            index of the part, from 0 to {@link #getPartCount()}
+     *            exclusive
+     * @param mode
+     *            the arithmetic to be used
+     * @param result
+     *            receives the sum of the logarithms at index 0 and the number
+     *            of prices at index 1
+     */
+    public void sumLogPrices(int part, NumericMode mode, double[] result) {
+        // Sum of the logarithms, count, and count of unscaled logarithms
+        double[] sums = new double[3];
+        if (part < segments.length) {
+            HistorySegment segment = segments[part];
+            if (!segment.isCompressed()) {
+                for (Transaction transaction : segment.decode()) {
+                    addLogPrice(transaction, mode, sums);
+                }
+            } else {
+                HistorySegment.Cursor cursor = segment.cursor();
+                while (cursor.next()) {
+                    addLogPrice(cursor.getUnscaledPrice(), mode, sums);
+                }
+            }
+        } else {
+            int from = (part - segments.length) * StockImpl.HISTORY_SEGMENT_SIZE;
+            if (from < hotTransactionCount) {
+                int to = Math.min(from + StockImpl.HISTORY_SEGMENT_SIZE, hotTransactionCount);
+                for (int i = from; i < to; i++) {
+                    addLogPrice(hotTransactions[i], mode, sums);
+                }
+            } else {
+                for (int i = pendingHead; i < pendingHead + pendingCount; i++) {
+                    addLogPrice(pendingTransactions[i], mode, sums);
+                }
+                for (int i = 0; i < correctionCount; i++) {
+                    addLogPrice(corrections[i], mode, sums);
+                }
+            }
+        }
+        result[0] = sums[0] - sums[2] * LOG_UNSCALED_PER_UNIT;
+        result[1] = sums[1];
+    }
+
+    /**
+     * Get the annual dividend divided by the price to obtain the dividend
+     * yield, multiplied by 10^8.
+     *
+     * @return the unscaled annual dividend, or
+     *         {@link ScaledResult#NOT_REPRESENTABLE} if unknown or too large
+     */
+    public long getUnscaledYieldDividend() {
+        return dividendTerms.getUnscaledYieldDividend();
+    }
+
+    /**
+     * Get the annual dividend that divides the price to obtain the P/E ratio,
+     * multiplied by 10^8.
+     *
+     * @return the unscaled annual dividend, or
+     *         {@link ScaledResult#NOT_REPRESENTABLE} if unknown or too large
+     */
+    public long getUnscaledPERatioDividend() {
+        return dividendTerms.getUnscaledPERatioDividend();
+    }
+
+    // Shared with the other snapshots of the same stock parameters
+    DividendTerms getDividendTerms() {
+        return dividendTerms;
+    }
+
+    HistorySegment[] getSegments() {
+        return segments;
+    }
+
+    // Direct access to the hot tail for iteration without an iterator
+    Transaction[] getHotTransactions() {
+        return hotTransactions;
+    }
+
+    int getHotTransactionCount() {
+        return hotTransactionCount;
+    }
+
+    // The pending transactions, from getPendingHead() to getPendingHead() +
+    // getPendingCount()
+    Transaction[] getPendingTransactions() {
+        return pendingTransactions;
+    }
+
+    int getPendingHead() {
+        return pendingHead;
+    }
+
+    int getPendingCount() {
+        return pendingCount;
+    }
+
+    Transaction[] getCorrections() {
+        return corrections;
+    }
+
+    int getCorrectionCount() {
+        return correctionCount;
+    }
+
+    private static void addLogPrice(Transaction transaction, NumericMode mode, double[] sums) {
+        if (transaction == null) {
+            return;
+        }
+        if (mode == NumericMode.FAST && transaction.isPrimitive()) {
+            addLogPrice(transaction.getUnscaledPrice(), mode, sums);
+        } else if (transaction.getPrice() != null && transaction.getPrice().signum() == 1) {
+            sums[0] += Math.log(transaction.getPrice().doubleValue());
+            sums[1]++;
+        }
+    }
+
+    private static void addLogPrice(long unscaledPrice, NumericMode mode, double[] sums) {
+        if (unscaledPrice <= 0L) {
+            return;
+        }
+        if (mode == NumericMode.FAST) {
+            sums[0] += Math.log(unscaledPrice);
+            sums[2]++;
+        } else {
+            sums[0] += Math.log(BigDecimal.valueOf(unscaledPrice, ScaledResult.SCALE)
+                    .doubleValue());
+        }
+        sums[1]++;
+    }
+
+    // Read-only view over the segments, the first hotTransactionCount elements
+    // of the hot tail, the pending transactions and the corrections. All
+    // sealed segments have the same size, so an index maps to its segment by
+    // division. Keeps the last decoded segment, so that iterating decodes
+    // every segment once.
+    private final class TransactionHistory extends AbstractList<Transaction> {
+        private DecodedSegment decoded;
+
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            if (index >= sealedCount) {
+                index -= sealedCount;
+                if (index < hotTransactionCount) {
+                    return hotTransactions[index];
+                }
+                index -= hotTransactionCount;
+                if (index < pendingCount) {
+                    return pendingTransactions[pendingHead + index];
+                }
+                return corrections[index - pendingCount];
+            }
+            int segmentSize = segments[0].size();
+            int segmentIndex = index / segmentSize;
+            DecodedSegment current = decoded;
+            if (current == null || current.index != segmentIndex) {
+                current = new DecodedSegment(segmentIndex, segments[segmentIndex].decode());
+                decoded = current;
+            }
+            return current.transactions[index % segmentSize];
+        }
+
+        @Override
+        public int size() {
+            return sealedCount + hotTransactionCount + pendingCount + correctionCount;
+        }
+    }
+
+    // Immutable, so it can be shared by threads iterating the same view
+    private static final class DecodedSegment {
+        private final int index;
+        private final Transaction[] transactions;
+
+        private DecodedSegment(int index, Transaction[] transactions) {
+            this.index = index;
+            this.transactions = transactions;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.util.Arrays;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Totals of the quantity and price times quantity of the transactions of a
+ * stock, laid out like its history, so that the totals between any two
+ * instants are found without adding up every transaction:
+ * <ul>
+ * <li>each sealed segment keeps its fixed totals. Segments wholly inside a
+ * range add them, and only the at most two segments on the edges of the range
+ * are read, with a {@link HistorySegment.Cursor};</li>
+ * <li>the hot tail keeps running totals, so that its part of a range is the
+ * difference of two prefixes found by binary search;</li>
+ * <li>the corrections keep running totals in time order too. A correction is
+ * inserted at its place and the totals after it are recomputed, which only
+ * costs as much as the corrections, not the history;</li>
+ * <li>the transactions pending in the reorder buffer, at most
+ * {@link ReorderBuffer#MAX_SIZE} and usually a handful, are added up when the
+ * range is summed.</li>
+ * </ul>
+ * <p>
+ * Totals are exact: quantities in a {@code long} and prices times quantities,
+ * scaled by 10^8, in 128 bits held as two {@code long}s. A transaction that
+ * cannot be added exactly is counted as inexact instead, and ranges that
+ * contain one cannot be answered from the index.
+ * <p>
+ * This class is not thread safe. It is guarded by the monitor of its stock.
+ */
+final class TradeRangeIndex {
+    /**
+     * Index of each total in the array filled by {@link #sum}
+     */
+    static final int TRADE_COUNT = 0;
+    static final int QUANTITY = 1;
+    static final int NOTIONAL_HIGH = 2;
+    static final int NOTIONAL_LOW = 3;
+    static final int TOTAL_COUNT = 4;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Sealed segments in time order, and the totals of each
+    private HistorySegment[] segments = new HistorySegment[INITIAL_CAPACITY];
+    private long[] segmentTotals = new long[INITIAL_CAPACITY * TOTAL_COUNT];
+    private boolean[] segmentInexact = new boolean[INITIAL_CAPACITY];
+    private int segmentCount;
+    private final RunningTotals hot = new RunningTotals();
+    private final RunningTotals corrections = new RunningTotals();
+
+    /**
+     * @return the number of transactions indexed, not counting the pending
+     *         ones
+     */
+    int size() {
+        int size = hot.size + corrections.size;
+        for (int i = 0; i < segmentCount; i++) {
+            size += segments[i].size();
+        }
+        return size;
+    }
+
+    /**
+     * Add a transaction released to the end of the hot tail.
+     */
+    void addReleased(Transaction transaction) {
+        hot.add(transaction);
+    }
+
+    /**
+     * Add a transaction too late to be put in order.
+     */
+    void addCorrection(Transaction transaction) {
+        corrections.add(transaction);
+    }
+
+    /**
+     * Move the first {@code segment.size()} transactions of the hot tail,
+     * just sealed into {@code segment}, to the sealed segments.
+     */
+    void addSealed(HistorySegment segment) {
+        if (segmentCount == segments.length) {
+            segments = Arrays.copyOf(segments, segmentCount * 2);
+            segmentTotals = Arrays.copyOf(segmentTotals, segmentCount * 2 * TOTAL_COUNT);
+            segmentInexact = Arrays.copyOf(segmentInexact, segmentCount * 2);
+        }
+        segments[segmentCount] = segment;
+        segmentInexact[segmentCount] = !sumSegment(segment, Long.MIN_VALUE, Long.MAX_VALUE,
+                segmentTotals, segmentCount * TOTAL_COUNT);
+        segmentCount++;
+        hot.removeFirst(segment.size());
+    }
+
+    /**
+     * Sum the transactions from {@code fromMillis} inclusive to
+     * {@code toMillis} exclusive, the pending ones from {@code pendingHead} to
+     * {@code pendingHead + pendingCount} of {@code pending} included.
+     *
+     * @param result
+     *            receives the {@link #TOTAL_COUNT} totals
+     * @return Return {@code true} if the totals are exact. {@code False} if the
+     *         range contains a transaction that could not be indexed, in which
+     *         case {@code result} is undefined
+     */
+    boolean sum(long fromMillis, long toMillis, Transaction[] pending, int pendingHead,
+            int pendingCount, long[] result) {
+        Arrays.fill(result, 0, TOTAL_COUNT, 0L);
+        if (fromMillis >= toMillis) {
+            return true;
+        }
+        for (int i = firstSegmentEndingAtOrAfter(fromMillis); i < segmentCount; i++) {
+            HistorySegment segment = segments[i];
+            if (segment.getMinTimeMillis() >= toMillis) {
+                break;
+            }
+            if (segment.getMinTimeMillis() >= fromMillis && segment.getMaxTimeMillis() < toMillis) {
+                int offset = i * TOTAL_COUNT;
+                if (segmentInexact[i] || !add(result, segmentTotals[offset + TRADE_COUNT],
+                        segmentTotals[offset + QUANTITY], segmentTotals[offset + NOTIONAL_HIGH],
+                        segmentTotals[offset + NOTIONAL_LOW])) {
+                    return false;
+                }
+            } else if (!sumSegment(segment, fromMillis, toMillis, result, 0)) {
+                return false;
+            }
+        }
+        if (!hot.sum(fromMillis, toMillis, result)
+                || !corrections.sum(fromMillis, toMillis, result)) {
+            return false;
+        }
+        for (int i = pendingHead; i < pendingHead + pendingCount; i++) {
+            Transaction transaction = pending[i];
+            long timeMillis = transaction.getTimeMillis();
+            if (timeMillis >= fromMillis && timeMillis < toMillis) {
+                if (!transaction.isPrimitive()) {
+                    return false;
+                }
+                long quantity = transaction.getQuantityAsLong();
+                long unscaledPrice = transaction.getUnscaledPrice();
+                if (!add(result, 1L, quantity, multiplyHigh(unscaledPrice, quantity),
+                        unscaledPrice * quantity)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Index of the first segment whose last transaction is at or after time
+    private int firstSegmentEndingAtOrAfter(long time) {
+        int low = 0;
+        int high = segmentCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (segments[middle].getMaxTimeMillis() < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Add the transactions of segment within the range to the totals at offset
+    private static boolean sumSegment(HistorySegment segment, long fromMillis, long toMillis,
+            long[] totals, int offset) {
+        HistorySegment.Cursor cursor = segment.cursor();
+        while (cursor.next()) {
+            long timeMillis = cursor.getTimeMillis();
+            if (timeMillis >= fromMillis && timeMillis < toMillis) {
+                if (!cursor.isPrimitive()) {
+                    return false;
+                }
+                long quantity = cursor.getQuantity();
+                long unscaledPrice = cursor.getUnscaledPrice();
+                if (!add(totals, offset, 1L, quantity, multiplyHigh(unscaledPrice, quantity),
+                        unscaledPrice * quantity)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean add(long[] totals, long count, long quantity, long notionalHigh,
+            long notionalLow) {
+        return add(totals, 0, count, quantity, notionalHigh, notionalLow);
+    }
+
+    /**
+     * Add to the totals at {@code offset} of {@code totals}, unless they would
+     * not be exact any more.
+     *
+     * @return Return {@code true} if added. {@code False} if too large, in
+     *         which case the totals are unchanged
+     */
+    private static boolean add(long[] totals, int offset, long count, long quantity,
+            long notionalHigh, long notionalLow) {
+        long low = totals[offset + NOTIONAL_LOW];
+        long newLow = low + notionalLow;
+        long carry = Long.compareUnsigned(newLow, low) < 0 ? 1L : 0L;
+        long newHigh = totals[offset + NOTIONAL_HIGH] + notionalHigh + carry;
+        if (newHigh < 0L || totals[offset + QUANTITY] > Long.MAX_VALUE - quantity) {
+            return false;
+        }
+        totals[offset + TRADE_COUNT] += count;
+        totals[offset + QUANTITY] += quantity;
+        totals[offset + NOTIONAL_HIGH] = newHigh;
+        totals[offset + NOTIONAL_LOW] = newLow;
+        return true;
+    }
+
+    // High 64 bits of the 128-bit product of two non-negative longs
+    static long multiplyHigh(long x, long y) {
+        long x1 = x >>> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >>> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & 0xFFFFFFFFL) + x2 * y1;
+        return x1 * y1 + (t >>> 32) + (z1 >>> 32);
+    }
+
+    /**
+     * Transactions ordered by time, with running totals of their quantity and
+     * price times quantity. Appending in time order costs O(1); a late
+     * transaction is inserted at its place and the totals after it are
+     * recomputed.
+     */
+    private static final class RunningTotals {
+        private int size;
+        private long[] timeMillis = new long[INITIAL_CAPACITY];
+        // Element i holds the totals of the first i transactions, i from 0 to
+        // size
+        private long[] quantities = new long[INITIAL_CAPACITY + 1];
+        private long[] notionalHighs = new long[INITIAL_CAPACITY + 1];
+        private long[] notionalLows = new long[INITIAL_CAPACITY + 1];
+        private int[] inexactCounts = new int[INITIAL_CAPACITY + 1];
+        // What each transaction adds to the totals, to recompute them on insert
+        private long[] addedQuantities = new long[INITIAL_CAPACITY];
+        private long[] addedNotionalHighs = new long[INITIAL_CAPACITY];
+        private long[] addedNotionalLows = new long[INITIAL_CAPACITY];
+
+        private void add(Transaction transaction) {
+            if (size == timeMillis.length) {
+                resize(size * 2);
+            }
+            long time = transaction.getTimeMillis();
+            // After every transaction of the same time, so equal times keep
+            // their arrival order
+            int index = size;
+            if (size > 0 && timeMillis[size - 1] > time) {
+                index = upperBound(time);
+                int moved = size - index;
+                System.arraycopy(timeMillis, index, timeMillis, index + 1, moved);
+                System.arraycopy(addedQuantities, index, addedQuantities, index + 1, moved);
+                System.arraycopy(addedNotionalHighs, index, addedNotionalHighs, index + 1,
+                        moved);
+                System.arraycopy(addedNotionalLows, index, addedNotionalLows, index + 1, moved);
+            }
+            timeMillis[index] = time;
+            if (transaction.isPrimitive()) {
+                long quantity = transaction.getQuantityAsLong();
+                long unscaledPrice = transaction.getUnscaledPrice();
+                addedQuantities[index] = quantity;
+                addedNotionalHighs[index] = multiplyHigh(unscaledPrice, quantity);
+                addedNotionalLows[index] = unscaledPrice * quantity;
+            } else {
+                addedQuantities[index] = -1L;
+            }
+            size++;
+            for (int i = index; i < size; i++) {
+                accumulate(i);
+            }
+        }
+
+        // Forget the first count transactions, shrinking if mostly empty
+        private void removeFirst(int count) {
+            int remaining = size - count;
+            System.arraycopy(timeMillis, count, timeMillis, 0, remaining);
+            System.arraycopy(addedQuantities, count, addedQuantities, 0, remaining);
+            System.arraycopy(addedNotionalHighs, count, addedNotionalHighs, 0, remaining);
+            System.arraycopy(addedNotionalLows, count, addedNotionalLows, 0, remaining);
+            // Totals from the first transaction kept, so they never creep up
+            long quantity = quantities[count];
+            long high = notionalHighs[count];
+            long low = notionalLows[count];
+            int inexactCount = inexactCounts[count];
+            for (int i = 0; i <= remaining; i++) {
+                long newLow = notionalLows[i + count] - low;
+                long borrow = Long.compareUnsigned(notionalLows[i + count], low) < 0 ? 1L : 0L;
+                quantities[i] = quantities[i + count] - quantity;
+                notionalHighs[i] = notionalHighs[i + count] - high - borrow;
+                notionalLows[i] = newLow;
+                inexactCounts[i] = inexactCounts[i + count] - inexactCount;
+            }
+            size = remaining;
+            if (size * 4 < timeMillis.length && timeMillis.length > INITIAL_CAPACITY) {
+                resize(Math.max(size * 2, INITIAL_CAPACITY));
+            }
+        }
+
+        // Add the totals from fromMillis inclusive to toMillis exclusive
+        private boolean sum(long fromMillis, long toMillis, long[] result) {
+            int from = lowerBound(fromMillis);
+            int to = Math.max(from, lowerBound(toMillis));
+            if (inexactCounts[to] != inexactCounts[from]) {
+                return false;
+            }
+            long low = notionalLows[to] - notionalLows[from];
+            long borrow = Long.compareUnsigned(notionalLows[to], notionalLows[from]) < 0 ? 1L
+                    : 0L;
+            return TradeRangeIndex.add(result, to - from, quantities[to] - quantities[from],
+                    notionalHighs[to] - notionalHighs[from] - borrow, low);
+        }
+
+        // Totals of the first index + 1 transactions from those of the first
+        // index
+        private void accumulate(int index) {
+            long quantity = quantities[index];
+            long high = notionalHighs[index];
+            long low = notionalLows[index];
+            int inexactCount = inexactCounts[index];
+            long addedQuantity = addedQuantities[index];
+            if (addedQuantity < 0L) {
+                inexactCount++;
+            } else {
+                long newLow = low + addedNotionalLows[index];
+                long carry = Long.compareUnsigned(newLow, low) < 0 ? 1L : 0L;
+                long newHigh = high + addedNotionalHighs[index] + carry;
+                if (newHigh < 0L || quantity > Long.MAX_VALUE - addedQuantity) {
+                    // Too large to keep exactly, leave the totals unchanged
+                    addedQuantities[index] = -1L;
+                    inexactCount++;
+                } else {
+                    quantity += addedQuantity;
+                    high = newHigh;
+                    low = newLow;
+                }
+            }
+            quantities[index + 1] = quantity;
+            notionalHighs[index + 1] = high;
+            notionalLows[index + 1] = low;
+            inexactCounts[index + 1] = inexactCount;
+        }
+
+        // Index of the first transaction at or after time
+        private int lowerBound(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timeMillis[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // Index of the first transaction after time
+        private int upperBound(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timeMillis[middle] <= time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void resize(int capacity) {
+            timeMillis = Arrays.copyOf(timeMillis, capacity);
+            addedQuantities = Arrays.copyOf(addedQuantities, capacity);
+            addedNotionalHighs = Arrays.copyOf(addedNotionalHighs, capacity);
+            addedNotionalLows = Arrays.copyOf(addedNotionalLows, capacity);
+            quantities = Arrays.copyOf(quantities, capacity + 1);
+            notionalHighs = Arrays.copyOf(notionalHighs, capacity + 1);
+            notionalLows = Arrays.copyOf(notionalLows, capacity + 1);
+            inexactCounts = Arrays.copyOf(inexactCounts, capacity + 1);
+        }
+    }
+}
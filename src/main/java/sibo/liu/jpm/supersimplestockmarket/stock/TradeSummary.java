@@ -0,0 +1,57 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Optional;
+
+/**
+ * The number of trades, volume and volume weighted price of the transactions
+ * of a stock between two instants.
+ */
+public final class TradeSummary {
+    private static final int BIG_DECIMAL_SCALE = 8;
+    private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+
+    private final long tradeCount;
+    private final BigInteger volume;
+    private final Optional<BigDecimal> volumeWeightedPrice;
+
+    /**
+     * Construct a {@code TradeSummary} object from the totals of a range.
+     *
+     * @param tradeCount
+     *            number of transactions
+     * @param volume
+     *            total quantity
+     * @param notional
+     *            total price times quantity
+     */
+    TradeSummary(long tradeCount, BigInteger volume, BigDecimal notional) {
+        this.tradeCount = tradeCount;
+        this.volume = volume;
+        if (volume.signum() == 0 || notional.signum() == 0) {
+            this.volumeWeightedPrice = Optional.empty();
+        } else {
+            this.volumeWeightedPrice = Optional.of(notional.divide(new BigDecimal(volume),
+                    BIG_DECIMAL_SCALE, ROUNDING_MODE));
+        }
+    }
+
+    public long getTradeCount() {
+        return tradeCount;
+    }
+
+    public BigInteger getVolume() {
+        return volume;
+    }
+
+    /**
+     * @return Return {@code Optional<BigDecimal>} of the volume weighted price
+     *         if there is at least one transaction. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getVolumeWeightedPrice() {
+        return volumeWeightedPrice;
+    }
+}
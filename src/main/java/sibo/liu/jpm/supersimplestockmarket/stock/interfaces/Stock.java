@@ -3,6 +3,14 @@ package sibo.liu.jpm.supersimplestockmarket.stock.interfaces;
 import java.math.BigDecimal;
 import java.util.Optional;
 
+import org.joda.time.DateTime;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.OrderFlow;
+import sibo.liu.jpm.supersimplestockmarket.stock.PriceStatistics;
+import sibo.liu.jpm.supersimplestockmarket.stock.QuantileSketch;
+import sibo.liu.jpm.supersimplestockmarket.stock.ScaledResult;
+import sibo.liu.jpm.supersimplestockmarket.stock.TradeSummary;
+
 /**
  * The interface of stock that specifies the operation can be performed on a
  * {@code Stock} object as to client
@@ -48,4 +56,195 @@ public interface Stock {
      *         otherwise
      */
     public Optional<BigDecimal> getVolumeWeightedStockPrice(int pastMinutes);
-}
\ No newline at end of file
+
+    /**
+     * Get the moving averages of the price and quantity of the transactions,
+     * and the variance of the log returns between consecutive transactions in
+     * the past {@code pastMinutes} minutes. The averages are kept as
+     * transactions are added; windows of up to an hour are resolved to whole
+     * minutes and merged from statistics kept the same way, longer ones are
+     * computed from the history.
+     * 
+     * @param pastMinutes
+     *            past minutes to be used to include log returns
+     * @return the {@code PriceStatistics} of the stock
+     */
+    public PriceStatistics getPriceStatistics(int pastMinutes);
+
+    /**
+     * Get the buy/sell split of the transactions in the past
+     * {@code pastMinutes} minutes: volume and volume weighted price of each
+     * side and the imbalance between them.
+     * 
+     * @param pastMinutes
+     *            past minutes to be used to include transactions
+     * @return the {@code OrderFlow} of the period, with zero volumes if there
+     *         is no transaction in it
+     */
+    public OrderFlow getOrderFlow(int pastMinutes);
+
+    /**
+     * Get a sketch of the prices of the transactions in the past
+     * {@code pastMinutes} minutes, to query their median and other quantiles
+     * or merge with the sketches of other stocks. Windows of up to an hour are
+     * resolved to whole minutes and merged from sketches kept as transactions
+     * are added; longer ones are sketched from the history.
+     * 
+     * @param pastMinutes
+     *            past minutes to be used to include transactions
+     * @return a new {@code QuantileSketch} of
+     *         {@link QuantileSketch#DEFAULT_RELATIVE_ACCURACY}, empty if there
+     *         is no transaction in the period
+     */
+    public QuantileSketch getPriceSketch(int pastMinutes);
+
+    /**
+     * Get the number of trades, volume and volume weighted price of the
+     * transactions from {@code from} inclusive to {@code to} exclusive.
+     * 
+     * @param from
+     *            start of the range
+     * @param to
+     *            end of the range
+     * @return the {@code TradeSummary} of the range, with no trade if
+     *         {@code to} is not after {@code from}
+     * @throws IllegalArgumentException
+     *             if any input is null
+     */
+    public TradeSummary getTradeSummary(DateTime from, DateTime to);
+
+    /**
+     * Allocation-free variant of {@link #getDividendYield(BigDecimal)}. The
+     * annual dividend is taken with 8 decimal places.
+     * 
+     * @param unscaledPrice
+     *            the price of the stock multiplied by 10^8
+     * @param result
+     *            receives the dividend yield, or is cleared if there is none
+     * @return Return {@code true} if the dividend yield is present.
+     *         {@code False} otherwise
+     */
+    public boolean getDividendYield(long unscaledPrice, ScaledResult result);
+
+    /**
+     * Allocation-free variant of {@link #getPERatio(BigDecimal)}. The annual
+     * dividend is taken with 8 decimal places.
+     * 
+     * @param unscaledPrice
+     *            the price of the stock multiplied by 10^8
+     * @param result
+     *            receives the P/E ratio, or is cleared if there is none
+     * @return Return {@code true} if the P/E ratio is present. {@code False}
+     *         otherwise
+     */
+    public boolean getPERatio(long unscaledPrice, ScaledResult result);
+
+    /**
+     * Allocation-free variant of {@link #getVolumeWeightedStockPrice(int)}.
+     * Only falls back to allocating if a sum does not fit in a {@code long}.
+     * 
+     * @param pastMinutes
+     *            past minutes to be used to include transactions
+     * @param result
+     *            receives the volume weighted stock price, or is cleared if
+     *            there is none
+     * @return Return {@code true} if the volume weighted stock price is
+     *         present. {@code False} otherwise
+     */
+    public boolean getVolumeWeightedStockPrice(int pastMinutes, ScaledResult result);
+
+    /**
+     * Primitive variant of {@link #getDividendYield(BigDecimal)}, computed in
+     * {@code double} arithmetic and not rounded.
+     *
+     * @param price
+     *            the price of the stock
+     * @return the dividend yield, or {@code Double.NaN} if there is none
+     */
+    public double getDividendYieldAsDouble(double price);
+
+    /**
+     * Primitive variant of {@link #getPERatio(BigDecimal)}, computed in
+     * {@code double} arithmetic and not rounded.
+     *
+     * @param price
+     *            the price of the stock
+     * @return the P/E ratio, or {@code Double.NaN} if there is none
+     */
+    public double getPERatioAsDouble(double price);
+
+    /**
+     * Primitive variant of {@link #getVolumeWeightedStockPrice(int)}, computed
+     * in {@code double} arithmetic and not rounded.
+     *
+     * @param pastMinutes
+     *            past minutes to be used to include transactions
+     * @return the volume weighted stock price, or {@code Double.NaN} if there
+     *         is none
+     */
+    public double getVolumeWeightedStockPriceAsDouble(int pastMinutes);
+
+    /**
+     * Get the dividend yield of this stock at each price of {@code prices},
+     * as {@link #getDividendYield(BigDecimal)} would, from one consistent view
+     * of the stock.
+     * 
+     * @param prices
+     *            the candidate prices of the stock
+     * @param yields
+     *            receives the dividend yield at {@code prices[i]} in
+     *            {@code yields[i]}, or {@code null} if there is none. Needs to
+     *            be at least as long as {@code prices}
+     * @throws IllegalArgumentException
+     *             if any input is null or {@code yields} is too short
+     */
+    public void getDividendYields(BigDecimal[] prices, BigDecimal[] yields);
+
+    /**
+     * Get the P/E ratio of this stock at each price of {@code prices}, as
+     * {@link #getPERatio(BigDecimal)} would, from one consistent view of the
+     * stock.
+     * 
+     * @param prices
+     *            the candidate prices of the stock
+     * @param peRatios
+     *            receives the P/E ratio at {@code prices[i]} in
+     *            {@code peRatios[i]}, or {@code null} if there is none. Needs
+     *            to be at least as long as {@code prices}
+     * @throws IllegalArgumentException
+     *             if any input is null or {@code peRatios} is too short
+     */
+    public void getPERatios(BigDecimal[] prices, BigDecimal[] peRatios);
+
+    /**
+     * Primitive variant of {@link #getDividendYields(BigDecimal[], BigDecimal[])}
+     * for screens that do not need exact decimals. Results are not rounded and
+     * may differ from the exact ones in the last binary digits.
+     * 
+     * @param prices
+     *            the candidate prices of the stock
+     * @param yields
+     *            receives the dividend yield at {@code prices[i]} in
+     *            {@code yields[i]}, or {@code NaN} if there is none. Needs to
+     *            be at least as long as {@code prices}
+     * @throws IllegalArgumentException
+     *             if any input is null or {@code yields} is too short
+     */
+    public void getDividendYields(double[] prices, double[] yields);
+
+    /**
+     * Primitive variant of {@link #getPERatios(BigDecimal[], BigDecimal[])}
+     * for screens that do not need exact decimals. Results are not rounded and
+     * may differ from the exact ones in the last binary digits.
+     * 
+     * @param prices
+     *            the candidate prices of the stock
+     * @param peRatios
+     *            receives the P/E ratio at {@code prices[i]} in
+     *            {@code peRatios[i]}, or {@code NaN} if there is none. Needs
+     *            to be at least as long as {@code prices}
+     * @throws IllegalArgumentException
+     *             if any input is null or {@code peRatios} is too short
+     */
+    public void getPERatios(double[] prices, double[] peRatios);
+}
@@ -0,0 +1,87 @@
+package sibo.liu.jpm.supersimplestockmarket.subscription;
+
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A subscription that conflates change signals. Signalling only marks the
+ * subscription dirty and, if no delivery is pending, schedules one on the
+ * executor. The delivery computes the value from {@code source} at the time
+ * it runs, so a slow subscriber only ever receives the latest value and never
+ * holds back the signalling thread. At most one delivery per subscription is
+ * in flight at any time, so the subscriber is never called concurrently.
+ */
+final class ConflatingSubscription<T> implements Subscription, Runnable {
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    private static final int RUNNING = 2;
+    private static final int RUNNING_DIRTY = 3;
+    private static final int CANCELLED = 4;
+
+    private final Supplier<T> source;
+    private final Consumer<T> subscriber;
+    private final Executor executor;
+    private final Collection<ConflatingSubscription<?>> registry;
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+
+    ConflatingSubscription(Supplier<T> source, Consumer<T> subscriber, Executor executor,
+            Collection<ConflatingSubscription<?>> registry) {
+        this.source = source;
+        this.subscriber = subscriber;
+        this.executor = executor;
+        this.registry = registry;
+    }
+
+    /**
+     * Signal that the value of the source may have changed. Never blocks and
+     * never calls the subscriber on the calling thread.
+     */
+    void signal() {
+        while (true) {
+            int current = state.get();
+            if (current == IDLE) {
+                if (state.compareAndSet(IDLE, SCHEDULED)) {
+                    executor.execute(this);
+                    return;
+                }
+            } else if (current == RUNNING) {
+                if (state.compareAndSet(RUNNING, RUNNING_DIRTY)) {
+                    return;
+                }
+            } else {
+                // Already scheduled, already dirty or cancelled
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        if (!state.compareAndSet(SCHEDULED, RUNNING)) {
+            return;
+        }
+        do {
+            try {
+                subscriber.accept(source.get());
+            } catch (RuntimeException e) {
+                // A faulty subscriber must not stop later deliveries
+            }
+        } while (!state.compareAndSet(RUNNING, IDLE)
+                && state.compareAndSet(RUNNING_DIRTY, RUNNING));
+    }
+
+    @Override
+    public void cancel() {
+        if (state.getAndSet(CANCELLED) != CANCELLED) {
+            registry.remove(this);
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return state.get() != CANCELLED;
+    }
+}
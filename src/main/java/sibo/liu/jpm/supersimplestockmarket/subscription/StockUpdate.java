@@ -0,0 +1,52 @@
+package sibo.liu.jpm.supersimplestockmarket.subscription;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+/**
+ * The latest market data of one stock delivered to a stock subscriber. Once
+ * initialized, no value can be changed.
+ */
+public final class StockUpdate {
+    private final String symbol;
+    private final long version;
+    private final BigDecimal lastPrice;
+    private final BigDecimal volumeWeightedStockPrice;
+
+    /**
+     * Construct a {@code StockUpdate} object.
+     * 
+     * @param symbol
+     *            the symbol of the stock
+     * @param version
+     *            version of the stock snapshot the update was computed from,
+     *            0 if the stock does not exist
+     * @param lastPrice
+     *            price of the last recorded transaction, null if none
+     * @param volumeWeightedStockPrice
+     *            volume weighted stock price, null if none
+     */
+    public StockUpdate(String symbol, long version, BigDecimal lastPrice,
+            BigDecimal volumeWeightedStockPrice) {
+        this.symbol = symbol;
+        this.version = version;
+        this.lastPrice = lastPrice;
+        this.volumeWeightedStockPrice = volumeWeightedStockPrice;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Optional<BigDecimal> getLastPrice() {
+        return Optional.ofNullable(lastPrice);
+    }
+
+    public Optional<BigDecimal> getVolumeWeightedStockPrice() {
+        return Optional.ofNullable(volumeWeightedStockPrice);
+    }
+}
@@ -0,0 +1,20 @@
+package sibo.liu.jpm.supersimplestockmarket.subscription;
+
+/**
+ * Handle of a registered subscription. Cancelling it stops any further
+ * delivery to the subscriber.
+ */
+public interface Subscription {
+    /**
+     * Stop delivering updates to the subscriber. A delivery that is already
+     * running is allowed to complete. Calling this method more than once has
+     * no effect.
+     */
+    public void cancel();
+
+    /**
+     * @return Return {@code true} if the subscription has not been cancelled.
+     *         {@code False} otherwise
+     */
+    public boolean isActive();
+}
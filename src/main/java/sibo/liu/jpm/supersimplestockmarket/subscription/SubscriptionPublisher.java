@@ -0,0 +1,134 @@
+package sibo.liu.jpm.supersimplestockmarket.subscription;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Keeps track of per-symbol and market-wide subscriptions and delivers
+ * conflated updates to them on a dedicated pool of daemon threads. Signalling
+ * a change costs one compare-and-set per affected subscription; the value
+ * itself is only computed when the delivery runs.
+ */
+public final class SubscriptionPublisher {
+    private static final String THREAD_NAME_PREFIX = "subscription-publisher-";
+
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, List<ConflatingSubscription<?>>> symbolSubscriptions = new ConcurrentHashMap<String, List<ConflatingSubscription<?>>>();
+    private final List<ConflatingSubscription<?>> marketSubscriptions = new CopyOnWriteArrayList<ConflatingSubscription<?>>();
+
+    /**
+     * Construct a {@code SubscriptionPublisher} delivering on {@code threads}
+     * daemon threads.
+     *
+     * @param threads
+     *            number of delivery threads. Need to be positive
+     * @throws IllegalArgumentException
+     *             if {@code threads} is not positive
+     */
+    public SubscriptionPublisher(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException(
+                    "The number of delivery threads can only be larger than zero");
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, THREAD_NAME_PREFIX
+                        + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Register a subscriber to the changes of one symbol. The subscriber
+     * receives the current value straight away and then the latest value
+     * after every change signalled through {@link #symbolChanged(String)}.
+     *
+     * @param symbol
+     *            the symbol to watch
+     * @param source
+     *            computes the value delivered to the subscriber
+     * @param subscriber
+     *            receives the values
+     * @return the {@code Subscription} handle
+     */
+    public <T> Subscription subscribeSymbol(String symbol, Supplier<T> source,
+            Consumer<T> subscriber) {
+        List<ConflatingSubscription<?>> subscriptions = symbolSubscriptions.computeIfAbsent(
+                symbol, key -> new CopyOnWriteArrayList<ConflatingSubscription<?>>());
+        return register(subscriptions, source, subscriber);
+    }
+
+    /**
+     * Register a subscriber to market-wide changes. The subscriber receives the
+     * current value straight away and then the latest value after every change
+     * signalled through {@link #symbolChanged(String)} for any symbol.
+     *
+     * @param source
+     *            computes the value delivered to the subscriber
+     * @param subscriber
+     *            receives the values
+     * @return the {@code Subscription} handle
+     */
+    public <T> Subscription subscribeMarket(Supplier<T> source, Consumer<T> subscriber) {
+        return register(marketSubscriptions, source, subscriber);
+    }
+
+    /**
+     * Signal that {@code symbol} has changed. Schedules a delivery for every
+     * subscriber of the symbol and every market-wide subscriber that does not
+     * already have one pending. Never blocks.
+     *
+     * @param symbol
+     *            the symbol that has changed
+     */
+    public void symbolChanged(String symbol) {
+        List<ConflatingSubscription<?>> subscriptions = symbolSubscriptions.get(symbol);
+        if (subscriptions != null) {
+            for (ConflatingSubscription<?> subscription : subscriptions) {
+                subscription.signal();
+            }
+        }
+        for (ConflatingSubscription<?> subscription : marketSubscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * Cancel every registered subscription.
+     */
+    public void cancelAll() {
+        for (List<ConflatingSubscription<?>> subscriptions : symbolSubscriptions.values()) {
+            for (ConflatingSubscription<?> subscription : subscriptions) {
+                subscription.cancel();
+            }
+        }
+        for (ConflatingSubscription<?> subscription : marketSubscriptions) {
+            subscription.cancel();
+        }
+        symbolSubscriptions.clear();
+    }
+
+    private <T> Subscription register(List<ConflatingSubscription<?>> subscriptions,
+            Supplier<T> source, Consumer<T> subscriber) {
+        if (source == null || subscriber == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        ConflatingSubscription<T> subscription = new ConflatingSubscription<T>(source,
+                subscriber, executor, subscriptions);
+        subscriptions.add(subscription);
+        subscription.signal();
+        return subscription;
+    }
+}
@@ -0,0 +1,242 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.joda.time.DateTimeUtils;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.ScaledResult;
+
+/**
+ * Ranks stocks by the volume and the notional they traded over a rolling
+ * window, without looking at their transaction histories.
+ * <p>
+ * Every recorded transaction is added to the running totals of its stock and
+ * to a per-second bucket. Buckets that fall out of the window are subtracted
+ * again, lazily, on the next record or query. The stocks are kept in two
+ * sorted sets, by volume and by notional, that are repositioned on every
+ * change, so the top {@code n} of either costs {@code O(n + log S)} for
+ * {@code S} stocks. The window is resolved to whole seconds, and a
+ * transaction stamped after the current time counts in the current second, as
+ * in {@link WindowedGBCEIndex}.
+ * <p>
+ * Totals are kept exactly in {@code long}s, notionals scaled by 10^8, so that
+ * subtracting a bucket restores the totals from before it. A transaction that
+ * would overflow them is left out. All operation is thread safe.
+ */
+public final class ActivityLeaderboard {
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60000L;
+
+    private static final Comparator<Activity> BY_VOLUME = (first, second) -> {
+        int compare = Long.compare(second.volume, first.volume);
+        return compare != 0 ? compare : first.symbol.compareTo(second.symbol);
+    };
+    private static final Comparator<Activity> BY_NOTIONAL = (first, second) -> {
+        int compare = Long.compare(second.notional, first.notional);
+        return compare != 0 ? compare : first.symbol.compareTo(second.symbol);
+    };
+
+    private final long windowMillis;
+    private final Map<String, Activity> activities = new HashMap<String, Activity>();
+    // Second of the transaction time -> symbol -> totals traded in that second
+    private final TreeMap<Long, Map<String, long[]>> buckets = new TreeMap<Long, Map<String, long[]>>();
+    private final TreeSet<Activity> byVolume = new TreeSet<Activity>(BY_VOLUME);
+    private final TreeSet<Activity> byNotional = new TreeSet<Activity>(BY_NOTIONAL);
+
+    /**
+     * Construct an empty {@code ActivityLeaderboard}.
+     * 
+     * @param windowMinutes
+     *            length of the rolling window in minutes. Need to be positive
+     * @throws IllegalArgumentException
+     *             if {@code windowMinutes} is not positive
+     */
+    public ActivityLeaderboard(int windowMinutes) {
+        if (windowMinutes <= 0) {
+            throw new IllegalArgumentException("The window can only be larger than zero");
+        }
+        this.windowMillis = windowMinutes * MILLIS_PER_MINUTE;
+    }
+
+    public int getWindowMinutes() {
+        return (int) (windowMillis / MILLIS_PER_MINUTE);
+    }
+
+    /**
+     * Add a transaction to the totals of {@code symbol}. Do nothing if any
+     * input is null, the quantity or price of the transaction does not fit in
+     * a {@code long}, the totals would not fit in a {@code long} any more or
+     * the transaction is older than the window.
+     * 
+     * @param symbol
+     *            symbol of the stock the transaction was added to
+     * @param transaction
+     *            the transaction
+     */
+    public synchronized void record(String symbol, Transaction transaction) {
+        if (symbol == null || transaction == null || !transaction.isPrimitive()) {
+            return;
+        }
+        long now = DateTimeUtils.currentTimeMillis();
+        expire(now);
+        long second = Math.min(Math.floorDiv(transaction.getTimeMillis(), MILLIS_PER_SECOND),
+                Math.floorDiv(now, MILLIS_PER_SECOND));
+        if (isExpired(second, now)) {
+            return;
+        }
+        Map<String, long[]> bucket = buckets.get(second);
+        long[] totals = bucket == null ? null : bucket.get(symbol);
+        Activity activity = activities.get(symbol);
+        long volume = transaction.getQuantityAsLong();
+        long bucketVolume;
+        long bucketNotional;
+        long activityVolume;
+        long activityNotional;
+        try {
+            long notional = Math.multiplyExact(transaction.getUnscaledPrice(), volume);
+            bucketVolume = totals == null ? volume : Math.addExact(totals[0], volume);
+            bucketNotional = totals == null ? notional : Math.addExact(totals[1], notional);
+            activityVolume = activity == null ? volume : Math.addExact(activity.volume, volume);
+            activityNotional = activity == null ? notional : Math.addExact(activity.notional,
+                    notional);
+        } catch (ArithmeticException e) {
+            return;
+        }
+        if (bucket == null) {
+            bucket = new HashMap<String, long[]>();
+            buckets.put(second, bucket);
+        }
+        if (totals == null) {
+            totals = new long[2];
+            bucket.put(symbol, totals);
+        }
+        totals[0] = bucketVolume;
+        totals[1] = bucketNotional;
+
+        if (activity == null) {
+            activity = new Activity(symbol);
+            activities.put(symbol, activity);
+        } else {
+            unrank(activity);
+        }
+        activity.volume = activityVolume;
+        activity.notional = activityNotional;
+        byVolume.add(activity);
+        byNotional.add(activity);
+    }
+
+    /**
+     * Get the stocks that traded the largest quantity over the window.
+     * 
+     * @param count
+     *            maximum number of stocks to return
+     * @return at most {@code count} stocks, most active first
+     */
+    public synchronized List<SymbolActivity> getTopByVolume(int count) {
+        expire(DateTimeUtils.currentTimeMillis());
+        return top(byVolume, count);
+    }
+
+    /**
+     * Get the stocks that traded the largest notional over the window.
+     * 
+     * @param count
+     *            maximum number of stocks to return
+     * @return at most {@code count} stocks, most active first
+     */
+    public synchronized List<SymbolActivity> getTopByNotional(int count) {
+        expire(DateTimeUtils.currentTimeMillis());
+        return top(byNotional, count);
+    }
+
+    /**
+     * Forget everything recorded for {@code symbol}.
+     * 
+     * @param symbol
+     *            symbol of a removed stock
+     */
+    public synchronized void remove(String symbol) {
+        Activity activity = activities.remove(symbol);
+        if (activity != null) {
+            unrank(activity);
+            for (Map<String, long[]> bucket : buckets.values()) {
+                bucket.remove(symbol);
+            }
+        }
+    }
+
+    /**
+     * Forget everything recorded.
+     */
+    public synchronized void clear() {
+        activities.clear();
+        buckets.clear();
+        byVolume.clear();
+        byNotional.clear();
+    }
+
+    // Subtract every bucket that has left the window from the totals
+    private void expire(long now) {
+        Iterator<Map.Entry<Long, Map<String, long[]>>> iterator = buckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Map<String, long[]>> bucket = iterator.next();
+            if (!isExpired(bucket.getKey(), now)) {
+                return;
+            }
+            for (Map.Entry<String, long[]> totals : bucket.getValue().entrySet()) {
+                Activity activity = activities.get(totals.getKey());
+                unrank(activity);
+                activity.volume -= totals.getValue()[0];
+                activity.notional -= totals.getValue()[1];
+                if (activity.volume <= 0L) {
+                    activities.remove(activity.symbol);
+                } else {
+                    byVolume.add(activity);
+                    byNotional.add(activity);
+                }
+            }
+            iterator.remove();
+        }
+    }
+
+    // A second has left the window once all of it is before now - window
+    private boolean isExpired(long second, long now) {
+        return (second + 1) * MILLIS_PER_SECOND <= now - windowMillis;
+    }
+
+    private void unrank(Activity activity) {
+        byVolume.remove(activity);
+        byNotional.remove(activity);
+    }
+
+    private static List<SymbolActivity> top(TreeSet<Activity> ranking, int count) {
+        List<SymbolActivity> top = new ArrayList<SymbolActivity>(Math.max(0, Math.min(count,
+                ranking.size())));
+        Iterator<Activity> iterator = ranking.iterator();
+        while (top.size() < count && iterator.hasNext()) {
+            Activity activity = iterator.next();
+            top.add(new SymbolActivity(activity.symbol, activity.volume, BigDecimal.valueOf(
+                    activity.notional, ScaledResult.SCALE).stripTrailingZeros()));
+        }
+        return top;
+    }
+
+    // Running totals of one stock, repositioned in the rankings on change
+    private static final class Activity {
+        private final String symbol;
+        private long volume;
+        private long notional;
+
+        private Activity(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+}
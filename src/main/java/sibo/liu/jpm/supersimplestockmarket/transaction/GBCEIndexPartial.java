@@ -0,0 +1,178 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Optional;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.NumericMode;
+import sibo.liu.jpm.supersimplestockmarket.stock.ScaledResult;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockSnapshot;
+
+/**
+ * An immutable partial result of the GBCE All Share Index: the sum of the
+ * natural logarithms of a set of transaction prices and the number of prices
+ * that contributed to it. Partial results of disjoint sets of transactions can
+ * be combined with {@link #combine(GBCEIndexPartial)} in any order, and the
+ * geometric mean of the whole set is {@code exp(logSum / count)}.
+ */
+public final class GBCEIndexPartial {
+    /**
+     * The partial result of an empty set of transactions
+     */
+    public static final GBCEIndexPartial EMPTY = new GBCEIndexPartial(0.0d, 0L);
+
+    private static final int BIG_DECIMAL_SCALE = 8;
+    private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+    private static final double LOG_UNSCALED_PER_UNIT = Math.log(Math.pow(10.0d,
+            ScaledResult.SCALE));
+
+    private final double logSum;
+    private final long count;
+
+    /**
+     * Construct a {@code GBCEIndexPartial} object.
+     *
+     * @param logSum
+     *            sum of the natural logarithms of the prices
+     * @param count
+     *            number of prices included in {@code logSum}
+     */
+    public GBCEIndexPartial(double logSum, long count) {
+        this.logSum = logSum;
+        this.count = count;
+    }
+
+    /**
+     * Compute the partial result of the transactions from index {@code from}
+     * inclusive to {@code to} exclusive of {@code transactions}, in the
+     * calling thread. Transactions without a positive price are left out.
+     *
+     * @param transactions
+     *            the transactions
+     * @param from
+     *            index of the first transaction
+     * @param to
+     *            index after the last transaction
+     * @return Return the {@code GBCEIndexPartial} of the transactions
+     */
+    public static GBCEIndexPartial of(List<Transaction> transactions, int from, int to) {
+        return of(transactions, from, to, NumericMode.EXACT);
+    }
+
+    /**
+     * Compute the partial result of the transactions from index {@code from}
+     * inclusive to {@code to} exclusive of {@code transactions} in
+     * {@code mode}, in the calling thread. Transactions without a positive
+     * price are left out.
+     * <p>
+     * The logarithms are {@code double} in both modes, as a geometric mean has
+     * no exact decimal value. {@link NumericMode#EXACT} takes them of each
+     * {@code BigDecimal} price, while {@link NumericMode#FAST} takes them of
+     * the unscaled {@code long} price where the transaction has one, and
+     * scales the sum back once.
+     *
+     * @param transactions
+     *            the transactions
+     * @param from
+     *            index of the first transaction
+     * @param to
+     *            index after the last transaction
+     * @param mode
+     *            the arithmetic to be used
+     * @return Return the {@code GBCEIndexPartial} of the transactions
+     */
+    public static GBCEIndexPartial of(List<Transaction> transactions, int from, int to,
+            NumericMode mode) {
+        double logSum = 0.0d;
+        long unscaledCount = 0L;
+        long count = 0L;
+        for (int i = from; i < to; i++) {
+            Transaction transaction = transactions.get(i);
+            if (transaction == null) {
+                continue;
+            }
+            if (mode == NumericMode.FAST && transaction.isPrimitive()) {
+                if (transaction.getUnscaledPrice() > 0L) {
+                    logSum += Math.log(transaction.getUnscaledPrice());
+                    unscaledCount++;
+                    count++;
+                }
+            } else if (transaction.getPrice() != null && transaction.getPrice().signum() == 1) {
+                logSum += Math.log(transaction.getPrice().doubleValue());
+                count++;
+            }
+        }
+        logSum -= unscaledCount * LOG_UNSCALED_PER_UNIT;
+        return count == 0 ? EMPTY : new GBCEIndexPartial(logSum, count);
+    }
+
+    /**
+     * Compute the partial result of every transaction of {@code snapshot} in
+     * {@code mode}, in the calling thread, one part of its history at a time
+     * so that compressed segments are not decoded.
+     *
+     * @param snapshot
+     *            the snapshot of a stock
+     * @param mode
+     *            the arithmetic to be used
+     * @return Return the {@code GBCEIndexPartial} of the transactions
+     */
+    public static GBCEIndexPartial of(StockSnapshot snapshot, NumericMode mode) {
+        double logSum = 0.0d;
+        long count = 0L;
+        double[] sums = new double[2];
+        for (int part = 0; part < snapshot.getPartCount(); part++) {
+            snapshot.sumLogPrices(part, mode, sums);
+            logSum += sums[0];
+            count += (long) sums[1];
+        }
+        return count == 0 ? EMPTY : new GBCEIndexPartial(logSum, count);
+    }
+
+    public double getLogSum() {
+        return logSum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Combine this partial result with another one computed over a disjoint
+     * set of transactions.
+     *
+     * @param other
+     *            the other partial result
+     * @return Return a new {@code GBCEIndexPartial} covering both sets
+     */
+    public GBCEIndexPartial combine(GBCEIndexPartial other) {
+        if (other == null || other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            return other;
+        }
+        return new GBCEIndexPartial(logSum + other.logSum, count + other.count);
+    }
+
+    /**
+     * Get the geometric mean represented by this partial result.
+     *
+     * @return Return {@code Optional<BigDecimal>} rounded to 8 decimal places
+     *         if at least one price is included. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> toIndex() {
+        if (count == 0) {
+            return Optional.empty();
+        }
+        double geometricMean = Math.exp(logSum / count);
+        if (Double.isNaN(geometricMean) || Double.isInfinite(geometricMean)
+                || geometricMean <= 0.0d) {
+            return Optional.empty();
+        }
+        return Optional.of(BigDecimal.valueOf(geometricMean)
+                .setScale(BIG_DECIMAL_SCALE, ROUNDING_MODE).stripTrailingZeros());
+    }
+}
@@ -0,0 +1,123 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.NumericMode;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockSnapshot;
+
+/**
+ * Fork/join task that computes the {@link GBCEIndexPartial} of a list of
+ * stocks. The list of stocks is split in halves until a single stock is left,
+ * and the history of a single stock is split further along the parts of its
+ * snapshot, one sealed segment or one segment size of the hot tail each, so
+ * that a few very active stocks do not serialize the computation. A sealed
+ * segment is summed straight from its compressed form.
+ */
+final class GBCEIndexTask extends RecursiveTask<GBCEIndexPartial> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<StockImpl> stocks;
+    private final StockSnapshot snapshot;
+    private final int from;
+    private final int to;
+    private final NumericMode mode;
+
+    private GBCEIndexTask(List<StockImpl> stocks, StockSnapshot snapshot, int from, int to,
+            NumericMode mode) {
+        this.stocks = stocks;
+        this.snapshot = snapshot;
+        this.from = from;
+        this.to = to;
+        this.mode = mode;
+    }
+
+    /**
+     * Create a task that covers every transaction of every stock in
+     * {@code stocks} with {@link NumericMode#EXACT} arithmetic
+     *
+     * @param stocks
+     *            the stocks to be included
+     * @return the task
+     */
+    static GBCEIndexTask forStocks(List<StockImpl> stocks) {
+        return forStocks(stocks, NumericMode.EXACT);
+    }
+
+    /**
+     * Create a task that covers every transaction of every stock in
+     * {@code stocks}
+     *
+     * @param stocks
+     *            the stocks to be included
+     * @param mode
+     *            the arithmetic to be used
+     * @return the task
+     */
+    static GBCEIndexTask forStocks(List<StockImpl> stocks, NumericMode mode) {
+        return new GBCEIndexTask(stocks, null, 0, stocks.size(), mode);
+    }
+
+    /**
+     * Create a task that covers the parts of the history of {@code snapshot}
+     * from index {@code from} inclusive to {@code to} exclusive
+     *
+     * @param snapshot
+     *            the snapshot of one stock
+     * @param from
+     *            first part to be included
+     * @param to
+     *            first part to be excluded
+     * @param mode
+     *            the arithmetic to be used
+     * @return the task
+     */
+    static GBCEIndexTask forParts(StockSnapshot snapshot, int from, int to, NumericMode mode) {
+        return new GBCEIndexTask(null, snapshot, from, to, mode);
+    }
+
+    @Override
+    protected GBCEIndexPartial compute() {
+        if (stocks != null) {
+            return computeStocks();
+        }
+        return computeParts();
+    }
+
+    private GBCEIndexPartial computeStocks() {
+        int length = to - from;
+        if (length == 0) {
+            return GBCEIndexPartial.EMPTY;
+        }
+        if (length == 1) {
+            StockImpl stockImpl = stocks.get(from);
+            if (stockImpl == null) {
+                return GBCEIndexPartial.EMPTY;
+            }
+            StockSnapshot stockSnapshot = stockImpl.getSnapshot();
+            return forParts(stockSnapshot, 0, stockSnapshot.getPartCount(), mode).compute();
+        }
+        int middle = from + length / 2;
+        GBCEIndexTask left = new GBCEIndexTask(stocks, null, from, middle, mode);
+        GBCEIndexTask right = new GBCEIndexTask(stocks, null, middle, to, mode);
+        left.fork();
+        GBCEIndexPartial rightResult = right.compute();
+        return left.join().combine(rightResult);
+    }
+
+    private GBCEIndexPartial computeParts() {
+        if (to - from > 1) {
+            int middle = from + (to - from) / 2;
+            GBCEIndexTask left = forParts(snapshot, from, middle, mode);
+            GBCEIndexTask right = forParts(snapshot, middle, to, mode);
+            left.fork();
+            GBCEIndexPartial rightResult = right.compute();
+            return left.join().combine(rightResult);
+        }
+        double[] sums = new double[2];
+        snapshot.sumLogPrices(from, mode, sums);
+        return sums[1] == 0.0d ? GBCEIndexPartial.EMPTY : new GBCEIndexPartial(sums[0],
+                (long) sums[1]);
+    }
+}
@@ -0,0 +1,155 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTimeUtils;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.NumericMode;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+
+/**
+ * Records the GBCE All Share Index, and optionally the volume weighted price
+ * of every stock, at a fixed cadence into {@link TimeSeries} rings, so that
+ * charts read past values instead of recomputing them.
+ * <p>
+ * Every sample computes the index once in {@link NumericMode#FAST}, on a
+ * daemon thread once {@link #start()} is called or on the calling thread with
+ * {@link #sample()}. The series of a stock is created on its first sample, and
+ * samples without a value are recorded as {@code Double.NaN}. All operation
+ * is thread safe.
+ */
+public final class IndexSampler implements AutoCloseable {
+    /**
+     * Past minutes of the volume weighted prices recorded, as the console
+     * prints them
+     */
+    public static final int VOLUME_WEIGHTED_PRICE_MINUTES = 15;
+
+    private static final String THREAD_NAME = "index-sampler";
+
+    private final StockTransactionManager manager;
+    private final long periodMillis;
+    private final int capacity;
+    private final boolean sampleStocks;
+    private final TimeSeries index;
+    private final ConcurrentMap<String, TimeSeries> stocks = new ConcurrentHashMap<String, TimeSeries>();
+    private ScheduledExecutorService executor;
+
+    /**
+     * Construct an {@code IndexSampler} that is not started.
+     *
+     * @param manager
+     *            the manager whose stocks are sampled
+     * @param periodMillis
+     *            time between two samples in milliseconds. Need to be
+     *            positive
+     * @param capacity
+     *            number of samples kept per series. Need to be positive
+     * @param sampleStocks
+     *            {@code true} to also record the volume weighted price of
+     *            every stock
+     * @throws IllegalArgumentException
+     *             if {@code manager} is null or a number is not positive
+     */
+    public IndexSampler(StockTransactionManager manager, long periodMillis, int capacity,
+            boolean sampleStocks) {
+        if (manager == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        if (periodMillis <= 0L) {
+            throw new IllegalArgumentException("The period can only be larger than zero");
+        }
+        this.manager = manager;
+        this.periodMillis = periodMillis;
+        this.capacity = capacity;
+        this.sampleStocks = sampleStocks;
+        this.index = new TimeSeries(capacity);
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    /**
+     * @return the samples of the GBCE All Share Index
+     */
+    public TimeSeries getIndexSeries() {
+        return index;
+    }
+
+    /**
+     * Get the samples of the volume weighted price of the past
+     * {@link #VOLUME_WEIGHTED_PRICE_MINUTES} minutes of a stock.
+     *
+     * @param symbol
+     *            symbol of the stock
+     * @return Return {@code Optional<TimeSeries>} if stocks are sampled and
+     *         {@code symbol} has been sampled at least once. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public Optional<TimeSeries> getVolumeWeightedPriceSeries(String symbol) {
+        return symbol == null ? Optional.empty() : Optional.ofNullable(stocks.get(symbol));
+    }
+
+    /**
+     * Record one sample of every series now, on the calling thread.
+     */
+    public void sample() {
+        long now = DateTimeUtils.currentTimeMillis();
+        GBCEIndexPartial partial = manager.getGBCEIndexPartial(NumericMode.FAST);
+        index.add(now, partial.getCount() == 0L ? Double.NaN : Math.exp(partial.getLogSum()
+                / partial.getCount()));
+        if (sampleStocks) {
+            for (StockImpl stockImpl : manager.getStocks()) {
+                TimeSeries series = stocks.get(stockImpl.getSymbol());
+                if (series == null) {
+                    series = stocks.computeIfAbsent(stockImpl.getSymbol(),
+                            symbol -> new TimeSeries(capacity));
+                }
+                series.add(now, stockImpl
+                        .getVolumeWeightedStockPriceAsDouble(VOLUME_WEIGHTED_PRICE_MINUTES));
+            }
+        }
+    }
+
+    /**
+     * Start sampling every period on a daemon thread. Do nothing if already
+     * started.
+     */
+    public synchronized void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(this::sampleQuietly, 0L, periodMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop sampling. The series are kept.
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    // A failed sample must not cancel the following ones
+    private void sampleQuietly() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            // Skip this sample
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.joda.time.DateTime;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.PreferredStock;
+
+/**
+ * The modifications of a {@code StockTransactionManager} that are recorded in
+ * an {@link OperationJournal}, each with the text arguments it is recorded
+ * with and the way to apply it again to another manager.
+ */
+public enum JournalOperation {
+    /**
+     * Arguments: "C" or "P", symbol, par value, last annual dividend, period
+     * per year, dividend per period
+     */
+    ADD_STOCK(6) {
+        @Override
+        boolean apply(StockTransactionManager manager, String... arguments) {
+            BigDecimal parValue = new BigDecimal(arguments[2]);
+            BigDecimal lastAnnualDividend = new BigDecimal(arguments[3]);
+            BigInteger periodPerYear = new BigInteger(arguments[4]);
+            BigDecimal dividend = new BigDecimal(arguments[5]);
+            if (PREFERRED_STOCK.equals(arguments[0])) {
+                return manager.addStock(new PreferredStock(arguments[1], parValue,
+                        lastAnnualDividend, periodPerYear, dividend));
+            }
+            return manager.addStock(new CommonStock(arguments[1], parValue, lastAnnualDividend,
+                    periodPerYear, dividend));
+        }
+    },
+    /**
+     * Arguments: symbol
+     */
+    REMOVE_STOCK(1) {
+        @Override
+        boolean apply(StockTransactionManager manager, String... arguments) {
+            return manager.removeStock(arguments[0]);
+        }
+    },
+    /**
+     * Arguments: symbol, ISO time stamp, quantity, "B" or "S", price
+     */
+    ADD_TRANSACTION(5) {
+        @Override
+        boolean apply(StockTransactionManager manager, String... arguments) {
+            return manager.addTransaction(arguments[0], new Transaction(arguments[0],
+                    new DateTime(arguments[1]), new BigInteger(arguments[2]), BuySellIndicator
+                            .getBuySellIndicator(arguments[3]).get(), new BigDecimal(
+                            arguments[4])));
+        }
+    },
+    /**
+     * Arguments: symbol, last annual dividend
+     */
+    SET_LAST_ANNUAL_DIVIDEND(2) {
+        @Override
+        boolean apply(StockTransactionManager manager, String... arguments) {
+            return manager.setStockLastAnnualDividend(arguments[0], new BigDecimal(arguments[1]));
+        }
+    },
+    /**
+     * Arguments: symbol, period per year
+     */
+    SET_PERIOD_PER_YEAR(2) {
+        @Override
+        boolean apply(StockTransactionManager manager, String... arguments) {
+            return manager.setStockDividendPeriodPerYear(arguments[0], new BigInteger(
+                    arguments[1]));
+        }
+    },
+    /**
+     * Arguments: symbol, dividend per period
+     */
+    SET_DIVIDEND(2) {
+        @Override
+        boolean apply(StockTransactionManager manager, String... arguments) {
+            return manager.setDividend(arguments[0], new BigDecimal(arguments[1]));
+        }
+    },
+    /**
+     * No argument
+     */
+    CLEAR_ALL(0) {
+        @Override
+        boolean apply(StockTransactionManager manager, String... arguments) {
+            return manager.clearAll();
+        }
+    };
+
+    static final String COMMON_STOCK = "C";
+    static final String PREFERRED_STOCK = "P";
+
+    private final int argumentCount;
+
+    private JournalOperation(int argumentCount) {
+        this.argumentCount = argumentCount;
+    }
+
+    public int getArgumentCount() {
+        return argumentCount;
+    }
+
+    /**
+     * Apply this operation to {@code manager}, as it was applied to the
+     * manager that recorded it.
+     * 
+     * @param manager
+     *            the manager to be modified
+     * @param arguments
+     *            the arguments the operation was recorded with
+     * @return Return {@code true} if the operation is successful. {@code False}
+     *         otherwise
+     * @throws IllegalArgumentException
+     *             if the arguments are not the ones of this operation
+     */
+    public boolean applyTo(StockTransactionManager manager, String... arguments) {
+        if (manager == null || arguments == null || arguments.length != argumentCount) {
+            throw new IllegalArgumentException("Invalid arguments of " + name());
+        }
+        return apply(manager, arguments);
+    }
+
+    abstract boolean apply(StockTransactionManager manager, String... arguments);
+}
@@ -0,0 +1,20 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+/**
+ * Receives every successful modification of the
+ * {@code StockTransactionManager}, in the order they are applied.
+ * <p>
+ * Called while the manager holds its lock, so implementations need to return
+ * quickly and must not call back into the manager.
+ */
+public interface OperationJournal {
+    /**
+     * Record one modification.
+     * 
+     * @param operation
+     *            the modification
+     * @param arguments
+     *            its arguments, as described by {@code operation}
+     */
+    void record(JournalOperation operation, String... arguments);
+}
@@ -0,0 +1,181 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.NumericMode;
+
+/**
+ * A bounded cache of query results of {@link StockTransactionManager}, keyed
+ * by query, symbol and parameters, evicting the least recently used result
+ * once full.
+ * <p>
+ * A result is only returned while the state it was computed from is
+ * unchanged: the same stock object at the same snapshot version for per-stock
+ * queries, the same index epoch of the manager for the index. Results that
+ * depend on the time, such as volume weighted prices, are also only returned
+ * within the millisecond they were computed in. Stale results are never
+ * removed early, they are replaced or evicted. All operation is thread safe.
+ */
+public final class QueryCache {
+    /**
+     * The time of results that do not depend on the time
+     */
+    static final long TIMELESS = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, CachedResult> entries;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Construct an empty {@code QueryCache}.
+     *
+     * @param capacity
+     *            maximum number of results kept. Need to be positive
+     * @throws IllegalArgumentException
+     *             if {@code capacity} is not positive
+     */
+    public QueryCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity can only be larger than zero");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+                if (size() > QueryCache.this.capacity) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Get a cached result computed from the given state.
+     *
+     * @param key
+     *            the query
+     * @param owner
+     *            the object the result was computed from
+     * @param epoch
+     *            the version of {@code owner}
+     * @param timeMillis
+     *            the current time, or {@link #TIMELESS}
+     * @return the result, or {@code null} if there is no valid one
+     */
+    synchronized Optional<BigDecimal> get(Key key, Object owner, long epoch, long timeMillis) {
+        CachedResult entry = entries.get(key);
+        if (entry != null && entry.owner == owner && entry.epoch == epoch
+                && entry.timeMillis == timeMillis) {
+            hitCount++;
+            return entry.result;
+        }
+        missCount++;
+        return null;
+    }
+
+    /**
+     * Cache a result computed from the given state, which must have been read
+     * before the result was computed.
+     */
+    synchronized void put(Key key, Object owner, long epoch, long timeMillis,
+            Optional<BigDecimal> result) {
+        entries.put(key, new CachedResult(owner, epoch, timeMillis, result));
+    }
+
+    /**
+     * Forget every result. The counts are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * The kinds of query results cached
+     */
+    enum Kind {
+        VOLUME_WEIGHTED_PRICE, PE_RATIO, DIVIDEND_YIELD, INDEX
+    }
+
+    /**
+     * A query and its parameters
+     */
+    static final class Key {
+        private final Kind kind;
+        private final String symbol;
+        private final BigDecimal price;
+        private final int minutes;
+        private final NumericMode mode;
+
+        Key(Kind kind, String symbol, BigDecimal price, int minutes, NumericMode mode) {
+            this.kind = kind;
+            this.symbol = symbol;
+            this.price = price;
+            this.minutes = minutes;
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object;
+            return kind == other.kind && minutes == other.minutes && mode == other.mode
+                    && Objects.equals(symbol, other.symbol)
+                    && Objects.equals(price, other.price);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, symbol, price, minutes, mode);
+        }
+    }
+
+    private static final class CachedResult {
+        private final Object owner;
+        private final long epoch;
+        private final long timeMillis;
+        private final Optional<BigDecimal> result;
+
+        private CachedResult(Object owner, long epoch, long timeMillis,
+                Optional<BigDecimal> result) {
+            this.owner = owner;
+            this.epoch = epoch;
+            this.timeMillis = timeMillis;
+            this.result = result;
+        }
+    }
+}
@@ -2,25 +2,65 @@ package sibo.liu.jpm.supersimplestockmarket.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
+import org.joda.time.DateTimeUtils;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.NumericMode;
+import sibo.liu.jpm.supersimplestockmarket.stock.PreferredStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.QuantileSketch;
 import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockSnapshot;
+import sibo.liu.jpm.supersimplestockmarket.subscription.StockUpdate;
+import sibo.liu.jpm.supersimplestockmarket.subscription.Subscription;
+import sibo.liu.jpm.supersimplestockmarket.subscription.SubscriptionPublisher;
 
 /**
  * A thread-safe singleton class that manages stock and transaction through a
  * {@code static final ConcurrentHashMap}. Limited functionality as of right
  * now. All operation is thread safe.
+ * <p>
+ * Every stock symbol is also given a dense {@code int} ID by a
+ * {@link SymbolRegistry}, and stocks are mirrored in an array indexed by that
+ * ID, so hot paths can use {@link #getSymbolId(String)} once and then skip
+ * hashing the symbol on every call.
  */
 public enum StockTransactionManager {
     INSTANCE();
 
     // Make sure only one copy of MANAGER will ever exist in the environment
     private static final ConcurrentMap<String, StockImpl> MANAGER = new ConcurrentHashMap<String, StockImpl>();
-    private static final int BIG_DECIMAL_SCALE = 8;
-    private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+    private static final int SUBSCRIPTION_DELIVERY_THREADS = 2;
+    private static final SubscriptionPublisher PUBLISHER = new SubscriptionPublisher(
+            SUBSCRIPTION_DELIVERY_THREADS);
+    private static final SymbolRegistry SYMBOLS = new SymbolRegistry();
+    private static final int INITIAL_STOCK_CAPACITY = 64;
+    private static final int DEFAULT_LEADERBOARD_WINDOW_MINUTES = 15;
+    private static final int DEFAULT_GBCE_INDEX_WINDOW_MINUTES = 15;
+    private static final int QUERY_CACHE_CAPACITY = 4096;
+    private static final QueryCache QUERY_CACHE = new QueryCache(QUERY_CACHE_CAPACITY);
+    // Written under the MANAGER monitor only, read without locking
+    private static volatile AtomicReferenceArray<StockImpl> stocksById = new AtomicReferenceArray<StockImpl>(
+            INITIAL_STOCK_CAPACITY);
+    // Written and called under the MANAGER monitor only
+    private static OperationJournal journal;
+    private static volatile NumericMode numericMode = NumericMode.EXACT;
+    // Bumped under the MANAGER monitor whenever the index may change
+    private static volatile long indexEpoch;
+    // All replaced under the MANAGER monitor only, read without locking
+    private static volatile IndexSampler sampler;
+    private static volatile WindowedGBCEIndex windowedIndex = new WindowedGBCEIndex(
+            DEFAULT_GBCE_INDEX_WINDOW_MINUTES);
+    private static volatile ActivityLeaderboard leaderboard = new ActivityLeaderboard(
+            DEFAULT_LEADERBOARD_WINDOW_MINUTES);
 
     /**
      * Add a stock if {@code stock} is not null and dose not exist in the
@@ -32,8 +72,25 @@ public enum StockTransactionManager {
      *         {@code False} otherwise
      */
     public final boolean addStock(StockImpl stock) {
-        if (stock != null && MANAGER.putIfAbsent(stock.getSymbol(), stock) == null) {
-            return true;
+        if (stock != null) {
+            String symbol = stock.getSymbol();
+            boolean added = false;
+            synchronized (MANAGER) {
+                if (MANAGER.putIfAbsent(symbol, stock) == null) {
+                    setStockById(SYMBOLS.register(symbol), stock);
+                    recordWindowed(windowedIndex, stock);
+                    recordActivity(leaderboard, stock);
+                    indexEpoch++;
+                    added = true;
+                    if (journal != null) {
+                        recordAddStock(journal, stock);
+                    }
+                }
+            }
+            if (added) {
+                PUBLISHER.symbolChanged(symbol);
+                return true;
+            }
         }
         return false;
     }
@@ -47,8 +104,25 @@ public enum StockTransactionManager {
      *         otherwise
      */
     public final boolean removeStock(String symbol) {
-        if (symbol != null && MANAGER.remove(symbol) != null) {
-            return true;
+        if (symbol != null) {
+            boolean removed = false;
+            synchronized (MANAGER) {
+                if (MANAGER.remove(symbol) != null) {
+                    setStockById(SYMBOLS.getId(symbol), null);
+                    leaderboard.remove(symbol);
+                    // The buckets do not keep the stocks apart
+                    windowedIndex = newWindowedIndex(windowedIndex.getWindowMinutes());
+                    indexEpoch++;
+                    removed = true;
+                    if (journal != null) {
+                        journal.record(JournalOperation.REMOVE_STOCK, symbol);
+                    }
+                }
+            }
+            if (removed) {
+                PUBLISHER.symbolChanged(symbol);
+                return true;
+            }
         }
         return false;
     }
@@ -73,6 +147,33 @@ public enum StockTransactionManager {
 
     }
 
+    /**
+     * Get the ID of the symbol of a stock that has been added at least once.
+     * The ID stays the same for the lifetime of the JVM, even if the stock is
+     * removed and added again.
+     * 
+     * @param symbol
+     *            symbol of a stock
+     * @return Return the ID if {@code symbol} has ever been added. Return
+     *         {@link SymbolRegistry#NO_ID} otherwise
+     */
+    public final int getSymbolId(String symbol) {
+        return SYMBOLS.getId(symbol);
+    }
+
+    /**
+     * Retrieve a single stock based on the ID of its symbol, without hashing
+     * the symbol.
+     * 
+     * @param symbolId
+     *            ID returned by {@link #getSymbolId(String)}
+     * @return Return {@code Optional<StockImpl>} if the stock exists in the
+     *         storage, return {@code Optional.empty()} otherwise
+     */
+    public final Optional<StockImpl> getStock(int symbolId) {
+        return Optional.ofNullable(getStockById(symbolId));
+    }
+
     /**
      * Add a single transaction to the stock represented by {@code symbol}
      * 
@@ -85,16 +186,42 @@ public enum StockTransactionManager {
      *         Return {@code false} otherwise
      */
     public final boolean addTransaction(String symbol, Transaction transaction) {
-        if (symbol != null && transaction != null && MANAGER.containsKey(symbol)) {
+        if (symbol != null) {
+            return addTransaction(SYMBOLS.getId(symbol), transaction);
+        }
+        return false;
+    }
+
+    /**
+     * Add a single transaction to the stock represented by {@code symbolId}
+     * 
+     * @param symbolId
+     *            ID returned by {@link #getSymbolId(String)}
+     * @param transaction
+     *            transaction to be added
+     * @return Return {@code true} if {@code transaction} is not null and the
+     *         transaction is successfully added to the stock. Return
+     *         {@code false} otherwise
+     */
+    public final boolean addTransaction(int symbolId, Transaction transaction) {
+        if (transaction != null && getStockById(symbolId) != null) {
+            StockImpl stockImpl;
             synchronized (MANAGER) {
-                StockImpl stockImpl = MANAGER.get(symbol);
+                stockImpl = getStockById(symbolId);
                 if (stockImpl != null) {
                     stockImpl.addTransaction(transaction);
-                    if (MANAGER.replace(symbol, stockImpl) != null) {
-                        return true;
+                    leaderboard.record(stockImpl.getSymbol(), transaction);
+                    windowedIndex.record(transaction);
+                    indexEpoch++;
+                    if (journal != null) {
+                        recordAddTransaction(journal, stockImpl.getSymbol(), transaction);
                     }
                 }
             }
+            if (stockImpl != null) {
+                PUBLISHER.symbolChanged(stockImpl.getSymbol());
+                return true;
+            }
         }
         return false;
     }
@@ -117,6 +244,10 @@ public enum StockTransactionManager {
                 if (stockImpl != null) {
                     stockImpl.setLastAnnualDividend(lastAnnualDividend);
                     if (MANAGER.replace(symbol, stockImpl) != null) {
+                        if (journal != null) {
+                            journal.record(JournalOperation.SET_LAST_ANNUAL_DIVIDEND, symbol,
+                                    String.valueOf(lastAnnualDividend));
+                        }
                         return true;
                     }
                 }
@@ -143,6 +274,10 @@ public enum StockTransactionManager {
                 if (stockImpl != null) {
                     stockImpl.setPeriodPerYear(periodPerYear);
                     if (MANAGER.replace(symbol, stockImpl) != null) {
+                        if (journal != null) {
+                            journal.record(JournalOperation.SET_PERIOD_PER_YEAR, symbol,
+                                    String.valueOf(periodPerYear));
+                        }
                         return true;
                     }
                 }
@@ -170,6 +305,10 @@ public enum StockTransactionManager {
                 if (stockImpl != null) {
                     stockImpl.setDividend(dividendPerPeriod);
                     if (MANAGER.replace(symbol, stockImpl) != null) {
+                        if (journal != null) {
+                            journal.record(JournalOperation.SET_DIVIDEND, symbol,
+                                    String.valueOf(dividendPerPeriod));
+                        }
                         return true;
                     }
                 }
@@ -179,60 +318,599 @@ public enum StockTransactionManager {
     }
 
     /**
-     * Get the GBCE All Shared Index with geometric mean in the whole storage.
+     * Set the journal that receives every successful modification from now
+     * on, in the order they are applied, or stop recording if {@code null}.
+     * 
+     * @param operationJournal
+     *            the journal, or {@code null}
+     */
+    public final void setJournal(OperationJournal operationJournal) {
+        synchronized (MANAGER) {
+            journal = operationJournal;
+        }
+    }
+
+    /**
+     * Record in {@code snapshotJournal} the modifications that rebuild the
+     * current stocks and their transactions in an empty manager, starting with
+     * {@link JournalOperation#CLEAR_ALL}. No other modification is applied
+     * meanwhile, so the snapshot follows exactly the modifications recorded so
+     * far in the journal set by {@link #setJournal(OperationJournal)}.
+     * 
+     * @param snapshotJournal
+     *            the journal that receives the snapshot. Called while the
+     *            manager holds its lock, like any journal
+     * @return Return {@code true} if {@code snapshotJournal} is not null.
+     *         {@code False} otherwise
+     */
+    public final boolean snapshotTo(OperationJournal snapshotJournal) {
+        if (snapshotJournal == null) {
+            return false;
+        }
+        synchronized (MANAGER) {
+            snapshotJournal.record(JournalOperation.CLEAR_ALL);
+            for (StockImpl stock : MANAGER.values()) {
+                recordAddStock(snapshotJournal, stock);
+                for (Transaction transaction : stock.getTransactions()) {
+                    recordAddTransaction(snapshotJournal, stock.getSymbol(), transaction);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the GBCE All Shared Index with geometric mean in the whole storage,
+     * in the numeric mode of the manager.
+     * <p>
+     * The index is computed on the common {@code ForkJoinPool} as a sum of
+     * logarithms split per stock, and per chunk of transactions for very
+     * active stocks.
      * 
      * @return Return {@code Optional<BigDecimal>} if there exists at least one
      *         valid transaction in the whole storage. Return
      *         {@codeOptional.empty()} otherwise
+     * @see #setNumericMode(NumericMode)
      */
     public final Optional<BigDecimal> getGBCEAllShareIndex() {
-        BigDecimal numberOfTransactions = BigDecimal.ZERO;
-        BigDecimal priceMultiplicationTotal = BigDecimal.ONE;
-        for (StockImpl stockImpl : MANAGER.values()) {
-            if (stockImpl != null) {
-                for (Transaction transaction : stockImpl.getTransactions()) {
-                    if (transaction != null && transaction.getPrice().signum() == 1) {
-                        priceMultiplicationTotal = priceMultiplicationTotal.multiply(transaction
-                                .getPrice());
-                        numberOfTransactions = numberOfTransactions.add(BigDecimal.ONE);
-                    }
-                }
-            }
+        return getGBCEAllShareIndex(numericMode);
+    }
+
+    /**
+     * Get the GBCE All Shared Index with geometric mean in the whole storage,
+     * in {@code mode} whatever the numeric mode of the manager.
+     * <p>
+     * The result is cached until the next stock or transaction is added or
+     * removed through the manager, see {@link #getQueryCache()}.
+     * 
+     * @param mode
+     *            the arithmetic to be used
+     * @return Return {@code Optional<BigDecimal>} if {@code mode} is not null
+     *         and there exists at least one valid transaction in the whole
+     *         storage. Return {@code Optional.empty()} otherwise
+     */
+    public final Optional<BigDecimal> getGBCEAllShareIndex(NumericMode mode) {
+        if (mode == null) {
+            return Optional.empty();
+        }
+        // Read the epoch first, so a result racing a change is never reused
+        long epoch = indexEpoch;
+        QueryCache.Key key = new QueryCache.Key(QueryCache.Kind.INDEX, null, null, 0, mode);
+        Optional<BigDecimal> index = QUERY_CACHE.get(key, MANAGER, epoch, QueryCache.TIMELESS);
+        if (index == null) {
+            index = getGBCEIndexPartial(mode).toIndex();
+            QUERY_CACHE.put(key, MANAGER, epoch, QueryCache.TIMELESS, index);
+        }
+        return index;
+    }
+
+    /**
+     * Get the volume weighted stock price of the stock represented by
+     * {@code symbol} in the past {@code pastMinutes} minutes, in the numeric
+     * mode of the manager. The result is cached for the rest of the
+     * millisecond unless the stock changes, see {@link #getQueryCache()}.
+     * 
+     * @param symbol
+     *            symbol of a stock
+     * @param pastMinutes
+     *            past minutes to be used to include transactions
+     * @return Return {@code Optional<BigDecimal>} if the stock exists and has
+     *         a volume weighted price. Return {@code Optional.empty()}
+     *         otherwise
+     */
+    public final Optional<BigDecimal> getVolumeWeightedStockPrice(String symbol,
+            int pastMinutes) {
+        return getCached(QueryCache.Kind.VOLUME_WEIGHTED_PRICE, symbol, null, pastMinutes);
+    }
+
+    /**
+     * Get the P/E ratio of the stock represented by {@code symbol} at
+     * {@code price}, in the numeric mode of the manager. The result is cached
+     * until the stock changes, see {@link #getQueryCache()}.
+     * 
+     * @param symbol
+     *            symbol of a stock
+     * @param price
+     *            the price of the stock
+     * @return Return {@code Optional<BigDecimal>} if the stock exists and has
+     *         a P/E ratio at {@code price}. Return {@code Optional.empty()}
+     *         otherwise
+     */
+    public final Optional<BigDecimal> getPERatio(String symbol, BigDecimal price) {
+        return getCached(QueryCache.Kind.PE_RATIO, symbol, price, 0);
+    }
+
+    /**
+     * Get the dividend yield of the stock represented by {@code symbol} at
+     * {@code price}, in the numeric mode of the manager. The result is cached
+     * until the stock changes, see {@link #getQueryCache()}.
+     * 
+     * @param symbol
+     *            symbol of a stock
+     * @param price
+     *            the price of the stock
+     * @return Return {@code Optional<BigDecimal>} if the stock exists and has
+     *         a dividend yield at {@code price}. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public final Optional<BigDecimal> getDividendYield(String symbol, BigDecimal price) {
+        return getCached(QueryCache.Kind.DIVIDEND_YIELD, symbol, price, 0);
+    }
+
+    /**
+     * Get the cache of the results of the queries of the manager, for its
+     * hit, miss and eviction counts.
+     * 
+     * @return the {@code QueryCache} of the manager
+     */
+    public final QueryCache getQueryCache() {
+        return QUERY_CACHE;
+    }
+
+    /**
+     * Get the epoch of the GBCE All Share Index, which increases every time a
+     * stock or transaction is added or removed through the manager. The
+     * index is unchanged as long as the epoch is, so it can be used as a
+     * validator by clients that keep a copy of the index.
+     * 
+     * @return the current epoch of the index
+     */
+    public final long getIndexEpoch() {
+        return indexEpoch;
+    }
+
+    /**
+     * Get the partial result of the GBCE All Shared Index over the whole
+     * storage, so that it can be combined with partial results computed
+     * elsewhere.
+     * 
+     * @return Return the {@code GBCEIndexPartial} of every valid transaction
+     *         in the storage
+     */
+    public final GBCEIndexPartial getGBCEIndexPartial() {
+        return getGBCEIndexPartial(NumericMode.EXACT);
+    }
+
+    /**
+     * Get the partial result of the GBCE All Shared Index over the whole
+     * storage computed in {@code mode}.
+     * 
+     * @param mode
+     *            the arithmetic to be used
+     * @return Return the {@code GBCEIndexPartial} of every valid transaction
+     *         in the storage, or {@link GBCEIndexPartial#EMPTY} if
+     *         {@code mode} is null
+     */
+    public final GBCEIndexPartial getGBCEIndexPartial(NumericMode mode) {
+        List<StockImpl> stocks = new ArrayList<StockImpl>(MANAGER.values());
+        if (mode == null || stocks.isEmpty()) {
+            return GBCEIndexPartial.EMPTY;
+        }
+        return ForkJoinPool.commonPool().invoke(GBCEIndexTask.forStocks(stocks, mode));
+    }
+
+    /**
+     * Set the arithmetic {@link #getGBCEAllShareIndex()} and the users of
+     * {@link #getNumericMode()} run in if {@code mode} is not null. Do nothing
+     * otherwise. {@link NumericMode#EXACT} until set.
+     * 
+     * @param mode
+     *            the arithmetic to be used
+     */
+    public final void setNumericMode(NumericMode mode) {
+        if (mode != null) {
+            numericMode = mode;
+        }
+    }
+
+    /**
+     * Get the arithmetic queries of this manager run in, for example
+     * {@code MANAGER.getNumericMode().getVolumeWeightedStockPrice(stock, 15)}.
+     * 
+     * @return the numeric mode of the manager
+     */
+    public final NumericMode getNumericMode() {
+        return numericMode;
+    }
+
+    /**
+     * Get the GBCE All Shared Index with geometric mean of the transactions in
+     * the rolling window of the manager, across every stock. Costs
+     * {@code O(1)} amortized whatever the number of stocks and transactions.
+     * 
+     * @return Return {@code Optional<BigDecimal>} if there exists at least one
+     *         valid transaction in the window. Return {@code Optional.empty()}
+     *         otherwise
+     * @see #setGBCEIndexWindow(int)
+     */
+    public final Optional<BigDecimal> getWindowedGBCEAllShareIndex() {
+        return windowedIndex.getIndex();
+    }
+
+    /**
+     * Get the partial result of the GBCE All Shared Index over the rolling
+     * window of the manager, so that it can be combined with partial results
+     * computed elsewhere.
+     * 
+     * @return Return the {@code GBCEIndexPartial} of every valid transaction
+     *         in the window
+     */
+    public final GBCEIndexPartial getWindowedGBCEIndexPartial() {
+        return windowedIndex.getPartial();
+    }
+
+    /**
+     * Set the length of the rolling window of
+     * {@link #getWindowedGBCEAllShareIndex()} if {@code windowMinutes} is
+     * positive, 15 minutes until set. The transactions already in the new
+     * window are taken from the histories of the stocks.
+     * 
+     * @param windowMinutes
+     *            length of the window in minutes
+     * @return Return {@code true} if {@code windowMinutes} is positive.
+     *         {@code False} otherwise
+     */
+    public final boolean setGBCEIndexWindow(int windowMinutes) {
+        if (windowMinutes <= 0) {
+            return false;
+        }
+        synchronized (MANAGER) {
+            windowedIndex = newWindowedIndex(windowMinutes);
         }
-        if (numberOfTransactions.signum() == 0 || priceMultiplicationTotal.signum() != 1) {
+        return true;
+    }
+
+    public final int getGBCEIndexWindow() {
+        return windowedIndex.getWindowMinutes();
+    }
+
+    /**
+     * Start recording the GBCE All Share Index, and the volume weighted price
+     * of every stock if {@code sampleStocks} is {@code true}, every
+     * {@code periodMillis} milliseconds into preallocated series of
+     * {@code capacity} samples, see {@link IndexSampler}. Stop the previous
+     * sampling if any.
+     * 
+     * @param periodMillis
+     *            time between two samples in milliseconds
+     * @param capacity
+     *            number of samples kept per series
+     * @param sampleStocks
+     *            {@code true} to also record the volume weighted prices
+     * @return Return {@code Optional<IndexSampler>} of the new sampling if
+     *         {@code periodMillis} and {@code capacity} are positive. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public final Optional<IndexSampler> startIndexSampling(long periodMillis, int capacity,
+            boolean sampleStocks) {
+        if (periodMillis <= 0L || capacity <= 0) {
             return Optional.empty();
         }
-        return Optional.of(nthRoot(numberOfTransactions, priceMultiplicationTotal,
-                BigDecimal.ONE.divide(BigDecimal.TEN.pow(BIG_DECIMAL_SCALE))));
+        IndexSampler started = new IndexSampler(this, periodMillis, capacity, sampleStocks);
+        synchronized (MANAGER) {
+            if (sampler != null) {
+                sampler.close();
+            }
+            sampler = started;
+            started.start();
+        }
+        return Optional.of(started);
+    }
+
+    /**
+     * Stop recording the GBCE All Share Index. The recorded series are
+     * dropped.
+     */
+    public final void stopIndexSampling() {
+        synchronized (MANAGER) {
+            if (sampler != null) {
+                sampler.close();
+                sampler = null;
+            }
+        }
+    }
+
+    /**
+     * @return Return {@code Optional<IndexSampler>} of the current sampling
+     *         if started. Return {@code Optional.empty()} otherwise
+     */
+    public final Optional<IndexSampler> getIndexSampler() {
+        return Optional.ofNullable(sampler);
+    }
+
+    /**
+     * Get a sketch of the prices of the transactions of every stock in the
+     * past {@code pastMinutes} minutes, merged from the sketches of each
+     * stock, for market-wide price quantiles.
+     * 
+     * @param pastMinutes
+     *            past minutes to be used to include transactions
+     * @return a new {@code QuantileSketch}, empty if there is no transaction
+     *         in the period
+     */
+    public final QuantileSketch getPriceSketch(int pastMinutes) {
+        QuantileSketch sketch = new QuantileSketch();
+        for (StockImpl stockImpl : MANAGER.values()) {
+            sketch.merge(stockImpl.getPriceSketch(pastMinutes));
+        }
+        return sketch;
+    }
+
+    /**
+     * Subscribe to the last price and volume weighted stock price of the stock
+     * specified by {@code symbol}. The subscriber receives the current values
+     * straight away, then asynchronously after the stock is added, removed or
+     * receives transactions. Updates are conflated: a subscriber that falls
+     * behind only receives the latest values, and never slows down
+     * {@code addTransaction}.
+     * 
+     * @param symbol
+     *            symbol of a stock, which does not need to exist yet
+     * @param pastMinutes
+     *            past minutes used for the volume weighted stock price
+     * @param subscriber
+     *            receives the {@code StockUpdate} objects
+     * @return Return {@code Optional<Subscription>} if {@code symbol} and
+     *         {@code subscriber} are not null. Return {@code Optional.empty()}
+     *         otherwise
+     */
+    public final Optional<Subscription> subscribeStock(String symbol, int pastMinutes,
+            Consumer<StockUpdate> subscriber) {
+        if (symbol != null && subscriber != null) {
+            return Optional.of(PUBLISHER.subscribeSymbol(symbol,
+                    () -> getStockUpdate(symbol, pastMinutes), subscriber));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Subscribe to the GBCE All Shared Index. The subscriber receives the
+     * current index straight away, then asynchronously after any stock is
+     * added, removed or receives transactions. Updates are conflated the same
+     * way as {@link #subscribeStock(String, int, Consumer)}.
+     * 
+     * @param subscriber
+     *            receives the result of {@link #getGBCEAllShareIndex()}
+     * @return Return {@code Optional<Subscription>} if {@code subscriber} is
+     *         not null. Return {@code Optional.empty()} otherwise
+     */
+    public final Optional<Subscription> subscribeIndex(Consumer<Optional<BigDecimal>> subscriber) {
+        if (subscriber != null) {
+            return Optional.of(PUBLISHER.subscribeMarket(this::getGBCEAllShareIndex, subscriber));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Get the stocks that traded the largest quantity over the leaderboard
+     * window of the manager, ranked incrementally as transactions are added.
+     * 
+     * @param count
+     *            maximum number of stocks to return
+     * @return at most {@code count} stocks, most active first
+     * @see #setLeaderboardWindow(int)
+     */
+    public final List<SymbolActivity> getMostActiveByVolume(int count) {
+        return leaderboard.getTopByVolume(count);
+    }
 
+    /**
+     * Get the stocks that traded the largest notional over the leaderboard
+     * window of the manager, ranked incrementally as transactions are added.
+     * 
+     * @param count
+     *            maximum number of stocks to return
+     * @return at most {@code count} stocks, most active first
+     * @see #setLeaderboardWindow(int)
+     */
+    public final List<SymbolActivity> getMostActiveByNotional(int count) {
+        return leaderboard.getTopByNotional(count);
     }
 
     /**
-     * Clear all entry in the storage.
+     * Set the length of the rolling window of
+     * {@link #getMostActiveByVolume(int)} and
+     * {@link #getMostActiveByNotional(int)} if {@code windowMinutes} is
+     * positive, 15 minutes until set. The transactions already in the new
+     * window are taken from the histories of the stocks.
+     * 
+     * @param windowMinutes
+     *            length of the window in minutes
+     * @return Return {@code true} if {@code windowMinutes} is positive.
+     *         {@code False} otherwise
+     */
+    public final boolean setLeaderboardWindow(int windowMinutes) {
+        if (windowMinutes <= 0) {
+            return false;
+        }
+        synchronized (MANAGER) {
+            ActivityLeaderboard rebuilt = new ActivityLeaderboard(windowMinutes);
+            for (StockImpl stockImpl : MANAGER.values()) {
+                recordActivity(rebuilt, stockImpl);
+            }
+            leaderboard = rebuilt;
+        }
+        return true;
+    }
+
+    public final int getLeaderboardWindow() {
+        return leaderboard.getWindowMinutes();
+    }
+
+    /**
+     * Clear all entry in the storage, cancel every subscription and stop the
+     * index sampling.
      * 
      * @return Return {@code true} if the map is cleared up. Return
      *         {@code false} otherwise
      */
     public final boolean clearAll() {
-        MANAGER.clear();
+        PUBLISHER.cancelAll();
+        stopIndexSampling();
+        synchronized (MANAGER) {
+            MANAGER.clear();
+            stocksById = new AtomicReferenceArray<StockImpl>(INITIAL_STOCK_CAPACITY);
+            leaderboard.clear();
+            windowedIndex.clear();
+            QUERY_CACHE.clear();
+            indexEpoch++;
+            if (journal != null) {
+                journal.record(JournalOperation.CLEAR_ALL);
+            }
+        }
         return MANAGER.isEmpty();
     }
 
-    // Internal function used to calculate the nth root of a BigDecimal number
-    // with specified precision
-    private final BigDecimal nthRoot(BigDecimal n, BigDecimal base, BigDecimal precision) {
-        BigDecimal prev = base;
-        BigDecimal curr = base.divide(n, BIG_DECIMAL_SCALE, ROUNDING_MODE).stripTrailingZeros();
+    // Live view of the stocks, for the samplers of this package
+    final Collection<StockImpl> getStocks() {
+        return MANAGER.values();
+    }
 
-        while (curr.subtract(prev).abs().compareTo(precision) > 0) {
-            prev = curr;
-            BigDecimal nMinusOne = n.subtract(BigDecimal.ONE);
-            curr = nMinusOne
-                    .multiply(curr)
-                    .add(base.divide(curr.pow(nMinusOne.intValueExact()), BIG_DECIMAL_SCALE,
-                            ROUNDING_MODE)).divide(n, BIG_DECIMAL_SCALE, ROUNDING_MODE)
-                    .stripTrailingZeros();
+    // Build the update delivered to stock subscribers from the latest snapshot
+    private final StockUpdate getStockUpdate(String symbol, int pastMinutes) {
+        StockImpl stockImpl = MANAGER.get(symbol);
+        if (stockImpl == null) {
+            return new StockUpdate(symbol, 0L, null, null);
+        }
+        StockSnapshot snapshot = stockImpl.getSnapshot();
+        Transaction latest = snapshot.getLatestTransaction();
+        BigDecimal lastPrice = latest == null ? null : latest.getPrice();
+        return new StockUpdate(symbol, snapshot.getVersion(), lastPrice, stockImpl
+                .getVolumeWeightedStockPrice(pastMinutes).orElse(null));
+    }
+
+    // Look up a per-stock result, or compute and cache it
+    private static Optional<BigDecimal> getCached(QueryCache.Kind kind, String symbol,
+            BigDecimal price, int minutes) {
+        StockImpl stockImpl = symbol == null ? null : MANAGER.get(symbol);
+        if (stockImpl == null) {
+            return Optional.empty();
+        }
+        NumericMode mode = numericMode;
+        StockSnapshot snapshot = stockImpl.getSnapshot();
+        if (snapshot == null) {
+            return query(kind, mode, stockImpl, price, minutes);
+        }
+        // Read the version first, so a result racing a change is never reused
+        long version = snapshot.getVersion();
+        long timeMillis = kind == QueryCache.Kind.VOLUME_WEIGHTED_PRICE ? DateTimeUtils
+                .currentTimeMillis() : QueryCache.TIMELESS;
+        QueryCache.Key key = new QueryCache.Key(kind, symbol, price, minutes, mode);
+        Optional<BigDecimal> result = QUERY_CACHE.get(key, stockImpl, version, timeMillis);
+        if (result == null) {
+            result = query(kind, mode, stockImpl, price, minutes);
+            QUERY_CACHE.put(key, stockImpl, version, timeMillis, result);
+        }
+        return result;
+    }
+
+    private static Optional<BigDecimal> query(QueryCache.Kind kind, NumericMode mode,
+            StockImpl stockImpl, BigDecimal price, int minutes) {
+        switch (kind) {
+        case VOLUME_WEIGHTED_PRICE:
+            return mode.getVolumeWeightedStockPrice(stockImpl, minutes);
+        case PE_RATIO:
+            return mode.getPERatio(stockImpl, price);
+        case DIVIDEND_YIELD:
+            return mode.getDividendYield(stockImpl, price);
+        default:
+            throw new IllegalArgumentException("Not a query of one stock: " + kind);
+        }
+    }
+
+    // Must be called while holding the MANAGER monitor
+    private static WindowedGBCEIndex newWindowedIndex(int windowMinutes) {
+        WindowedGBCEIndex index = new WindowedGBCEIndex(windowMinutes);
+        for (StockImpl stockImpl : MANAGER.values()) {
+            recordWindowed(index, stockImpl);
+        }
+        return index;
+    }
+
+    // Must be called while holding the MANAGER monitor
+    private static void recordWindowed(WindowedGBCEIndex index, StockImpl stockImpl) {
+        StockSnapshot snapshot = stockImpl.getSnapshot();
+        if (snapshot != null) {
+            for (Transaction transaction : snapshot.getTransactions()) {
+                index.record(transaction);
+            }
+        }
+    }
+
+    // Must be called while holding the MANAGER monitor
+    private static void recordActivity(ActivityLeaderboard activities, StockImpl stockImpl) {
+        StockSnapshot snapshot = stockImpl.getSnapshot();
+        if (snapshot != null) {
+            for (Transaction transaction : snapshot.getTransactions()) {
+                activities.record(stockImpl.getSymbol(), transaction);
+            }
+        }
+    }
+
+    // Must be called while holding the MANAGER monitor
+    private static void recordAddStock(OperationJournal target, StockImpl stock) {
+        target.record(JournalOperation.ADD_STOCK,
+                stock instanceof PreferredStock ? JournalOperation.PREFERRED_STOCK
+                        : JournalOperation.COMMON_STOCK, stock.getSymbol(), String.valueOf(stock
+                        .getParValue()), String.valueOf(stock.getLastAnnualDividend()), String
+                        .valueOf(stock.getPeriodPerYear()), String.valueOf(stock.getDividend()));
+    }
+
+    // Must be called while holding the MANAGER monitor
+    private static void recordAddTransaction(OperationJournal target, String symbol,
+            Transaction transaction) {
+        target.record(JournalOperation.ADD_TRANSACTION, symbol, String.valueOf(transaction
+                .getTimeStamp()), String.valueOf(transaction.getQuantity()), transaction
+                .getIndicator().getIndicatorString(), String.valueOf(transaction.getPrice()));
+    }
+
+    // Lock-free lookup of a stock by the ID of its symbol
+    private static StockImpl getStockById(int symbolId) {
+        AtomicReferenceArray<StockImpl> current = stocksById;
+        if (symbolId < 0 || symbolId >= current.length()) {
+            return null;
+        }
+        return current.get(symbolId);
+    }
+
+    // Must be called while holding the MANAGER monitor
+    private static void setStockById(int symbolId, StockImpl stockImpl) {
+        if (symbolId < 0) {
+            return;
+        }
+        AtomicReferenceArray<StockImpl> current = stocksById;
+        if (symbolId >= current.length()) {
+            int length = current.length();
+            while (length <= symbolId) {
+                length *= 2;
+            }
+            AtomicReferenceArray<StockImpl> grown = new AtomicReferenceArray<StockImpl>(length);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            current = grown;
         }
-        return curr.stripTrailingZeros();
+        current.set(symbolId, stockImpl);
+        stocksById = current;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import java.math.BigDecimal;
+
+/**
+ * The traded volume and notional of one stock over the window of an
+ * {@link ActivityLeaderboard}, as of the moment it was ranked.
+ */
+public final class SymbolActivity {
+    private final String symbol;
+    private final long volume;
+    private final BigDecimal notional;
+
+    SymbolActivity(String symbol, long volume, BigDecimal notional) {
+        this.symbol = symbol;
+        this.volume = volume;
+        this.notional = notional;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return total quantity traded, capped at {@code Long.MAX_VALUE}
+     */
+    public long getVolume() {
+        return volume;
+    }
+
+    /**
+     * @return total price times quantity traded
+     */
+    public BigDecimal getNotional() {
+        return notional;
+    }
+
+    @Override
+    public String toString() {
+        return symbol + " " + volume + " " + notional.toPlainString();
+    }
+}
@@ -0,0 +1,99 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+
+/**
+ * Maps every valid stock symbol to a dense {@code int} ID, starting from 0 in
+ * order of registration, so that stocks can be kept in arrays indexed by ID.
+ * An ID is never reused or reassigned once given out. All operations are
+ * thread safe and lookups never block.
+ */
+public final class SymbolRegistry {
+    /**
+     * ID returned for symbols that are not registered
+     */
+    public static final int NO_ID = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private volatile String[] symbols = new String[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Get the ID of {@code symbol}, registering it if it has none yet.
+     *
+     * @param symbol
+     *            the stock symbol
+     * @return Return the ID of {@code symbol} if it is a valid stock symbol.
+     *         Return {@link #NO_ID} otherwise
+     */
+    public int register(String symbol) {
+        if (!StockImpl.isValidSymbol(symbol)) {
+            return NO_ID;
+        }
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(symbol);
+            if (id == null) {
+                String[] current = symbols;
+                if (size == current.length) {
+                    current = Arrays.copyOf(current, size * 2);
+                }
+                current[size] = symbol;
+                id = size++;
+                // Publish the symbol before its ID becomes visible
+                symbols = current;
+                ids.put(symbol, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Get the ID of {@code symbol} without registering it.
+     *
+     * @param symbol
+     *            the stock symbol
+     * @return Return the ID of {@code symbol} if registered. Return
+     *         {@link #NO_ID} otherwise
+     */
+    public int getId(String symbol) {
+        if (symbol == null) {
+            return NO_ID;
+        }
+        Integer id = ids.get(symbol);
+        return id == null ? NO_ID : id;
+    }
+
+    /**
+     * Get the symbol registered with {@code id}.
+     *
+     * @param id
+     *            the ID of a symbol
+     * @return Return the symbol if {@code id} is registered. Return
+     *         {@code null} otherwise
+     */
+    public String getSymbol(int id) {
+        String[] current = symbols;
+        if (id < 0 || id >= current.length) {
+            return null;
+        }
+        return current[id];
+    }
+
+    /**
+     * @return number of registered symbols, which is also the smallest ID that
+     *         has not been given out yet
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,194 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+/**
+ * A fixed-size ring of {@code double} samples in time order, preallocated as
+ * two primitive arrays so that neither adding a sample nor reading a range
+ * allocates. Once full, every new sample replaces the oldest one.
+ * <p>
+ * Ranges are found by binary search and copied, as they are or downsampled,
+ * into arrays supplied by the caller. All operation is thread safe.
+ */
+public final class TimeSeries {
+    private final long[] times;
+    private final double[] values;
+    // Index of the oldest sample
+    private int start;
+    private int size;
+
+    /**
+     * Construct an empty {@code TimeSeries}.
+     *
+     * @param capacity
+     *            maximum number of samples kept. Need to be positive
+     * @throws IllegalArgumentException
+     *             if {@code capacity} is not positive
+     */
+    public TimeSeries(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity can only be larger than zero");
+        }
+        this.times = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    public int getCapacity() {
+        return times.length;
+    }
+
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Add a sample, replacing the oldest one if the series is full.
+     *
+     * @param timeMillis
+     *            time of the sample
+     * @param value
+     *            the sample, {@code Double.NaN} if there was no value
+     * @return Return {@code true} if the sample is added. {@code False} if it
+     *         is older than the latest sample
+     */
+    public synchronized boolean add(long timeMillis, double value) {
+        if (size > 0 && timeMillis < times[slot(size - 1)]) {
+            return false;
+        }
+        int slot;
+        if (size < times.length) {
+            slot = slot(size);
+            size++;
+        } else {
+            slot = start;
+            start = slot(1);
+        }
+        times[slot] = timeMillis;
+        values[slot] = value;
+        return true;
+    }
+
+    /**
+     * Copy the samples from {@code fromMillis} inclusive to {@code toMillis}
+     * exclusive, oldest first, into {@code sampleTimes} and
+     * {@code sampleValues}. Only the oldest ones are copied if there are more
+     * samples in the range than room in the arrays.
+     *
+     * @param fromMillis
+     *            start of the range
+     * @param toMillis
+     *            end of the range
+     * @param sampleTimes
+     *            receives the times of the samples
+     * @param sampleValues
+     *            receives the samples
+     * @return the number of samples copied
+     * @throws IllegalArgumentException
+     *             if any array is null or the arrays differ in length
+     */
+    public synchronized int getRange(long fromMillis, long toMillis, long[] sampleTimes,
+            double[] sampleValues) {
+        checkArrays(sampleTimes, sampleValues);
+        int first = firstAtOrAfter(fromMillis);
+        int end = firstAtOrAfter(toMillis);
+        int count = Math.max(0, Math.min(end - first, sampleTimes.length));
+        for (int i = 0; i < count; i++) {
+            int slot = slot(first + i);
+            sampleTimes[i] = times[slot];
+            sampleValues[i] = values[slot];
+        }
+        return count;
+    }
+
+    /**
+     * Split the range from {@code fromMillis} inclusive to {@code toMillis}
+     * exclusive into {@code points} intervals of equal length, and copy the
+     * start and the mean sample of every interval that has a sample, oldest
+     * first, into {@code sampleTimes} and {@code sampleValues}. Samples of
+     * {@code Double.NaN} are left out of the means, and an interval that only
+     * has such samples gets {@code Double.NaN}.
+     *
+     * @param fromMillis
+     *            start of the range
+     * @param toMillis
+     *            end of the range
+     * @param points
+     *            number of intervals. Need to be positive and at most the
+     *            length of the arrays
+     * @param sampleTimes
+     *            receives the start of the intervals
+     * @param sampleValues
+     *            receives the means
+     * @return the number of intervals copied
+     * @throws IllegalArgumentException
+     *             if any array is null, the arrays differ in length or
+     *             {@code points} is out of range
+     */
+    public synchronized int getDownsampled(long fromMillis, long toMillis, int points,
+            long[] sampleTimes, double[] sampleValues) {
+        checkArrays(sampleTimes, sampleValues);
+        if (points <= 0 || points > sampleTimes.length) {
+            throw new IllegalArgumentException(
+                    "The number of points can only be between one and the length of the arrays");
+        }
+        if (toMillis <= fromMillis) {
+            return 0;
+        }
+        long intervalMillis = Math.max(1L, (toMillis - fromMillis + points - 1) / points);
+        int end = firstAtOrAfter(toMillis);
+        int count = 0;
+        int index = firstAtOrAfter(fromMillis);
+        while (index < end) {
+            long interval = (times[slot(index)] - fromMillis) / intervalMillis;
+            double sum = 0.0d;
+            int valueCount = 0;
+            for (; index < end
+                    && (times[slot(index)] - fromMillis) / intervalMillis == interval; index++) {
+                double value = values[slot(index)];
+                if (!Double.isNaN(value)) {
+                    sum += value;
+                    valueCount++;
+                }
+            }
+            sampleTimes[count] = fromMillis + interval * intervalMillis;
+            sampleValues[count] = valueCount == 0 ? Double.NaN : sum / valueCount;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Forget every sample.
+     */
+    public synchronized void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    // Position, from the oldest, of the first sample at or after timeMillis
+    private int firstAtOrAfter(long timeMillis) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[slot(middle)] < timeMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int slot(int position) {
+        int slot = start + position;
+        return slot < times.length ? slot : slot - times.length;
+    }
+
+    private static void checkArrays(long[] sampleTimes, double[] sampleValues) {
+        if (sampleTimes == null || sampleValues == null) {
+            throw new IllegalArgumentException("No input can be null");
+        }
+        if (sampleTimes.length != sampleValues.length) {
+            throw new IllegalArgumentException("The arrays need to be of the same length");
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.math.RoundingMode;
 
 import org.joda.time.DateTime;
 
+import sibo.liu.jpm.supersimplestockmarket.stock.ScaledResult;
+
 /**
  * The transaction object that can be included in {@code Stock} object to record
  * a trade on that stock. Once initialized, no value can be changed.
@@ -19,6 +21,10 @@ public class Transaction {
     private final BigInteger quantity;
     private final BuySellIndicator indicator;
     private final BigDecimal price;
+    // Primitive copies used by the allocation-free queries
+    private final long timeMillis;
+    private final long quantityLong;
+    private final long unscaledPrice;
 
     private static final String NULL_INPUT_EXCEPTION_MESSAGE = "No input can be null";
     private static final String NON_POSITIVE_EXCEPTION_MESSAGE = "Transaction quantity and price can only be larger than zero";
@@ -59,6 +65,9 @@ public class Transaction {
             this.quantity = quantity;
             this.indicator = indicator;
             this.price = price.setScale(BIG_DECIMAL_SCALE, ROUNDING_MODE).stripTrailingZeros();
+            this.timeMillis = timeStamp.getMillis();
+            this.quantityLong = quantity.bitLength() < Long.SIZE ? quantity.longValue() : 0L;
+            this.unscaledPrice = Math.max(ScaledResult.toUnscaled(this.price), 0L);
         } else {
             throw new IllegalArgumentException(NULL_INPUT_EXCEPTION_MESSAGE);
         }
@@ -83,4 +92,38 @@ public class Transaction {
     public BigDecimal getPrice() {
         return price;
     }
+
+    /**
+     * @return the transaction time in milliseconds since the epoch
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return the quantity as a {@code long}, or 0 if it does not fit in one
+     */
+    public long getQuantityAsLong() {
+        return quantityLong;
+    }
+
+    /**
+     * @return the price multiplied by 10^8 as a {@code long}, or 0 if it does
+     *         not fit in one
+     */
+    public long getUnscaledPrice() {
+        return unscaledPrice;
+    }
+
+    /**
+     * Check if the primitive copies of the quantity and price of this
+     * transaction are usable. Always {@code false} for a transaction whose
+     * quantity or price is too large to fit in a {@code long}.
+     * 
+     * @return Return {@code true} if {@link #getQuantityAsLong()} and
+     *         {@link #getUnscaledPrice()} are exact. {@code False} otherwise
+     */
+    public boolean isPrimitive() {
+        return quantityLong > 0 && unscaledPrice > 0;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.joda.time.DateTimeUtils;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.ScaledResult;
+
+/**
+ * The GBCE All Share Index over a rolling window, kept up to date as
+ * transactions are recorded instead of being recomputed from the histories.
+ * <p>
+ * Every recorded transaction adds the logarithm of its price to a running sum
+ * and to a per-second bucket of a ring covering the window. Buckets that fall
+ * out of the window are subtracted again, lazily, on the next record or query,
+ * so both cost {@code O(1)} amortized whatever the number of stocks and
+ * transactions. The running sum is recomputed from the buckets once per turn
+ * of the ring, so that the rounding errors of the subtractions do not build
+ * up. The window is resolved to whole seconds.
+ * <p>
+ * Transactions time stamped after the current second are counted in it, and
+ * transactions older than the window are left out. All operation is thread
+ * safe.
+ */
+public final class WindowedGBCEIndex {
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60000L;
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final double LOG_UNSCALED_PER_UNIT = Math.log(Math.pow(10.0d,
+            ScaledResult.SCALE));
+
+    private final long windowMillis;
+    // Second of every bucket of the ring, or EMPTY
+    private final long[] seconds;
+    private final double[] logSums;
+    private final long[] counts;
+    private double logSum;
+    private long count;
+    private long expiredSeconds;
+    // Every second up to this one has been subtracted
+    private long expiredThrough = EMPTY;
+
+    /**
+     * Construct an empty {@code WindowedGBCEIndex}.
+     *
+     * @param windowMinutes
+     *            length of the rolling window in minutes. Need to be positive
+     * @throws IllegalArgumentException
+     *             if {@code windowMinutes} is not positive
+     */
+    public WindowedGBCEIndex(int windowMinutes) {
+        if (windowMinutes <= 0) {
+            throw new IllegalArgumentException("The window can only be larger than zero");
+        }
+        this.windowMillis = windowMinutes * MILLIS_PER_MINUTE;
+        // The seconds from the one partly in the window to the current one
+        int bucketCount = (int) (windowMillis / MILLIS_PER_SECOND) + 1;
+        this.seconds = new long[bucketCount];
+        this.logSums = new double[bucketCount];
+        this.counts = new long[bucketCount];
+        Arrays.fill(seconds, EMPTY);
+    }
+
+    public int getWindowMinutes() {
+        return (int) (windowMillis / MILLIS_PER_MINUTE);
+    }
+
+    /**
+     * Add the price of a transaction to the index. Do nothing if
+     * {@code transaction} is null, its price is not positive or it is older
+     * than the window.
+     *
+     * @param transaction
+     *            the transaction
+     */
+    public synchronized void record(Transaction transaction) {
+        if (transaction == null) {
+            return;
+        }
+        double logPrice;
+        if (transaction.isPrimitive()) {
+            if (transaction.getUnscaledPrice() <= 0L) {
+                return;
+            }
+            logPrice = Math.log(transaction.getUnscaledPrice()) - LOG_UNSCALED_PER_UNIT;
+        } else {
+            BigDecimal price = transaction.getPrice();
+            if (price == null || price.signum() != 1) {
+                return;
+            }
+            logPrice = Math.log(price.doubleValue());
+        }
+        long now = DateTimeUtils.currentTimeMillis();
+        expire(now);
+        long second = Math.min(Math.floorDiv(transaction.getTimeMillis(), MILLIS_PER_SECOND),
+                Math.floorDiv(now, MILLIS_PER_SECOND));
+        if (isExpired(second, now)) {
+            return;
+        }
+        int slot = (int) Math.floorMod(second, (long) seconds.length);
+        if (seconds[slot] != second) {
+            // Only left over if the clock went back, as expire empties it
+            // otherwise
+            subtract(slot);
+            seconds[slot] = second;
+        }
+        logSums[slot] += logPrice;
+        counts[slot]++;
+        logSum += logPrice;
+        count++;
+    }
+
+    /**
+     * Get the partial result of the index over the window, so that it can be
+     * combined with partial results computed elsewhere.
+     *
+     * @return Return the {@code GBCEIndexPartial} of the transactions in the
+     *         window
+     */
+    public synchronized GBCEIndexPartial getPartial() {
+        expire(DateTimeUtils.currentTimeMillis());
+        return count == 0L ? GBCEIndexPartial.EMPTY : new GBCEIndexPartial(logSum, count);
+    }
+
+    /**
+     * Get the geometric mean of the prices of the transactions in the window.
+     *
+     * @return Return {@code Optional<BigDecimal>} rounded to 8 decimal places
+     *         if there is at least one transaction in the window. Return
+     *         {@code Optional.empty()} otherwise
+     */
+    public Optional<BigDecimal> getIndex() {
+        return getPartial().toIndex();
+    }
+
+    /**
+     * Forget everything recorded.
+     */
+    public synchronized void clear() {
+        Arrays.fill(seconds, EMPTY);
+        Arrays.fill(logSums, 0.0d);
+        Arrays.fill(counts, 0L);
+        logSum = 0.0d;
+        count = 0L;
+        expiredThrough = EMPTY;
+    }
+
+    // Subtract every bucket that has left the window from the running sum.
+    // Each second is looked at once, when it leaves the window, unless the
+    // clock goes back
+    private void expire(long now) {
+        long newest = Math.floorDiv(now - windowMillis, MILLIS_PER_SECOND) - 1;
+        if (count == 0L || newest <= expiredThrough) {
+            expiredThrough = count == 0L ? Math.max(expiredThrough, newest) : newest;
+            return;
+        }
+        if (newest - expiredThrough >= seconds.length) {
+            // A turn of the ring or more, look at every bucket once instead
+            for (int slot = 0; slot < seconds.length; slot++) {
+                if (seconds[slot] != EMPTY && seconds[slot] <= newest) {
+                    subtract(slot);
+                }
+            }
+        } else {
+            for (long second = expiredThrough + 1; second <= newest; second++) {
+                int slot = (int) Math.floorMod(second, (long) seconds.length);
+                if (seconds[slot] == second) {
+                    subtract(slot);
+                }
+            }
+        }
+        expiredThrough = newest;
+    }
+
+    private void subtract(int slot) {
+        if (seconds[slot] == EMPTY) {
+            return;
+        }
+        seconds[slot] = EMPTY;
+        count -= counts[slot];
+        logSum -= logSums[slot];
+        counts[slot] = 0L;
+        logSums[slot] = 0.0d;
+        if (count == 0L) {
+            logSum = 0.0d;
+        } else if (++expiredSeconds >= seconds.length) {
+            resum();
+        }
+    }
+
+    private void resum() {
+        expiredSeconds = 0L;
+        double sum = 0.0d;
+        for (int slot = 0; slot < seconds.length; slot++) {
+            if (seconds[slot] != EMPTY) {
+                sum += logSums[slot];
+            }
+        }
+        logSum = sum;
+    }
+
+    // A second has left the window once all of it is before now - window
+    private boolean isExpired(long second, long now) {
+        return (second + 1) * MILLIS_PER_SECOND <= now - windowMillis;
+    }
+}
@@ -0,0 +1,122 @@
+package sibo.liu.jpm.supersimplestockmarket.benchmark;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import sibo.liu.jpm.supersimplestockmarket.engine.ShardedEngine;
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Measures how the ingestion throughput of a {@link ShardedEngine} grows with
+ * its number of shards, with as many producer threads as the largest shard
+ * count. Each iteration ends with every transaction handed over applied, so
+ * the score counts applied transactions, not queued ones. Scaling is bounded
+ * by the number of cores of the machine.
+ * <p>
+ * Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath sibo.liu.jpm.supersimplestockmarket.benchmark.EngineScalingBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class EngineScalingBenchmark {
+    private static final int STOCK_COUNT = 64;
+    private static final int TRANSACTION_COUNT = 1 << 14;
+    private static final int QUEUE_CAPACITY = 4096;
+
+    @Param({ "1", "2", "4" })
+    public int shards;
+
+    private ShardedEngine engine;
+    private String[] symbols;
+    private BigInteger[] quantities;
+    private BigDecimal[] prices;
+
+    @State(Scope.Thread)
+    public static class Producer {
+        private int cursor;
+        // Old enough to be sealed into compressed segments, which bounds memory
+        private long timeMillis = DateTime.now().minusHours(2).getMillis();
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42L);
+        symbols = new String[TRANSACTION_COUNT];
+        quantities = new BigInteger[TRANSACTION_COUNT];
+        prices = new BigDecimal[TRANSACTION_COUNT];
+        for (int i = 0; i < TRANSACTION_COUNT; i++) {
+            symbols[i] = symbolOf(random.nextInt(STOCK_COUNT));
+            quantities[i] = BigInteger.valueOf(1 + random.nextInt(1000));
+            prices[i] = BigDecimal.valueOf(100 + random.nextInt(10000), 2);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpEngine() throws InterruptedException, ExecutionException {
+        engine = new ShardedEngine(shards, QUEUE_CAPACITY);
+        for (int i = 0; i < STOCK_COUNT; i++) {
+            engine.addStock(new CommonStock(symbolOf(i), BigDecimal.TEN, BigDecimal.ONE,
+                    BigInteger.ONE, BigDecimal.ONE));
+        }
+        engine.drain().get();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownEngine() throws InterruptedException, ExecutionException {
+        engine.drain().get();
+        engine.close();
+    }
+
+    @Benchmark
+    public boolean addTransaction(Producer producer) {
+        // Producers each move their own clock, so transactions stay about in
+        // time order rather than going through the correction path
+        int i = producer.cursor;
+        producer.cursor = (i + 1) & (TRANSACTION_COUNT - 1);
+        return engine.addTransaction(symbols[i], new Transaction(symbols[i], new DateTime(
+                producer.timeMillis++), quantities[i], (i & 1) == 0 ? BuySellIndicator.BUY
+                : BuySellIndicator.SELL, prices[i]));
+    }
+
+    private static String symbolOf(int index) {
+        return "S" + (char) ('A' + index / 26) + (char) ('A' + index % 26);
+    }
+
+    public static void main(String... args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EngineScalingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
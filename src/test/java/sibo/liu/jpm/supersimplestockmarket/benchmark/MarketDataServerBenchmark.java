@@ -0,0 +1,163 @@
+package sibo.liu.jpm.supersimplestockmarket.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import sibo.liu.jpm.supersimplestockmarket.http.MarketDataServer;
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Load test of a {@link MarketDataServer} on the loopback interface: 8
+ * client threads send requests over keep-alive connections, and the
+ * latency distribution of each kind of request is sampled. The
+ * {@code revalidated*} benchmarks send the tag of their last response and
+ * measure the 304 path, which computes nothing; the others always get a full
+ * response, served from the query cache of the manager after the first one.
+ * <p>
+ * Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath sibo.liu.jpm.supersimplestockmarket.benchmark.MarketDataServerBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class MarketDataServerBenchmark {
+    private static final StockTransactionManager MANAGER = StockTransactionManager.INSTANCE;
+    private static final int STOCK_COUNT = 100;
+    private static final int TRANSACTIONS_PER_STOCK = 100;
+    private static final int SERVER_THREADS = 4;
+
+    private MarketDataServer server;
+
+    @State(Scope.Thread)
+    public static class Client {
+        private final byte[] buffer = new byte[4096];
+        private String detailsTag;
+        private String indexTag;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        // The forked JVM serves nothing else, so measure without Nagle's delay
+        System.setProperty(MarketDataServer.NO_DELAY_PROPERTY, Boolean.TRUE.toString());
+        MANAGER.clearAll();
+        Random random = new Random(42L);
+        DateTime now = DateTime.now();
+        for (int i = 0; i < STOCK_COUNT; i++) {
+            String symbol = symbol(i);
+            MANAGER.addStock(new CommonStock(symbol, new BigDecimal(100), new BigDecimal(8),
+                    BigInteger.ONE, new BigDecimal(8)));
+            for (int j = 0; j < TRANSACTIONS_PER_STOCK; j++) {
+                MANAGER.addTransaction(symbol, new Transaction(symbol, now.minusSeconds(random
+                        .nextInt(600)), BigInteger.valueOf(1 + random.nextInt(1000)),
+                        BuySellIndicator.BUY, BigDecimal.valueOf(10000 + random.nextInt(10000),
+                                2)));
+            }
+        }
+        server = new MarketDataServer(MANAGER, new InetSocketAddress(InetAddress
+                .getLoopbackAddress(), 0), SERVER_THREADS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+        MANAGER.clearAll();
+    }
+
+    @Benchmark
+    public int stockDetails(Client client) throws IOException {
+        return get(client, "/stocks/AA", null);
+    }
+
+    @Benchmark
+    public int revalidatedStockDetails(Client client) throws IOException {
+        HttpURLConnection connection = open("/stocks/AA", client.detailsTag);
+        client.detailsTag = connection.getHeaderField("ETag");
+        return drain(client, connection);
+    }
+
+    @Benchmark
+    public int volumeWeightedPrice(Client client) throws IOException {
+        return get(client, "/stocks/AA/vwap", null);
+    }
+
+    @Benchmark
+    public int peRatio(Client client) throws IOException {
+        return get(client, "/stocks/AA/pe?price=123.45", null);
+    }
+
+    @Benchmark
+    public int revalidatedIndex(Client client) throws IOException {
+        HttpURLConnection connection = open("/index", client.indexTag);
+        client.indexTag = connection.getHeaderField("ETag");
+        return drain(client, connection);
+    }
+
+    private int get(Client client, String path, String ifNoneMatch) throws IOException {
+        return drain(client, open(path, ifNoneMatch));
+    }
+
+    private HttpURLConnection open(String path, String ifNoneMatch) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http", InetAddress
+                .getLoopbackAddress().getHostAddress(), server.getPort(), path).openConnection();
+        if (ifNoneMatch != null) {
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        return connection;
+    }
+
+    // Read the whole body, so the connection is kept alive for the next one
+    private static int drain(Client client, HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        try (InputStream in = connection.getInputStream()) {
+            while (in.read(client.buffer) >= 0) {
+                // Discard
+            }
+        }
+        return status;
+    }
+
+    private static String symbol(int index) {
+        return new String(new char[] { (char) ('A' + index / 26), (char) ('A' + index % 26) });
+    }
+
+    public static void main(String... args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MarketDataServerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
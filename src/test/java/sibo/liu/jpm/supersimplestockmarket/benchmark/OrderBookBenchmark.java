@@ -0,0 +1,93 @@
+package sibo.liu.jpm.supersimplestockmarket.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import sibo.liu.jpm.supersimplestockmarket.orderbook.Order;
+import sibo.liu.jpm.supersimplestockmarket.orderbook.OrderBook;
+import sibo.liu.jpm.supersimplestockmarket.orderbook.OrderType;
+import sibo.liu.jpm.supersimplestockmarket.orderbook.TradeListener;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+
+/**
+ * Measures the throughput and latency distribution of one {@link OrderBook} on
+ * one thread. Every operation submits a pre-generated order around a fixed mid
+ * price, so that about half of the orders trade, and cancels the order
+ * submitted {@code CANCEL_DISTANCE} operations earlier to keep the book at a
+ * steady size.
+ * <p>
+ * Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath sibo.liu.jpm.supersimplestockmarket.benchmark.OrderBookBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+    private static final String SYMBOL = "TEA";
+    private static final int ORDER_COUNT = 1 << 16;
+    private static final int CANCEL_DISTANCE = 4096;
+    private static final long MID_PRICE = 10000000000L;
+    private static final long TICK = 1000000L;
+    private static final int MARKET_ORDER_PERCENT = 5;
+
+    private final BuySellIndicator[] sides = new BuySellIndicator[ORDER_COUNT];
+    private final OrderType[] types = new OrderType[ORDER_COUNT];
+    private final long[] quantities = new long[ORDER_COUNT];
+    private final long[] prices = new long[ORDER_COUNT];
+    private OrderBook book;
+    private long nextId;
+    private long tradedQuantity;
+    private final TradeListener listener = (aggressor, resting, price, quantity) -> tradedQuantity += quantity;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < ORDER_COUNT; i++) {
+            boolean buy = random.nextBoolean();
+            sides[i] = buy ? BuySellIndicator.BUY : BuySellIndicator.SELL;
+            types[i] = random.nextInt(100) < MARKET_ORDER_PERCENT ? OrderType.MARKET
+                    : OrderType.LIMIT;
+            quantities[i] = 1 + random.nextInt(500);
+            // Bids from 20 ticks below to 5 above the mid, asks the other way
+            long offset = (random.nextInt(26) - 20) * TICK;
+            prices[i] = buy ? MID_PRICE + offset : MID_PRICE - offset;
+        }
+        book = new OrderBook(SYMBOL);
+    }
+
+    @Benchmark
+    public long submitAndCancel() {
+        long id = nextId++;
+        int index = (int) (id & (ORDER_COUNT - 1));
+        book.submit(new Order(id, SYMBOL, sides[index], types[index], quantities[index],
+                prices[index]), listener);
+        book.cancel(id - CANCEL_DISTANCE);
+        return tradedQuantity;
+    }
+
+    public static void main(String... args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OrderBookBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,90 @@
+package sibo.liu.jpm.supersimplestockmarket.benchmark;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.PreferredStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+
+/**
+ * Compares evaluating the P/E ratio over a ladder of candidate prices one
+ * price at a time against the exact and the primitive batch variants.
+ * <p>
+ * Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath sibo.liu.jpm.supersimplestockmarket.benchmark.PriceLadderBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceLadderBenchmark {
+    @Param({ "256" })
+    public int ladderSize;
+
+    private StockImpl stock;
+    private BigDecimal[] prices;
+    private BigDecimal[] peRatios;
+    private double[] doublePrices;
+    private double[] doublePERatios;
+
+    @Setup
+    public void setUp() {
+        stock = new PreferredStock("GIN", new BigDecimal(100), new BigDecimal(8),
+                BigInteger.valueOf(4), new BigDecimal("0.02"));
+        prices = new BigDecimal[ladderSize];
+        peRatios = new BigDecimal[ladderSize];
+        doublePrices = new double[ladderSize];
+        doublePERatios = new double[ladderSize];
+        for (int i = 0; i < ladderSize; i++) {
+            prices[i] = BigDecimal.valueOf(10000 + i * 5, 2);
+            doublePrices[i] = prices[i].doubleValue();
+        }
+    }
+
+    @Benchmark
+    public BigDecimal[] singlePriceQueries() {
+        for (int i = 0; i < ladderSize; i++) {
+            peRatios[i] = stock.getPERatio(prices[i]).orElse(null);
+        }
+        return peRatios;
+    }
+
+    @Benchmark
+    public BigDecimal[] exactLadder() {
+        stock.getPERatios(prices, peRatios);
+        return peRatios;
+    }
+
+    @Benchmark
+    public double[] primitiveLadder() {
+        stock.getPERatios(doublePrices, doublePERatios);
+        return doublePERatios;
+    }
+
+    public static void main(String... args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PriceLadderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
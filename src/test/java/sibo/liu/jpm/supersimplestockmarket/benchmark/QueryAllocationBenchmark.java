@@ -0,0 +1,111 @@
+package sibo.liu.jpm.supersimplestockmarket.benchmark;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.ScaledResult;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+/**
+ * Compares the {@code Optional<BigDecimal>} queries of {@code StockImpl}
+ * against their allocation-free {@link ScaledResult} variants. Runs with the
+ * GC profiler: {@code gc.alloc.rate.norm} of the {@code *Holder} benchmarks
+ * is expected to be 0 bytes per operation.
+ * <p>
+ * Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath sibo.liu.jpm.supersimplestockmarket.benchmark.QueryAllocationBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryAllocationBenchmark {
+    private static final int TRANSACTIONS = 1000;
+    private static final int PAST_MINUTES = 15;
+
+    private final ScaledResult result = new ScaledResult();
+    private StockImpl stock;
+    private BigDecimal price;
+    private long unscaledPrice;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        stock = new CommonStock("POP", new BigDecimal(100), new BigDecimal(8), BigInteger.ONE,
+                new BigDecimal(8));
+        DateTime now = DateTime.now();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            stock.addTransaction(new Transaction("POP", now.minusSeconds(random.nextInt(600)),
+                    BigInteger.valueOf(1 + random.nextInt(1000)), BuySellIndicator.BUY,
+                    BigDecimal.valueOf(10000 + random.nextInt(10000), 2)));
+        }
+        price = new BigDecimal("123.45");
+        unscaledPrice = ScaledResult.toUnscaled(price);
+    }
+
+    @Benchmark
+    public Optional<BigDecimal> volumeWeightedStockPriceOptional() {
+        return stock.getVolumeWeightedStockPrice(PAST_MINUTES);
+    }
+
+    @Benchmark
+    public long volumeWeightedStockPriceHolder() {
+        stock.getVolumeWeightedStockPrice(PAST_MINUTES, result);
+        return result.getUnscaledValue();
+    }
+
+    @Benchmark
+    public Optional<BigDecimal> dividendYieldOptional() {
+        return stock.getDividendYield(price);
+    }
+
+    @Benchmark
+    public long dividendYieldHolder() {
+        stock.getDividendYield(unscaledPrice, result);
+        return result.getUnscaledValue();
+    }
+
+    @Benchmark
+    public Optional<BigDecimal> peRatioOptional() {
+        return stock.getPERatio(price);
+    }
+
+    @Benchmark
+    public long peRatioHolder() {
+        stock.getPERatio(unscaledPrice, result);
+        return result.getUnscaledValue();
+    }
+
+    public static void main(String... args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(QueryAllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
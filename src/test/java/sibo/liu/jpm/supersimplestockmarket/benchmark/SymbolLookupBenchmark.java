@@ -0,0 +1,126 @@
+package sibo.liu.jpm.supersimplestockmarket.benchmark;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+import sibo.liu.jpm.supersimplestockmarket.transaction.SymbolRegistry;
+
+/**
+ * Compares looking stocks up by {@code String} symbol in a
+ * {@code ConcurrentHashMap} against looking them up by the dense ID of a
+ * {@link SymbolRegistry}, and the regular expression symbol check against
+ * {@link StockImpl#isValidSymbol(String)}.
+ * <p>
+ * Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath sibo.liu.jpm.supersimplestockmarket.benchmark.SymbolLookupBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymbolLookupBenchmark {
+    private static final String VALID_SYMBOL_REGULAR_EXPRESSION = "[a-zA-Z]+";
+    private static final int MAX_SYMBOL_LENGTH = 4;
+
+    @Param({ "5", "5000" })
+    public int stockCount;
+
+    private ConcurrentMap<String, StockImpl> stocksBySymbol;
+    private SymbolRegistry registry;
+    private StockImpl[] stocksById;
+    private String[] symbols;
+    private int[] ids;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        stocksBySymbol = new ConcurrentHashMap<String, StockImpl>();
+        registry = new SymbolRegistry();
+        stocksById = new StockImpl[stockCount];
+        symbols = new String[stockCount];
+        ids = new int[stockCount];
+        for (int i = 0; i < stockCount; i++) {
+            // Build a new String so that lookups cannot rely on identity
+            String symbol = new String(symbolOf(i));
+            StockImpl stockImpl = new CommonStock(symbol, BigDecimal.TEN, BigDecimal.ONE,
+                    BigInteger.ONE, BigDecimal.ONE);
+            stocksBySymbol.put(symbol, stockImpl);
+            ids[i] = registry.register(symbol);
+            stocksById[ids[i]] = stockImpl;
+            symbols[i] = new String(symbol);
+        }
+    }
+
+    @Benchmark
+    public StockImpl mapLookupBySymbol() {
+        return stocksBySymbol.get(symbols[next()]);
+    }
+
+    @Benchmark
+    public StockImpl registryLookupBySymbol() {
+        return stocksById[registry.getId(symbols[next()])];
+    }
+
+    @Benchmark
+    public StockImpl arrayLookupById() {
+        return stocksById[ids[next()]];
+    }
+
+    @Benchmark
+    public boolean regularExpressionValidation() {
+        String symbol = symbols[next()];
+        return !symbol.isEmpty() && symbol.length() <= MAX_SYMBOL_LENGTH
+                && symbol.matches(VALID_SYMBOL_REGULAR_EXPRESSION);
+    }
+
+    @Benchmark
+    public boolean asciiValidation() {
+        return StockImpl.isValidSymbol(symbols[next()]);
+    }
+
+    private int next() {
+        int index = cursor;
+        cursor = index + 1 == stockCount ? 0 : index + 1;
+        return index;
+    }
+
+    private static String symbolOf(int index) {
+        StringBuilder symbol = new StringBuilder();
+        do {
+            symbol.append((char) ('A' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return symbol.toString();
+    }
+
+    public static void main(String... args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SymbolLookupBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
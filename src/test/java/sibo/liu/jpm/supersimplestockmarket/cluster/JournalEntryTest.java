@@ -0,0 +1,43 @@
+package sibo.liu.jpm.supersimplestockmarket.cluster;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.JournalOperation;
+
+public class JournalEntryTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testLineRoundTrip() {
+        JournalEntry entry = new JournalEntry(42L, 1448382991000L,
+                JournalOperation.ADD_TRANSACTION, "TEA", "2015-11-24T16:36:31.000Z", "1000",
+                "B", "117.23");
+        JournalEntry parsed = JournalEntry.parse(entry.toLine());
+
+        assertEquals(42L, parsed.getSequence());
+        assertEquals(1448382991000L, parsed.getTimeMillis());
+        assertEquals(JournalOperation.ADD_TRANSACTION, parsed.getOperation());
+        assertArrayEquals(entry.getArguments(), parsed.getArguments());
+        assertEquals(entry.toLine(), parsed.toLine());
+        assertEquals("1\t2\tCLEAR_ALL", new JournalEntry(1L, 2L, JournalOperation.CLEAR_ALL)
+                .toLine());
+    }
+
+    @Test
+    public void testWrongArgumentCount() {
+        thrown.expect(IllegalArgumentException.class);
+        JournalEntry.parse("1\t2\tREMOVE_STOCK\tTEA\tPOP");
+    }
+
+    @Test
+    public void testUnknownOperation() {
+        thrown.expect(IllegalArgumentException.class);
+        JournalEntry.parse("1\t2\tDROP_ALL");
+    }
+}
@@ -0,0 +1,153 @@
+package sibo.liu.jpm.supersimplestockmarket.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.SuperSimpleStockMarket;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+
+public class ReplicationTest {
+    private static final StockTransactionManager MANAGER = StockTransactionManager.INSTANCE;
+    private static final long TIMEOUT_MILLIS = 10000L;
+
+    private ReplicationPrimary primary;
+    private WorkerProcess replica;
+    private WorkerProcess lateReplica;
+
+    @Before
+    public void setUp() throws IOException {
+        MANAGER.clearAll();
+        primary = new ReplicationPrimary(0);
+        MANAGER.setJournal(primary);
+    }
+
+    @After
+    public void tearDown() {
+        if (replica != null) {
+            replica.close();
+        }
+        if (lateReplica != null) {
+            lateReplica.close();
+        }
+        MANAGER.setJournal(null);
+        primary.close();
+        MANAGER.clearAll();
+    }
+
+    @Test
+    public void testReplicaAppliesJournalAndServesReads() throws Exception {
+        String time = DateTime.now().minusMinutes(1).toString(ISODateTimeFormat
+                .dateHourMinuteSecond());
+        // Recorded before the replica connects, dropped and shipped as a
+        // snapshot when it does
+        execute("C TEA 100 0 1 0");
+        execute("P GIN 100 8 4 0.02");
+        assertEquals(2L, primary.getSequence());
+        assertEquals(0, primary.getRetainedCount());
+        replica = WorkerProcess.start(ReplicaNode.class, String.valueOf(primary.getPort()));
+        for (int i = 1; i <= 20; i++) {
+            execute("TEA " + time + " " + (10 * i) + " " + (i % 2 == 0 ? "B" : "S") + " "
+                    + (100 + i) + ".5");
+            execute("GIN " + time + " " + i + " B " + (50 + i));
+        }
+        MANAGER.setDividend("TEA", new BigDecimal("3.5"));
+        MANAGER.setStockDividendPeriodPerYear("GIN", BigInteger.valueOf(2));
+        MANAGER.setStockLastAnnualDividend("GIN", new BigDecimal("9"));
+        execute("C POP 100 8 1 8");
+        MANAGER.removeStock("POP");
+
+        awaitReplica(primary.getSequence());
+        for (String command : new String[] { "", "TEA", "GIN", "POP", "TEA 12.5", "GIN 7",
+                "F TEA 15", "F GIN 15" }) {
+            assertEquals(SuperSimpleStockMarket.execute(command), replica.execute(command));
+        }
+        assertEquals(ReplicaNode.READ_ONLY_RESPONSE, replica.execute("C ALE 60 23 1 23"));
+        assertEquals(ReplicaNode.READ_ONLY_RESPONSE, replica.execute("L TEA 100"));
+        assertEquals(1, primary.getReplicaCount());
+
+        // Acknowledged once caught up
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (primary.getReplicationLag() > 0L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(0L, primary.getReplicationLag());
+        awaitTrimmed();
+
+        MANAGER.clearAll();
+        awaitReplica(primary.getSequence());
+        assertEquals(SuperSimpleStockMarket.execute(""), replica.execute(""));
+        assertEquals(SuperSimpleStockMarket.execute("TEA"), replica.execute("TEA"));
+    }
+
+    @Test
+    public void testLateReplicaBootstrapsFromSnapshot() throws Exception {
+        String time = DateTime.now().minusMinutes(1).toString(ISODateTimeFormat
+                .dateHourMinuteSecond());
+        replica = WorkerProcess.start(ReplicaNode.class, String.valueOf(primary.getPort()));
+        execute("C TEA 100 0 1 0");
+        execute("P GIN 100 8 4 0.02");
+        for (int i = 1; i <= 20; i++) {
+            execute("TEA " + time + " " + (10 * i) + " B " + (100 + i) + ".5");
+        }
+        awaitReplica(replica, primary.getSequence());
+        awaitTrimmed();
+
+        // Connects once the first entries are dropped, so starts from a snapshot
+        lateReplica = WorkerProcess.start(ReplicaNode.class, String.valueOf(primary.getPort()));
+        MANAGER.setDividend("TEA", new BigDecimal("3.5"));
+        for (int i = 1; i <= 20; i++) {
+            execute("GIN " + time + " " + i + " S " + (50 + i));
+        }
+        awaitReplica(replica, primary.getSequence());
+        awaitReplica(lateReplica, primary.getSequence());
+        for (String command : new String[] { "", "TEA", "GIN", "TEA 12.5", "GIN 7", "F TEA 15",
+                "F GIN 15" }) {
+            assertEquals(SuperSimpleStockMarket.execute(command), replica.execute(command));
+            assertEquals(SuperSimpleStockMarket.execute(command), lateReplica.execute(command));
+        }
+        awaitTrimmed();
+    }
+
+    private static void execute(String command) {
+        assertEquals("Success.", SuperSimpleStockMarket.execute(command));
+    }
+
+    private void awaitReplica(long sequence) throws Exception {
+        awaitReplica(replica, sequence);
+    }
+
+    // Poll the lag of the replica until it has applied sequence
+    private static void awaitReplica(WorkerProcess replica, long sequence) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        long applied = 0L;
+        while (System.currentTimeMillis() < deadline) {
+            String[] lag = replica.execute(ReplicaNode.LAG_COMMAND).split(" ");
+            applied = Long.parseLong(lag[0]);
+            if (applied >= sequence) {
+                assertTrue(Long.parseLong(lag[1]) >= 0L);
+                return;
+            }
+            Thread.sleep(10L);
+        }
+        assertEquals(sequence, applied);
+    }
+
+    // Poll the primary until every replica has acknowledged the whole journal
+    private void awaitTrimmed() throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (primary.getRetainedCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(0, primary.getRetainedCount());
+    }
+}
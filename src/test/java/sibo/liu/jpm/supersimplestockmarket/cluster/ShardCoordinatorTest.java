@@ -0,0 +1,101 @@
+package sibo.liu.jpm.supersimplestockmarket.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import sibo.liu.jpm.supersimplestockmarket.SuperSimpleStockMarket;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+
+public class ShardCoordinatorTest {
+    private static final String[] SYMBOLS = new String[] { "TEA", "POP", "ALE", "GIN", "JOE",
+            "A", "B", "C" };
+
+    private static ShardCoordinator coordinator;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @BeforeClass
+    public static void startShards() throws IOException {
+        coordinator = new ShardCoordinator(3);
+    }
+
+    @AfterClass
+    public static void stopShards() {
+        coordinator.close();
+    }
+
+    @Before
+    @After
+    public void clearLocalStocks() {
+        StockTransactionManager.INSTANCE.clearAll();
+    }
+
+    @Test
+    public void testShardedMarketAnswersAsSingleProcess() throws IOException {
+        String now = DateTime.now().minusMinutes(1).toString(ISODateTimeFormat
+                .dateHourMinuteSecond());
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            assertSameAnswer("C " + SYMBOLS[i] + " 100 " + i + " 1 " + i);
+            for (int j = 1; j <= 5; j++) {
+                assertSameAnswer(SYMBOLS[i] + " " + now + " " + (100 * j) + " "
+                        + (j % 2 == 0 ? "B" : "S") + " " + (i + j) + ".25");
+            }
+        }
+        for (String symbol : SYMBOLS) {
+            assertSameAnswer(symbol);
+            assertSameAnswer(symbol + " 12.5");
+            assertSameAnswer("F " + symbol + " 15");
+        }
+        assertSameAnswer("C TEA 100 0 1 0");
+        assertSameAnswer("UNKNOWN COMMAND");
+        assertSameAnswer("NONE");
+
+        // Same index up to the order the log-sums are added in
+        BigDecimal expected = index(SuperSimpleStockMarket.execute(""));
+        BigDecimal actual = index(coordinator.execute(""));
+        assertEquals(0, expected.setScale(6, RoundingMode.HALF_UP).compareTo(
+                actual.setScale(6, RoundingMode.HALF_UP)));
+        assertEquals(SYMBOLS.length * 5L, coordinator.getGBCEIndexPartial().getCount());
+    }
+
+    @Test
+    public void testSymbolsAreSpreadOverShards() {
+        assertEquals(3, coordinator.getShardCount());
+        int first = coordinator.getShard(SYMBOLS[0]);
+        boolean spread = false;
+        for (String symbol : SYMBOLS) {
+            assertEquals(coordinator.getShard(symbol), coordinator.getShard(symbol));
+            spread = spread || coordinator.getShard(symbol) != first;
+        }
+        assertTrue(spread);
+    }
+
+    @Test
+    public void testInvalidShardCount() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        new ShardCoordinator(0);
+    }
+
+    private static void assertSameAnswer(String command) throws IOException {
+        assertEquals(SuperSimpleStockMarket.execute(command), coordinator.execute(command));
+    }
+
+    private static BigDecimal index(String answer) {
+        return new BigDecimal(answer.substring(answer.lastIndexOf(' ') + 1));
+    }
+}
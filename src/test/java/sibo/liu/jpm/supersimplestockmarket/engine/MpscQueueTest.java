@@ -0,0 +1,67 @@
+package sibo.liu.jpm.supersimplestockmarket.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MpscQueueTest {
+
+    @Test
+    public void testBoundedFirstInFirstOut() {
+        MpscQueue<Integer> queue = new MpscQueue<Integer>(3);
+        assertEquals(4, queue.capacity());
+        assertNull(queue.poll());
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(queue.offer(i));
+            }
+            assertFalse(queue.offer(4));
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Integer.valueOf(i), queue.poll());
+            }
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void testConcurrentProducersKeepTheirOwnOrder() throws InterruptedException {
+        int producerCount = 4;
+        int perProducer = 20000;
+        MpscQueue<long[]> queue = new MpscQueue<long[]>(64);
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int p = 0; p < producerCount; p++) {
+            long producer = p;
+            Thread thread = new Thread(() -> {
+                for (long i = 0; i < perProducer; i++) {
+                    long[] element = new long[] { producer, i };
+                    while (!queue.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        long[] next = new long[producerCount];
+        int received = 0;
+        while (received < producerCount * perProducer) {
+            long[] element = queue.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(next[(int) element[0]]++, element[1]);
+            received++;
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        assertNull(queue.poll());
+    }
+}
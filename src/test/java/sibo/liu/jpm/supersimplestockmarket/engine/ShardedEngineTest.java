@@ -0,0 +1,137 @@
+package sibo.liu.jpm.supersimplestockmarket.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.PreferredStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+public class ShardedEngineTest {
+    private static final String[] SYMBOLS = { "TEA", "POP", "ALE", "GIN", "JOE", "JPM", "MSFT" };
+    private static final StockTransactionManager MANAGER = StockTransactionManager.INSTANCE;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testMatchesTheManager() throws Exception {
+        assertTrue(MANAGER.clearAll());
+        try (ShardedEngine engine = new ShardedEngine(3, 16)) {
+            for (String symbol : SYMBOLS) {
+                assertTrue(engine.addStock(newStock(symbol)).get());
+                assertTrue(MANAGER.addStock(newStock(symbol)));
+            }
+            assertFalse(engine.addStock(newStock(SYMBOLS[0])).get());
+            assertFalse(engine.addStock(null).get());
+
+            // Several producers, with far more transactions than queue slots
+            List<Thread> producers = new ArrayList<Thread>();
+            for (int p = 0; p < 3; p++) {
+                List<Transaction> transactions = newTransactions(p, 2000);
+                for (Transaction transaction : transactions) {
+                    assertTrue(MANAGER.addTransaction(transaction.getSymbol(), transaction));
+                }
+                Thread producer = new Thread(() -> {
+                    for (Transaction transaction : transactions) {
+                        engine.addTransaction(transaction.getSymbol(), transaction);
+                    }
+                });
+                producers.add(producer);
+                producer.start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            assertTrue(engine.addTransaction("NONE", newTransactions(0, 1).get(0)));
+            assertFalse(engine.addTransaction(null, null));
+            engine.drain().get();
+            assertEquals(6000L, engine.getAppliedCount());
+            assertEquals(1L, engine.getRejectedCount());
+
+            assertEquals(MANAGER.getGBCEAllShareIndex(), engine.getGBCEAllShareIndex().get());
+            for (String symbol : SYMBOLS) {
+                assertEquals(MANAGER.getStock(symbol).get().getVolumeWeightedStockPrice(15),
+                        engine.getVolumeWeightedStockPrice(symbol, 15).get());
+            }
+            assertEquals(Optional.empty(), engine.getVolumeWeightedStockPrice("NONE", 15).get());
+
+            assertTrue(engine.setDividend(SYMBOLS[0], BigDecimal.ONE).get());
+            assertFalse(engine.setDividend("NONE", BigDecimal.ONE).get());
+            assertFalse(engine.setDividend(SYMBOLS[0], null).get());
+        } finally {
+            assertTrue(MANAGER.clearAll());
+        }
+    }
+
+    @Test
+    public void testEmptyEngine() throws Exception {
+        try (ShardedEngine engine = new ShardedEngine(2, 4)) {
+            assertEquals(2, engine.getShardCount());
+            assertEquals(Optional.empty(), engine.getGBCEAllShareIndex().get());
+        }
+    }
+
+    @Test
+    public void testSubmitAfterClose() throws Exception {
+        ShardedEngine engine = new ShardedEngine(1, 2);
+        assertTrue(engine.addStock(newStock(SYMBOLS[0])).get());
+        engine.close();
+        // More than the queue holds, none of which would ever be applied
+        for (int i = 0; i < 4; i++) {
+            assertFalse(engine.addTransaction(SYMBOLS[0], newTransactions(i, 1).get(0)));
+        }
+        CompletableFuture<Optional<BigDecimal>> price = engine.getVolumeWeightedStockPrice(
+                SYMBOLS[0], 15);
+        assertTrue(price.isCompletedExceptionally());
+        thrown.expect(ExecutionException.class);
+        thrown.expectMessage("The engine is closed");
+        price.get();
+    }
+
+    @Test
+    public void testNoShard() {
+        thrown.expect(IllegalArgumentException.class);
+        new ShardedEngine(0, 4);
+    }
+
+    private static StockImpl newStock(String symbol) {
+        if (symbol.length() > 3) {
+            return new PreferredStock(symbol, BigDecimal.valueOf(100), BigDecimal.valueOf(8),
+                    BigInteger.ONE, BigDecimal.valueOf(2));
+        }
+        return new CommonStock(symbol, BigDecimal.valueOf(100), BigDecimal.valueOf(8),
+                BigInteger.ONE, BigDecimal.valueOf(8));
+    }
+
+    private static List<Transaction> newTransactions(int seed, int count) {
+        Random random = new Random(seed);
+        DateTime now = DateTime.now();
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        for (int i = 0; i < count; i++) {
+            transactions.add(new Transaction(SYMBOLS[random.nextInt(SYMBOLS.length)], now
+                    .minusSeconds(random.nextInt(600)), BigInteger.valueOf(1 + random.nextInt(500)),
+                    random.nextBoolean() ? BuySellIndicator.BUY : BuySellIndicator.SELL,
+                    BigDecimal.valueOf(100 + random.nextInt(5000), 2)));
+        }
+        return transactions;
+    }
+}
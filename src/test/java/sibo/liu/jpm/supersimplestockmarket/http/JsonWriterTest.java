@@ -0,0 +1,60 @@
+package sibo.liu.jpm.supersimplestockmarket.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class JsonWriterTest {
+    private final JsonWriter writer = new JsonWriter();
+
+    @Test
+    public void testNumbers() {
+        writer.beginObject();
+        writer.name("a").value(0L);
+        writer.name("b").value(-1234567890123L);
+        writer.name("c").value(Long.MIN_VALUE);
+        writer.name("d").value(new BigDecimal("0.05"));
+        writer.name("e").value(new BigDecimal("-1.50000000"));
+        writer.name("f").value(new BigDecimal("12345678901234567890.5"));
+        writer.name("g").value(new BigDecimal("1E+3"));
+        writer.name("h").value(BigInteger.TEN.pow(30));
+        writer.name("i").value((BigDecimal) null);
+        writer.endObject();
+        assertEquals("{\"a\":0,\"b\":-1234567890123,\"c\":-9223372036854775808,\"d\":0.05,"
+                + "\"e\":-1.50000000,\"f\":12345678901234567890.5,\"g\":1000,"
+                + "\"h\":1000000000000000000000000000000,\"i\":null}", writer.toString());
+    }
+
+    @Test
+    public void testStringsAndNesting() throws IOException {
+        writer.beginObject().name("quote\"").value("back\\slash\nline\u0001");
+        writer.name("nested").beginObject().name("pound").value("£ € 😀")
+                .endObject();
+        writer.name("missing").value((String) null).endObject();
+        String expected = "{\"quote\\\"\":\"back\\\\slash\\u000aline\\u0001\",\"nested\":"
+                + "{\"pound\":\"£ € 😀\"},\"missing\":null}";
+        assertEquals(expected, writer.toString());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(out.size(), writer.size());
+    }
+
+    @Test
+    public void testResetReusesBuffer() {
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longValue.append('x');
+        }
+        writer.beginObject().name("long").value(longValue.toString()).endObject();
+        assertEquals(1011, writer.size());
+        writer.reset().beginObject().name("short").value(1L).endObject();
+        assertEquals("{\"short\":1}", writer.toString());
+    }
+}
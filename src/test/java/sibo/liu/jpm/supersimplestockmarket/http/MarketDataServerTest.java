@@ -0,0 +1,322 @@
+package sibo.liu.jpm.supersimplestockmarket.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.PreferredStock;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+public class MarketDataServerTest {
+    private static final StockTransactionManager MANAGER = StockTransactionManager.INSTANCE;
+    private static final long NOW = 1448382991000L;
+    private static final int CLIENTS = 8;
+    private static final int REQUESTS_PER_CLIENT = 200;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private MarketDataServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        MANAGER.clearAll();
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        MANAGER.addStock(new CommonStock("TEA", new BigDecimal("100"), new BigDecimal("8"),
+                BigInteger.ONE, new BigDecimal("8")));
+        MANAGER.addStock(new PreferredStock("GIN", new BigDecimal("100"), new BigDecimal("8"),
+                BigInteger.valueOf(4), new BigDecimal("0.02")));
+        MANAGER.addTransaction("TEA", transaction("TEA", 100, "2"));
+        MANAGER.addTransaction("TEA", transaction("TEA", 300, "8"));
+        server = new MarketDataServer(MANAGER, new InetSocketAddress(InetAddress
+                .getLoopbackAddress(), 0), 4);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        DateTimeUtils.setCurrentMillisSystem();
+        MANAGER.clearAll();
+    }
+
+    @Test
+    public void testQueriesAsJson() throws IOException {
+        Response details = get("/stocks/TEA", null);
+        assertEquals(200, details.status);
+        assertEquals("{\"symbol\":\"TEA\",\"type\":\"common\",\"parValue\":100,"
+                + "\"lastAnnualDividend\":8,\"dividend\":8,\"periodPerYear\":1,"
+                + "\"transactionCount\":2,\"version\":" + version("TEA") + "}", details.body);
+        assertEquals("{\"symbol\":\"GIN\",\"type\":\"preferred\",\"parValue\":100,"
+                + "\"lastAnnualDividend\":8,\"dividend\":0.02,\"periodPerYear\":4,"
+                + "\"transactionCount\":0,\"version\":" + version("GIN") + "}", get(
+                "/stocks/GIN", null).body);
+
+        assertEquals("{\"symbol\":\"TEA\",\"minutes\":15,\"volumeWeightedPrice\":6.50000000}", get(
+                "/stocks/TEA/vwap", null).body);
+        assertEquals("{\"symbol\":\"GIN\",\"minutes\":5,\"volumeWeightedPrice\":null}", get(
+                "/stocks/GIN/vwap?minutes=5", null).body);
+        assertEquals("{\"symbol\":\"TEA\",\"price\":4,\"peRatio\":0.5}", get(
+                "/stocks/TEA/pe?price=4", null).body);
+        assertEquals("{\"symbol\":\"TEA\",\"price\":4,\"dividendYield\":2}", get(
+                "/stocks/TEA/yield?price=4", null).body);
+        assertEquals("{\"gbceAllShareIndex\":4}", get("/index", null).body);
+    }
+
+    @Test
+    public void testNotModifiedUntilStateChanges() throws IOException {
+        Response details = get("/stocks/TEA", null);
+        Response peRatio = get("/stocks/TEA/pe?price=4", null);
+        Response vwap = get("/stocks/TEA/vwap", null);
+        Response index = get("/index", null);
+        assertEquals(304, get("/stocks/TEA", details.etag).status);
+        assertEquals(304, get("/stocks/TEA/pe?price=4", "\"other\", W/" + peRatio.etag).status);
+        assertEquals(304, get("/stocks/TEA/vwap", vwap.etag).status);
+        assertEquals(304, get("/index", index.etag).status);
+        assertEquals(304, get("/index", "*").status);
+        assertEquals(5L, server.getNotModifiedCount());
+        // A tag of another resource does not match
+        assertEquals(200, get("/stocks/GIN", details.etag).status);
+
+        // Dividends change the stock, not the index
+        assertTrue(MANAGER.setDividend("TEA", new BigDecimal("2")));
+        Response changed = get("/stocks/TEA/pe?price=4", peRatio.etag);
+        assertEquals(200, changed.status);
+        assertNotEquals(peRatio.etag, changed.etag);
+        assertEquals("{\"symbol\":\"TEA\",\"price\":4,\"peRatio\":2}", changed.body);
+        assertEquals(200, get("/stocks/TEA", details.etag).status);
+        assertEquals(304, get("/index", index.etag).status);
+
+        // Transactions change both
+        MANAGER.addTransaction("TEA", transaction("TEA", 400, "8"));
+        assertEquals(200, get("/index", index.etag).status);
+        assertEquals(200, get("/stocks/TEA/vwap", vwap.etag).status);
+
+        // The volume weighted price changes as the window slides
+        vwap = get("/stocks/TEA/vwap", null);
+        DateTimeUtils.setCurrentMillisFixed(NOW + 16 * 60 * 1000L);
+        Response slid = get("/stocks/TEA/vwap", vwap.etag);
+        assertEquals(200, slid.status);
+        assertEquals("{\"symbol\":\"TEA\",\"minutes\":15,\"volumeWeightedPrice\":null}",
+                slid.body);
+
+        // So does a new stock of the same symbol
+        details = get("/stocks/GIN", null);
+        MANAGER.removeStock("GIN");
+        MANAGER.addStock(new PreferredStock("GIN", new BigDecimal("100"), new BigDecimal("8"),
+                BigInteger.valueOf(4), new BigDecimal("0.02")));
+        assertEquals(200, get("/stocks/GIN", details.etag).status);
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        assertError(404, "{\"error\":\"Unknown stock: XYZ\"}", get("/stocks/XYZ/pe?price=1",
+                null));
+        assertError(404, "{\"error\":\"Not found: /stocks/TEA/eps\"}", get("/stocks/TEA/eps",
+                null));
+        assertError(404, "{\"error\":\"Not found: /\"}", get("/", null));
+        assertError(400, "{\"error\":\"Invalid price: null\"}", get("/stocks/TEA/pe", null));
+        assertError(400, "{\"error\":\"Invalid price: abc\"}", get("/stocks/TEA/yield?price=abc",
+                null));
+        assertError(400, "{\"error\":\"Invalid minutes: 0\"}", get("/stocks/TEA/vwap?minutes=0",
+                null));
+
+        HttpURLConnection connection = open("/index");
+        connection.setRequestMethod("DELETE");
+        assertEquals(405, connection.getResponseCode());
+        assertEquals("GET, HEAD", connection.getHeaderField("Allow"));
+        connection.disconnect();
+
+        connection = open("/stocks/TEA");
+        connection.setRequestMethod("HEAD");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(get("/stocks/TEA", null).etag, connection.getHeaderField("ETag"));
+        assertEquals(0, read(connection.getInputStream()).length());
+        connection.disconnect();
+    }
+
+    @Test
+    public void testResponsesWithoutBodyKeepConnectionAlive() throws IOException {
+        String etag = get("/stocks/TEA", null).etag;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            socket.setSoTimeout(10000);
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            String request = "GET /stocks/TEA HTTP/1.1\r\nHost: localhost\r\nIf-None-Match: "
+                    + etag + "\r\n\r\n";
+            for (int i = 0; i < 3; i++) {
+                out.write(request.getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                assertTrue(readHeaders(in).startsWith("HTTP/1.1 304"));
+            }
+        }
+        assertEquals(3L, server.getNotModifiedCount());
+    }
+
+    @Test
+    public void testConcurrentClientsWhileTrading() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS + 1);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < CLIENTS; i++) {
+                String path = i % 4 == 0 ? "/index" : i % 4 == 1 ? "/stocks/TEA"
+                        : i % 4 == 2 ? "/stocks/TEA/vwap" : "/stocks/TEA/pe?price=4";
+                results.add(clients.submit(revalidatingClient(path)));
+            }
+            Future<?> trader = clients.submit(() -> {
+                for (int i = 0; i < 100; i++) {
+                    MANAGER.addTransaction("TEA", transaction("TEA", 10, "5"));
+                }
+            });
+            int notModified = 0;
+            for (Future<Integer> result : results) {
+                notModified += result.get();
+            }
+            trader.get();
+            assertEquals(CLIENTS * REQUESTS_PER_CLIENT, server.getRequestCount());
+            assertEquals(notModified, server.getNotModifiedCount());
+            assertTrue(notModified > 0);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMatches() {
+        assertTrue(MarketDataServer.matches("\"a\"", "\"a\""));
+        assertTrue(MarketDataServer.matches(" \"b\" ,W/\"a\" ", "\"a\""));
+        assertTrue(MarketDataServer.matches("*", "\"a\""));
+        assertFalse(MarketDataServer.matches("\"ab\"", "\"a\""));
+        assertFalse(MarketDataServer.matches("", "\"a\""));
+        assertFalse(MarketDataServer.matches(null, "\"a\""));
+    }
+
+    @Test
+    public void testThreadsNotPositive() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        new MarketDataServer(MANAGER, new InetSocketAddress(0), 0);
+    }
+
+    // Revalidate with the last tag received, and count the 304s
+    private Callable<Integer> revalidatingClient(String path) {
+        return () -> {
+            String etag = null;
+            int notModified = 0;
+            for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+                Response response = get(path, etag);
+                if (response.status == 304) {
+                    notModified++;
+                    assertEquals(etag, response.etag);
+                } else {
+                    assertEquals(200, response.status);
+                    assertFalse(response.body.isEmpty());
+                    etag = response.etag;
+                }
+            }
+            return notModified;
+        };
+    }
+
+    private static long version(String symbol) {
+        return MANAGER.getStock(symbol).get().getSnapshot().getVersion();
+    }
+
+    private static void assertError(int status, String body, Response response) {
+        assertEquals(status, response.status);
+        assertEquals(body, response.body);
+        assertNull(response.etag);
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL("http", InetAddress.getLoopbackAddress()
+                .getHostAddress(), server.getPort(), path).openConnection();
+    }
+
+    private Response get(String path, String ifNoneMatch) throws IOException {
+        HttpURLConnection connection = open(path);
+        if (ifNoneMatch != null) {
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection
+                .getInputStream();
+        return new Response(status, connection.getHeaderField("ETag"), read(in));
+    }
+
+    // Read a response without body, up to the empty line
+    private static String readHeaders(InputStream in) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        while (headers.length() < 4 || !"\r\n\r\n".equals(headers.substring(headers.length()
+                - 4))) {
+            int next = in.read();
+            if (next < 0) {
+                throw new EOFException("Connection closed after: " + headers);
+            }
+            headers.append((char) next);
+        }
+        return headers.toString();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (in != null) {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[1024];
+                int count;
+                while ((count = stream.read(buffer)) >= 0) {
+                    out.write(buffer, 0, count);
+                }
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Transaction transaction(String symbol, int quantity, String price) {
+        return new Transaction(symbol, new DateTime(NOW - 1000L), BigInteger.valueOf(quantity),
+                BuySellIndicator.BUY, new BigDecimal(price));
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String etag;
+        private final String body;
+
+        private Response(int status, String etag, String body) {
+            this.status = status;
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+}
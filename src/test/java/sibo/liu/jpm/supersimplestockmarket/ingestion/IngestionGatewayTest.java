@@ -0,0 +1,153 @@
+package sibo.liu.jpm.supersimplestockmarket.ingestion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiPredicate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+public class IngestionGatewayTest {
+    private static final Transaction TRANSACTION_MOCK = mock(Transaction.class);
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    // Applies one transaction per permit, recording the symbols in order
+    private final Semaphore permits = new Semaphore(0);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final List<String> applied = new ArrayList<String>();
+    private final BiPredicate<String, Transaction> sink = (symbol, transaction) -> {
+        started.countDown();
+        permits.acquireUninterruptibly();
+        synchronized (applied) {
+            applied.add(symbol);
+        }
+        return true;
+    };
+
+    @Test
+    public void testReject() throws InterruptedException {
+        try (IngestionGateway gateway = new IngestionGateway(2, OverloadPolicy.REJECT, 0L, sink)) {
+            fill(gateway);
+            assertFalse(gateway.submit("ALE", TRANSACTION_MOCK));
+            assertFalse(gateway.submit(null, TRANSACTION_MOCK));
+            assertFalse(gateway.submit("ALE", null));
+            IngestionMetrics metrics = gateway.getMetrics();
+            assertEquals(2, metrics.getQueueDepth());
+            assertEquals(2, metrics.getMaxQueueDepth());
+            assertEquals(3L, metrics.getAcceptedCount());
+            assertEquals(1L, metrics.getRejectedCount());
+            permits.release(3);
+        }
+        assertEquals(3, applied.size());
+    }
+
+    @Test
+    public void testBlockTimesOutThenGetsRoom() throws InterruptedException {
+        try (IngestionGateway gateway = new IngestionGateway(2, OverloadPolicy.BLOCK, 200L,
+                sink)) {
+            fill(gateway);
+            assertFalse(gateway.submit("ALE", TRANSACTION_MOCK));
+            assertEquals(1L, gateway.getMetrics().getTimedOutCount());
+
+            Thread release = new Thread(() -> {
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                permits.release(4);
+            });
+            release.start();
+            assertTrue(gateway.submit("ALE", TRANSACTION_MOCK));
+            release.join();
+        }
+        assertEquals(4, applied.size());
+        assertEquals("ALE", applied.get(3));
+    }
+
+    @Test
+    public void testShedByPriority() throws InterruptedException {
+        IngestionGateway gateway = new IngestionGateway(3, OverloadPolicy.SHED_BY_PRIORITY, 0L,
+                sink);
+        assertTrue(gateway.setPriority("JPM", 2));
+        assertTrue(gateway.setPriority("GIN", 1));
+        assertFalse(gateway.setPriority(null, 1));
+        fill(gateway);
+        assertTrue(gateway.submit("GIN", TRANSACTION_MOCK));
+        // Sheds the oldest queued TEA
+        assertTrue(gateway.submit("JPM", TRANSACTION_MOCK));
+        // Sheds the other TEA, then GIN
+        assertTrue(gateway.submit("JPM", TRANSACTION_MOCK));
+        assertTrue(gateway.submit("JPM", TRANSACTION_MOCK));
+        // Nothing lower than itself left to shed
+        assertFalse(gateway.submit("JPM", TRANSACTION_MOCK));
+        assertFalse(gateway.submit("TEA", TRANSACTION_MOCK));
+        IngestionMetrics metrics = gateway.getMetrics();
+        assertEquals(3L, metrics.getShedCount());
+        assertEquals(2L, metrics.getRejectedCount());
+        permits.release(4);
+        gateway.close();
+        assertFalse(gateway.submit("JPM", TRANSACTION_MOCK));
+        assertEquals(4, applied.size());
+        assertEquals("TEA", applied.get(0));
+        for (int i = 1; i < 4; i++) {
+            assertEquals("JPM", applied.get(i));
+        }
+        metrics = gateway.getMetrics();
+        assertEquals(4L, metrics.getAppliedCount());
+        assertEquals(0L, metrics.getRefusedCount());
+        assertEquals(0L, metrics.getFailedCount());
+        assertEquals(0, metrics.getQueueDepth());
+        assertTrue(metrics.getMaxWaitNanos() >= metrics.getP99WaitNanos());
+        assertTrue(metrics.getP99WaitNanos() >= metrics.getMedianWaitNanos());
+    }
+
+    @Test
+    public void testRefusedAndFailedAreNotApplied() throws InterruptedException {
+        IngestionGateway gateway = new IngestionGateway(8, OverloadPolicy.REJECT, 0L, (symbol,
+                transaction) -> {
+            if ("BAD".equals(symbol)) {
+                throw new IllegalStateException();
+            }
+            return "TEA".equals(symbol);
+        });
+        assertTrue(gateway.submit("TEA", TRANSACTION_MOCK));
+        assertTrue(gateway.submit("POP", TRANSACTION_MOCK));
+        assertTrue(gateway.submit("BAD", TRANSACTION_MOCK));
+        assertTrue(gateway.submit("POP", TRANSACTION_MOCK));
+        assertTrue(gateway.submit("TEA", TRANSACTION_MOCK));
+        gateway.close();
+        IngestionMetrics metrics = gateway.getMetrics();
+        assertEquals(5L, metrics.getAcceptedCount());
+        assertEquals(2L, metrics.getAppliedCount());
+        assertEquals(2L, metrics.getRefusedCount());
+        assertEquals(1L, metrics.getFailedCount());
+    }
+
+    @Test
+    public void testNoPolicy() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("No input can be null");
+        new IngestionGateway(1, null, 0L, sink);
+    }
+
+    // One transaction being applied and two queued
+    private void fill(IngestionGateway gateway) throws InterruptedException {
+        assertTrue(gateway.submit("TEA", TRANSACTION_MOCK));
+        started.await();
+        assertTrue(gateway.submit("TEA", TRANSACTION_MOCK));
+        assertTrue(gateway.submit("TEA", TRANSACTION_MOCK));
+    }
+}
@@ -0,0 +1,45 @@
+package sibo.liu.jpm.supersimplestockmarket.ingestion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        for (long value : new long[] { 0L, 1L, 7L, 8L, 9L, 15L, 16L, 17L, 1000L, 123456789L,
+                Long.MAX_VALUE }) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.upperBoundOf(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.upperBoundOf(index - 1) < value);
+            // Within 1/8 of the value
+            assertTrue(LatencyHistogram.upperBoundOf(index) - value <= value / 8);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram
+                .indexOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0L, histogram.getValueAtPercentile(50.0d));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5L);
+        assertEquals(1001L, histogram.getCount());
+        assertEquals(1000L, histogram.getMaxValue());
+        long median = histogram.getValueAtPercentile(50.0d);
+        assertTrue(median >= 500L && median <= 500L + 500L / 8);
+        long p99 = histogram.getValueAtPercentile(99.0d);
+        assertTrue(p99 >= 990L && p99 <= 1000L);
+        assertEquals(1000L, histogram.getValueAtPercentile(100.0d));
+        assertEquals(0L, histogram.getValueAtPercentile(0.0d));
+
+        histogram.reset();
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getMaxValue());
+    }
+}
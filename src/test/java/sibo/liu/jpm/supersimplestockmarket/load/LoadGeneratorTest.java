@@ -0,0 +1,41 @@
+package sibo.liu.jpm.supersimplestockmarket.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+
+public class LoadGeneratorTest {
+    private static final StockTransactionManager MANAGER = StockTransactionManager.INSTANCE;
+
+    @Test
+    public void testShortRun() throws InterruptedException {
+        assertTrue(MANAGER.clearAll());
+        try {
+            LoadGenerator generator = new LoadGenerator(new LoadProfile(100, 1.1d, 5000.0d, 4.0d,
+                    100L, 0.2d, 300L, 2), 7L);
+            assertEquals("A", generator.getSymbol(0));
+            assertEquals("Z", generator.getSymbol(25));
+            assertEquals("AA", generator.getSymbol(26));
+            assertEquals("CV", generator.getSymbol(99));
+
+            LoadReport report = generator.run();
+            assertTrue(MANAGER.getStock("CV").isPresent());
+            assertTrue(report.getTransactionCount() > 0L);
+            assertTrue(report.getQueryCount() > 0L);
+            assertEquals(report.getTransactionCount(), report.getTransactionLatency().getCount());
+            assertEquals(report.getQueryCount(), report.getQueryLatency().getCount());
+            assertTrue(MANAGER.getStock("A").get().getVolumeWeightedStockPrice(15).isPresent());
+            assertTrue(report.toString().contains("operations/s"));
+        } finally {
+            assertTrue(MANAGER.clearAll());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQueryRatioOutOfRange() {
+        new LoadProfile(100, 1.1d, 5000.0d, 1.0d, 100L, 1.5d, 300L, 2);
+    }
+}
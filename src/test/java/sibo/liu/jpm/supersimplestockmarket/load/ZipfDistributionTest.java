@@ -0,0 +1,41 @@
+package sibo.liu.jpm.supersimplestockmarket.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ZipfDistributionTest {
+
+    @Test
+    public void testUniformWithoutSkew() {
+        ZipfDistribution distribution = new ZipfDistribution(4, 0.0d);
+        assertEquals(4, distribution.size());
+        assertEquals(0, distribution.sample(0.0d));
+        assertEquals(0, distribution.sample(0.24d));
+        assertEquals(1, distribution.sample(0.25d));
+        assertEquals(3, distribution.sample(0.99d));
+        assertEquals(3, distribution.sample(1.0d));
+    }
+
+    @Test
+    public void testPopularRanksAreDrawnMore() {
+        ZipfDistribution distribution = new ZipfDistribution(1000, 1.0d);
+        int[] counts = new int[1000];
+        Random random = new Random(1L);
+        for (int i = 0; i < 100000; i++) {
+            counts[distribution.sample(random.nextDouble())]++;
+        }
+        // Rank 0 twice as likely as rank 1 and ten times as likely as rank 9
+        assertEquals(2.0d, counts[0] / (double) counts[1], 0.2d);
+        assertEquals(10.0d, counts[0] / (double) counts[9], 1.5d);
+        assertTrue(counts[0] > counts[999] * 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+        new ZipfDistribution(0, 1.0d);
+    }
+}
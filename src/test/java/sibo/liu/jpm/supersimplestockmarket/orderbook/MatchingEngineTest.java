@@ -0,0 +1,75 @@
+package sibo.liu.jpm.supersimplestockmarket.orderbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+public class MatchingEngineTest {
+    private static final StockTransactionManager MANAGER = StockTransactionManager.INSTANCE;
+    private static final String SYMBOL = "TEA";
+
+    private final MatchingEngine engine = new MatchingEngine();
+
+    @Before
+    public void setUp() {
+        MANAGER.clearAll();
+        MANAGER.addStock(new CommonStock(SYMBOL, new BigDecimal(100), BigDecimal.ZERO,
+                BigInteger.ONE, BigDecimal.ZERO));
+    }
+
+    @After
+    public void tearDown() {
+        MANAGER.clearAll();
+    }
+
+    @Test
+    public void testTradesAreRecordedAsTransactions() {
+        assertTrue(engine.submit(new Order(1L, SYMBOL, BuySellIndicator.SELL, 10L,
+                new BigDecimal("101.5"))));
+        assertTrue(engine.submit(new Order(2L, SYMBOL, BuySellIndicator.BUY, 5L,
+                new BigDecimal("100"))));
+        assertEquals(0, new BigDecimal("101.5").compareTo(engine.getBestAsk(SYMBOL).get()));
+        assertEquals(0, new BigDecimal("100").compareTo(engine.getBestBid(SYMBOL).get()));
+
+        assertTrue(engine.submit(new Order(3L, SYMBOL, BuySellIndicator.BUY, 4L)));
+
+        List<Transaction> transactions = MANAGER.getStock(SYMBOL).get().getTransactions();
+        assertEquals(1, transactions.size());
+        Transaction transaction = transactions.get(0);
+        assertEquals(BuySellIndicator.BUY, transaction.getIndicator());
+        assertEquals(BigInteger.valueOf(4L), transaction.getQuantity());
+        assertEquals(0, new BigDecimal("101.5").compareTo(transaction.getPrice()));
+    }
+
+    @Test
+    public void testCancel() {
+        engine.submit(new Order(1L, SYMBOL, BuySellIndicator.SELL, 10L, BigDecimal.TEN));
+        assertTrue(engine.cancel(SYMBOL, 1L));
+        assertFalse(engine.cancel(SYMBOL, 1L));
+        assertFalse(engine.cancel("POP", 1L));
+        assertFalse(engine.cancel(null, 1L));
+        assertEquals(Optional.empty(), engine.getBestAsk(SYMBOL));
+    }
+
+    @Test
+    public void testUnknownStock() {
+        assertFalse(engine.submit(new Order(1L, "POP", BuySellIndicator.BUY, 10L)));
+        assertFalse(engine.submit(null));
+        assertEquals(Optional.empty(), engine.getBestBid("POP"));
+        assertEquals(Optional.empty(), engine.getBestBid(null));
+    }
+}
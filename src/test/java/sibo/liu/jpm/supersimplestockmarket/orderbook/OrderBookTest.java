@@ -0,0 +1,126 @@
+package sibo.liu.jpm.supersimplestockmarket.orderbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+
+public class OrderBookTest {
+    private static final String SYMBOL = "TEA";
+    private static final long PRICE_100 = 10000000000L;
+    private static final long PRICE_101 = 10100000000L;
+    private static final long PRICE_102 = 10200000000L;
+
+    private final OrderBook book = new OrderBook(SYMBOL);
+    private final List<long[]> trades = new ArrayList<long[]>();
+    private final TradeListener listener = (aggressor, resting, price, quantity) -> trades
+            .add(new long[] { aggressor.getId(), resting.getId(), price, quantity });
+
+    @Test
+    public void testLimitOrdersRestWithoutCrossing() {
+        assertTrue(book.submit(limit(1L, BuySellIndicator.BUY, 10L, PRICE_100), listener));
+        assertTrue(book.submit(limit(2L, BuySellIndicator.SELL, 10L, PRICE_101), listener));
+        assertTrue(trades.isEmpty());
+        assertEquals(PRICE_100, book.getBestBid());
+        assertEquals(PRICE_101, book.getBestAsk());
+        assertEquals(2, book.getRestingOrderCount());
+    }
+
+    @Test
+    public void testPriceThenTimePriority() {
+        book.submit(limit(1L, BuySellIndicator.SELL, 10L, PRICE_101), listener);
+        book.submit(limit(2L, BuySellIndicator.SELL, 10L, PRICE_100), listener);
+        book.submit(limit(3L, BuySellIndicator.SELL, 10L, PRICE_100), listener);
+
+        Order buy = limit(4L, BuySellIndicator.BUY, 25L, PRICE_102);
+        assertTrue(book.submit(buy, listener));
+
+        assertEquals(3, trades.size());
+        assertTrade(trades.get(0), 4L, 2L, PRICE_100, 10L);
+        assertTrade(trades.get(1), 4L, 3L, PRICE_100, 10L);
+        assertTrade(trades.get(2), 4L, 1L, PRICE_101, 5L);
+        assertFalse(buy.isActive());
+        assertEquals(5L, book.getQuantityAt(BuySellIndicator.SELL, PRICE_101));
+        assertEquals(PRICE_101, book.getBestAsk());
+        assertEquals(OrderBook.NO_PRICE, book.getBestBid());
+    }
+
+    @Test
+    public void testLimitOrderRestsRemainder() {
+        book.submit(limit(1L, BuySellIndicator.BUY, 10L, PRICE_101), listener);
+        Order sell = limit(2L, BuySellIndicator.SELL, 30L, PRICE_100);
+        book.submit(sell, listener);
+
+        assertEquals(1, trades.size());
+        assertTrade(trades.get(0), 2L, 1L, PRICE_101, 10L);
+        assertEquals(20L, sell.getRemainingQuantity());
+        assertEquals(PRICE_100, book.getBestAsk());
+        assertEquals(OrderBook.NO_PRICE, book.getBestBid());
+    }
+
+    @Test
+    public void testMarketOrderCancelsRemainder() {
+        book.submit(limit(1L, BuySellIndicator.SELL, 10L, PRICE_101), listener);
+        Order buy = new Order(2L, SYMBOL, BuySellIndicator.BUY, 15L);
+        assertTrue(book.submit(buy, listener));
+
+        assertEquals(1, trades.size());
+        assertTrade(trades.get(0), 2L, 1L, PRICE_101, 10L);
+        assertTrue(buy.isCancelled());
+        assertEquals(5L, buy.getRemainingQuantity());
+        assertEquals(0, book.getRestingOrderCount());
+        assertEquals(OrderBook.NO_PRICE, book.getBestBid());
+    }
+
+    @Test
+    public void testCancel() {
+        Order first = limit(1L, BuySellIndicator.SELL, 10L, PRICE_100);
+        book.submit(first, listener);
+        book.submit(limit(2L, BuySellIndicator.SELL, 10L, PRICE_100), listener);
+        book.submit(limit(3L, BuySellIndicator.SELL, 10L, PRICE_101), listener);
+
+        assertTrue(book.cancel(1L));
+        assertFalse(book.cancel(1L));
+        assertTrue(first.isCancelled());
+        assertEquals(10L, book.getQuantityAt(BuySellIndicator.SELL, PRICE_100));
+
+        book.submit(limit(4L, BuySellIndicator.BUY, 10L, PRICE_100), listener);
+        assertEquals(1, trades.size());
+        assertTrade(trades.get(0), 4L, 2L, PRICE_100, 10L);
+
+        assertTrue(book.cancel(3L));
+        assertEquals(OrderBook.NO_PRICE, book.getBestAsk());
+        assertEquals(0, book.getRestingOrderCount());
+    }
+
+    @Test
+    public void testRejectedOrders() {
+        Order order = limit(1L, BuySellIndicator.BUY, 10L, PRICE_100);
+        assertTrue(book.submit(order, listener));
+        assertFalse(book.submit(order, listener));
+        assertFalse(book.submit(limit(1L, BuySellIndicator.BUY, 10L, PRICE_100), listener));
+        assertFalse(book.submit(new Order(2L, "POP", BuySellIndicator.BUY, 10L), listener));
+        assertFalse(book.submit(null, listener));
+        assertFalse(book.submit(limit(3L, BuySellIndicator.BUY, 10L, PRICE_100), null));
+        assertSame(SYMBOL, book.getSymbol());
+    }
+
+    private static Order limit(long id, BuySellIndicator side, long quantity, long price) {
+        return new Order(id, SYMBOL, side, OrderType.LIMIT, quantity, price);
+    }
+
+    private static void assertTrade(long[] trade, long aggressorId, long restingId, long price,
+            long quantity) {
+        assertEquals(aggressorId, trade[0]);
+        assertEquals(restingId, trade[1]);
+        assertEquals(price, trade[2]);
+        assertEquals(quantity, trade[3]);
+    }
+}
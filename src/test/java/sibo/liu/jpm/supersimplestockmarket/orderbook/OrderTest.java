@@ -0,0 +1,69 @@
+package sibo.liu.jpm.supersimplestockmarket.orderbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+
+public class OrderTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private static final String SYMBOL = "TEA";
+    private static final String NULL_INPUT_EXCEPTION_MESSAGE = "No input can be null";
+    private static final String NON_POSITIVE_EXCEPTION_MESSAGE = "Order quantity and limit price can only be larger than zero";
+
+    @Test
+    public void testLimitOrder() {
+        Order order = new Order(1L, SYMBOL, BuySellIndicator.BUY, 100L, new BigDecimal(
+                "12.345678901"));
+        assertEquals(OrderType.LIMIT, order.getType());
+        assertEquals(1234567890L, order.getUnscaledLimitPrice());
+        assertEquals(100L, order.getRemainingQuantity());
+        assertEquals(0L, order.getFilledQuantity());
+        assertTrue(order.isActive());
+        assertFalse(order.isCancelled());
+    }
+
+    @Test
+    public void testMarketOrder() {
+        Order order = new Order(1L, SYMBOL, BuySellIndicator.SELL, 100L);
+        assertEquals(OrderType.MARKET, order.getType());
+        assertEquals(0L, order.getUnscaledLimitPrice());
+    }
+
+    @Test
+    public void testNullLimitPriceInput() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(NULL_INPUT_EXCEPTION_MESSAGE);
+        new Order(1L, SYMBOL, BuySellIndicator.BUY, 100L, null);
+    }
+
+    @Test
+    public void testNullSideInput() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(NULL_INPUT_EXCEPTION_MESSAGE);
+        new Order(1L, SYMBOL, null, 100L);
+    }
+
+    @Test
+    public void testNonPositiveQuantityInput() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(NON_POSITIVE_EXCEPTION_MESSAGE);
+        new Order(1L, SYMBOL, BuySellIndicator.BUY, 0L);
+    }
+
+    @Test
+    public void testNonPositiveLimitPriceInput() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage(NON_POSITIVE_EXCEPTION_MESSAGE);
+        new Order(1L, SYMBOL, BuySellIndicator.BUY, 100L, BigDecimal.ZERO);
+    }
+}
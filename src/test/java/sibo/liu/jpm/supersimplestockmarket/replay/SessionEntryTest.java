@@ -0,0 +1,39 @@
+package sibo.liu.jpm.supersimplestockmarket.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class SessionEntryTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testLineRoundTrip() {
+        SessionEntry entry = new SessionEntry(1448382991000L, "",
+                "a\tb\nc\\n\r" + System.lineSeparator());
+        String line = entry.toLine();
+        assertFalse(line.contains("\n"));
+        assertEquals(2, line.length() - line.replace("\t", "").length());
+        SessionEntry parsed = SessionEntry.parse(line);
+        assertEquals(entry.getTimeMillis(), parsed.getTimeMillis());
+        assertEquals(entry.getCommand(), parsed.getCommand());
+        assertEquals(entry.getResponse(), parsed.getResponse());
+    }
+
+    @Test
+    public void testInvalidEscape() {
+        thrown.expect(IllegalArgumentException.class);
+        SessionEntry.parse("1\tTEA\tbad\\x");
+    }
+
+    @Test
+    public void testMissingField() {
+        thrown.expect(IllegalArgumentException.class);
+        SessionEntry.parse("1\tTEA");
+    }
+}
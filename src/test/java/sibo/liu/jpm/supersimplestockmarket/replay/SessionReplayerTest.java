@@ -0,0 +1,76 @@
+package sibo.liu.jpm.supersimplestockmarket.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.SuperSimpleStockMarket;
+import sibo.liu.jpm.supersimplestockmarket.transaction.StockTransactionManager;
+
+public class SessionReplayerTest {
+    private static final StockTransactionManager MANAGER = StockTransactionManager.INSTANCE;
+    private static final String[] SESSION = { "C TEA 100 0 1 0", "P GIN 100 8 4 0.02",
+            "TEA 2015-11-24T16:36:31 1000 B 117.23", "GIN 2015-11-24T16:35:20 500 S 100.792",
+            "TEA", "GIN 3.23", "", "F TEA 15", "X Y Z W" };
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+        MANAGER.clearAll();
+    }
+
+    @Test
+    public void testReplayMatchesRecording() throws IOException {
+        assertTrue(MANAGER.clearAll());
+        StringWriter session = new StringWriter();
+        long startMillis = 1448383000000L;
+        try (SessionRecorder recorder = new SessionRecorder(SuperSimpleStockMarket::execute,
+                session)) {
+            for (int i = 0; i < SESSION.length; i++) {
+                // Within 15 minutes of the transactions, then an hour later
+                DateTimeUtils.setCurrentMillisFixed(startMillis + (i < 6 ? i : 3600000L + i));
+                recorder.execute(SESSION[i]);
+            }
+        }
+        DateTimeUtils.setCurrentMillisSystem();
+        List<SessionEntry> entries = SessionReplayer.read(new StringReader(session.toString()));
+        assertEquals(SESSION.length, entries.size());
+        assertEquals("Volume Weighted Stock Price of TEA: 117.23000000", entries.get(4)
+                .getResponse());
+
+        assertTrue(MANAGER.clearAll());
+        ReplayReport report = SessionReplayer.replay(entries, SuperSimpleStockMarket::execute,
+                false);
+        assertTrue(report.toString(), report.isMatching());
+        assertEquals(SESSION.length, report.getCommandCount());
+        assertEquals(SESSION.length, report.getLatency().getCount());
+        // The clock is given back
+        assertTrue(Math.abs(DateTimeUtils.currentTimeMillis() - System.currentTimeMillis())
+                < 60000L);
+
+        // A second replay finds the stocks already there
+        report = SessionReplayer.replay(entries, SuperSimpleStockMarket::execute, false);
+        assertFalse(report.isMatching());
+        assertEquals(report.getMismatchCount(), report.getMismatches().size());
+        assertTrue(report.getMismatches().get(0).startsWith("Command 1 \"C TEA 100 0 1 0\""));
+    }
+
+    @Test
+    public void testPacedReplayKeepsRecordedGaps() {
+        List<SessionEntry> entries = Arrays.asList(new SessionEntry(1000L, "A", "a"),
+                new SessionEntry(1100L, "B", "b"));
+        ReplayReport report = SessionReplayer.replay(entries, String::toLowerCase, true);
+        assertTrue(report.isMatching());
+        assertTrue(report.getElapsedNanos() >= 100000000L);
+    }
+}
@@ -0,0 +1,92 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+public class HistorySegmentTest {
+    private static final String SYMBOL = "TEA";
+    private static final int SIZE = 4096;
+    private static final long START_MILLIS = 1448382991000L;
+    // Conservative size of a Transaction with its DateTime, BigInteger and
+    // BigDecimal fields on a 64-bit JVM with compressed references
+    private static final int TRANSACTION_OBJECT_BYTES = 160;
+
+    @Test
+    public void testEncodeAndDecodeRoundTrip() {
+        Transaction[] transactions = trades(new Random(7));
+        HistorySegment segment = HistorySegment.seal(transactions, 0, SIZE);
+
+        assertTrue(segment.isCompressed());
+        assertEquals(SIZE, segment.size());
+        Transaction[] decoded = segment.decode();
+        HistorySegment.Cursor cursor = segment.cursor();
+        long minTimeMillis = Long.MAX_VALUE;
+        long maxTimeMillis = Long.MIN_VALUE;
+        for (int i = 0; i < SIZE; i++) {
+            Transaction expected = transactions[i];
+            assertEquals(expected.getSymbol(), decoded[i].getSymbol());
+            assertEquals(expected.getTimeStamp(), decoded[i].getTimeStamp());
+            assertEquals(expected.getQuantity(), decoded[i].getQuantity());
+            assertEquals(expected.getIndicator(), decoded[i].getIndicator());
+            assertEquals(expected.getPrice(), decoded[i].getPrice());
+
+            assertTrue(cursor.next());
+            assertEquals(expected.getTimeMillis(), cursor.getTimeMillis());
+            assertEquals(expected.getQuantityAsLong(), cursor.getQuantity());
+            assertEquals(expected.getUnscaledPrice(), cursor.getUnscaledPrice());
+            assertEquals(expected.getIndicator() == BuySellIndicator.BUY, cursor.isBuy());
+            minTimeMillis = Math.min(minTimeMillis, expected.getTimeMillis());
+            maxTimeMillis = Math.max(maxTimeMillis, expected.getTimeMillis());
+        }
+        assertFalse(cursor.next());
+        assertEquals(minTimeMillis, segment.getMinTimeMillis());
+        assertEquals(maxTimeMillis, segment.getMaxTimeMillis());
+        // At least an order of magnitude smaller than the objects
+        assertTrue(segment.getEncodedSize() * 10 < SIZE * TRANSACTION_OBJECT_BYTES);
+    }
+
+    @Test
+    public void testUnencodableTransactionsAreKeptAsObjects() {
+        Transaction[] transactions = trades(new Random(7));
+        transactions[100] = new Transaction(SYMBOL, new DateTime(START_MILLIS,
+                DateTimeZone.forOffsetHours(9)), BigInteger.ONE, BuySellIndicator.BUY,
+                BigDecimal.ONE);
+        HistorySegment segment = HistorySegment.seal(transactions, 0, SIZE);
+
+        assertFalse(segment.isCompressed());
+        assertEquals(0, segment.getEncodedSize());
+        assertSame(transactions[100], segment.decode()[100]);
+
+        transactions[100] = new Transaction(SYMBOL, new DateTime(START_MILLIS), BigInteger
+                .valueOf(Long.MAX_VALUE), BuySellIndicator.BUY, BigDecimal.ONE);
+        assertFalse(HistorySegment.seal(transactions, 0, SIZE).isCompressed());
+    }
+
+    private static Transaction[] trades(Random random) {
+        Transaction[] transactions = new Transaction[SIZE];
+        long timeMillis = START_MILLIS;
+        long cents = 10000;
+        for (int i = 0; i < SIZE; i++) {
+            // Mostly increasing times with some late arrivals
+            timeMillis += random.nextInt(2000) - 200;
+            cents = Math.max(1, cents + random.nextInt(21) - 10);
+            transactions[i] = new Transaction(SYMBOL, new DateTime(timeMillis), BigInteger
+                    .valueOf(1 + random.nextInt(5000)), random.nextBoolean() ? BuySellIndicator.BUY
+                    : BuySellIndicator.SELL, BigDecimal.valueOf(cents, 2));
+        }
+        return transactions;
+    }
+}
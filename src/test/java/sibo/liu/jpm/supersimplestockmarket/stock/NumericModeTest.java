@@ -0,0 +1,101 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+public class NumericModeTest {
+    // Relative error of the double arithmetic, far above a few ulps
+    private static final double RELATIVE_BOUND = 1e-12d;
+    // Both results are rounded half up to 8 decimal places
+    private static final double ROUNDING_BOUND = 1e-8d;
+
+    @Test
+    public void testVolumeWeightedStockPriceDivergence() {
+        Random random = new Random(11);
+        long now = new DateTime(2024, 1, 2, 12, 0).getMillis();
+        DateTimeUtils.setCurrentMillisFixed(now);
+        try {
+            StockImpl stockImpl = new CommonStock("TEA", BigDecimal.TEN, BigDecimal.ONE,
+                    BigInteger.ONE, BigDecimal.ONE);
+            for (int i = 0; i < 20000; i++) {
+                // Up to 8 decimal places, from cents to millions
+                BigDecimal price = BigDecimal.valueOf(
+                        (long) (Math.exp(random.nextDouble() * 30.0d) * 1000.0d), 8)
+                        .add(BigDecimal.valueOf(1L, 2));
+                BigInteger quantity = BigInteger.valueOf(1L + random.nextInt(1000000));
+                stockImpl.addTransaction(new Transaction("TEA", new DateTime(now - 1L
+                        - random.nextInt(30 * 60000)), quantity, BuySellIndicator.BUY, price));
+            }
+            for (int minutes : new int[] { 1, 5, 15, 30 }) {
+                assertDiverges(NumericMode.EXACT.getVolumeWeightedStockPrice(stockImpl,
+                        minutes), NumericMode.FAST.getVolumeWeightedStockPrice(stockImpl,
+                        minutes));
+                assertEquals(NumericMode.EXACT.getVolumeWeightedStockPrice(stockImpl, minutes)
+                        .get().doubleValue(), stockImpl
+                        .getVolumeWeightedStockPriceAsDouble(minutes), 2.0d * ROUNDING_BOUND);
+            }
+            assertFalse(NumericMode.FAST.getVolumeWeightedStockPrice(
+                    new CommonStock("POP", BigDecimal.TEN, BigDecimal.ONE, BigInteger.ONE,
+                            BigDecimal.ONE), 15).isPresent());
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void testDividendYieldAndPERatioDivergence() {
+        Random random = new Random(13);
+        StockImpl[] stocks = new StockImpl[] {
+                new CommonStock("POP", new BigDecimal("100"), new BigDecimal("8"),
+                        BigInteger.valueOf(4), new BigDecimal("1.23456789")),
+                new PreferredStock("GIN", new BigDecimal("100"), new BigDecimal("8"),
+                        BigInteger.valueOf(12), new BigDecimal("0.02")) };
+        for (StockImpl stockImpl : stocks) {
+            for (int i = 0; i < 10000; i++) {
+                BigDecimal price = BigDecimal.valueOf(1L + random.nextInt(Integer.MAX_VALUE),
+                        random.nextInt(9));
+                assertDiverges(NumericMode.EXACT.getDividendYield(stockImpl, price),
+                        NumericMode.FAST.getDividendYield(stockImpl, price));
+                assertDiverges(NumericMode.EXACT.getPERatio(stockImpl, price),
+                        NumericMode.FAST.getPERatio(stockImpl, price));
+            }
+        }
+    }
+
+    @Test
+    public void testAbsentResultsInBothModes() {
+        StockImpl stockImpl = new CommonStock("TEA", BigDecimal.TEN, BigDecimal.ZERO,
+                BigInteger.ONE, BigDecimal.ZERO);
+        for (NumericMode mode : NumericMode.values()) {
+            assertFalse(mode.getDividendYield(stockImpl, BigDecimal.ZERO).isPresent());
+            assertFalse(mode.getDividendYield(stockImpl, null).isPresent());
+            assertFalse(mode.getPERatio(stockImpl, BigDecimal.TEN).isPresent());
+            assertFalse(mode.getVolumeWeightedStockPrice(stockImpl, 15).isPresent());
+        }
+        assertTrue(Double.isNaN(stockImpl.getDividendYieldAsDouble(-1.0d)));
+        assertTrue(Double.isNaN(stockImpl.getPERatioAsDouble(1.0d)));
+        assertEquals(0.0d, stockImpl.getDividendYieldAsDouble(2.0d), 0.0d);
+    }
+
+    private static void assertDiverges(Optional<BigDecimal> exact, Optional<BigDecimal> fast) {
+        assertEquals(exact.isPresent(), fast.isPresent());
+        if (exact.isPresent()) {
+            double expected = exact.get().doubleValue();
+            assertEquals(expected, fast.get().doubleValue(), Math.abs(expected)
+                    * RELATIVE_BOUND + ROUNDING_BOUND);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class OrderFlowTest {
+    @Test
+    public void testBuyAndSellSplit() {
+        OrderFlow orderFlow = new OrderFlow(BigInteger.valueOf(1000), new BigDecimal("117230"),
+                BigInteger.valueOf(500), new BigDecimal("50396"));
+
+        assertEquals(BigInteger.valueOf(1000), orderFlow.getBuyVolume());
+        assertEquals(BigInteger.valueOf(500), orderFlow.getSellVolume());
+        assertEquals(0, new BigDecimal("117.23").compareTo(orderFlow
+                .getBuyVolumeWeightedPrice().get()));
+        assertEquals(0, new BigDecimal("100.792").compareTo(orderFlow
+                .getSellVolumeWeightedPrice().get()));
+        assertEquals(0, new BigDecimal("0.33333333").compareTo(orderFlow.getImbalance().get()));
+    }
+
+    @Test
+    public void testOneSidedAndEmptyFlow() {
+        OrderFlow sellsOnly = new OrderFlow(BigInteger.ZERO, BigDecimal.ZERO, BigInteger.TEN,
+                BigDecimal.TEN);
+        assertFalse(sellsOnly.getBuyVolumeWeightedPrice().isPresent());
+        assertEquals(0, BigDecimal.ONE.negate().compareTo(sellsOnly.getImbalance().get()));
+
+        OrderFlow empty = new OrderFlow(BigInteger.ZERO, BigDecimal.ZERO, BigInteger.ZERO,
+                BigDecimal.ZERO);
+        assertFalse(empty.getBuyVolumeWeightedPrice().isPresent());
+        assertFalse(empty.getSellVolumeWeightedPrice().isPresent());
+        assertFalse(empty.getImbalance().isPresent());
+    }
+}
@@ -0,0 +1,91 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+public class PriceStatisticsTrackerTest {
+    private static final long MINUTE = 60000L;
+
+    @Test
+    public void testMovingAveragesHalveEveryHalfLife() {
+        PriceStatisticsTracker tracker = new PriceStatisticsTracker(MINUTE, 61, 1000L, 2000L);
+        assertTrue(Double.isNaN(tracker.getEwmaPrice()));
+        tracker.add(transaction(0L, "10", 100L));
+        tracker.add(transaction(0L, "20", 300L));
+        // Same instant, equal weights
+        assertEquals(15.0d, tracker.getEwmaPrice(), 1e-12d);
+        assertEquals(200.0d, tracker.getEwmaVolume(), 1e-12d);
+        // One price half-life later the first two weigh 1 together, the new one 1
+        tracker.add(transaction(1000L, "30", 200L));
+        assertEquals((15.0d * 1.0d + 30.0d) / 2.0d, tracker.getEwmaPrice(), 1e-12d);
+        double volumeDecay = Math.pow(0.5d, 0.5d);
+        assertEquals((400.0d * volumeDecay + 200.0d) / (2.0d * volumeDecay + 1.0d), tracker
+                .getEwmaVolume(), 1e-9d);
+        // Late, counted at the latest time
+        tracker.add(transaction(500L, "30", 200L));
+        assertEquals((15.0d + 60.0d) / 3.0d, tracker.getEwmaPrice(), 1e-12d);
+    }
+
+    @Test
+    public void testWindowedVarianceMatchesTwoPasses() {
+        PriceStatisticsTracker tracker = new PriceStatisticsTracker(MINUTE, 61, MINUTE, MINUTE);
+        Random random = new Random(9);
+        long now = 100L * MINUTE;
+        int count = 5000;
+        double[] logReturns = new double[count];
+        long[] times = new long[count];
+        double price = 100.0d;
+        double lastPrice = Double.NaN;
+        for (int i = 0; i < count; i++) {
+            times[i] = now - 90L * MINUTE + i * 90L * MINUTE / count;
+            price = BigDecimal.valueOf(price * Math.exp(0.01d * random.nextGaussian()))
+                    .setScale(4, RoundingMode.HALF_UP).doubleValue();
+            tracker.add(transaction(times[i], BigDecimal.valueOf(price).toPlainString(), 1L));
+            logReturns[i] = Math.log(price / lastPrice);
+            lastPrice = price;
+        }
+        double[] result = new double[PriceStatisticsTracker.TOTAL_COUNT];
+        for (int minutes : new int[] { 1, 15, 60 }) {
+            assertTrue(tracker.merge(now, minutes * MINUTE, result));
+            // Whole buckets starting within the window
+            long from = -Math.floorDiv(-(now - minutes * MINUTE), MINUTE) * MINUTE;
+            double sum = 0.0d;
+            int n = 0;
+            for (int i = 1; i < count; i++) {
+                if (times[i] >= from) {
+                    sum += logReturns[i];
+                    n++;
+                }
+            }
+            double mean = sum / n;
+            double squaredDeviations = 0.0d;
+            for (int i = 1; i < count; i++) {
+                if (times[i] >= from) {
+                    squaredDeviations += (logReturns[i] - mean) * (logReturns[i] - mean);
+                }
+            }
+            assertEquals(n, (long) result[PriceStatisticsTracker.COUNT]);
+            assertEquals(mean, result[PriceStatisticsTracker.MEAN], 1e-12d);
+            assertEquals(squaredDeviations, result[PriceStatisticsTracker.SQUARED_DEVIATIONS],
+                    squaredDeviations * 1e-9d);
+        }
+        assertFalse(tracker.merge(now, 61 * MINUTE, result));
+    }
+
+    private static Transaction transaction(long timeMillis, String price, long quantity) {
+        return new Transaction("V", new DateTime(timeMillis), BigInteger.valueOf(quantity),
+                BuySellIndicator.BUY, new BigDecimal(price));
+    }
+}
@@ -0,0 +1,88 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantileSketchTest {
+    private static final double[] QUANTILES = { 0.0d, 0.01d, 0.05d, 0.25d, 0.5d, 0.75d, 0.95d,
+            0.99d, 1.0d };
+
+    @Test
+    public void testQuantilesWithinRelativeAccuracy() {
+        Random random = new Random(3);
+        QuantileSketch sketch = new QuantileSketch();
+        QuantileSketch left = new QuantileSketch();
+        QuantileSketch right = new QuantileSketch();
+        double[] values = new double[100000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal around 100, as prices are
+            values[i] = 100.0d * Math.exp(0.5d * random.nextGaussian());
+            sketch.add(values[i]);
+            (i % 2 == 0 ? left : right).add(values[i]);
+        }
+        left.merge(right);
+        Arrays.sort(values);
+        assertEquals(values.length, sketch.getCount());
+        assertEquals(values.length, left.getCount());
+        for (double quantile : QUANTILES) {
+            double exact = values[(int) Math.ceil(quantile * (values.length - 1))];
+            double estimate = sketch.getQuantile(quantile).get().doubleValue();
+            assertEquals(exact, estimate, exact * sketch.getRelativeAccuracy() + 1e-8d);
+            assertEquals(estimate, left.getQuantile(quantile).get().doubleValue(), 0.0d);
+        }
+        assertEquals(values[0], sketch.getQuantile(0.0d).get().doubleValue(), 1e-8d);
+        assertEquals(values[values.length - 1], sketch.getQuantile(1.0d).get().doubleValue(),
+                1e-8d);
+    }
+
+    @Test
+    public void testWideRangeIsFoldedAtTheBottom() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int exponent = -4; exponent <= 36; exponent++) {
+            sketch.add(Math.pow(10.0d, exponent));
+        }
+        assertEquals(41L, sketch.getCount());
+        // The quantiles within MAX_BUCKETS of the top keep the bound
+        assertEquals(1e36d, sketch.getQuantile(1.0d).get().doubleValue(), 0.0d);
+        assertEquals(1e34d, sketch.getQuantile(0.95d).get().doubleValue(), 1e32d);
+        assertEquals(1e28d, sketch.getQuantile(0.8d).get().doubleValue(), 1e26d);
+        // The lower ones are folded into the lowest bucket kept
+        double lowest = 1e36d / Math.pow((1.01d / 0.99d), QuantileSketch.MAX_BUCKETS - 1);
+        assertEquals(lowest, sketch.getQuantile(0.75d).get().doubleValue(), lowest * 0.01d);
+        assertEquals(lowest, sketch.getQuantile(0.1d).get().doubleValue(), lowest * 0.01d);
+        assertEquals(1e-4d, sketch.getQuantile(0.0d).get().doubleValue(), 0.0d);
+    }
+
+    @Test
+    public void testCopyAndIgnoredValues() {
+        QuantileSketch sketch = new QuantileSketch(0.02d);
+        assertFalse(sketch.getQuantile(0.5d).isPresent());
+        sketch.add(0.0d);
+        sketch.add(-1.0d);
+        sketch.add(Double.NaN);
+        sketch.add(Double.POSITIVE_INFINITY);
+        assertEquals(0L, sketch.getCount());
+        sketch.add(10.0d);
+        QuantileSketch copy = sketch.copy();
+        sketch.add(20.0d);
+        assertEquals(1L, copy.getCount());
+        assertEquals(10.0d, copy.getQuantile(0.5d).get().doubleValue(), 0.0d);
+        assertTrue(sketch.getQuantile(1.0d).get().doubleValue() == 20.0d);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeOfAnotherAccuracy() {
+        new QuantileSketch().merge(new QuantileSketch(0.02d));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQuantileOutOfRange() {
+        new QuantileSketch().getQuantile(1.5d);
+    }
+}
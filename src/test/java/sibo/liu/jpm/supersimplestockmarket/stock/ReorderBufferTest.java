@@ -0,0 +1,121 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+public class ReorderBufferTest {
+    private static final long NOW = 1448382991000L;
+
+    @Test
+    public void testReleasesInTimeOrderBehindWatermark() {
+        ReorderBuffer buffer = new ReorderBuffer(1000L);
+        Transaction first = newTransaction(NOW - 3000L);
+        Transaction third = newTransaction(NOW - 2000L);
+        Transaction second = newTransaction(NOW - 2500L);
+
+        assertTrue(buffer.offer(first, NOW));
+        assertTrue(buffer.offer(third, NOW));
+        // Watermark at NOW - 3000
+        assertSame(first, buffer.poll());
+        assertNull(buffer.poll());
+        assertTrue(buffer.offer(second, NOW));
+        assertEquals(2, buffer.size());
+        assertSame(second, buffer.getPending()[buffer.getHead()]);
+
+        assertTrue(buffer.offer(newTransaction(NOW), NOW));
+        assertSame(second, buffer.poll());
+        assertSame(third, buffer.poll());
+        assertNull(buffer.poll());
+
+        // Earlier than a released transaction
+        assertFalse(buffer.offer(newTransaction(NOW - 2750L), NOW));
+        LateArrivalStatistics statistics = buffer.getStatistics();
+        assertEquals(3L, statistics.getInOrderCount());
+        assertEquals(1L, statistics.getReorderedCount());
+        assertEquals(1L, statistics.getCorrectedCount());
+        assertEquals(2750L, statistics.getMaxLateMillis());
+    }
+
+    @Test
+    public void testFutureTransactionDoesNotMoveWatermark() {
+        ReorderBuffer buffer = new ReorderBuffer(0L);
+        assertTrue(buffer.offer(newTransaction(NOW + 3600000L), NOW));
+        assertNull(buffer.poll());
+
+        Transaction current = newTransaction(NOW - 10L);
+        assertTrue(buffer.offer(current, NOW));
+        assertSame(current, buffer.poll());
+        assertNull(buffer.poll());
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void testGrowsBeyondInitialCapacity() {
+        ReorderBuffer buffer = new ReorderBuffer(Long.MAX_VALUE / 2);
+        for (int i = 100; i > 0; i--) {
+            assertTrue(buffer.offer(newTransaction(NOW - i * 1000L + (i % 2) * 1500L), NOW));
+        }
+        Transaction[] pending = buffer.getPending();
+        assertEquals(100, buffer.size());
+        for (int i = buffer.getHead() + 1; i < buffer.getHead() + buffer.size(); i++) {
+            assertTrue(pending[i - 1].getTimeMillis() <= pending[i].getTimeMillis());
+        }
+    }
+
+    @Test
+    public void testPublishedPendingTransactionsNeverChange() {
+        ReorderBuffer buffer = new ReorderBuffer(1000L);
+        Transaction first = newTransaction(NOW - 500L);
+        Transaction second = newTransaction(NOW - 400L);
+        assertTrue(buffer.offer(first, NOW));
+        assertTrue(buffer.offer(second, NOW));
+        Transaction[] published = buffer.getPending();
+        int head = buffer.getHead();
+
+        // In order, appended to the same array
+        assertTrue(buffer.offer(newTransaction(NOW - 300L), NOW));
+        assertSame(published, buffer.getPending());
+        // Moved past a pending one, inserted into a copy
+        assertTrue(buffer.offer(newTransaction(NOW - 450L), NOW));
+        assertTrue(published != buffer.getPending());
+        assertSame(first, published[head]);
+        assertSame(second, published[head + 1]);
+        // Released, left in place
+        assertTrue(buffer.offer(newTransaction(NOW + 1000L), NOW + 1000L));
+        assertSame(first, buffer.poll());
+        assertSame(first, published[head]);
+    }
+
+    @Test
+    public void testReleasesEarliestBeyondMaxSize() {
+        ReorderBuffer buffer = new ReorderBuffer(0L);
+        for (int i = 0; i < ReorderBuffer.MAX_SIZE; i++) {
+            assertTrue(buffer.offer(newTransaction(NOW + 3600000L + i), NOW));
+            assertNull(buffer.poll());
+        }
+        Transaction last = newTransaction(NOW + 7200000L);
+        assertTrue(buffer.offer(last, NOW));
+        assertEquals(NOW + 3600000L, buffer.poll().getTimeMillis());
+        assertNull(buffer.poll());
+        assertEquals(ReorderBuffer.MAX_SIZE, buffer.size());
+        // Earlier than the transaction forced out
+        assertFalse(buffer.offer(newTransaction(NOW), NOW));
+    }
+
+    private static Transaction newTransaction(long timeMillis) {
+        return new Transaction("TEA", new DateTime(timeMillis), BigInteger.ONE,
+                BuySellIndicator.BUY, BigDecimal.ONE);
+    }
+}
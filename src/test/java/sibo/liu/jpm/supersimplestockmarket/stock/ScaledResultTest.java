@@ -0,0 +1,78 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Optional;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ScaledResultTest {
+    private static final int RANDOM_CASES = 10000;
+
+    private final ScaledResult result = new ScaledResult();
+
+    @Test
+    public void testSetAndClear() {
+        assertFalse(result.isPresent());
+        assertFalse(result.toBigDecimal().isPresent());
+
+        result.set(123450000L);
+        assertTrue(result.isPresent());
+        assertEquals(123450000L, result.getUnscaledValue());
+        assertEquals(new BigDecimal("1.2345"), result.toBigDecimal().get());
+
+        result.clear();
+        assertFalse(result.isPresent());
+        assertEquals(0L, result.getUnscaledValue());
+    }
+
+    @Test
+    public void testSetOptional() {
+        assertTrue(result.set(Optional.of(new BigDecimal("2.000000005"))));
+        assertEquals(200000001L, result.getUnscaledValue());
+        assertFalse(result.set(Optional.<BigDecimal> empty()));
+        assertFalse(result.set(Optional.of(new BigDecimal("1E+20"))));
+    }
+
+    @Test
+    public void testToUnscaled() {
+        assertEquals(100000000L, ScaledResult.toUnscaled(BigDecimal.ONE));
+        assertEquals(1L, ScaledResult.toUnscaled(new BigDecimal("0.000000005")));
+        assertEquals(0L, ScaledResult.toUnscaled(new BigDecimal("0.000000004")));
+        assertEquals(ScaledResult.NOT_REPRESENTABLE, ScaledResult.toUnscaled(null));
+        assertEquals(ScaledResult.NOT_REPRESENTABLE,
+                ScaledResult.toUnscaled(new BigDecimal("1E+11")));
+    }
+
+    @Test
+    public void testDivideHalfUpMatchesBigDecimal() {
+        Random random = new Random(42);
+        for (int i = 0; i < RANDOM_CASES; i++) {
+            long numerator = random.nextInt(Integer.MAX_VALUE) * (long) random.nextInt(1000);
+            long denominator = 1L + random.nextInt(Integer.MAX_VALUE);
+            BigDecimal expected = BigDecimal.valueOf(numerator, ScaledResult.SCALE).divide(
+                    BigDecimal.valueOf(denominator, ScaledResult.SCALE), ScaledResult.SCALE,
+                    RoundingMode.HALF_UP);
+
+            assertTrue(ScaledResult.divideHalfUp(numerator, denominator, ScaledResult.SCALE,
+                    result));
+            assertEquals(expected.unscaledValue().longValue(), result.getUnscaledValue());
+        }
+    }
+
+    @Test
+    public void testDivideHalfUpOverflow() {
+        result.set(7L);
+        assertFalse(ScaledResult.divideHalfUp(Long.MAX_VALUE, 1L, ScaledResult.SCALE, result));
+        assertFalse(ScaledResult.divideHalfUp(1L, 0L, 0, result));
+        assertFalse(ScaledResult.divideHalfUp(-1L, 1L, 0, result));
+        assertEquals(7L, result.getUnscaledValue());
+        assertTrue(ScaledResult.divideHalfUp(5L, 10L, 0, result));
+        assertEquals(1L, result.getUnscaledValue());
+    }
+}
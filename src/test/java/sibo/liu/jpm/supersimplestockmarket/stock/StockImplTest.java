@@ -7,14 +7,18 @@ import static org.junit.Assert.assertTrue;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.junit.Before;
 import org.junit.Test;
 
 import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
 import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
 import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -97,4 +101,491 @@ public class StockImplTest extends CommonStockTestHelper {
         assertTrue(stockImpl.getVolumeWeightedStockPrice(15).isPresent());
         assertEquals(expectedResult, stockImpl.getVolumeWeightedStockPrice(15).get());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIsValidSymbol() {
+        assertTrue(StockImpl.isValidSymbol(ONE_CHARACTER_ALPHABETIC_SYMBOL));
+        assertTrue(StockImpl.isValidSymbol(FOUR_CHARACTER_ALPHABETIC_SYMBOL));
+        assertTrue(StockImpl.isValidSymbol("azAZ"));
+        assertFalse(StockImpl.isValidSymbol(null));
+        assertFalse(StockImpl.isValidSymbol(EMPTY_SYMBOL));
+        assertFalse(StockImpl.isValidSymbol(LONGER_THAN_FOUR_CHARACTER_SYMBOL_NAME));
+        assertFalse(StockImpl.isValidSymbol(NON_ALPHABETIC_SYMBOL_NAME));
+        assertFalse(StockImpl.isValidSymbol("@[`{"));
+        assertFalse(StockImpl.isValidSymbol("\u00c0"));
+    }
+
+    @Test
+    public void testAllocationFreeQueriesMatchBigDecimalQueries() {
+        Random random = new Random(7);
+        DateTime current = DateTime.now();
+        StockImpl preferredImpl = new PreferredStock(FOUR_CHARACTER_ALPHABETIC_SYMBOL,
+                new BigDecimal("100"), new BigDecimal("8"), BigInteger.valueOf(4), new BigDecimal(
+                        "0.02"));
+        ScaledResult result = new ScaledResult();
+
+        assertFalse(stockImpl.getVolumeWeightedStockPrice(15, result));
+        for (int i = 0; i < 1000; i++) {
+            Transaction transaction = new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                    current.minusSeconds(random.nextInt(1800)), BigInteger.valueOf(1 + random
+                            .nextInt(10000)), BuySellIndicator.BUY, BigDecimal.valueOf(
+                            1 + random.nextInt(100000000), 4));
+            stockImpl.addTransaction(transaction);
+        }
+        DateTimeUtils.setCurrentMillisFixed(current.getMillis());
+        try {
+            assertTrue(stockImpl.getVolumeWeightedStockPrice(15, result));
+            assertEquals(stockImpl.getVolumeWeightedStockPrice(15), result.toBigDecimal());
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+
+        for (StockImpl stock : new StockImpl[] { stockImpl, preferredImpl }) {
+            for (int i = 0; i < 1000; i++) {
+                BigDecimal price = BigDecimal.valueOf(1 + random.nextInt(100000000), 5);
+                long unscaledPrice = ScaledResult.toUnscaled(price);
+
+                stock.getDividendYield(unscaledPrice, result);
+                assertEquals(stock.getDividendYield(price), result.toBigDecimal());
+                stock.getPERatio(unscaledPrice, result);
+                assertEquals(stock.getPERatio(price), result.toBigDecimal());
+            }
+        }
+        assertFalse(stockImpl.getDividendYield(0L, result));
+        assertFalse(new CommonStock(ONE_CHARACTER_ALPHABETIC_SYMBOL, BigDecimal.ONE,
+                BigDecimal.ONE, BigInteger.ONE, BigDecimal.ZERO).getPERatio(1L, result));
+    }
+
+    @Test
+    public void testPriceLadderMatchesSinglePriceQueries() {
+        StockImpl preferredImpl = new PreferredStock(FOUR_CHARACTER_ALPHABETIC_SYMBOL,
+                new BigDecimal("100"), new BigDecimal("8"), BigInteger.valueOf(4), new BigDecimal(
+                        "0.02"));
+        BigDecimal[] prices = new BigDecimal[] { new BigDecimal("123.45"), BigDecimal.ONE,
+                BigDecimal.ZERO, new BigDecimal("-1"), null };
+        double[] doublePrices = new double[] { 123.45, 1.0, 0.0, -1.0, Double.NaN };
+        BigDecimal[] results = new BigDecimal[prices.length];
+        double[] doubleResults = new double[prices.length];
+
+        for (StockImpl stock : new StockImpl[] { stockImpl, preferredImpl }) {
+            // Changing a parameter invalidates the cached annual dividend
+            for (int round = 0; round < 2; round++) {
+                stock.getDividendYields(prices, results);
+                stock.getDividendYields(doublePrices, doubleResults);
+                for (int i = 0; i < prices.length; i++) {
+                    assertEquals(stock.getDividendYield(prices[i]).orElse(null), results[i]);
+                    assertClose(results[i], doubleResults[i]);
+                }
+                stock.getPERatios(prices, results);
+                stock.getPERatios(doublePrices, doubleResults);
+                for (int i = 0; i < prices.length; i++) {
+                    assertEquals(stock.getPERatio(prices[i]).orElse(null), results[i]);
+                    assertClose(results[i], doubleResults[i]);
+                }
+                stock.setDividend(new BigDecimal("0.05"));
+                stock.setParValue(new BigDecimal("250"));
+                stock.setLastAnnualDividend(new BigDecimal("3"));
+                stock.setPeriodPerYear(BigInteger.valueOf(2));
+            }
+        }
+
+        stockImpl.setDividend(BigDecimal.ZERO);
+        stockImpl.getPERatios(doublePrices, doubleResults);
+        for (double peRatio : doubleResults) {
+            assertTrue(Double.isNaN(peRatio));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPriceLadderTooShort() {
+        stockImpl.getDividendYields(new double[2], new double[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPriceLadderNull() {
+        stockImpl.getPERatios(null, new BigDecimal[1]);
+    }
+
+    private static void assertClose(BigDecimal expected, double actual) {
+        if (expected == null) {
+            assertTrue(Double.isNaN(actual));
+        } else {
+            assertEquals(expected.doubleValue(), actual, 1e-8);
+        }
+    }
+
+    @Test
+    public void testOrderFlowMatchesFilteringTransactions() {
+        Random random = new Random(3);
+        // Aligned to the buckets so that they cover the window exactly
+        long now = DateTime.now().getMillis() / 60000L * 60000L;
+        BigInteger[] volumes = new BigInteger[] { BigInteger.ZERO, BigInteger.ZERO };
+        BigDecimal[] notionals = new BigDecimal[] { BigDecimal.ZERO, BigDecimal.ZERO };
+        for (int i = 0; i < 1000; i++) {
+            // Seconds and a half, never on the edges of the window
+            long timeMillis = now - 500L - 1000L * random.nextInt(1800);
+            BuySellIndicator indicator = random.nextBoolean() ? BuySellIndicator.BUY
+                    : BuySellIndicator.SELL;
+            BigInteger quantity = BigInteger.valueOf(1 + random.nextInt(10000));
+            BigDecimal price = BigDecimal.valueOf(1 + random.nextInt(100000000), 4);
+            stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                    new DateTime(timeMillis), quantity, indicator, price));
+            if (timeMillis > now - 15 * 60000L) {
+                int side = indicator.ordinal();
+                volumes[side] = volumes[side].add(quantity);
+                notionals[side] = notionals[side].add(price.multiply(new BigDecimal(quantity)));
+            }
+        }
+        OrderFlow expected = new OrderFlow(volumes[0], notionals[0], volumes[1], notionals[1]);
+
+        DateTimeUtils.setCurrentMillisFixed(now);
+        try {
+            assertOrderFlowEquals(expected, stockImpl.getOrderFlow(15));
+            // Windows beyond the horizon are computed from the history
+            stockImpl.setOrderFlowResolution(1, 1);
+            assertOrderFlowEquals(expected, stockImpl.getOrderFlow(15));
+            stockImpl.setOrderFlowResolution(60, 60);
+            assertOrderFlowEquals(expected, stockImpl.getOrderFlow(15));
+            // Too large for the buckets
+            stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                    new DateTime(now - 500L), BigInteger.valueOf(Long.MAX_VALUE),
+                    BuySellIndicator.BUY, BigDecimal.TEN));
+            OrderFlow overflow = stockImpl.getOrderFlow(15);
+            assertEquals(volumes[0].add(BigInteger.valueOf(Long.MAX_VALUE)), overflow
+                    .getBuyVolume());
+            assertEquals(volumes[1], overflow.getSellVolume());
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+        assertEquals(BigInteger.ZERO, preferredStockWithoutTransactions().getOrderFlow(15)
+                .getBuyVolume());
+    }
+
+    @Test
+    public void testOrderFlowOfFutureTransaction() {
+        long now = DateTime.now().getMillis() / 60000L * 60000L;
+        DateTimeUtils.setCurrentMillisFixed(now);
+        try {
+            // 61 buckets of a minute
+            stockImpl.setOrderFlowResolution(60, 60);
+            for (int i = 0; i < 10; i++) {
+                stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                        new DateTime(now - 500L), BigInteger.ONE, BuySellIndicator.BUY,
+                        BigDecimal.TEN));
+            }
+            // One ring ahead, would take over the bucket of the others
+            stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                    new DateTime(now - 500L + 61 * 60000L), BigInteger.ONE,
+                    BuySellIndicator.BUY, BigDecimal.TEN));
+            assertEquals(BigInteger.valueOf(11), stockImpl.getOrderFlow(15).getBuyVolume());
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    private static StockImpl preferredStockWithoutTransactions() {
+        return new PreferredStock(FOUR_CHARACTER_ALPHABETIC_SYMBOL, BigDecimal.TEN,
+                BigDecimal.ONE, BigInteger.ONE, BigDecimal.ONE);
+    }
+
+    private static void assertOrderFlowEquals(OrderFlow expected, OrderFlow actual) {
+        assertEquals(expected.getBuyVolume(), actual.getBuyVolume());
+        assertEquals(expected.getSellVolume(), actual.getSellVolume());
+        assertEquals(expected.getBuyVolumeWeightedPrice(), actual.getBuyVolumeWeightedPrice());
+        assertEquals(expected.getSellVolumeWeightedPrice(), actual.getSellVolumeWeightedPrice());
+        assertEquals(expected.getImbalance(), actual.getImbalance());
+    }
+
+    @Test
+    public void testColdHistoryIsSealedAndStillQueried() {
+        Random random = new Random(11);
+        DateTime current = DateTime.now();
+        List<Transaction> added = new ArrayList<Transaction>();
+        // Three hours of trades, one every half a second, then a recent one
+        for (int i = 0; i < 21600; i++) {
+            Transaction transaction = new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL, current
+                    .minusHours(3).plusMillis(500 * i), BigInteger.valueOf(1 + random
+                    .nextInt(1000)), BuySellIndicator.SELL, BigDecimal.valueOf(
+                    10000 + random.nextInt(100), 2));
+            added.add(transaction);
+            stockImpl.addTransaction(transaction);
+        }
+
+        StockSnapshot snapshot = stockImpl.getSnapshot();
+        assertTrue(snapshot.getSegments().length > 0);
+        for (HistorySegment segment : snapshot.getSegments()) {
+            assertTrue(segment.isCompressed());
+            assertTrue(segment.getMaxTimeMillis() < current.minusMinutes(60).getMillis());
+        }
+        List<Transaction> transactions = stockImpl.getTransactions();
+        assertEquals(added.size(), transactions.size());
+        for (int i = 0; i < added.size(); i += 97) {
+            assertEquals(added.get(i).getTimeStamp(), transactions.get(i).getTimeStamp());
+            assertEquals(added.get(i).getPrice(), transactions.get(i).getPrice());
+        }
+
+        DateTimeUtils.setCurrentMillisFixed(current.getMillis());
+        try {
+            ScaledResult result = new ScaledResult();
+            for (int pastMinutes : new int[] { 15, 150, 240 }) {
+                BigDecimal totalPriceQuantity = BigDecimal.ZERO;
+                BigDecimal totalQuantity = BigDecimal.ZERO;
+                for (Transaction transaction : added) {
+                    if (transaction.getTimeStamp().isAfter(current.minusMinutes(pastMinutes))) {
+                        BigDecimal quantity = new BigDecimal(transaction.getQuantity());
+                        totalPriceQuantity = totalPriceQuantity.add(transaction.getPrice()
+                                .multiply(quantity));
+                        totalQuantity = totalQuantity.add(quantity);
+                    }
+                }
+                BigDecimal expected = totalPriceQuantity.divide(totalQuantity, BIG_DECIMAL_SCALE,
+                        ROUNDING_MODE);
+                assertEquals(expected, stockImpl.getVolumeWeightedStockPrice(pastMinutes).get());
+                assertTrue(stockImpl.getVolumeWeightedStockPrice(pastMinutes, result));
+                assertEquals(0, expected.compareTo(result.toBigDecimal().get()));
+            }
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void testTradeSummaryMatchesScanningTransactions() {
+        Random random = new Random(5);
+        long start = DateTime.now().getMillis() - 3600000L;
+        List<Transaction> added = new ArrayList<Transaction>();
+        for (int i = 0; i < 2000; i++) {
+            // Out of order, with many transactions at the same millisecond
+            long timeMillis = start + 100L * random.nextInt(36000);
+            BigInteger quantity = BigInteger.valueOf(1 + random.nextInt(1000000));
+            if (i % 100 == 0) {
+                // Pushes the notional beyond 64 bits
+                quantity = BigInteger.valueOf(Long.MAX_VALUE >> 20);
+            }
+            Transaction transaction = new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                    new DateTime(timeMillis), quantity, random.nextBoolean()
+                            ? BuySellIndicator.BUY : BuySellIndicator.SELL, BigDecimal.valueOf(
+                            1 + random.nextInt(100000000), 4));
+            added.add(transaction);
+            stockImpl.addTransaction(transaction);
+        }
+        for (int i = 0; i < 200; i++) {
+            long from = start + 100L * random.nextInt(36000) - random.nextInt(2);
+            long to = from + 100L * random.nextInt(36000 / (1 + i % 10)) + random.nextInt(2);
+            assertTradeSummaryEquals(added, from, to, stockImpl.getTradeSummary(
+                    new DateTime(from), new DateTime(to)));
+        }
+        assertTradeSummaryEquals(added, start, start + 3600000L, stockImpl.getTradeSummary(
+                new DateTime(start), new DateTime(start + 3600000L)));
+        assertEquals(0L, stockImpl.getTradeSummary(new DateTime(start + 1000L),
+                new DateTime(start)).getTradeCount());
+
+        // Too large for the index, computed from the history
+        Transaction large = new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL, new DateTime(
+                start + 50L), BigInteger.valueOf(Long.MAX_VALUE), BuySellIndicator.BUY,
+                BigDecimal.TEN);
+        added.add(large);
+        stockImpl.addTransaction(large);
+        assertTradeSummaryEquals(added, start, start + 1000L, stockImpl.getTradeSummary(
+                new DateTime(start), new DateTime(start + 1000L)));
+        assertTradeSummaryEquals(added, start + 100L, start + 3600000L, stockImpl
+                .getTradeSummary(new DateTime(start + 100L), new DateTime(start + 3600000L)));
+    }
+
+    @Test
+    public void testPriceSketchOfRecentAndOlderTransactions() {
+        // Aligned to the buckets so that they cover the window exactly
+        long now = DateTime.now().getMillis() / 60000L * 60000L;
+        Random random = new Random(11);
+        DateTimeUtils.setCurrentMillisFixed(now);
+        try {
+            List<Double> recent = new ArrayList<Double>();
+            for (int i = 0; i < 3000; i++) {
+                // Last 10 minutes, then the hour before
+                boolean isRecent = i % 3 != 0;
+                long timeMillis = now - (isRecent ? 1000L + random.nextInt(540000)
+                        : 900000L + random.nextInt(3600000));
+                BigDecimal price = BigDecimal.valueOf(5000 + random.nextInt(10000), 2);
+                if (isRecent) {
+                    recent.add(price.doubleValue());
+                }
+                stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                        new DateTime(timeMillis), BigInteger.ONE, BuySellIndicator.BUY, price));
+            }
+            Collections.sort(recent);
+            QuantileSketch sketch = stockImpl.getPriceSketch(10);
+            assertEquals(recent.size(), sketch.getCount());
+            for (double quantile : new double[] { 0.05d, 0.5d, 0.95d }) {
+                double exact = recent.get((int) Math.ceil(quantile * (recent.size() - 1)));
+                assertEquals(exact, sketch.getQuantile(quantile).get().doubleValue(),
+                        exact * 0.01d);
+            }
+            // Longer than the ring, sketched from the history
+            assertEquals(3000L, stockImpl.getPriceSketch(24 * 60).getCount());
+            assertEquals(0L, stockImpl.getPriceSketch(0).getCount());
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void testPriceSketchOfFutureTransaction() {
+        long now = DateTime.now().getMillis() / 60000L * 60000L;
+        DateTimeUtils.setCurrentMillisFixed(now);
+        try {
+            for (int i = 0; i < 10; i++) {
+                stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                        new DateTime(now - 500L), BigInteger.ONE, BuySellIndicator.BUY,
+                        BigDecimal.TEN));
+            }
+            // One ring ahead, would take over the bucket of the others
+            stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                    new DateTime(now - 500L + 61 * 60000L), BigInteger.ONE,
+                    BuySellIndicator.BUY, BigDecimal.TEN));
+            assertEquals(11L, stockImpl.getPriceSketch(15).getCount());
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void testPriceStatisticsAfterFutureTransaction() {
+        long now = DateTime.now().getMillis() / 60000L * 60000L;
+        DateTimeUtils.setCurrentMillisFixed(now);
+        try {
+            stockImpl.setHalfLives(1000L, 1000L);
+            stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                    new DateTime(now + 600000L), BigInteger.ONE, BuySellIndicator.BUY,
+                    BigDecimal.TEN));
+            for (int i = 0; i < 50; i++) {
+                stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                        new DateTime(now - 500L), BigInteger.ONE, BuySellIndicator.BUY,
+                        BigDecimal.valueOf(20 + i % 2)));
+            }
+            PriceStatistics statistics = stockImpl.getPriceStatistics(15);
+            assertEquals(50L, statistics.getReturnCount());
+            // 60 half-lives later the earlier prices have decayed away
+            DateTimeUtils.setCurrentMillisFixed(now + 60000L);
+            stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                    new DateTime(now + 60000L), BigInteger.ONE, BuySellIndicator.BUY,
+                    BigDecimal.valueOf(30)));
+            assertEquals(0, BigDecimal.valueOf(30).compareTo(stockImpl.getPriceStatistics(15)
+                    .getEwmaPrice().get()));
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    @Test
+    public void testPriceStatisticsFromTheRingAndTheHistory() {
+        assertFalse(stockImpl.getPriceStatistics(15).getEwmaPrice().isPresent());
+        long now = DateTime.now().getMillis();
+        Random random = new Random(13);
+        for (int i = 0; i < 1000; i++) {
+            stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                    new DateTime(now - 7200000L + i * 7000L), BigInteger.valueOf(10),
+                    BuySellIndicator.BUY, BigDecimal.valueOf(10000 + random.nextInt(200), 2)));
+        }
+        stockImpl.setHalfLives(0L, 1000L);
+        PriceStatistics statistics = stockImpl.getPriceStatistics(30);
+        assertTrue(statistics.getReturnCount() > 200L);
+        assertEquals(new BigDecimal("10.00000000"), statistics.getEwmaVolume().get());
+        BigDecimal ewmaPrice = statistics.getEwmaPrice().get();
+        assertTrue(ewmaPrice.compareTo(new BigDecimal(100)) >= 0
+                && ewmaPrice.compareTo(new BigDecimal(102)) < 0);
+        // Prices within 2% of each other, so returns of about 1%
+        double volatility = statistics.getVolatility().get().doubleValue();
+        assertTrue(volatility > 0.001d && volatility < 0.02d);
+        assertEquals(statistics.getVolatility().get().doubleValue()
+                * statistics.getVolatility().get().doubleValue(), statistics
+                .getReturnVariance().get().doubleValue(), 1e-12d);
+
+        // Longer than the ring, every return but the first
+        PriceStatistics all = stockImpl.getPriceStatistics(24 * 60);
+        assertEquals(999L, all.getReturnCount());
+        assertEquals(ewmaPrice, all.getEwmaPrice().get());
+        assertFalse(stockImpl.getPriceStatistics(0).getVolatility().isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTradeSummaryOfNullRange() {
+        stockImpl.getTradeSummary(null, DateTime.now());
+    }
+
+    private static void assertTradeSummaryEquals(List<Transaction> transactions, long from,
+            long to, TradeSummary actual) {
+        long tradeCount = 0L;
+        BigInteger volume = BigInteger.ZERO;
+        BigDecimal notional = BigDecimal.ZERO;
+        for (Transaction transaction : transactions) {
+            long timeMillis = transaction.getTimeStamp().getMillis();
+            if (!(timeMillis < from) && timeMillis < to) {
+                tradeCount++;
+                volume = volume.add(transaction.getQuantity());
+                notional = notional.add(transaction.getPrice().multiply(
+                        new BigDecimal(transaction.getQuantity())));
+            }
+        }
+        assertEquals(tradeCount, actual.getTradeCount());
+        assertEquals(volume, actual.getVolume());
+        if (tradeCount == 0L) {
+            assertFalse(actual.getVolumeWeightedPrice().isPresent());
+        } else {
+            assertEquals(notional.divide(new BigDecimal(volume), BIG_DECIMAL_SCALE,
+                    ROUNDING_MODE), actual.getVolumeWeightedPrice().get());
+        }
+    }
+
+    @Test
+    public void testLateTransactionsAreReorderedOrCorrected() {
+        long now = DateTime.now().getMillis();
+        stockImpl.setLatenessMillis(5000L);
+        long[] offsets = new long[] { 60000L, 58000L, 59000L, 40000L, 30000L, 45000L, 20000L,
+                50000L, 10000L };
+        BigDecimal totalPriceQuantity = BigDecimal.ZERO;
+        BigInteger totalQuantity = BigInteger.ZERO;
+        for (int i = 0; i < offsets.length; i++) {
+            BigInteger quantity = BigInteger.valueOf(i + 1);
+            BigDecimal price = BigDecimal.valueOf(100 + i);
+            stockImpl.addTransaction(new Transaction(ONE_CHARACTER_ALPHABETIC_SYMBOL,
+                    new DateTime(now - offsets[i]), quantity, BuySellIndicator.BUY, price));
+            totalPriceQuantity = totalPriceQuantity.add(price.multiply(new BigDecimal(quantity)));
+            totalQuantity = totalQuantity.add(quantity);
+        }
+
+        StockSnapshot snapshot = stockImpl.getSnapshot();
+        Transaction[] hot = snapshot.getHotTransactions();
+        for (int i = 1; i < snapshot.getHotTransactionCount(); i++) {
+            assertTrue(hot[i - 1].getTimeMillis() <= hot[i].getTimeMillis());
+        }
+        // 45 and 50 seconds ago were more than 5 seconds behind the latest
+        assertEquals(2, snapshot.getCorrectionCount());
+        assertEquals(offsets.length, stockImpl.getTransactions().size());
+        // Last in the list is the correction of 50 seconds ago
+        assertEquals(BigDecimal.valueOf(107), snapshot.getTransactions().get(offsets.length - 1)
+                .getPrice());
+        assertEquals(BigDecimal.valueOf(108), snapshot.getLatestTransaction().getPrice());
+        LateArrivalStatistics statistics = stockImpl.getLateArrivalStatistics();
+        assertEquals(5000L, statistics.getLatenessMillis());
+        assertEquals(6L, statistics.getInOrderCount());
+        assertEquals(1L, statistics.getReorderedCount());
+        assertEquals(2L, statistics.getCorrectedCount());
+        assertEquals(30000L, statistics.getMaxLateMillis());
+
+        // Every transaction counts whatever the path it took
+        BigDecimal expected = totalPriceQuantity.divide(new BigDecimal(totalQuantity),
+                BIG_DECIMAL_SCALE, ROUNDING_MODE);
+        ScaledResult result = new ScaledResult();
+        assertEquals(expected, stockImpl.getVolumeWeightedStockPrice(15).get());
+        assertTrue(stockImpl.getVolumeWeightedStockPrice(15, result));
+        assertEquals(0, expected.compareTo(result.toBigDecimal().get()));
+        assertEquals(totalQuantity, stockImpl.getOrderFlow(15).getBuyVolume());
+        assertEquals(totalQuantity, stockImpl.getTradeSummary(new DateTime(now - 60000L),
+                new DateTime(now)).getVolume());
+
+        // The pending transactions are released when the lateness shrinks
+        stockImpl.setLatenessMillis(0L);
+        assertEquals(0, stockImpl.getSnapshot().getPendingCount());
+        assertEquals(offsets.length, stockImpl.getTransactions().size());
+    }
+}
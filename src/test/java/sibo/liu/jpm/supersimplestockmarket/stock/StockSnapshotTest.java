@@ -0,0 +1,146 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+public class StockSnapshotTest extends CommonStockTestHelper {
+    private static final int WRITER_ITERATIONS = 20000;
+
+    private StockImpl stockImpl;
+
+    @Before
+    public void setUp() {
+        stockImpl = new PreferredStock(FOUR_CHARACTER_ALPHABETIC_SYMBOL, BigDecimal.ONE,
+                BigDecimal.ZERO, BigInteger.ONE, BigDecimal.ONE);
+    }
+
+    @Test
+    public void testSnapshotIsPointInTime() {
+        stockImpl.addTransaction(newTransaction());
+        StockSnapshot before = stockImpl.getSnapshot();
+
+        stockImpl.addTransaction(newTransaction());
+        stockImpl.setDividend(BigDecimal.TEN);
+        StockSnapshot after = stockImpl.getSnapshot();
+
+        assertEquals(1, before.getTransactions().size());
+        assertEquals(0, BigDecimal.ONE.compareTo(before.getDividend()));
+        assertEquals(2, after.getTransactions().size());
+        assertEquals(0, BigDecimal.TEN.compareTo(after.getDividend()));
+        assertEquals(before.getVersion() + 2, after.getVersion());
+        assertEquals(FOUR_CHARACTER_ALPHABETIC_SYMBOL, after.getSymbol());
+    }
+
+    @Test
+    public void testFirstSnapshotIsOfTheConstructedStock() {
+        StockSnapshot first = new PreferredStock(FOUR_CHARACTER_ALPHABETIC_SYMBOL,
+                BigDecimal.valueOf(100), BigDecimal.valueOf(8), BigInteger.valueOf(4),
+                new BigDecimal("0.02")).getSnapshot();
+
+        assertEquals(1L, first.getVersion());
+        assertEquals(0, new BigDecimal("0.02").compareTo(first.getDividend()));
+        assertEquals(800000000L, first.getUnscaledYieldDividend());
+        assertEquals(800000000L, first.getUnscaledPERatioDividend());
+    }
+
+    @Test
+    public void testHistoryGrowsBeyondInitialCapacity() {
+        List<Transaction> empty = stockImpl.getTransactions();
+        for (int i = 0; i < 100; i++) {
+            stockImpl.addTransaction(newTransaction());
+        }
+
+        assertEquals(0, empty.size());
+        assertEquals(100, stockImpl.getTransactions().size());
+    }
+
+    @Test
+    public void testPartsCoverTheHistory() {
+        long start = DateTime.now().getMillis() - 7200000L;
+        for (int i = 0; i < 2 * 4096 + 6000; i++) {
+            // Sealed, then hot, the last second of them pending
+            long timeMillis = i < 2 * 4096 ? start + i : start + 7000000L + i;
+            stockImpl.addTransaction(new Transaction(FOUR_CHARACTER_ALPHABETIC_SYMBOL,
+                    new DateTime(timeMillis), BigInteger.ONE, BuySellIndicator.BUY, BigDecimal
+                            .valueOf(1 + i % 1000, 2)));
+        }
+        // A correction
+        stockImpl.addTransaction(new Transaction(FOUR_CHARACTER_ALPHABETIC_SYMBOL,
+                new DateTime(start), BigInteger.ONE, BuySellIndicator.BUY, BigDecimal.TEN));
+        StockSnapshot snapshot = stockImpl.getSnapshot();
+        double expected = 0.0d;
+        for (Transaction transaction : snapshot.getTransactions()) {
+            expected += Math.log(transaction.getPrice().doubleValue());
+        }
+
+        // 2 segments, 2 parts of the hot tail, then the pending ones and the
+        // correction
+        assertEquals(5, snapshot.getPartCount());
+        for (NumericMode mode : NumericMode.values()) {
+            double logSum = 0.0d;
+            long count = 0L;
+            double[] sums = new double[2];
+            for (int part = 0; part < snapshot.getPartCount(); part++) {
+                snapshot.sumLogPrices(part, mode, sums);
+                logSum += sums[0];
+                count += (long) sums[1];
+            }
+            assertEquals(snapshot.getTransactions().size(), count);
+            assertEquals(expected, logSum, 1e-6d);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTransactionsAreUnmodifiable() {
+        stockImpl.getTransactions().add(newTransaction());
+    }
+
+    @Test
+    public void testReadersNeverObserveTornHistory() throws InterruptedException {
+        final AtomicBoolean torn = new AtomicBoolean(false);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    List<Transaction> transactions = stockImpl.getTransactions();
+                    int size = transactions.size();
+                    for (Transaction transaction : transactions) {
+                        if (transaction == null) {
+                            torn.set(true);
+                        }
+                    }
+                    if (transactions.size() != size) {
+                        torn.set(true);
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < WRITER_ITERATIONS; i++) {
+            stockImpl.addTransaction(newTransaction());
+        }
+        done.set(true);
+        reader.join();
+
+        assertFalse(torn.get());
+        assertEquals(WRITER_ITERATIONS, stockImpl.getTransactions().size());
+    }
+
+    private static Transaction newTransaction() {
+        return new Transaction(FOUR_CHARACTER_ALPHABETIC_SYMBOL, DateTime.now(), BigInteger.ONE,
+                BuySellIndicator.BUY, STOCK_PRICE);
+    }
+}
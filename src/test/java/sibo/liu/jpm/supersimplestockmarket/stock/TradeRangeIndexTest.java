@@ -0,0 +1,122 @@
+package sibo.liu.jpm.supersimplestockmarket.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.transaction.BuySellIndicator;
+import sibo.liu.jpm.supersimplestockmarket.transaction.Transaction;
+
+public class TradeRangeIndexTest {
+    private static final BigInteger TWO_TO_64 = BigInteger.ONE.shiftLeft(64);
+
+    @Test
+    public void testMultiplyHigh() {
+        Random random = new Random(9);
+        long[] edges = new long[] { 0L, 1L, 0xFFFFFFFFL, 0x100000000L, Long.MAX_VALUE };
+        for (long x : edges) {
+            for (long y : edges) {
+                assertMultiplyHigh(x, y);
+            }
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertMultiplyHigh(random.nextLong() >>> 1, random.nextLong() >>> (1 + random.nextInt(63)));
+        }
+    }
+
+    @Test
+    public void testEmptyIndex() {
+        long[] totals = new long[TradeRangeIndex.TOTAL_COUNT];
+        TradeRangeIndex index = new TradeRangeIndex();
+
+        assertTrue(index.sum(Long.MIN_VALUE, Long.MAX_VALUE, null, 0, 0, totals));
+        assertEquals(0L, totals[TradeRangeIndex.TRADE_COUNT]);
+        assertEquals(0L, totals[TradeRangeIndex.QUANTITY]);
+        assertFalse(index.size() > 0);
+    }
+
+    @Test
+    public void testSumsSegmentsHotTailCorrectionsAndPending() {
+        Random random = new Random(17);
+        long now = 1448382991000L;
+        // Three segments and a hot tail, in time order with repeated times
+        Transaction[] released = new Transaction[3 * 4096 + 1000];
+        long timeMillis = now - 3600000L;
+        for (int i = 0; i < released.length; i++) {
+            timeMillis += random.nextInt(3) * 100L;
+            released[i] = newTransaction(timeMillis, 1 + random.nextInt(1000), random);
+        }
+        Transaction[] late = new Transaction[256];
+        for (int i = 0; i < late.length; i++) {
+            late[i] = newTransaction(now - 3600000L + random.nextInt(3600000), 1 + random
+                    .nextInt(1000), random);
+        }
+        Transaction[] pending = new Transaction[] { null, newTransaction(timeMillis, 5, random),
+                newTransaction(timeMillis + 100L, 7, random) };
+
+        TradeRangeIndex index = new TradeRangeIndex();
+        for (int i = 0; i < released.length; i++) {
+            index.addReleased(released[i]);
+            if (i % 4096 == 4095) {
+                index.addSealed(HistorySegment.seal(released, i - 4095, 4096));
+            }
+            if (i % 64 == 0) {
+                index.addCorrection(late[i / 64]);
+            }
+        }
+        assertEquals(released.length + released.length / 64 + 1, index.size());
+
+        long[] totals = new long[TradeRangeIndex.TOTAL_COUNT];
+        for (int i = 0; i < 1000; i++) {
+            long from = now - 3700000L + random.nextInt(4000000);
+            long to = from + random.nextInt(i % 2 == 0 ? 60000 : 4000000);
+            long count = 0L;
+            long quantity = 0L;
+            BigInteger notional = BigInteger.ZERO;
+            Transaction[][] parts = new Transaction[][] { released, late, pending };
+            for (int part = 0; part < parts.length; part++) {
+                for (int j = 0; j < parts[part].length; j++) {
+                    Transaction transaction = parts[part][j];
+                    if (transaction != null && (part != 1 || j <= released.length / 64)
+                            && transaction.getTimeMillis() >= from
+                            && transaction.getTimeMillis() < to) {
+                        count++;
+                        quantity += transaction.getQuantityAsLong();
+                        notional = notional.add(BigInteger.valueOf(transaction
+                                .getUnscaledPrice()).multiply(transaction.getQuantity()));
+                    }
+                }
+            }
+            assertTrue(index.sum(from, to, pending, 1, 2, totals));
+            assertEquals(count, totals[TradeRangeIndex.TRADE_COUNT]);
+            assertEquals(quantity, totals[TradeRangeIndex.QUANTITY]);
+            assertEquals(notional, BigInteger.valueOf(totals[TradeRangeIndex.NOTIONAL_HIGH])
+                    .shiftLeft(64).add(BigInteger.valueOf(totals[TradeRangeIndex.NOTIONAL_LOW])
+                            .and(TWO_TO_64.subtract(BigInteger.ONE))));
+        }
+
+        // Too large for the index, only ranges around it cannot be answered
+        index.addCorrection(new Transaction("TEA", new DateTime(now - 1800000L), TWO_TO_64,
+                BuySellIndicator.BUY, BigDecimal.ONE));
+        assertFalse(index.sum(now - 1800000L, now - 1799999L, pending, 1, 2, totals));
+        assertTrue(index.sum(now - 1799999L, now, pending, 1, 2, totals));
+    }
+
+    private static Transaction newTransaction(long timeMillis, long quantity, Random random) {
+        return new Transaction("TEA", new DateTime(timeMillis), BigInteger.valueOf(quantity),
+                random.nextBoolean() ? BuySellIndicator.BUY : BuySellIndicator.SELL, BigDecimal
+                        .valueOf(10000 + random.nextInt(10000), 2));
+    }
+
+    private static void assertMultiplyHigh(long x, long y) {
+        BigInteger product = BigInteger.valueOf(x).multiply(BigInteger.valueOf(y));
+        assertEquals(product.divide(TWO_TO_64).longValue(), TradeRangeIndex.multiplyHigh(x, y));
+    }
+}
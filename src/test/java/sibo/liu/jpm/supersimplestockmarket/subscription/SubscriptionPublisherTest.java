@@ -0,0 +1,124 @@
+package sibo.liu.jpm.supersimplestockmarket.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class SubscriptionPublisherTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private static final String SYMBOL = "MSFT";
+    private static final String OTHER_SYMBOL = "JPM";
+    private static final int SIGNALS = 10000;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final SubscriptionPublisher publisher = new SubscriptionPublisher(2);
+
+    @Test
+    public void testConstructorWithNonPositiveThreads() {
+        thrown.expect(IllegalArgumentException.class);
+        new SubscriptionPublisher(0);
+    }
+
+    @Test
+    public void testSlowSubscriberOnlyReceivesLatestValue() throws InterruptedException {
+        final AtomicInteger source = new AtomicInteger();
+        final CountDownLatch firstDelivery = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> received = new CopyOnWriteArrayList<Integer>();
+
+        publisher.subscribeSymbol(SYMBOL, source::get, value -> {
+            received.add(value);
+            firstDelivery.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(firstDelivery.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        for (int i = 1; i <= SIGNALS; i++) {
+            source.set(i);
+            publisher.symbolChanged(SYMBOL);
+        }
+        release.countDown();
+        awaitValue(received, SIGNALS);
+
+        // The initial value and one conflated delivery of the latest value
+        assertEquals(2, received.size());
+        assertEquals(Integer.valueOf(SIGNALS), received.get(1));
+    }
+
+    @Test
+    public void testMarketSubscriberReceivesEverySymbol() throws InterruptedException {
+        final AtomicInteger source = new AtomicInteger();
+        final List<Integer> symbolReceived = new CopyOnWriteArrayList<Integer>();
+        final List<Integer> marketReceived = new CopyOnWriteArrayList<Integer>();
+        publisher.subscribeSymbol(SYMBOL, source::get, symbolReceived::add);
+        publisher.subscribeMarket(source::get, marketReceived::add);
+        awaitValue(symbolReceived, 0);
+        awaitValue(marketReceived, 0);
+
+        source.set(1);
+        publisher.symbolChanged(OTHER_SYMBOL);
+        awaitValue(marketReceived, 1);
+
+        assertEquals(1, symbolReceived.size());
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        final AtomicInteger source = new AtomicInteger();
+        final List<Integer> received = new CopyOnWriteArrayList<Integer>();
+        Subscription subscription = publisher.subscribeSymbol(SYMBOL, source::get, received::add);
+        awaitValue(received, 0);
+
+        subscription.cancel();
+        subscription.cancel();
+        source.set(1);
+        publisher.symbolChanged(SYMBOL);
+        Thread.sleep(50);
+
+        assertFalse(subscription.isActive());
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void testFaultySubscriberKeepsReceiving() throws InterruptedException {
+        final AtomicInteger source = new AtomicInteger();
+        final List<Integer> received = new CopyOnWriteArrayList<Integer>();
+        publisher.subscribeSymbol(SYMBOL, source::get, value -> {
+            received.add(value);
+            throw new IllegalStateException();
+        });
+        awaitValue(received, 0);
+
+        source.set(1);
+        publisher.symbolChanged(SYMBOL);
+        awaitValue(received, 1);
+    }
+
+    private static void awaitValue(List<Integer> received, int value) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (received.isEmpty() || received.get(received.size() - 1) != value) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
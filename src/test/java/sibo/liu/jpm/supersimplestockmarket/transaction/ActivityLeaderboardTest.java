@@ -0,0 +1,157 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Test;
+
+public class ActivityLeaderboardTest {
+    private static final int WINDOW_MINUTES = 15;
+    private static final long WINDOW_MILLIS = WINDOW_MINUTES * 60000L;
+    private static final long NOW = 1448382991000L;
+
+    private final ActivityLeaderboard leaderboard = new ActivityLeaderboard(WINDOW_MINUTES);
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void testTopNMatchesBruteForceAsWindowRolls() {
+        Random random = new Random(5);
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        for (int i = 0; i < 5000; i++) {
+            // Seconds and a half, so that no transaction is on a window edge
+            long timeMillis = NOW - 500L - 1000L * random.nextInt(1200);
+            Transaction transaction = new Transaction(symbolOf(random.nextInt(50)), new DateTime(
+                    timeMillis), BigInteger.valueOf(1 + random.nextInt(1000)),
+                    BuySellIndicator.BUY, BigDecimal.valueOf(1 + random.nextInt(100000), 2));
+            transactions.add(transaction);
+            leaderboard.record(transaction.getSymbol(), transaction);
+        }
+        for (long now = NOW; now < NOW + 2 * WINDOW_MILLIS; now += 60000L) {
+            DateTimeUtils.setCurrentMillisFixed(now);
+            assertEquals(bruteForce(transactions, now, true), symbols(leaderboard
+                    .getTopByVolume(20)));
+            assertEquals(bruteForce(transactions, now, false), symbols(leaderboard
+                    .getTopByNotional(20)));
+        }
+        assertTrue(leaderboard.getTopByVolume(20).isEmpty());
+    }
+
+    @Test
+    public void testTotalsAndRemove() {
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        leaderboard.record("TEA", transaction("TEA", 100, "1.5"));
+        leaderboard.record("TEA", transaction("TEA", 50, "2"));
+        leaderboard.record("POP", transaction("POP", 10, "100"));
+        leaderboard.record(null, transaction("POP", 10, "100"));
+        leaderboard.record("POP", null);
+
+        List<SymbolActivity> byVolume = leaderboard.getTopByVolume(5);
+        assertEquals(2, byVolume.size());
+        assertEquals("TEA", byVolume.get(0).getSymbol());
+        assertEquals(150L, byVolume.get(0).getVolume());
+        assertEquals(0, new BigDecimal("250").compareTo(byVolume.get(0).getNotional()));
+        assertEquals("POP", leaderboard.getTopByNotional(1).get(0).getSymbol());
+        assertTrue(leaderboard.getTopByVolume(0).isEmpty());
+
+        leaderboard.remove("TEA");
+        assertEquals(1, leaderboard.getTopByVolume(5).size());
+        leaderboard.clear();
+        assertTrue(leaderboard.getTopByNotional(5).isEmpty());
+    }
+
+    @Test
+    public void testFutureTransactionCountsNow() {
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        leaderboard.record("TEA", new Transaction("TEA", new DateTime(NOW + 3600000L),
+                BigInteger.TEN, BuySellIndicator.BUY, BigDecimal.ONE));
+        assertEquals(10L, leaderboard.getTopByVolume(1).get(0).getVolume());
+
+        DateTimeUtils.setCurrentMillisFixed(NOW + WINDOW_MILLIS + 1000L);
+        assertTrue(leaderboard.getTopByVolume(1).isEmpty());
+    }
+
+    @Test
+    public void testTotalsStayExact() {
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        BigDecimal smallestPrice = BigDecimal.valueOf(1L, 8);
+        leaderboard.record("TEA", new Transaction("TEA", new DateTime(NOW - 600000L), BigInteger
+                .valueOf(Long.MAX_VALUE - 10L), BuySellIndicator.BUY, smallestPrice));
+        // Beyond a long once added, left out
+        leaderboard.record("TEA", new Transaction("TEA", new DateTime(NOW - 1000L), BigInteger
+                .valueOf(100L), BuySellIndicator.BUY, smallestPrice));
+        leaderboard.record("POP", new Transaction("POP", new DateTime(NOW - 1000L), BigInteger
+                .valueOf(5L), BuySellIndicator.BUY, smallestPrice));
+        assertEquals(Long.MAX_VALUE - 10L, leaderboard.getTopByVolume(1).get(0).getVolume());
+
+        // Only what was added is subtracted
+        DateTimeUtils.setCurrentMillisFixed(NOW + 360000L);
+        List<SymbolActivity> byVolume = leaderboard.getTopByVolume(5);
+        assertEquals(1, byVolume.size());
+        assertEquals("POP", byVolume.get(0).getSymbol());
+        assertEquals(5L, byVolume.get(0).getVolume());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveWindow() {
+        new ActivityLeaderboard(0);
+    }
+
+    private static Transaction transaction(String symbol, int quantity, String price) {
+        return new Transaction(symbol, new DateTime(NOW - 1000L), BigInteger.valueOf(quantity),
+                BuySellIndicator.SELL, new BigDecimal(price));
+    }
+
+    private static List<String> bruteForce(List<Transaction> transactions, long now,
+            boolean byVolume) {
+        Map<String, BigDecimal> totals = new HashMap<String, BigDecimal>();
+        for (Transaction transaction : transactions) {
+            long timeMillis = transaction.getTimeMillis();
+            if (timeMillis > now - WINDOW_MILLIS) {
+                BigDecimal quantity = new BigDecimal(transaction.getQuantity());
+                BigDecimal value = byVolume ? quantity : quantity.multiply(transaction
+                        .getPrice());
+                totals.merge(transaction.getSymbol(), value, BigDecimal::add);
+            }
+        }
+        List<Map.Entry<String, BigDecimal>> entries = new ArrayList<Map.Entry<String, BigDecimal>>(
+                totals.entrySet());
+        Collections.sort(entries, (first, second) -> {
+            int compare = second.getValue().compareTo(first.getValue());
+            return compare != 0 ? compare : first.getKey().compareTo(second.getKey());
+        });
+        List<String> symbols = new ArrayList<String>();
+        for (int i = 0; i < Math.min(20, entries.size()); i++) {
+            symbols.add(entries.get(i).getKey());
+        }
+        return symbols;
+    }
+
+    private static List<String> symbols(List<SymbolActivity> activities) {
+        List<String> symbols = new ArrayList<String>();
+        for (SymbolActivity activity : activities) {
+            symbols.add(activity.getSymbol());
+        }
+        return symbols;
+    }
+
+    private static String symbolOf(int index) {
+        return String.valueOf((char) ('A' + index / 26)) + (char) ('A' + index % 26);
+    }
+}
@@ -0,0 +1,99 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.NumericMode;
+import sibo.liu.jpm.supersimplestockmarket.stock.PreferredStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+
+public class GBCEIndexTaskTest {
+    private static final DateTime TIME_STAMP = DateTime.now();
+    private static final BigDecimal LOW_PRICE = new BigDecimal(2);
+    private static final BigDecimal HIGH_PRICE = new BigDecimal(8);
+    private static final BigDecimal EXPECTED_INDEX = new BigDecimal(4);
+
+    @Test
+    public void testEmptyStocks() {
+        GBCEIndexPartial partial = ForkJoinPool.commonPool().invoke(
+                GBCEIndexTask.forStocks(new ArrayList<StockImpl>()));
+
+        assertEquals(0, partial.getCount());
+        assertFalse(partial.toIndex().isPresent());
+    }
+
+    @Test
+    public void testSplitAcrossStocksAndChunks() {
+        StockImpl hotStock = new CommonStock("HOT", BigDecimal.TEN, BigDecimal.ONE,
+                BigInteger.ONE, BigDecimal.ONE);
+        StockImpl coldStock = new PreferredStock("COLD", BigDecimal.TEN, BigDecimal.ONE,
+                BigInteger.ONE, BigDecimal.ONE);
+        // Five parts of the hot tail and a bit
+        int hotTransactions = 4096 * 5 + 2;
+        for (int i = 0; i < hotTransactions; i++) {
+            hotStock.addTransaction(newTransaction("HOT", i % 2 == 0 ? LOW_PRICE : HIGH_PRICE));
+        }
+        coldStock.addTransaction(newTransaction("COLD", LOW_PRICE));
+        coldStock.addTransaction(newTransaction("COLD", HIGH_PRICE));
+
+        GBCEIndexPartial partial = ForkJoinPool.commonPool().invoke(
+                GBCEIndexTask.forStocks(Arrays.asList(hotStock, coldStock)));
+
+        assertEquals(hotTransactions + 2, partial.getCount());
+        assertTrue(partial.toIndex().isPresent());
+        assertEquals(0, EXPECTED_INDEX.compareTo(partial.toIndex().get()));
+    }
+
+    @Test
+    public void testFastModeDivergence() {
+        Random random = new Random(17);
+        List<StockImpl> stocks = new ArrayList<StockImpl>();
+        for (int i = 0; i < 20; i++) {
+            StockImpl stockImpl = new CommonStock("S" + (char) ('A' + i), BigDecimal.TEN,
+                    BigDecimal.ONE, BigInteger.ONE, BigDecimal.ONE);
+            for (int j = 0; j < 1000; j++) {
+                stockImpl.addTransaction(newTransaction(stockImpl.getSymbol(), BigDecimal
+                        .valueOf(1L + random.nextInt(Integer.MAX_VALUE), random.nextInt(9))));
+            }
+            stocks.add(stockImpl);
+        }
+
+        GBCEIndexPartial exact = ForkJoinPool.commonPool().invoke(
+                GBCEIndexTask.forStocks(stocks, NumericMode.EXACT));
+        GBCEIndexPartial fast = ForkJoinPool.commonPool().invoke(
+                GBCEIndexTask.forStocks(stocks, NumericMode.FAST));
+
+        assertEquals(exact.getCount(), fast.getCount());
+        double expected = exact.toIndex().get().doubleValue();
+        assertEquals(expected, fast.toIndex().get().doubleValue(), expected * 1e-12d + 1e-8d);
+    }
+
+    @Test
+    public void testCombine() {
+        GBCEIndexPartial low = new GBCEIndexPartial(Math.log(2), 1);
+        GBCEIndexPartial high = new GBCEIndexPartial(Math.log(8), 1);
+
+        assertEquals(low, low.combine(GBCEIndexPartial.EMPTY));
+        assertEquals(high, GBCEIndexPartial.EMPTY.combine(high));
+        assertEquals(low, low.combine(null));
+        assertEquals(2, low.combine(high).getCount());
+        assertEquals(0, EXPECTED_INDEX.compareTo(low.combine(high).toIndex().get()));
+    }
+
+    private static Transaction newTransaction(String symbol, BigDecimal price) {
+        return new Transaction(symbol, TIME_STAMP, BigInteger.ONE, BuySellIndicator.BUY, price);
+    }
+}
@@ -0,0 +1,83 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+
+public class IndexSamplerTest {
+    private static final long NOW = 1448382991000L;
+
+    private final StockTransactionManager manager = StockTransactionManager.INSTANCE;
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+        manager.clearAll();
+    }
+
+    @Test
+    public void testSamplesOfIndexAndStocks() {
+        assertTrue(manager.clearAll());
+        IndexSampler sampler = new IndexSampler(manager, 1000L, 4, true);
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        sampler.sample();
+        assertTrue(manager.addStock(new CommonStock("TEA", BigDecimal.TEN, BigDecimal.ONE,
+                BigInteger.ONE, BigDecimal.ONE)));
+        assertTrue(manager.addTransaction("TEA", transaction("TEA", NOW, 100, "2")));
+        assertTrue(manager.addTransaction("TEA", transaction("TEA", NOW, 300, "8")));
+        DateTimeUtils.setCurrentMillisFixed(NOW + 1000L);
+        sampler.sample();
+
+        long[] times = new long[4];
+        double[] values = new double[4];
+        assertEquals(2, sampler.getIndexSeries().getRange(NOW, NOW + 2000L, times, values));
+        assertEquals(NOW, times[0]);
+        assertTrue(Double.isNaN(values[0]));
+        assertEquals(NOW + 1000L, times[1]);
+        assertEquals(4.0d, values[1], 1e-9d);
+
+        assertEquals(1, sampler.getVolumeWeightedPriceSeries("TEA").get().getRange(NOW,
+                NOW + 2000L, times, values));
+        assertEquals(6.5d, values[0], 1e-9d);
+        assertFalse(sampler.getVolumeWeightedPriceSeries("POP").isPresent());
+        assertFalse(sampler.getVolumeWeightedPriceSeries(null).isPresent());
+    }
+
+    @Test
+    public void testManagerSampling() throws InterruptedException {
+        assertTrue(manager.clearAll());
+        assertFalse(manager.startIndexSampling(0L, 10, false).isPresent());
+        assertFalse(manager.startIndexSampling(10L, 0, false).isPresent());
+        IndexSampler sampler = manager.startIndexSampling(5L, 10, false).get();
+        assertEquals(sampler, manager.getIndexSampler().get());
+        for (int i = 0; i < 200 && sampler.getIndexSeries().getSize() < 3; i++) {
+            Thread.sleep(10L);
+        }
+        assertTrue(sampler.getIndexSeries().getSize() >= 3);
+        assertFalse(sampler.getVolumeWeightedPriceSeries("TEA").isPresent());
+
+        assertTrue(manager.clearAll());
+        assertFalse(manager.getIndexSampler().isPresent());
+        // Let a sample already running finish
+        Thread.sleep(20L);
+        int size = sampler.getIndexSeries().getSize();
+        Thread.sleep(50L);
+        assertEquals(size, sampler.getIndexSeries().getSize());
+    }
+
+    private static Transaction transaction(String symbol, long timeMillis, int quantity,
+            String price) {
+        return new Transaction(symbol, new DateTime(timeMillis - 1L), BigInteger
+                .valueOf(quantity), BuySellIndicator.BUY, new BigDecimal(price));
+    }
+}
@@ -0,0 +1,146 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.NumericMode;
+
+public class QueryCacheTest {
+    private static final long NOW = 1448382991000L;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final StockTransactionManager manager = StockTransactionManager.INSTANCE;
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+        manager.setNumericMode(NumericMode.EXACT);
+        manager.clearAll();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        QueryCache cache = new QueryCache(2);
+        Object owner = new Object();
+        QueryCache.Key first = key("A");
+        QueryCache.Key second = key("B");
+        cache.put(first, owner, 1L, QueryCache.TIMELESS, Optional.of(BigDecimal.ONE));
+        cache.put(second, owner, 1L, QueryCache.TIMELESS, Optional.of(BigDecimal.TEN));
+        // Using the first makes the second the eldest
+        assertEquals(BigDecimal.ONE, cache.get(key("A"), owner, 1L, QueryCache.TIMELESS).get());
+        cache.put(key("C"), owner, 1L, QueryCache.TIMELESS, Optional.empty());
+        assertEquals(2, cache.getSize());
+        assertEquals(1L, cache.getEvictionCount());
+        assertNull(cache.get(second, owner, 1L, QueryCache.TIMELESS));
+        assertFalse(cache.get(key("C"), owner, 1L, QueryCache.TIMELESS).isPresent());
+        // Another version, owner or time is a miss
+        assertNull(cache.get(first, owner, 2L, QueryCache.TIMELESS));
+        assertNull(cache.get(first, new Object(), 1L, QueryCache.TIMELESS));
+        assertNull(cache.get(first, owner, 1L, NOW));
+        assertEquals(2L, cache.getHitCount());
+        assertEquals(4L, cache.getMissCount());
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testManagerQueriesInvalidatedByChanges() {
+        assertTrue(manager.clearAll());
+        QueryCache cache = manager.getQueryCache();
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        assertTrue(manager.addStock(new CommonStock("TEA", BigDecimal.TEN, BigDecimal.ONE,
+                BigInteger.ONE, BigDecimal.ONE)));
+        assertTrue(manager.addTransaction("TEA", transaction("2")));
+        BigDecimal price = new BigDecimal("5");
+
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+        assertEquals(0, new BigDecimal("5").compareTo(manager.getPERatio("TEA", price).get()));
+        assertEquals(0, new BigDecimal("5").compareTo(manager.getPERatio("TEA", price).get()));
+        assertEquals(0, new BigDecimal("2").compareTo(manager.getVolumeWeightedStockPrice(
+                "TEA", 15).get()));
+        assertEquals(0, new BigDecimal("2").compareTo(manager.getVolumeWeightedStockPrice(
+                "TEA", 15).get()));
+        assertEquals(0, new BigDecimal("2").compareTo(manager.getGBCEAllShareIndex().get()));
+        assertEquals(0, new BigDecimal("2").compareTo(manager.getGBCEAllShareIndex().get()));
+        assertEquals(hits + 3, cache.getHitCount());
+        assertEquals(misses + 3, cache.getMissCount());
+
+        // Transactions invalidate every query of the stock and the index
+        assertTrue(manager.addTransaction("TEA", transaction("8")));
+        assertEquals(0, new BigDecimal("5").compareTo(manager.getVolumeWeightedStockPrice(
+                "TEA", 15).get()));
+        assertEquals(0, new BigDecimal("4").compareTo(manager.getGBCEAllShareIndex().get()));
+        // Dividend setters invalidate the ratios
+        assertEquals(0, new BigDecimal("0.2").compareTo(manager.getDividendYield("TEA", price)
+                .get()));
+        assertTrue(manager.setDividend("TEA", new BigDecimal("2")));
+        assertEquals(0, new BigDecimal("2.5").compareTo(manager.getPERatio("TEA", price)
+                .get()));
+        assertTrue(manager.setStockLastAnnualDividend("TEA", new BigDecimal("2")));
+        assertEquals(0, new BigDecimal("0.4").compareTo(manager.getDividendYield("TEA", price)
+                .get()));
+        // So does the next millisecond, for the volume weighted price only
+        manager.getVolumeWeightedStockPrice("TEA", 15);
+        manager.getPERatio("TEA", price);
+        misses = cache.getMissCount();
+        DateTimeUtils.setCurrentMillisFixed(NOW + 1L);
+        manager.getVolumeWeightedStockPrice("TEA", 15);
+        manager.getPERatio("TEA", price);
+        assertEquals(misses + 1, cache.getMissCount());
+
+        // A new stock of the same symbol is not mistaken for the old one
+        assertTrue(manager.removeStock("TEA"));
+        assertFalse(manager.getPERatio("TEA", price).isPresent());
+        assertTrue(manager.addStock(new CommonStock("TEA", BigDecimal.TEN, BigDecimal.ONE,
+                BigInteger.ONE, BigDecimal.ONE)));
+        assertEquals(0, new BigDecimal("5").compareTo(manager.getPERatio("TEA", price).get()));
+        assertFalse(manager.getVolumeWeightedStockPrice("TEA", 15).isPresent());
+        assertFalse(manager.getGBCEAllShareIndex().isPresent());
+    }
+
+    @Test
+    public void testNumericModeIsPartOfTheKey() {
+        assertTrue(manager.clearAll());
+        assertTrue(manager.addStock(new CommonStock("TEA", BigDecimal.TEN, BigDecimal.ONE,
+                BigInteger.ONE, new BigDecimal("3"))));
+        BigDecimal price = new BigDecimal("1");
+        assertEquals(new BigDecimal("0.33333333"), manager.getPERatio("TEA", price).get());
+        manager.setNumericMode(NumericMode.FAST);
+        long misses = manager.getQueryCache().getMissCount();
+        assertEquals(new BigDecimal("0.33333333"), manager.getPERatio("TEA", price).get());
+        assertEquals(misses + 1, manager.getQueryCache().getMissCount());
+    }
+
+    @Test
+    public void testCapacityNotPositive() {
+        thrown.expect(IllegalArgumentException.class);
+        new QueryCache(0);
+    }
+
+    private static QueryCache.Key key(String symbol) {
+        return new QueryCache.Key(QueryCache.Kind.PE_RATIO, symbol, BigDecimal.ONE, 0,
+                NumericMode.EXACT);
+    }
+
+    private static Transaction transaction(String price) {
+        return new Transaction("TEA", new DateTime(NOW - 1000L), BigInteger.ONE,
+                BuySellIndicator.BUY, new BigDecimal(price));
+    }
+}
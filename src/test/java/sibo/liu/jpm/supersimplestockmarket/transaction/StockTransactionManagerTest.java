@@ -7,12 +7,19 @@ import static org.junit.Assert.assertTrue;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.joda.time.DateTime;
 
 import org.junit.Test;
 
 import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.NumericMode;
 import sibo.liu.jpm.supersimplestockmarket.stock.PreferredStock;
 import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+import sibo.liu.jpm.supersimplestockmarket.subscription.StockUpdate;
+import sibo.liu.jpm.supersimplestockmarket.subscription.Subscription;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.doCallRealMethod;
@@ -86,6 +93,32 @@ public class StockTransactionManagerTest {
         assertFalse(stockManager.addTransaction(null, null));
     }
 
+    @Test
+    public void testSymbolIdOperations() {
+        assertTrue(stockManager.clearAll());
+        StockImpl stockImpl = new CommonStock(COMMON_STOCK_SYMBOL, BigDecimal.TEN, BigDecimal.ONE,
+                BigInteger.ONE, BigDecimal.ONE);
+        Transaction transaction = new Transaction(COMMON_STOCK_SYMBOL, DateTime.now(),
+                BigInteger.ONE, BuySellIndicator.BUY, BigDecimal.ONE);
+
+        assertTrue(stockManager.addStock(stockImpl));
+        int symbolId = stockManager.getSymbolId(COMMON_STOCK_SYMBOL);
+        assertTrue(symbolId >= 0);
+        assertEquals(stockImpl, stockManager.getStock(symbolId).get());
+        assertTrue(stockManager.addTransaction(symbolId, transaction));
+        assertEquals(1, stockImpl.getTransactions().size());
+
+        assertTrue(stockManager.removeStock(COMMON_STOCK_SYMBOL));
+        assertFalse(stockManager.getStock(symbolId).isPresent());
+        assertFalse(stockManager.addTransaction(symbolId, transaction));
+        assertTrue(stockManager.addStock(stockImpl));
+        assertEquals(symbolId, stockManager.getSymbolId(COMMON_STOCK_SYMBOL));
+
+        assertFalse(stockManager.getStock(SymbolRegistry.NO_ID).isPresent());
+        assertFalse(stockManager.addTransaction(SymbolRegistry.NO_ID, transaction));
+        assertFalse(stockManager.addTransaction(symbolId, null));
+    }
+
     @Test
     public void testSetLastAnnualDividend() {
         assertTrue(stockManager.clearAll());
@@ -183,4 +216,103 @@ public class StockTransactionManagerTest {
         assertTrue(stockManager.getGBCEAllShareIndex().isPresent());
         assertEquals(0, expectedResult.compareTo(stockManager.getGBCEAllShareIndex().get()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNumericMode() {
+        assertTrue(stockManager.clearAll());
+        assertEquals(NumericMode.EXACT, stockManager.getNumericMode());
+        StockImpl commonImpl = new CommonStock(COMMON_STOCK_SYMBOL, BigDecimal.TEN,
+                BigDecimal.ONE, BigInteger.ONE, BigDecimal.ONE);
+        assertTrue(stockManager.addStock(commonImpl));
+        for (String price : new String[] { "3.12", "200.123422", "0.00022", "5.7823" }) {
+            assertTrue(stockManager.addTransaction(COMMON_STOCK_SYMBOL, new Transaction(
+                    COMMON_STOCK_SYMBOL, DateTime.now(), BigInteger.ONE, BuySellIndicator.SELL,
+                    new BigDecimal(price))));
+        }
+        BigDecimal exact = stockManager.getGBCEAllShareIndex().get();
+        try {
+            stockManager.setNumericMode(NumericMode.FAST);
+            stockManager.setNumericMode(null);
+            assertEquals(NumericMode.FAST, stockManager.getNumericMode());
+            assertEquals(exact.doubleValue(), stockManager.getGBCEAllShareIndex().get()
+                    .doubleValue(), 1e-8d);
+            assertEquals(0, exact.compareTo(stockManager.getGBCEAllShareIndex(
+                    NumericMode.EXACT).get()));
+            assertFalse(stockManager.getGBCEAllShareIndex(null).isPresent());
+        } finally {
+            stockManager.setNumericMode(NumericMode.EXACT);
+        }
+        assertTrue(stockManager.clearAll());
+    }
+
+    @Test
+    public void testSubscribeStockAndIndex() throws InterruptedException {
+        assertTrue(stockManager.clearAll());
+        final AtomicReference<StockUpdate> stockUpdate = new AtomicReference<StockUpdate>();
+        final AtomicReference<Optional<BigDecimal>> indexUpdate = new AtomicReference<Optional<BigDecimal>>();
+        StockImpl stockImpl = new CommonStock(COMMON_STOCK_SYMBOL, BigDecimal.TEN, BigDecimal.ONE,
+                BigInteger.ONE, BigDecimal.ONE);
+        BigDecimal price = new BigDecimal(4);
+
+        assertFalse(stockManager.subscribeStock(null, 15, stockUpdate::set).isPresent());
+        assertFalse(stockManager.subscribeStock(COMMON_STOCK_SYMBOL, 15, null).isPresent());
+        assertFalse(stockManager.subscribeIndex(null).isPresent());
+        Subscription stockSubscription = stockManager.subscribeStock(COMMON_STOCK_SYMBOL, 15,
+                stockUpdate::set).get();
+        Subscription indexSubscription = stockManager.subscribeIndex(indexUpdate::set).get();
+
+        assertTrue(stockManager.addStock(stockImpl));
+        assertTrue(stockManager.addTransaction(COMMON_STOCK_SYMBOL, new Transaction(
+                COMMON_STOCK_SYMBOL, DateTime.now().minusMinutes(1), BigInteger.ONE,
+                BuySellIndicator.BUY, price)));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!(stockUpdate.get() != null && stockUpdate.get().getLastPrice().isPresent()
+                && indexUpdate.get() != null && indexUpdate.get().isPresent())) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        assertEquals(0, price.compareTo(stockUpdate.get().getLastPrice().get()));
+        assertEquals(0, price.compareTo(stockUpdate.get().getVolumeWeightedStockPrice().get()));
+        assertEquals(0, price.compareTo(indexUpdate.get().get()));
+
+        assertTrue(stockManager.clearAll());
+        assertFalse(stockSubscription.isActive());
+        assertFalse(indexSubscription.isActive());
+    }
+
+    @Test
+    public void testMostActiveLeaderboard() {
+        assertTrue(stockManager.clearAll());
+        stockManager.addStock(new CommonStock("TEA", BigDecimal.TEN, BigDecimal.ONE,
+                BigInteger.ONE, BigDecimal.ONE));
+        stockManager.addStock(new CommonStock("POP", BigDecimal.TEN, BigDecimal.ONE,
+                BigInteger.ONE, BigDecimal.ONE));
+        DateTime timeStamp = DateTime.now().minusSeconds(1);
+        stockManager.addTransaction("TEA", new Transaction("TEA", timeStamp, BigInteger
+                .valueOf(100), BuySellIndicator.BUY, BigDecimal.ONE));
+        stockManager.addTransaction("POP", new Transaction("POP", timeStamp, BigInteger
+                .valueOf(10), BuySellIndicator.SELL, new BigDecimal(50)));
+
+        assertEquals("TEA", stockManager.getMostActiveByVolume(20).get(0).getSymbol());
+        assertEquals("POP", stockManager.getMostActiveByNotional(20).get(0).getSymbol());
+
+        // Older than the default window of 15 minutes
+        stockManager.addTransaction("POP", new Transaction("POP", timeStamp.minusMinutes(20),
+                BigInteger.valueOf(1000), BuySellIndicator.SELL, BigDecimal.ONE));
+        assertEquals("TEA", stockManager.getMostActiveByVolume(20).get(0).getSymbol());
+        try {
+            assertFalse(stockManager.setLeaderboardWindow(0));
+            assertTrue(stockManager.setLeaderboardWindow(30));
+            assertEquals(30, stockManager.getLeaderboardWindow());
+            assertEquals("POP", stockManager.getMostActiveByVolume(20).get(0).getSymbol());
+        } finally {
+            stockManager.setLeaderboardWindow(15);
+        }
+
+        assertTrue(stockManager.removeStock("TEA"));
+        assertEquals(1, stockManager.getMostActiveByVolume(20).size());
+        assertTrue(stockManager.clearAll());
+        assertTrue(stockManager.getMostActiveByVolume(20).isEmpty());
+    }
+}
@@ -0,0 +1,56 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class SymbolRegistryTest {
+    private static final int SYMBOL_COUNT = 1000;
+
+    private final SymbolRegistry registry = new SymbolRegistry();
+
+    @Test
+    public void testRegisterAssignsDenseStableIds() {
+        assertEquals(0, registry.register("TEA"));
+        assertEquals(1, registry.register("POP"));
+        assertEquals(0, registry.register("TEA"));
+        assertEquals(1, registry.getId("POP"));
+        assertEquals("TEA", registry.getSymbol(0));
+        assertEquals("POP", registry.getSymbol(1));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testInvalidAndUnknownSymbols() {
+        assertEquals(SymbolRegistry.NO_ID, registry.register(null));
+        assertEquals(SymbolRegistry.NO_ID, registry.register(""));
+        assertEquals(SymbolRegistry.NO_ID, registry.register("ABCDE"));
+        assertEquals(SymbolRegistry.NO_ID, registry.register("A%2."));
+        assertEquals(SymbolRegistry.NO_ID, registry.getId("GIN"));
+        assertEquals(SymbolRegistry.NO_ID, registry.getId(null));
+        assertNull(registry.getSymbol(-1));
+        assertNull(registry.getSymbol(0));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testRegisterGrowsBeyondInitialCapacity() {
+        for (int i = 0; i < SYMBOL_COUNT; i++) {
+            assertEquals(i, registry.register(symbolOf(i)));
+        }
+        for (int i = 0; i < SYMBOL_COUNT; i++) {
+            assertEquals(i, registry.getId(symbolOf(i)));
+            assertEquals(symbolOf(i), registry.getSymbol(i));
+        }
+    }
+
+    private static String symbolOf(int index) {
+        StringBuilder symbol = new StringBuilder();
+        do {
+            symbol.append((char) ('A' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return symbol.toString();
+    }
+}
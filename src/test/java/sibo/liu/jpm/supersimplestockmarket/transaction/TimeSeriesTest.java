@@ -0,0 +1,83 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class TimeSeriesTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final TimeSeries series = new TimeSeries(10);
+    private final long[] times = new long[10];
+    private final double[] values = new double[10];
+
+    @Test
+    public void testRangeAfterWrapping() {
+        for (int i = 0; i < 25; i++) {
+            assertTrue(series.add(i * 100L, i));
+        }
+        assertFalse(series.add(100L, 1.0d));
+        assertEquals(10, series.getSize());
+
+        // Samples 15 to 24 are left
+        assertEquals(10, series.getRange(0L, Long.MAX_VALUE, times, values));
+        assertEquals(1500L, times[0]);
+        assertEquals(24.0d, values[9], 0.0d);
+
+        assertEquals(3, series.getRange(1750L, 2050L, times, values));
+        assertEquals(1800L, times[0]);
+        assertEquals(20.0d, values[2], 0.0d);
+
+        assertEquals(2, series.getRange(0L, Long.MAX_VALUE, new long[2], new double[2]));
+        assertEquals(0, series.getRange(2500L, 3000L, times, values));
+        assertEquals(0, series.getRange(2000L, 1000L, times, values));
+
+        series.clear();
+        assertEquals(0, series.getRange(0L, Long.MAX_VALUE, times, values));
+    }
+
+    @Test
+    public void testDownsampled() {
+        for (int i = 0; i < 10; i++) {
+            series.add(1000L + i * 100L, i == 7 ? Double.NaN : i);
+        }
+        series.add(2000L, Double.NaN);
+        assertEquals(10, series.getSize());
+
+        // The first sample is replaced. Intervals of 220 from 1000: 1 2, 3 4,
+        // 5 6, NaN 8, and 9 NaN
+        assertEquals(5, series.getDownsampled(1000L, 2100L, 5, times, values));
+        assertEquals(1000L, times[0]);
+        assertEquals(1.5d, values[0], 1e-12d);
+        assertEquals(1220L, times[1]);
+        assertEquals(3.5d, values[1], 1e-12d);
+        assertEquals(5.5d, values[2], 1e-12d);
+        assertEquals(8.0d, values[3], 1e-12d);
+        assertEquals(1880L, times[4]);
+        assertEquals(9.0d, values[4], 1e-12d);
+        assertEquals(1, series.getDownsampled(1650L, 1750L, 1, times, values));
+        assertTrue(Double.isNaN(values[0]));
+
+        // One point is the mean of the range
+        assertEquals(1, series.getDownsampled(1100L, 1500L, 1, times, values));
+        assertEquals(2.5d, values[0], 1e-12d);
+        assertEquals(0, series.getDownsampled(1500L, 1500L, 1, times, values));
+    }
+
+    @Test
+    public void testTooManyPoints() {
+        thrown.expect(IllegalArgumentException.class);
+        series.getDownsampled(0L, 1000L, 11, times, values);
+    }
+
+    @Test
+    public void testArraysOfDifferentLengths() {
+        thrown.expect(IllegalArgumentException.class);
+        series.getRange(0L, 1000L, times, new double[5]);
+    }
+}
@@ -0,0 +1,139 @@
+package sibo.liu.jpm.supersimplestockmarket.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import sibo.liu.jpm.supersimplestockmarket.stock.CommonStock;
+import sibo.liu.jpm.supersimplestockmarket.stock.StockImpl;
+
+public class WindowedGBCEIndexTest {
+    private static final int WINDOW_MINUTES = 15;
+    private static final long WINDOW_MILLIS = WINDOW_MINUTES * 60000L;
+    private static final long NOW = 1448382991000L;
+
+    private final WindowedGBCEIndex index = new WindowedGBCEIndex(WINDOW_MINUTES);
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void testIndexMatchesBruteForceAsWindowRolls() {
+        Random random = new Random(7);
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        for (long now = NOW; now < NOW + 2 * WINDOW_MILLIS; now += 1000L) {
+            DateTimeUtils.setCurrentMillisFixed(now);
+            for (int i = random.nextInt(20); i > 0; i--) {
+                // Up to a minute late, half a second from any window edge
+                long timeMillis = now - 500L - 1000L * random.nextInt(60);
+                Transaction transaction = transaction(timeMillis, BigDecimal.valueOf(1 + random
+                        .nextInt(100000), 2));
+                transactions.add(transaction);
+                index.record(transaction);
+            }
+            if (now % 60000L == NOW % 60000L) {
+                assertMatchesBruteForce(transactions, now);
+            }
+        }
+        // Idle for longer than the window
+        DateTimeUtils.setCurrentMillisFixed(NOW + 5 * WINDOW_MILLIS);
+        assertFalse(index.getIndex().isPresent());
+        assertEquals(0L, index.getPartial().getCount());
+    }
+
+    @Test
+    public void testFutureAndExpiredTransactions() {
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        index.record(transaction(NOW - WINDOW_MILLIS - 1000L, new BigDecimal("1000")));
+        index.record(transaction(NOW + WINDOW_MILLIS, new BigDecimal("2")));
+        index.record(transaction(NOW, new BigDecimal("8")));
+        index.record(null);
+        assertEquals(2L, index.getPartial().getCount());
+        assertEquals(0, new BigDecimal("4").compareTo(index.getIndex().get()));
+        // The future one was counted at the time it was recorded
+        DateTimeUtils.setCurrentMillisFixed(NOW + WINDOW_MILLIS + 1000L);
+        assertFalse(index.getIndex().isPresent());
+
+        // After the clock goes back
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        index.record(transaction(NOW, new BigDecimal("3")));
+        assertEquals(0, new BigDecimal("3").compareTo(index.getIndex().get()));
+        DateTimeUtils.setCurrentMillisFixed(NOW + WINDOW_MILLIS + 1000L);
+        assertFalse(index.getIndex().isPresent());
+        index.clear();
+        assertEquals(0L, index.getPartial().getCount());
+    }
+
+    @Test
+    public void testManagerWindowedIndex() {
+        StockTransactionManager manager = StockTransactionManager.INSTANCE;
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        try {
+            assertTrue(manager.clearAll());
+            assertEquals(WINDOW_MINUTES, manager.getGBCEIndexWindow());
+            StockImpl tea = new CommonStock("TEA", BigDecimal.TEN, BigDecimal.ONE,
+                    BigInteger.ONE, BigDecimal.ONE);
+            tea.addTransaction(transaction("TEA", NOW - 1000L, new BigDecimal("2")));
+            assertTrue(manager.addStock(tea));
+            assertTrue(manager.addStock(new CommonStock("POP", BigDecimal.TEN, BigDecimal.ONE,
+                    BigInteger.ONE, BigDecimal.ONE)));
+            assertTrue(manager.addTransaction("POP", transaction("POP", NOW - 20 * 60000L,
+                    new BigDecimal("100"))));
+            assertTrue(manager.addTransaction("POP", transaction("POP", NOW, new BigDecimal(
+                    "8"))));
+            assertEquals(0, new BigDecimal("4").compareTo(manager
+                    .getWindowedGBCEAllShareIndex().get()));
+            assertEquals(3L, manager.getGBCEIndexPartial().getCount());
+
+            assertFalse(manager.setGBCEIndexWindow(0));
+            assertTrue(manager.setGBCEIndexWindow(30));
+            assertEquals(3L, manager.getWindowedGBCEIndexPartial().getCount());
+            assertTrue(manager.removeStock("TEA"));
+            assertEquals(2L, manager.getWindowedGBCEIndexPartial().getCount());
+            assertEquals(0, manager.getGBCEAllShareIndex().get().compareTo(manager
+                    .getWindowedGBCEAllShareIndex().get()));
+        } finally {
+            manager.setGBCEIndexWindow(WINDOW_MINUTES);
+            assertTrue(manager.clearAll());
+        }
+        assertFalse(manager.getWindowedGBCEAllShareIndex().isPresent());
+    }
+
+    private void assertMatchesBruteForce(List<Transaction> transactions, long now) {
+        double logSum = 0.0d;
+        long count = 0L;
+        for (Transaction transaction : transactions) {
+            if (transaction.getTimeMillis() > now - WINDOW_MILLIS) {
+                logSum += Math.log(transaction.getPrice().doubleValue());
+                count++;
+            }
+        }
+        GBCEIndexPartial partial = index.getPartial();
+        assertEquals(count, partial.getCount());
+        assertEquals(logSum, partial.getLogSum(), 1e-9d * count);
+        assertEquals(new GBCEIndexPartial(logSum, count).toIndex().get().doubleValue(), index
+                .getIndex().get().doubleValue(), 1e-6d);
+    }
+
+    private static Transaction transaction(long timeMillis, BigDecimal price) {
+        return transaction("TEA", timeMillis, price);
+    }
+
+    private static Transaction transaction(String symbol, long timeMillis, BigDecimal price) {
+        return new Transaction(symbol, new DateTime(timeMillis), BigInteger.ONE,
+                BuySellIndicator.BUY, price);
+    }
+}